@@ -1,19 +1,34 @@
 package ru.practicum.shareit.booking;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.convert.ConversionFailedException;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
+import ru.practicum.shareit.booking.dto.BookingBulkDecisionDto;
+import ru.practicum.shareit.booking.dto.BookingBulkResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.SimpleBookingDto;
+import ru.practicum.shareit.etag.ResourceETags;
+import ru.practicum.shareit.ndjson.NdjsonWriter;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.user.UserService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Контроллер.
@@ -25,7 +40,12 @@ import java.util.List;
 @Validated
 public class BookingController {
 
+    public static final int BATCH_MAX_SIZE = 1000;
+
     private final BookingService bookingService;
+    private final ObjectMapper objectMapper;
+    private final ResourceETags etags;
+    private final UserService userService;
 
     /**
      * метод создания нового бронирования
@@ -40,6 +60,19 @@ public class BookingController {
         return bookingDto;
     }
 
+    /**
+     * метод создания пакета бронирований. Бронирования проверяются по отдельности,
+     * для каждого возвращается результат с его номером в пакете
+     *
+     * @throws javax.validation.ConstraintViolationException если пакет пуст или больше BATCH_MAX_SIZE
+     */
+    @PostMapping("/batch")
+    public List<BookingBatchResultDto> createBookingDtos(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                         @RequestBody @NotEmpty @Size(max = BATCH_MAX_SIZE)
+                                                         List<SimpleBookingDto> simpleBookingDtos) {
+        return bookingService.createAll(userId, simpleBookingDtos);
+    }
+
     /**
      * метод изменения статуса бронирования
      *
@@ -53,43 +86,129 @@ public class BookingController {
         return bookingService.approved(userId, bookingId, approved);
     }
 
+    /**
+     * метод подтверждения или отклонения владельцем сразу нескольких бронирований
+     *
+     * @throws MethodArgumentNotValidException при ошибке валидации bookingBulkDecisionDto
+     */
+    @PatchMapping("/owner/bulk")
+    public List<BookingBulkResultDto> approvedAll(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                  @Valid @RequestBody BookingBulkDecisionDto bookingBulkDecisionDto) {
+        return bookingService.approvedAll(userId, bookingBulkDecisionDto.getBookingIds(),
+                bookingBulkDecisionDto.getApproved());
+    }
+
     /**
      * Метод получения бронирования по его номеру.
-     * Доступно только букеру и хозяину вещи
+     * Доступно только букеру и хозяину вещи.
+     * Если ETag из If-None-Match совпадает с текущим, после проверки пользователя
+     * возвращается 304 без обращения к сервису. ETag строится только для букера и хозяина вещи,
+     * остальным отвечает 404
      */
     @GetMapping("/{bookingId}")
     public BookingDto getBookingDtoById(@RequestHeader("X-Sharer-User-Id") long userId,
-                                        @PathVariable long bookingId) {
+                                        @PathVariable long bookingId,
+                                        WebRequest request) {
+        userService.findUserByIdForValid(userId);
+        if (request.checkNotModified(etags.booking(userId, bookingId))) return null;
         return bookingService.getById(userId, bookingId);
     }
 
     /**
-     * Метод получения бронирований букера с переданным в заголовке Id
+     * Метод получения бронирований букера с переданным в заголовке Id.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor
      *
      * @throws ConversionFailedException если передан неверный параметр state
      */
     @GetMapping()
-    public List<BookingDto>
+    public ResponseEntity<List<BookingDto>>
     getBookingDtoByState(@RequestHeader("X-Sharer-User-Id") long userId,
                          @RequestParam(required = false,
                                  defaultValue = "ALL") BookingStatus state,
                          @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                         @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return bookingService.findAllForBooker(userId, state,  PageRequest.of(from / size, size));
+                         @RequestParam(required = false, defaultValue = "10") @Positive int size,
+                         @RequestParam(required = false) String after) {
+        List<BookingDto> bookings = after == null
+                ? bookingService.findAllForBooker(userId, state, new FromSizeRequest(from, size))
+                : bookingService.findAllForBooker(userId, state, SeekCursor.decode(after), size);
+        return withNextCursor(bookings, size);
     }
 
     /**
-     * Метод получения бронирований владельца вещей с переданным в заголовке Id
+     * Метод получения бронирований владельца вещей с переданным в заголовке Id.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor
      *
      * @throws ConversionFailedException если передан неверный параметр state
      */
     @GetMapping("/owner")
-    public List<BookingDto>
+    public ResponseEntity<List<BookingDto>>
     getBookingDtoByOwner(@RequestHeader("X-Sharer-User-Id") long userId,
                          @RequestParam(required = false, defaultValue = "ALL")
                          BookingStatus state,
                          @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                         @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return bookingService.findAllForOwner(userId, state,  PageRequest.of(from / size, size));
+                         @RequestParam(required = false, defaultValue = "10") @Positive int size,
+                         @RequestParam(required = false) String after) {
+        List<BookingDto> bookings = after == null
+                ? bookingService.findAllForOwner(userId, state, new FromSizeRequest(from, size))
+                : bookingService.findAllForOwner(userId, state, SeekCursor.decode(after), size);
+        return withNextCursor(bookings, size);
+    }
+
+    /**
+     * Метод выгрузки всей истории бронирований букера в формате NDJSON (application/x-ndjson).
+     * Бронирования пишутся в ответ по мере чтения из базы в порядке списка бронирований
+     *
+     * @throws ConversionFailedException если передан неверный параметр state
+     */
+    @GetMapping("/export")
+    public void exportByBooker(@RequestHeader("X-Sharer-User-Id") long userId,
+                               @RequestParam(required = false, defaultValue = "ALL") BookingStatus state,
+                               HttpServletResponse response) throws IOException {
+        NdjsonWriter<BookingDto> writer = new NdjsonWriter<>(response, objectMapper);
+        bookingService.exportForBooker(userId, state, writer);
+        writer.finish();
+    }
+
+    /**
+     * Метод выгрузки всей истории бронирований вещей владельца в формате NDJSON (application/x-ndjson)
+     *
+     * @throws ConversionFailedException если передан неверный параметр state
+     */
+    @GetMapping("/owner/export")
+    public void exportByOwner(@RequestHeader("X-Sharer-User-Id") long userId,
+                              @RequestParam(required = false, defaultValue = "ALL") BookingStatus state,
+                              HttpServletResponse response) throws IOException {
+        NdjsonWriter<BookingDto> writer = new NdjsonWriter<>(response, objectMapper);
+        bookingService.exportForOwner(userId, state, writer);
+        writer.finish();
+    }
+
+    /**
+     * Метод получения количества бронирований букера в каждом состоянии
+     */
+    @GetMapping("/summary")
+    public Map<BookingStatus, Long> getSummaryByBooker(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.getSummaryForBooker(userId);
+    }
+
+    /**
+     * Метод получения количества бронирований вещей владельца в каждом состоянии
+     */
+    @GetMapping("/owner/summary")
+    public Map<BookingStatus, Long> getSummaryByOwner(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return bookingService.getSummaryForOwner(userId);
+    }
+
+    /**
+     * Если страница заполнена полностью, добавляет в ответ курсор по последнему бронированию
+     */
+    private ResponseEntity<List<BookingDto>> withNextCursor(List<BookingDto> bookings, int size) {
+        if (bookings.size() < size) return ResponseEntity.ok(bookings);
+        BookingDto last = bookings.get(bookings.size() - 1);
+        return ResponseEntity.ok()
+                .header(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(last.getStart(), last.getId()).encode())
+                .body(bookings);
     }
 }
@@ -0,0 +1,334 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static ru.practicum.shareit.booking.BookingIntervalIndex.toMicros;
+import static ru.practicum.shareit.booking.BookingStatus.*;
+
+/**
+ * Счетчики бронирований пользователя по состояниям - отдельно для букера и для владельца вещей.
+ * Количество по статусам хранится в LongAdder. Для состояний CURRENT, PAST и FUTURE бронирования
+ * разложены по дням: дни до начала текущего хранятся только количеством начал и окончаний,
+ * а начала и окончания с текущего дня - отсортированными массивами в корзине своего дня.
+ * Количество считается сложением без обращения к базе и двоичным поиском в корзине текущего дня,
+ * с наступлением нового дня прошедшие корзины сворачиваются в количество.
+ * Счетчики пользователя загружаются из базы при первом обращении: количество по статусам
+ * и до начала дня - агрегирующими запросами, интервалы - только незавершившихся до начала дня бронирований.
+ * Изменения применяются после фиксации транзакции, периодическая сверка сбрасывает все счетчики,
+ * чтобы они были перечитаны из базы.
+ * Изменение отмечается в записи пользователя сразу, еще внутри транзакции. Загрузка не попадает в кэш,
+ * если во время нее шла или была зафиксирована транзакция с изменением бронирований пользователя:
+ * по снимку базы нельзя понять, учтено ли уже такое изменение. Такая загрузка отвечает на свой запрос,
+ * а следующий запрос загружает счетчики заново
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookingCounters {
+
+    private static final List<BookingStatus> STATUSES = List.of(WAITING, APPROVED, REJECTED, CANCELED);
+
+    private final BookingRepository repository;
+    private final Map<Long, Entry> bookers = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> owners = new ConcurrentHashMap<>();
+
+    /**
+     * Количество бронирований пользователя в каждом состоянии на момент now
+     */
+    public Map<BookingStatus, Long> summary(BookingQuery.Role role, long userId, LocalDateTime now) {
+        Map<Long, Entry> counters = role == BookingQuery.Role.OWNER ? owners : bookers;
+        Entry entry = counters.get(userId);
+        UserCounters userCounters = entry == null ? null : entry.counters;
+        if (userCounters != null && userCounters.covers(now)) return userCounters.summary(now);
+        Object loader = new Object();
+        userCounters = counters.compute(userId, (id, current) ->
+                (current == null ? new Entry() : current).startLoad(loader, now)).counters;
+        if (userCounters != null && userCounters.covers(now)) return userCounters.summary(now);
+        UserCounters loaded = null;
+        try {
+            loaded = load(role, userId, now);
+        } finally {
+            UserCounters result = loaded;
+            counters.computeIfPresent(userId, (id, current) -> current.finishLoad(loader, result));
+        }
+        return loaded.summary(now);
+    }
+
+    /**
+     * Учитывает новое бронирование у букера и владельца вещи после фиксации транзакции
+     */
+    public void onCreated(BookingInterval interval, long ownerId) {
+        track(interval.getBookerId(), ownerId, counters -> counters.add(interval));
+    }
+
+    /**
+     * Учитывает смену статуса бронирования у букера и владельца вещи после фиксации транзакции
+     */
+    public void onStatusChanged(BookingInterval interval, long ownerId, BookingStatus oldStatus) {
+        track(interval.getBookerId(), ownerId, counters -> counters.move(oldStatus, interval.getStatus()));
+    }
+
+    /**
+     * Сверка с базой: счетчики сбрасываются и будут перечитаны при следующем обращении
+     */
+    @Scheduled(fixedDelayString = "${shareit.booking.counters.reconcile-ms:600000}",
+            initialDelayString = "${shareit.booking.counters.reconcile-ms:600000}")
+    public void reconcile() {
+        log.debug("Сброс счетчиков бронирований: букеров {}, владельцев {}", bookers.size(), owners.size());
+        List.of(bookers, owners).forEach(counters -> counters.keySet().forEach(userId ->
+                counters.computeIfPresent(userId, (id, entry) -> entry.reset())));
+    }
+
+    /**
+     * Загружает счетчики пользователя с начала дня момента now
+     */
+    private UserCounters load(BookingQuery.Role role, long userId, LocalDateTime now) {
+        LocalDateTime horizon = now.toLocalDate().atStartOfDay();
+        boolean owner = role == BookingQuery.Role.OWNER;
+        List<BookingStatusCount> byStatus = owner ? repository.countByOwnerIdGroupByStatus(userId) :
+                repository.countByBookerIdGroupByStatus(userId);
+        BookingTimeCount before = owner ? repository.countByOwnerIdBefore(userId, horizon) :
+                repository.countByBookerIdBefore(userId, horizon);
+        List<BookingInterval> open = owner ? repository.findIntervalsByOwnerIdNotEndedBefore(userId, horizon) :
+                repository.findIntervalsByBookerIdNotEndedBefore(userId, horizon);
+        return UserCounters.of(horizon.toLocalDate(), byStatus, before, open);
+    }
+
+    /**
+     * Отмечает изменение у букера и владельца сразу, еще внутри транзакции,
+     * и применяет его к счетчикам после фиксации
+     */
+    private void track(long bookerId, long ownerId, Consumer<UserCounters> change) {
+        bookers.compute(bookerId, (id, entry) -> (entry == null ? new Entry() : entry).begin());
+        owners.compute(ownerId, (id, entry) -> (entry == null ? new Entry() : entry).begin());
+        Consumer<Boolean> complete = committed -> {
+            bookers.computeIfPresent(bookerId, (id, entry) -> entry.complete(committed, change));
+            owners.computeIfPresent(ownerId, (id, entry) -> entry.complete(committed, change));
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            complete.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                complete.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    /**
+     * Состояние счетчиков пользователя в карте: загруженные счетчики, текущая загрузка
+     * и число незавершенных транзакций с изменениями. Меняется только внутри compute карты,
+     * запись удаляется, когда в ней не остается ни счетчиков, ни загрузки, ни изменений
+     */
+    private static final class Entry {
+        private volatile UserCounters counters;
+        private Object loader;
+        private boolean stale;
+        private int pending;
+
+        Entry startLoad(Object token, LocalDateTime now) {
+            if (counters != null && !counters.covers(now)) counters = null;
+            if (counters == null && loader == null) {
+                loader = token;
+                stale = pending > 0;
+            }
+            return this;
+        }
+
+        Entry finishLoad(Object token, UserCounters loaded) {
+            if (loader == token) {
+                if (!stale) counters = loaded;
+                loader = null;
+                stale = false;
+            }
+            return orNullIfEmpty();
+        }
+
+        Entry begin() {
+            pending++;
+            if (loader != null) stale = true;
+            return this;
+        }
+
+        Entry complete(boolean committed, Consumer<UserCounters> change) {
+            pending--;
+            if (committed) {
+                if (loader != null) stale = true;
+                else if (counters != null) change.accept(counters);
+            }
+            return orNullIfEmpty();
+        }
+
+        Entry reset() {
+            counters = null;
+            if (loader != null) stale = true;
+            return orNullIfEmpty();
+        }
+
+        private Entry orNullIfEmpty() {
+            return counters == null && loader == null && pending == 0 ? null : this;
+        }
+    }
+
+    /**
+     * Счетчики одного пользователя. Корзины по дням меняются под блокировкой объекта
+     */
+    private static final class UserCounters {
+        private final Map<BookingStatus, LongAdder> byStatus = new EnumMap<>(BookingStatus.class);
+        /**
+         * Корзины дней начиная с horizon: начала и окончания бронирований этого дня
+         */
+        private final NavigableMap<LocalDate, Bucket> buckets = new TreeMap<>();
+        private LocalDate horizon;
+        private long startedBefore;
+        private long endedBefore;
+        private long total;
+
+        private UserCounters(LocalDate horizon, long startedBefore, long endedBefore) {
+            STATUSES.forEach(status -> byStatus.put(status, new LongAdder()));
+            this.horizon = horizon;
+            this.startedBefore = startedBefore;
+            this.endedBefore = endedBefore;
+            this.total = startedBefore;
+        }
+
+        static UserCounters of(LocalDate horizon, List<BookingStatusCount> byStatus, BookingTimeCount before,
+                               List<BookingInterval> open) {
+            UserCounters counters = new UserCounters(horizon, before.getStartedBefore(), before.getEndedBefore());
+            byStatus.forEach(count -> counters.byStatus.get(count.getStatus()).add(count.getCount()));
+            open.forEach(counters::addPeriod);
+            return counters;
+        }
+
+        /**
+         * Можно ли посчитать состояния на момент now: корзины есть только с начала дня загрузки
+         */
+        synchronized boolean covers(LocalDateTime now) {
+            return !now.toLocalDate().isBefore(horizon);
+        }
+
+        void add(BookingInterval interval) {
+            addPeriod(interval);
+            byStatus.get(interval.getStatus()).increment();
+        }
+
+        void move(BookingStatus from, BookingStatus to) {
+            byStatus.get(from).decrement();
+            byStatus.get(to).increment();
+        }
+
+        Map<BookingStatus, Long> summary(LocalDateTime now) {
+            Map<BookingStatus, Long> summary = new EnumMap<>(BookingStatus.class);
+            byStatus.forEach((status, count) -> summary.put(status, count.sum()));
+            long key = toMicros(now);
+            synchronized (this) {
+                advance(now.toLocalDate());
+                Bucket today = buckets.get(horizon);
+                long[] starts = today == null ? new long[0] : today.starts;
+                long[] ends = today == null ? new long[0] : today.ends;
+                long startedBeforeNow = startedBefore + lowerBound(starts, key);
+                long endedNotAfterNow = endedBefore + upperBound(ends, key);
+                summary.put(CURRENT, Math.max(0, startedBeforeNow - endedNotAfterNow));
+                summary.put(PAST, endedBefore + lowerBound(ends, key));
+                summary.put(FUTURE, total - startedBefore - upperBound(starts, key));
+                summary.put(ALL, total);
+            }
+            return summary;
+        }
+
+        private synchronized void addPeriod(BookingInterval interval) {
+            total++;
+            LocalDate startDay = interval.getStart().toLocalDate();
+            if (startDay.isBefore(horizon)) {
+                startedBefore++;
+            } else {
+                Bucket bucket = buckets.computeIfAbsent(startDay, day -> new Bucket());
+                bucket.starts = insert(bucket.starts, toMicros(interval.getStart()));
+            }
+            LocalDate endDay = interval.getEnd().toLocalDate();
+            if (endDay.isBefore(horizon)) {
+                endedBefore++;
+            } else {
+                Bucket bucket = buckets.computeIfAbsent(endDay, day -> new Bucket());
+                bucket.ends = insert(bucket.ends, toMicros(interval.getEnd()));
+            }
+        }
+
+        /**
+         * Сворачивает корзины дней до day в количество начал и окончаний
+         */
+        private void advance(LocalDate day) {
+            if (!day.isAfter(horizon)) return;
+            NavigableMap<LocalDate, Bucket> passed = buckets.headMap(day, false);
+            for (Bucket bucket : passed.values()) {
+                startedBefore += bucket.starts.length;
+                endedBefore += bucket.ends.length;
+            }
+            passed.clear();
+            horizon = day;
+        }
+
+        private static long[] insert(long[] sorted, long value) {
+            int position = upperBound(sorted, value);
+            long[] result = Arrays.copyOf(sorted, sorted.length + 1);
+            System.arraycopy(sorted, position, result, position + 1, sorted.length - position);
+            result[position] = value;
+            return result;
+        }
+
+        /**
+         * количество элементов меньше key
+         */
+        private static int lowerBound(long[] sorted, long key) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] < key) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * количество элементов не больше key
+         */
+        private static int upperBound(long[] sorted, long key) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] <= key) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Начала и окончания бронирований одного дня, отсортированные по времени
+     */
+    private static final class Bucket {
+        private long[] starts = new long[0];
+        private long[] ends = new long[0];
+    }
+}
@@ -0,0 +1,49 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.booking.dto.BookingEventDto;
+
+/**
+ * Событие изменения бронирования для пользователя recipientId.
+ * ownerId - хозяин забронированной вещи.
+ * Публикуется внутри транзакции и доставляется подписчикам после ее фиксации
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class BookingEvent {
+    private final long recipientId;
+    private final long ownerId;
+    private final BookingEventDto payload;
+
+    /**
+     * Создание бронирования - событие для хозяина вещи
+     */
+    public static BookingEvent created(BookingInterval interval, long ownerId) {
+        return new BookingEvent(ownerId, ownerId, toDto(interval, BookingEventDto.Type.CREATED));
+    }
+
+    /**
+     * Подтверждение или отклонение бронирования - событие для букера
+     */
+    public static BookingEvent decided(BookingInterval interval, long ownerId) {
+        return new BookingEvent(interval.getBookerId(), ownerId, toDto(interval,
+                interval.getStatus() == BookingStatus.APPROVED
+                        ? BookingEventDto.Type.APPROVED
+                        : BookingEventDto.Type.REJECTED));
+    }
+
+    private static BookingEventDto toDto(BookingInterval interval, BookingEventDto.Type type) {
+        return BookingEventDto.builder()
+                .type(type)
+                .bookingId(interval.getId())
+                .itemId(interval.getItemId())
+                .bookerId(interval.getBookerId())
+                .start(interval.getStart())
+                .end(interval.getEnd())
+                .status(interval.getStatus())
+                .build();
+    }
+}
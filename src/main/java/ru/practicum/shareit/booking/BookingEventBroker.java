@@ -0,0 +1,216 @@
+package ru.practicum.shareit.booking;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.shareit.user.UserService;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рассылка событий бронирований подписчикам потока /bookings/stream.
+ * Соединения обслуживаются асинхронно контейнером сервлетов, поэтому ожидающий подписчик
+ * не занимает поток. У каждого подписчика свой ограниченный буфер: если клиент не успевает читать,
+ * из буфера вытесняются самые старые события. Отправка в сокет блокирующая, поэтому подписку
+ * отправляет отдельный поток пула: постоянно в пуле senders потоков, при занятых потоках
+ * создаются новые, но не больше maxSenders. Медленный клиент занимает только свой поток и
+ * не задерживает остальных. Подписка, отправка в которую длится дольше sendTimeoutMs,
+ * отписывается, а ее соединение закрывается, как только отправка вернет управление
+ */
+@Component
+@Slf4j
+public class BookingEventBroker {
+
+    private final UserService userService;
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final long sendTimeoutMs;
+    private final ExecutorService senders;
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong eventIds = new AtomicLong();
+
+    public BookingEventBroker(UserService userService,
+                              @Value("${shareit.booking.stream.buffer-size:64}") int bufferSize,
+                              @Value("${shareit.booking.stream.timeout-ms:1800000}") long timeoutMs,
+                              @Value("${shareit.booking.stream.senders:4}") int senders,
+                              @Value("${shareit.booking.stream.max-senders:256}") int maxSenders,
+                              @Value("${shareit.booking.stream.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.userService = userService;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.senders = new ThreadPoolExecutor(senders, Math.max(senders, maxSenders), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>());
+    }
+
+    /**
+     * Подписывает пользователя на события его бронирований
+     *
+     * @throws ru.practicum.shareit.exception.NoFoundException если пользователя с userId не существует
+     */
+    public SseEmitter subscribe(long userId) {
+        userService.findUserByIdForValid(userId);
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        subscribe(userId, emitter);
+        return emitter;
+    }
+
+    void subscribe(long userId, SseEmitter emitter) {
+        Subscription subscription = new Subscription(userId, emitter);
+        subscriptions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+        log.info("Пользователь {} подписался на события бронирований", userId);
+    }
+
+    /**
+     * Ставит событие в буферы подписок получателя. Вызывается после фиксации транзакции,
+     * в которой событие опубликовано, поэтому откаченные изменения не рассылаются
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingEvent(BookingEvent event) {
+        Set<Subscription> recipientSubscriptions = subscriptions.get(event.getRecipientId());
+        if (recipientSubscriptions == null) return;
+        SseEmitter.SseEventBuilder sseEvent = SseEmitter.event()
+                .id(String.valueOf(eventIds.incrementAndGet()))
+                .name(event.getPayload().getType().name())
+                .data(event.getPayload());
+        recipientSubscriptions.forEach(subscription -> subscription.offer(sseEvent));
+    }
+
+    /**
+     * Периодически отправляет комментарий в простаивающие соединения, чтобы их не закрыли
+     * промежуточные прокси и чтобы обнаружить отключившихся клиентов.
+     * Подписки, отправка в которые зависла дольше sendTimeoutMs, отписываются
+     */
+    @Scheduled(fixedDelayString = "${shareit.booking.stream.heartbeat-ms:30000}")
+    public void heartbeat() {
+        subscriptions.values().forEach(userSubscriptions ->
+                userSubscriptions.forEach(Subscription::ping));
+    }
+
+    public int countSubscriptions() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.userId, (userId, userSubscriptions) -> {
+            userSubscriptions.remove(subscription);
+            return userSubscriptions.isEmpty() ? null : userSubscriptions;
+        });
+    }
+
+    /**
+     * Подписка одного соединения. Буфер и состояние отправки защищены монитором подписки,
+     * сама отправка выполняется вне монитора. Одновременно подписку отправляет не больше одного потока
+     */
+    private final class Subscription {
+        private final long userId;
+        private final SseEmitter emitter;
+        private final Deque<SseEmitter.SseEventBuilder> buffer = new ArrayDeque<>();
+        private boolean sending;
+        private boolean closed;
+        /**
+         * Момент начала текущей отправки в сокет (System.nanoTime), 0 - отправки нет
+         */
+        private long sendStarted;
+        private long dropped;
+
+        private Subscription(long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(SseEmitter.SseEventBuilder event) {
+            synchronized (this) {
+                if (closed) return;
+                if (buffer.size() == bufferSize) {
+                    buffer.pollFirst();
+                    dropped++;
+                    if ((dropped - 1) % bufferSize == 0) {
+                        log.warn("Подписчик {} не успевает читать события бронирований, вытеснено: {}",
+                                userId, dropped);
+                    }
+                }
+                buffer.addLast(event);
+                if (sending) return;
+                sending = true;
+            }
+            try {
+                senders.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                //все потоки заняты: события остаются в буфере до следующего события или пинга
+                log.warn("Нет свободного потока для отправки событий подписчику {}", userId);
+                synchronized (this) {
+                    sending = false;
+                }
+            }
+        }
+
+        void ping() {
+            synchronized (this) {
+                if (sending) {
+                    if (!closed && sendStarted != 0
+                            && System.nanoTime() - sendStarted > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)) {
+                        log.warn("Подписчик {} не принимает события бронирований дольше {} мс, отписываем",
+                                userId, sendTimeoutMs);
+                        closed = true;
+                        buffer.clear();
+                        unsubscribe(this);
+                    }
+                    return;
+                }
+            }
+            offer(SseEmitter.event().comment("ping"));
+        }
+
+        private void send() {
+            boolean close;
+            while (true) {
+                SseEmitter.SseEventBuilder event;
+                synchronized (this) {
+                    sendStarted = 0;
+                    close = closed;
+                    event = close ? null : buffer.pollFirst();
+                    if (event == null) {
+                        sending = false;
+                        break;
+                    }
+                    sendStarted = System.nanoTime();
+                }
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    //клиент отключился, флаг отправки не сбрасываем, чтобы больше не планировать отправку
+                    log.info("Подписчик {} отключился от событий бронирований", userId);
+                    unsubscribe(this);
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+            //зависшую подписку закрываем здесь: методы SseEmitter синхронизированы и ждут отправку
+            if (close) emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Интервал бронирования вещи - минимальный набор полей для индекса интервалов.
+ * Заполняется проекцией из базы без загрузки связанных сущностей.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class BookingInterval {
+    private final Long id;
+    private final Long itemId;
+    private final Long bookerId;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final BookingStatus status;
+
+    public static BookingInterval of(Booking booking) {
+        return new BookingInterval(booking.getId(), booking.getItem().getId(), booking.getBooker().getId(),
+                booking.getStart(), booking.getEnd(), booking.getStatus());
+    }
+}
@@ -0,0 +1,495 @@
+package ru.practicum.shareit.booking;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static ru.practicum.shareit.booking.BookingStatus.APPROVED;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
+
+/**
+ * Индекс интервалов бронирований в памяти.
+ * Для каждой вещи хранит дерево интервалов бронирований со статусами WAITING и APPROVED,
+ * упорядоченное по началу и дополненное самым поздним окончанием поддерева. Добавление и удаление
+ * интервала и поиск последнего бронирования выполняются в среднем за O(log n), поиск пересечений
+ * и свободных окон - за O((k + 1) log n), где k - число найденных бронирований или окон.
+ * Интервалы вещи загружаются из базы при первом обращении к ней. Число вещей в индексе ограничено
+ * shareit.booking.interval-index.size (редко используемые вытесняются), а интервалы вещи
+ * перечитываются из базы не реже shareit.booking.interval-index.ttl, поэтому бронирования,
+ * созданные другими узлами, видны не позже этого срока.
+ * Изменять и читать интервалы вещи можно только под блокировкой вещи: публичные методы чтения
+ * берут ее сами, put и remove вызываются внутри {@link #lockItem(long, Supplier)}
+ */
+@Component
+public class BookingIntervalIndex {
+
+    public static final List<BookingStatus> ACTIVE_STATUSES = List.of(WAITING, APPROVED);
+    private static final int LOCK_STRIPES = 64;
+
+    private final BookingRepository repository;
+    private final Duration ttl;
+    private final Cache<Long, ItemIntervals> intervals;
+    private final Lock[] locks = createLocks();
+
+    public BookingIntervalIndex(BookingRepository repository,
+                                @Value("${shareit.booking.interval-index.size:100000}") long size,
+                                @Value("${shareit.booking.interval-index.ttl:PT5M}") Duration ttl) {
+        this.repository = repository;
+        this.ttl = ttl;
+        this.intervals = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Выполняет действие под блокировкой вещи. Блокировки разбиты на полосы,
+     * поэтому бронирования одной вещи выполняются последовательно,
+     * а бронирования разных вещей не мешают друг другу
+     */
+    public <T> T lockItem(long itemId, Supplier<T> action) {
+        Lock lock = locks[Math.floorMod(Long.hashCode(itemId), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void lockItem(long itemId, Runnable action) {
+        lockItem(itemId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Пересекается ли период [start, end) с активным бронированием вещи
+     */
+    public boolean overlaps(long itemId, LocalDateTime start, LocalDateTime end) {
+        return lockItem(itemId, () -> get(itemId).overlaps(toMicros(start), toMicros(end)));
+    }
+
+    /**
+     * Активные бронирования вещи, пересекающиеся с периодом [start, end)
+     */
+    public List<BookingInterval> findOverlapping(long itemId, LocalDateTime start, LocalDateTime end) {
+        return lockItem(itemId, () -> get(itemId).overlapping(toMicros(start), toMicros(end)));
+    }
+
+    /**
+     * Последнее начавшееся до момента now бронирование вещи (с самым поздним окончанием)
+     */
+    public Optional<BookingInterval> findLast(long itemId, LocalDateTime now) {
+        return Optional.ofNullable(lockItem(itemId, () -> get(itemId).last(toMicros(now))));
+    }
+
+    /**
+     * Ближайшее начинающееся после момента now бронирование вещи (с самым ранним окончанием)
+     */
+    public Optional<BookingInterval> findNext(long itemId, LocalDateTime now) {
+        return Optional.ofNullable(lockItem(itemId, () -> get(itemId).next(toMicros(now))));
+    }
+
+    /**
+     * Самое раннее начало бронирования вещи после момента now. В этот момент
+     * бронирование переходит из следующих в начавшиеся и ответы findLast и findNext могут измениться
+     */
+    public Optional<LocalDateTime> findNextStart(long itemId, LocalDateTime now) {
+        return Optional.ofNullable(lockItem(itemId, () -> get(itemId).nextStart(toMicros(now))));
+    }
+
+    /**
+     * Момент, до которого ответы findLast и findNext для вещи не меняются без новых изменений
+     * бронирований на этом узле: начало ближайшего бронирования после now или, если оно раньше,
+     * перечитывание интервалов вещи из базы, после которого станут видны бронирования других узлов
+     */
+    public LocalDateTime findValidUntil(long itemId, LocalDateTime now) {
+        return lockItem(itemId, () -> {
+            ItemIntervals itemIntervals = get(itemId);
+            LocalDateTime nextStart = itemIntervals.nextStart(toMicros(now));
+            return nextStart != null && nextStart.isBefore(itemIntervals.reloadAt) ?
+                    nextStart : itemIntervals.reloadAt;
+        });
+    }
+
+    /**
+     * Свободные от активных бронирований окна вещи внутри периода [from, to), по возрастанию
+     */
+    public List<FreeSlot> findFree(long itemId, LocalDateTime from, LocalDateTime to) {
+        return lockItem(itemId, () -> get(itemId).free(from, to));
+    }
+
+    /**
+     * Загружает интервалы всех еще не загруженных вещей одним запросом
+     */
+    public void load(Collection<Long> itemIds) {
+        List<Long> missing = itemIds.stream()
+                .filter(itemId -> intervals.getIfPresent(itemId) == null)
+                .distinct()
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) return;
+        LocalDateTime reloadAt = LocalDateTime.now().plus(ttl);
+        Map<Long, List<BookingInterval>> loaded = repository.findIntervalsByItemIds(missing, ACTIVE_STATUSES)
+                .stream()
+                .collect(Collectors.groupingBy(BookingInterval::getItemId));
+        for (Long itemId : missing) {
+            intervals.asMap().putIfAbsent(itemId, ItemIntervals.of(loaded.getOrDefault(itemId, List.of()),
+                    reloadAt));
+        }
+    }
+
+    /**
+     * Добавляет или заменяет интервал бронирования. Вызывается под блокировкой вещи.
+     * При откате транзакции интервалы вещи сбрасываются и будут перечитаны из базы
+     */
+    public void put(BookingInterval interval) {
+        long itemId = interval.getItemId();
+        get(itemId).put(interval);
+        evictOnRollback(itemId);
+    }
+
+    /**
+     * Удаляет интервал бронирования. Вызывается под блокировкой вещи
+     */
+    public void remove(long itemId, long bookingId) {
+        get(itemId).remove(bookingId);
+        evictOnRollback(itemId);
+    }
+
+    private ItemIntervals get(long itemId) {
+        return intervals.get(itemId, id -> {
+            LocalDateTime reloadAt = LocalDateTime.now().plus(ttl);
+            return ItemIntervals.of(repository.findIntervalsByItemIds(List.of(id), ACTIVE_STATUSES), reloadAt);
+        });
+    }
+
+    private void evictOnRollback(long itemId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) intervals.invalidate(itemId);
+            }
+        });
+    }
+
+    private static Lock[] createLocks() {
+        Lock[] locks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1_000;
+    }
+
+    /**
+     * Интервалы одной вещи в декартовом дереве, упорядоченном по началу и номеру бронирования.
+     * Каждый узел хранит самое позднее окончание в своем поддереве, поэтому поиск пересечений
+     * пропускает поддеревья, закончившиеся до искомого момента, а самое позднее окончание среди
+     * начавшихся до момента находится за один спуск по дереву - независимо от длины броней вещи.
+     * Момент перечитывания считается от начала загрузки, поэтому не позже истечения ttl записи
+     */
+    private static final class ItemIntervals {
+        private final Map<Long, StartKey> keys = new HashMap<>();
+        private final LocalDateTime reloadAt;
+        private Node root;
+
+        private ItemIntervals(LocalDateTime reloadAt) {
+            this.reloadAt = reloadAt;
+        }
+
+        static ItemIntervals of(Collection<BookingInterval> intervals, LocalDateTime reloadAt) {
+            ItemIntervals itemIntervals = new ItemIntervals(reloadAt);
+            intervals.forEach(itemIntervals::put);
+            return itemIntervals;
+        }
+
+        void put(BookingInterval interval) {
+            remove(interval.getId());
+            Node node = new Node(new StartKey(toMicros(interval.getStart()), interval.getId()), interval);
+            root = insert(root, node);
+            keys.put(interval.getId(), node.key);
+        }
+
+        void remove(long bookingId) {
+            StartKey key = keys.remove(bookingId);
+            if (key != null) root = delete(root, key);
+        }
+
+        boolean overlaps(long start, long end) {
+            return anyOverlapping(root, start, end);
+        }
+
+        List<BookingInterval> overlapping(long start, long end) {
+            List<BookingInterval> result = new ArrayList<>();
+            collectOverlapping(root, start, end, result);
+            return result;
+        }
+
+        BookingInterval last(long now) {
+            StartKey bound = StartKey.first(now);
+            long lastEnd = maxEndBefore(bound);
+            if (lastEnd == Long.MIN_VALUE) return null;
+            //при равных окончаниях берем раньше начавшееся
+            return firstEndingAt(root, bound, lastEnd).interval;
+        }
+
+        BookingInterval next(long now) {
+            BookingInterval next = null;
+            long nextEnd = Long.MAX_VALUE;
+            for (Node node : startedAfter(StartKey.last(now))) {
+                if (node.key.start >= nextEnd) break;
+                if (node.end <= nextEnd) {
+                    next = node.interval;
+                    nextEnd = node.end;
+                }
+            }
+            return next;
+        }
+
+        LocalDateTime nextStart(long now) {
+            Iterator<Node> after = startedAfter(StartKey.last(now)).iterator();
+            return after.hasNext() ? after.next().interval.getStart() : null;
+        }
+
+        List<FreeSlot> free(LocalDateTime from, LocalDateTime to) {
+            List<FreeSlot> slots = new ArrayList<>();
+            long toMicros = toMicros(to);
+            StartKey fromKey = StartKey.first(toMicros(from));
+            LocalDateTime cursor = from;
+            //бронирования, начавшиеся до from, только сдвигают начало первого окна
+            long endBefore = maxEndBefore(fromKey);
+            if (endBefore != Long.MIN_VALUE) {
+                LocalDateTime end = firstEndingAt(root, fromKey, endBefore).interval.getEnd();
+                if (end.isAfter(cursor)) cursor = end;
+            }
+            for (Node node : startedAfter(fromKey)) {
+                if (node.key.start >= toMicros) break;
+                BookingInterval interval = node.interval;
+                if (interval.getStart().isAfter(cursor)) {
+                    slots.add(new FreeSlot(cursor, interval.getStart()));
+                }
+                if (interval.getEnd().isAfter(cursor)) cursor = interval.getEnd();
+            }
+            if (cursor.isBefore(to)) slots.add(new FreeSlot(cursor, to));
+            return slots;
+        }
+
+        /**
+         * самое позднее окончание интервалов с ключом меньше bound, Long.MIN_VALUE - если их нет
+         */
+        private long maxEndBefore(StartKey bound) {
+            long maxEnd = Long.MIN_VALUE;
+            Node node = root;
+            while (node != null) {
+                if (node.key.compareTo(bound) < 0) {
+                    maxEnd = Math.max(maxEnd, Math.max(maxEnd(node.left), node.end));
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            return maxEnd;
+        }
+
+        /**
+         * самый ранний интервал с ключом меньше bound, заканчивающийся в end
+         */
+        private static Node firstEndingAt(Node node, StartKey bound, long end) {
+            if (node == null || node.maxEnd < end) return null;
+            Node found = firstEndingAt(node.left, bound, end);
+            if (found != null || node.key.compareTo(bound) >= 0) return found;
+            return node.end == end ? node : firstEndingAt(node.right, bound, end);
+        }
+
+        private static boolean anyOverlapping(Node node, long start, long end) {
+            if (node == null || node.maxEnd <= start) return false;
+            if (node.key.start < end && (node.end > start || anyOverlapping(node.right, start, end))) return true;
+            return anyOverlapping(node.left, start, end);
+        }
+
+        /**
+         * интервалы, пересекающиеся с [start, end), от поздних к ранним
+         */
+        private static void collectOverlapping(Node node, long start, long end, List<BookingInterval> result) {
+            if (node == null || node.maxEnd <= start) return;
+            if (node.key.start < end) {
+                collectOverlapping(node.right, start, end, result);
+                if (node.end > start) result.add(node.interval);
+            }
+            collectOverlapping(node.left, start, end, result);
+        }
+
+        /**
+         * интервалы с ключом больше bound, от ранних к поздним
+         */
+        private Iterable<Node> startedAfter(StartKey bound) {
+            return () -> {
+                Deque<Node> path = new ArrayDeque<>();
+                for (Node node = root; node != null; ) {
+                    if (node.key.compareTo(bound) > 0) {
+                        path.push(node);
+                        node = node.left;
+                    } else {
+                        node = node.right;
+                    }
+                }
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !path.isEmpty();
+                    }
+
+                    @Override
+                    public Node next() {
+                        if (path.isEmpty()) throw new NoSuchElementException();
+                        Node next = path.pop();
+                        for (Node node = next.right; node != null; node = node.left) {
+                            path.push(node);
+                        }
+                        return next;
+                    }
+                };
+            };
+        }
+
+        private static Node insert(Node node, Node added) {
+            if (node == null) return added;
+            if (added.key.compareTo(node.key) < 0) {
+                node.left = insert(node.left, added);
+                if (node.left.priority > node.priority) node = rotateRight(node);
+            } else {
+                node.right = insert(node.right, added);
+                if (node.right.priority > node.priority) node = rotateLeft(node);
+            }
+            return node.update();
+        }
+
+        private static Node delete(Node node, StartKey key) {
+            if (node == null) return null;
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) return merge(node.left, node.right);
+            if (cmp < 0) {
+                node.left = delete(node.left, key);
+            } else {
+                node.right = delete(node.right, key);
+            }
+            return node.update();
+        }
+
+        private static Node merge(Node left, Node right) {
+            if (left == null) return right;
+            if (right == null) return left;
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                return left.update();
+            }
+            right.left = merge(left, right.left);
+            return right.update();
+        }
+
+        private static Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = node.update();
+            return left;
+        }
+
+        private static Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = node.update();
+            return right;
+        }
+
+        private static long maxEnd(Node node) {
+            return node == null ? Long.MIN_VALUE : node.maxEnd;
+        }
+    }
+
+    /**
+     * Узел дерева интервалов: случайный приоритет держит дерево сбалансированным в среднем,
+     * maxEnd - самое позднее окончание в поддереве узла
+     */
+    private static final class Node {
+        private final StartKey key;
+        private final BookingInterval interval;
+        private final long end;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private Node left;
+        private Node right;
+        private long maxEnd;
+
+        private Node(StartKey key, BookingInterval interval) {
+            this.key = key;
+            this.interval = interval;
+            this.end = toMicros(interval.getEnd());
+            this.maxEnd = end;
+        }
+
+        Node update() {
+            maxEnd = Math.max(end, Math.max(ItemIntervals.maxEnd(left), ItemIntervals.maxEnd(right)));
+            return this;
+        }
+    }
+
+    /**
+     * Ключ дерева интервалов: начало в микросекундах и номер бронирования для равных начал
+     */
+    private static final class StartKey implements Comparable<StartKey> {
+        private final long start;
+        private final long id;
+
+        private StartKey(long start, long id) {
+            this.start = start;
+            this.id = id;
+        }
+
+        /**
+         * ключ меньше ключей всех интервалов, начинающихся в start
+         */
+        static StartKey first(long start) {
+            return new StartKey(start, Long.MIN_VALUE);
+        }
+
+        /**
+         * ключ больше ключей всех интервалов, начинающихся в start
+         */
+        static StartKey last(long start) {
+            return new StartKey(start, Long.MAX_VALUE);
+        }
+
+        @Override
+        public int compareTo(StartKey other) {
+            int byStart = Long.compare(start, other.start);
+            return byStart != 0 ? byStart : Long.compare(id, other.id);
+        }
+    }
+}
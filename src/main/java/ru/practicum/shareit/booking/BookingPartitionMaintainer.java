@@ -0,0 +1,168 @@
+package ru.practicum.shareit.booking;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Обслуживание секций таблицы bookings в Postgres (см. schema-postgresql.sql).
+ * Создает месячные секции по дате окончания бронирования от самого старого месяца
+ * в секции по умолчанию до monthsAhead месяцев вперед, перенося в них строки из bookings_default,
+ * и переносит секции старше archiveAfterMonths месяцев в архивное табличное пространство.
+ * Архивные секции остаются секциями bookings, поэтому BookingRepository видит их строки как раньше.
+ * Без archiveTablespace архивирование отключено, о чем при старте выводится предупреждение:
+ * отсоединять старые секции нельзя, история бронирований и счетчики должны видеть их строки.
+ * Ограничение исключения каждой секции проверяет пересечения только внутри нее,
+ * пересечения между секциями запрещает триггер tr_bookings_item_period.
+ * В H2 таблица не секционирована и обслуживание отключено
+ */
+@Component
+@ConditionalOnProperty(name = "shareit.booking.partitions.enabled", havingValue = "true")
+@Slf4j
+public class BookingPartitionMaintainer {
+
+    static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'bookings_y'yyyy'm'MM");
+    /**
+     * Имена секций, индексов и табличного пространства подставляются в DDL без кавычек,
+     * поэтому допускаются только имена из этих символов
+     */
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z0-9_]+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int archiveAfterMonths;
+    private final String archiveTablespace;
+
+    public BookingPartitionMaintainer(JdbcTemplate jdbcTemplate,
+                                      TransactionTemplate transactionTemplate,
+                                      @Value("${shareit.booking.partitions.months-ahead:12}") int monthsAhead,
+                                      @Value("${shareit.booking.partitions.archive-after-months:12}")
+                                      int archiveAfterMonths,
+                                      @Value("${shareit.booking.partitions.archive-tablespace:}")
+                                      String archiveTablespace) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.monthsAhead = monthsAhead;
+        this.archiveAfterMonths = archiveAfterMonths;
+        if (!archiveTablespace.isBlank() && !IDENTIFIER.matcher(archiveTablespace).matches()) {
+            throw new IllegalArgumentException("Некорректное имя архивного табличного пространства: "
+                    + archiveTablespace);
+        }
+        this.archiveTablespace = archiveTablespace;
+        if (archiveTablespace.isBlank()) {
+            log.warn("Архивирование секций бронирований отключено: " +
+                    "не задано shareit.booking.partitions.archive-tablespace");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${shareit.booking.partitions.cron:0 0 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        YearMonth first = oldestDefaultMonth().filter(month -> month.isBefore(current)).orElse(current);
+        for (YearMonth month = first; !month.isAfter(current.plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+            ensurePartition(month);
+        }
+        if (!archiveTablespace.isBlank()) {
+            archive(current.minusMonths(archiveAfterMonths));
+        }
+    }
+
+    private Optional<YearMonth> oldestDefaultMonth() {
+        LocalDateTime oldest = jdbcTemplate.queryForObject("SELECT MIN(end_date) FROM bookings_default",
+                LocalDateTime.class);
+        return Optional.ofNullable(oldest).map(YearMonth::from);
+    }
+
+    /**
+     * Создает секцию месяца, если ее нет. Строки месяца из секции по умолчанию
+     * переносятся в новую секцию в той же транзакции, иначе Postgres не даст ее присоединить
+     */
+    private void ensurePartition(YearMonth month) {
+        String name = identifier(month.format(PARTITION_NAME));
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class WHERE relname = ?)", Boolean.class, name))) {
+            return;
+        }
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE bookings INCLUDING DEFAULTS)");
+                int moved = jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM bookings_default " +
+                        "WHERE end_date >= ? AND end_date < ?", from, to);
+                jdbcTemplate.update("DELETE FROM bookings_default WHERE end_date >= ? AND end_date < ?", from, to);
+                jdbcTemplate.execute("ALTER TABLE bookings ATTACH PARTITION " + name +
+                        " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+                jdbcTemplate.execute("ALTER TABLE " + name + " ADD CONSTRAINT ex_" + name + "_item_period " +
+                        "EXCLUDE USING gist (item_id WITH =, tsrange(start_date, end_date) WITH &&) " +
+                        "WHERE (status IN ('WAITING', 'APPROVED'))");
+                log.info("Создана секция бронирований {}, перенесено строк: {}", name, moved);
+            });
+        } catch (DataAccessException e) {
+            log.warn("Не удалось создать секцию бронирований {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Переносит секции месяцев раньше cutoff вместе с их индексами в архивное табличное пространство
+     */
+    private void archive(YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits AS i " +
+                "JOIN pg_class AS c ON c.oid = i.inhrelid " +
+                "JOIN pg_class AS p ON p.oid = i.inhparent " +
+                "LEFT JOIN pg_tablespace AS t ON t.oid = c.reltablespace " +
+                "WHERE p.relname = 'bookings' AND t.spcname IS DISTINCT FROM ?", String.class, archiveTablespace);
+        for (String name : partitions) {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(name, PARTITION_NAME);
+            } catch (DateTimeParseException e) {
+                //секция по умолчанию
+                continue;
+            }
+            if (!month.isBefore(cutoff)) continue;
+            try {
+                List<String> indexes = jdbcTemplate.queryForList("SELECT ix.relname FROM pg_index AS i " +
+                        "JOIN pg_class AS ix ON ix.oid = i.indexrelid " +
+                        "WHERE i.indrelid = ?::regclass", String.class, name);
+                indexes.forEach(BookingPartitionMaintainer::identifier);
+                jdbcTemplate.execute("ALTER TABLE " + identifier(name) + " SET TABLESPACE " + archiveTablespace);
+                indexes.forEach(index -> jdbcTemplate.execute(
+                        "ALTER INDEX " + index + " SET TABLESPACE " + archiveTablespace));
+                log.info("Секция бронирований {} перенесена в {}", name, archiveTablespace);
+            } catch (DataAccessException | IllegalArgumentException e) {
+                log.warn("Не удалось перенести секцию бронирований {} в {}: {}",
+                        name, archiveTablespace, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Возвращает name, если его можно подставить в DDL без кавычек
+     *
+     * @throws IllegalArgumentException если в имени есть другие символы
+     */
+    private static String identifier(String name) {
+        if (!IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Некорректное имя объекта базы данных: " + name);
+        }
+        return name;
+    }
+}
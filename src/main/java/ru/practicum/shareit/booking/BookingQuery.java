@@ -0,0 +1,33 @@
+package ru.practicum.shareit.booking;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Параметры выборки списка бронирований.
+ * Момент now фиксируется один раз на запрос, поэтому фильтры PAST, FUTURE и CURRENT
+ * сравнивают даты с одним и тем же значением.
+ * Если задан курсор after, страница выбирается после него, иначе по смещению offset
+ */
+@Getter
+@Builder
+@ToString
+public class BookingQuery {
+
+    public enum Role {
+        BOOKER,
+        OWNER
+    }
+
+    private final Role role;
+    private final long userId;
+    private final BookingStatus state;
+    private final LocalDateTime now;
+    private final SeekCursor after;
+    private final long offset;
+    private final int size;
+}
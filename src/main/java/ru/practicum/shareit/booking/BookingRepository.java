@@ -1,58 +1,121 @@
 package ru.practicum.shareit.booking;
 
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import javax.persistence.LockModeType;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-
-public interface BookingRepository extends JpaRepository<Booking, Long> {
-
-    List<Booking> findAllByBookerIdOrderByStartDesc(Long bookerId, Pageable pageRequest);
-
-    List<Booking>
-    findAllByBookerIdAndAndStatusEqualsOrderByStartDesc(Long bookerId, BookingStatus status, Pageable pageRequest);
-
-    List<Booking>
-    findAllByBookerIdAndAndEndBeforeOrderByStartDesc(Long bookerId, LocalDateTime now, Pageable pageRequest);
-
-    List<Booking>
-    findAllByBookerIdAndStartAfterOrderByStartDesc(Long bookerId, LocalDateTime now, Pageable pageRequest);
-
-    List<Booking> findAllByBookerIdAndStartBeforeAndEndAfterOrderByStartDesc(
-            Long bookerId, LocalDateTime now, LocalDateTime thenNow, Pageable pageRequest);
-
-    List<Booking> findAllByItemOwnerIdOrderByStartDesc(Long ownerId, Pageable pageRequest);
-
-    List<Booking>
-    findAllByItemOwnerIdAndAndStatusEqualsOrderByStartDesc(Long ownerId, BookingStatus status, Pageable pageRequest);
-
-    List<Booking>
-    findAllByItemOwnerIdAndAndEndBeforeOrderByStartDesc(Long ownerId, LocalDateTime now, Pageable pageRequest);
-
-    List<Booking>
-    findAllByItemOwnerIdAndStartAfterOrderByStartDesc(Long ownerId, LocalDateTime now, Pageable pageRequest);
-
-    List<Booking> findAllByItemOwnerIdAndStartBeforeAndEndAfterOrderByStartDesc(
-            Long ownerId, LocalDateTime now, LocalDateTime thenNow, Pageable pageRequest);
-
+import java.util.Optional;
+
+public interface BookingRepository extends JpaRepository<Booking, Long>, BookingRepositoryCustom {
+
+    /**
+     * Меняет статус бронирования одним запросом, только если бронирование ожидает подтверждения
+     * и вещь принадлежит ownerId. Возвращает количество измененных строк (0 или 1)
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Booking AS b SET b.status = ?4, b.version = b.version + 1 " +
+            "WHERE b.id = ?1 AND b.status = ?3 " +
+            "AND b.item.id IN (SELECT i.id FROM Item AS i WHERE i.owner.id = ?2)")
+    int updateStatus(Long bookingId, Long ownerId, BookingStatus expected, BookingStatus status);
+
+    /**
+     * Бронирование вместе с вещью, ее владельцем и букером - всем, что входит в BookingDto
+     */
     @Query("SELECT b FROM Booking AS b " +
-            "WHERE b.item.id = ?1 AND b.start < ?2 " +
-            "AND b.status IN ( ?3, ?4 ) " +
-            "ORDER BY b.end DESC")
-    List<Booking> findAllLast(
-            Long itemId, LocalDateTime now, BookingStatus status1, BookingStatus status2);
-
+            "JOIN FETCH b.item AS i " +
+            "JOIN FETCH i.owner " +
+            "JOIN FETCH b.booker " +
+            "WHERE b.id = ?1")
+    Optional<Booking> findWithItemAndBookerById(Long bookingId);
+
+    /**
+     * Бронирования вещей владельца ownerId из списка ids, заблокированные до конца транзакции.
+     * Владелец проверяется подзапросом, чтобы в FROM была только таблица бронирований
+     * и блокировались только их строки, а не вещи и пользователи
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT b FROM Booking AS b " +
-            "WHERE b.item.id = ?1 AND b.start > ?2 " +
-            "AND b.status IN ( ?3, ?4 ) " +
-            "ORDER BY b.end")
-    List<Booking> findAllNext(
-            Long itemId, LocalDateTime now, BookingStatus status1, BookingStatus status2);
+            "WHERE b.id IN ?1 " +
+            "AND b.item.id IN (SELECT i.id FROM Item AS i WHERE i.owner.id = ?2)")
+    List<Booking> findAllForUpdateByIdInAndItemOwnerId(Collection<Long> ids, Long ownerId);
 
+    /**
+     * Бронирования из списка ids вместе с вещью, ее владельцем и букером, без блокировки
+     */
     @Query("SELECT b FROM Booking AS b " +
-            "WHERE b.booker.id = ?1 AND b.item.id = ?2 AND b.end < ?3")
-
-    List<Booking> findAllFinishByBookerIdByItemId(
-            Long bookerId, Long itemId, LocalDateTime now);
+            "JOIN FETCH b.item AS i " +
+            "JOIN FETCH i.owner " +
+            "JOIN FETCH b.booker " +
+            "WHERE b.id IN ?1")
+    List<Booking> findAllWithItemAndBookerByIdIn(Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Booking AS b SET b.status = ?2, b.version = b.version + 1 " +
+            "WHERE b.id IN ?1")
+    int updateStatusByIdIn(Collection<Long> ids, BookingStatus status);
+
+    @Query("SELECT new ru.practicum.shareit.booking.BookingInterval(" +
+            "b.id, b.item.id, b.booker.id, b.start, b.end, b.status) " +
+            "FROM Booking AS b " +
+            "WHERE b.item.id IN ?1 AND b.status IN ?2")
+    List<BookingInterval> findIntervalsByItemIds(Collection<Long> itemIds, Collection<BookingStatus> statuses);
+
+    @Query("SELECT new ru.practicum.shareit.booking.BookingStatusCount(b.status, COUNT(b)) " +
+            "FROM Booking AS b " +
+            "WHERE b.booker.id = ?1 " +
+            "GROUP BY b.status")
+    List<BookingStatusCount> countByBookerIdGroupByStatus(long bookerId);
+
+    @Query("SELECT new ru.practicum.shareit.booking.BookingStatusCount(b.status, COUNT(b)) " +
+            "FROM Booking AS b " +
+            "WHERE b.item.owner.id = ?1 " +
+            "GROUP BY b.status")
+    List<BookingStatusCount> countByOwnerIdGroupByStatus(long ownerId);
+
+    /**
+     * Количество бронирований букера, начавшихся и завершившихся раньше момента horizon
+     */
+    @Query("SELECT new ru.practicum.shareit.booking.BookingTimeCount(" +
+            "SUM(CASE WHEN b.start < ?2 THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN b.end < ?2 THEN 1 ELSE 0 END)) " +
+            "FROM Booking AS b " +
+            "WHERE b.booker.id = ?1")
+    BookingTimeCount countByBookerIdBefore(long bookerId, LocalDateTime horizon);
+
+    /**
+     * Количество бронирований вещей владельца, начавшихся и завершившихся раньше момента horizon
+     */
+    @Query("SELECT new ru.practicum.shareit.booking.BookingTimeCount(" +
+            "SUM(CASE WHEN b.start < ?2 THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN b.end < ?2 THEN 1 ELSE 0 END)) " +
+            "FROM Booking AS b " +
+            "WHERE b.item.owner.id = ?1")
+    BookingTimeCount countByOwnerIdBefore(long ownerId, LocalDateTime horizon);
+
+    /**
+     * Интервалы бронирований букера, не завершившихся раньше момента horizon
+     */
+    @Query("SELECT new ru.practicum.shareit.booking.BookingInterval(" +
+            "b.id, b.item.id, b.booker.id, b.start, b.end, b.status) " +
+            "FROM Booking AS b " +
+            "WHERE b.booker.id = ?1 AND b.end >= ?2")
+    List<BookingInterval> findIntervalsByBookerIdNotEndedBefore(long bookerId, LocalDateTime horizon);
+
+    /**
+     * Интервалы бронирований вещей владельца, не завершившихся раньше момента horizon
+     */
+    @Query("SELECT new ru.practicum.shareit.booking.BookingInterval(" +
+            "b.id, b.item.id, b.booker.id, b.start, b.end, b.status) " +
+            "FROM Booking AS b " +
+            "WHERE b.item.owner.id = ?1 AND b.end >= ?2")
+    List<BookingInterval> findIntervalsByOwnerIdNotEndedBefore(long ownerId, LocalDateTime horizon);
+
+    /**
+     * Есть ли у букера завершившееся до now бронирование вещи. Запрос читает не больше одной строки
+     */
+    boolean existsByBookerIdAndItemIdAndEndBefore(Long bookerId, Long itemId, LocalDateTime now);
 }
@@ -0,0 +1,21 @@
+package ru.practicum.shareit.booking;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface BookingRepositoryCustom {
+
+    /**
+     * Страница бронирований букера или владельца вещей, отсортированная по началу и id по убыванию.
+     * Вещь, ее владелец и букер загружаются тем же запросом. Запрос вещи остается ленивой ссылкой:
+     * в ответ попадает только его id, который прокси отдает без обращения к базе
+     */
+    List<Booking> findAllByQuery(BookingQuery query);
+
+    /**
+     * Передает action все бронирования букера или владельца вещей в порядке findAllByQuery,
+     * читая их курсором порциями по fetchSize строк. Прочитанные бронирования отсоединяются
+     * от контекста, поэтому память не растет с числом строк. Вызывается внутри транзакции
+     */
+    void forEachByQuery(BookingQuery query, int fetchSize, Consumer<Booking> action);
+}
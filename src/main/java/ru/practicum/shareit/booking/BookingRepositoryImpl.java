@@ -0,0 +1,95 @@
+package ru.practicum.shareit.booking;
+
+import org.hibernate.jpa.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Построитель запроса списка бронирований. Все сочетания роли, состояния и способа
+ * пагинации собираются в один JPQL запрос, условия которого соответствуют
+ * составным индексам (booker_id, start_date, id) и (item_id, start_date, id)
+ */
+public class BookingRepositoryImpl implements BookingRepositoryCustom {
+
+    /**
+     * Загружается только то, что входит в BookingDto: вещь, ее владелец и букер.
+     * Запрос вещи остается ленивым, в ответ попадает только его номер
+     */
+    private static final String SELECT = "SELECT b FROM Booking AS b " +
+            "JOIN FETCH b.item AS i " +
+            "JOIN FETCH i.owner AS o " +
+            "JOIN FETCH b.booker AS u ";
+    private static final String ORDER = " ORDER BY b.start DESC, b.id DESC";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Booking> findAllByQuery(BookingQuery query) {
+        return createQuery(query)
+                .setFirstResult(query.getAfter() == null ? (int) query.getOffset() : 0)
+                .setMaxResults(query.getSize())
+                .getResultList();
+    }
+
+    @Override
+    public void forEachByQuery(BookingQuery query, int fetchSize, Consumer<Booking> action) {
+        try (Stream<Booking> bookings = createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            int[] count = {0};
+            bookings.forEach(booking -> {
+                action.accept(booking);
+                if (++count[0] % fetchSize == 0) entityManager.clear();
+            });
+        }
+    }
+
+    private TypedQuery<Booking> createQuery(BookingQuery query) {
+        StringBuilder jpql = new StringBuilder(SELECT);
+        Map<String, Object> parameters = new HashMap<>();
+
+        jpql.append(query.getRole() == BookingQuery.Role.OWNER ? "WHERE o.id = :userId" : "WHERE u.id = :userId");
+        parameters.put("userId", query.getUserId());
+
+        switch (query.getState()) {
+            case ALL:
+                break;
+            case FUTURE:
+                //условие по окончанию следует из условия по началу и позволяет отсечь старые секции
+                jpql.append(" AND b.start > :now AND b.end > :now");
+                parameters.put("now", query.getNow());
+                break;
+            case PAST:
+                jpql.append(" AND b.end < :now");
+                parameters.put("now", query.getNow());
+                break;
+            case CURRENT:
+                jpql.append(" AND b.start < :now AND b.end > :now");
+                parameters.put("now", query.getNow());
+                break;
+            default:
+                jpql.append(" AND b.status = :status");
+                parameters.put("status", query.getState());
+        }
+
+        if (query.getAfter() != null) {
+            jpql.append(" AND (b.start < :afterStart OR (b.start = :afterStart AND b.id < :afterId))");
+            parameters.put("afterStart", query.getAfter().getTime());
+            parameters.put("afterId", query.getAfter().getId());
+        }
+        jpql.append(ORDER);
+
+        TypedQuery<Booking> typedQuery = entityManager.createQuery(jpql.toString(), Booking.class);
+        parameters.forEach(typedQuery::setParameter);
+        return typedQuery;
+    }
+}
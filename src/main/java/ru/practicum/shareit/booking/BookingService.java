@@ -1,13 +1,20 @@
 package ru.practicum.shareit.booking;
 
 import org.springframework.data.domain.Pageable;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
+import ru.practicum.shareit.booking.dto.BookingBulkResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.BookingForItemDto;
 import ru.practicum.shareit.booking.dto.SimpleBookingDto;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.pagination.SeekCursor;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface BookingService {
 
@@ -22,6 +29,16 @@ public interface BookingService {
      */
     BookingDto create(long userId, SimpleBookingDto simpleBookingDto);
 
+    /**
+     * Метод для создания пакета бронирований одного пользователя.
+     * Для каждого бронирования возвращается результат с его номером в пакете:
+     * созданное бронирование или причина отказа
+     *
+     * @throws NoFoundException    если пользователя с userId не существует
+     * @throws ValidationException если база данных отклонила пакет целиком
+     */
+    List<BookingBatchResultDto> createAll(long userId, List<SimpleBookingDto> simpleBookingDtos);
+
     /**
      * Метод для подтверждения или отклонения бронирования
      *
@@ -31,6 +48,12 @@ public interface BookingService {
      */
     BookingDto approved(long userId, Long bookingId, Boolean approved);
 
+    /**
+     * Метод для подтверждения или отклонения владельцем сразу нескольких бронирований.
+     * Для каждого номера бронирования возвращается результат
+     */
+    List<BookingBulkResultDto> approvedAll(long userId, List<Long> bookingIds, boolean approved);
+
     /**
      * Метод для получения информации о бронировании по его номеру
      *
@@ -56,6 +79,51 @@ public interface BookingService {
      */
     List<BookingDto> findAllForOwner(long ownerId, BookingStatus status, Pageable pageRequest);
 
+    /**
+     * Метод получения страницы бронирований пользователя, следующей за курсором after.
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    List<BookingDto> findAllForBooker(long userId, BookingStatus status, SeekCursor after, int size);
+
+    /**
+     * Метод получения страницы бронирований владельца вещей, следующей за курсором after.
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    List<BookingDto> findAllForOwner(long ownerId, BookingStatus status, SeekCursor after, int size);
+
+    /**
+     * Метод выгрузки всех бронирований пользователя в sink по одному в порядке списка бронирований.
+     * Бронирования читаются курсором, поэтому память не зависит от длины истории
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    void exportForBooker(long userId, BookingStatus status, Consumer<BookingDto> sink);
+
+    /**
+     * Метод выгрузки всех бронирований вещей владельца в sink по одному в порядке списка бронирований
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    void exportForOwner(long ownerId, BookingStatus status, Consumer<BookingDto> sink);
+
+    /**
+     * Метод получения количества бронирований пользователя в каждом состоянии
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    Map<BookingStatus, Long> getSummaryForBooker(long userId);
+
+    /**
+     * Метод получения количества бронирований вещей владельца в каждом состоянии
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    Map<BookingStatus, Long> getSummaryForOwner(long ownerId);
+
     /**
      * Метод для получения ближайшего следующего бронирования вещи с переданным номером
      * входные данные не проверяются.
@@ -69,10 +137,41 @@ public interface BookingService {
     BookingForItemDto getNextByItem(Long itemId);
 
     /**
-     * Метод возвращает список заверщенных бронирований вещи с номером itemId
-     * пользователем c номером userId
-     * переданные в метод данные не проверяются.
-     * в случае отсутствия бронирований возвращается пустой список
+     * Метод для получения момента, до которого последнее и следующее бронирования вещи не меняются
+     * без новых изменений бронирований: начала ближайшего бронирования или перечитывания
+     * бронирований вещи из базы. Входные данные не проверяются.
+     */
+    LocalDateTime getBookingsValidUntil(Long itemId);
+
+    /**
+     * Метод для получения последних бронирований сразу для списка вещей одним запросом.
+     * Ключ - номер вещи, вещи без бронирований в результат не попадают.
+     * Входные данные не проверяются.
+     */
+    Map<Long, BookingForItemDto> getLastByItems(Collection<Long> itemIds);
+
+    /**
+     * Метод для получения ближайших следующих бронирований сразу для списка вещей одним запросом.
+     * Ключ - номер вещи, вещи без бронирований в результат не попадают.
+     * Входные данные не проверяются.
+     */
+    Map<Long, BookingForItemDto> getNextByItems(Collection<Long> itemIds);
+
+    /**
+     * То же, что getBookingsValidUntil, сразу для списка вещей одним запросом.
+     * Ключ - номер вещи. Входные данные не проверяются.
+     */
+    Map<Long, LocalDateTime> getBookingsValidUntil(Collection<Long> itemIds);
+
+    /**
+     * Метод для получения свободных от бронирований со статусами WAITING и APPROVED окон вещи
+     * внутри периода [from, to). Входные данные не проверяются.
+     */
+    List<FreeSlot> getFreeSlots(Long itemId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Метод проверяет, есть ли у пользователя c номером userId завершившееся бронирование
+     * вещи с номером itemId. Переданные в метод данные не проверяются.
      */
-    List<Booking> findAllFinishByItemByUser(Long userId, Long itemId);
+    boolean hasFinishedBooking(Long userId, Long itemId);
 }
@@ -2,9 +2,17 @@ package ru.practicum.shareit.booking;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
+import ru.practicum.shareit.booking.dto.BookingBulkResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.BookingForItemDto;
 import ru.practicum.shareit.booking.dto.SimpleBookingDto;
@@ -14,12 +22,23 @@ import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 import ru.practicum.shareit.user.mapperDto.UserMapper;
 
+import javax.validation.Validator;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static ru.practicum.shareit.booking.BookingStatus.*;
 
@@ -29,12 +48,20 @@ import static ru.practicum.shareit.booking.BookingStatus.*;
 @Transactional(readOnly = true)
 public class BookingServiceImpl implements BookingService {
 
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
     private final BookingRepository repository;
     private final BookingMapper bookingMapper;
     private final UserService userService;
     private final ItemRepository itemRepository;
     private final UserMapper userMapper;
     private final BookingListMapper bookingListMapper;
+    private final BookingIntervalIndex intervalIndex;
+    private final BookingCounters counters;
+    private final FinishedBookingCache finishedBookings;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * метод для создания экземпляра бронирования. Ему присванивается новый Id ставится статус
@@ -49,57 +76,288 @@ public class BookingServiceImpl implements BookingService {
     @Transactional
     public BookingDto create(long userId, SimpleBookingDto simpleBookingDto) {
         //неявно проверяем валидность itemId и userId
-        Item item = itemRepository.findById(simpleBookingDto.getItemId()).orElseThrow(() -> {
+        Item item = itemRepository.findWithOwnerById(simpleBookingDto.getItemId()).orElseThrow(() -> {
             log.warn("Вещь с id: {} отсутствует", simpleBookingDto.getItemId());
             throw new NoFoundException("Вешь с id: " + simpleBookingDto.getItemId() + " отсутствует");
         });
         User user = userService.findUserByIdForValid(userId);
+        BookingDto booking = book(item, user, simpleBookingDto, true);
+        //бронирование входит в карточку вещи
+        itemRepository.incrementVersion(item.getId());
+        return booking;
+    }
+
+    /**
+     * Метод для создания пакета бронирований одного пользователя.
+     * Вещи загружаются одним запросом, бронирования проверяются по отдельности
+     * и сохраняются пакетными вставками одной транзакцией.
+     * Ошибка одного бронирования не мешает созданию остальных: если база отклонила пакет,
+     * бронирования сохраняются по одному, и отказ получает только свое бронирование
+     *
+     * @throws NoFoundException если пользователя с userId не существует
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<BookingBatchResultDto> createAll(long userId, List<SimpleBookingDto> simpleBookingDtos) {
+        User user = userService.findUserByIdForValid(userId);
+        Set<Long> itemIds = simpleBookingDtos.stream()
+                .map(SimpleBookingDto::getItemId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, Item> items = itemRepository.findAllWithOwnerByIdIn(itemIds).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        intervalIndex.load(items.keySet());
+        try {
+            return transactionTemplate.execute(status -> {
+                List<BookingBatchResultDto> results = new ArrayList<>(simpleBookingDtos.size());
+                for (int i = 0; i < simpleBookingDtos.size(); i++) {
+                    results.add(bookOneOfBatch(i, user, items, simpleBookingDtos.get(i), false));
+                }
+                repository.flush();
+                Set<Long> bookedItemIds = results.stream()
+                        .filter(result -> result.getBooking() != null)
+                        .map(result -> result.getBooking().getItem().getId())
+                        .collect(Collectors.toSet());
+                if (!bookedItemIds.isEmpty()) itemRepository.incrementVersionByIdIn(bookedItemIds);
+                return results;
+            });
+        } catch (DataAccessException e) {
+            //бронирования созданы параллельно на другом узле и отклонены ограничением в базе
+            log.warn("Пакет бронирований пользователя {} отклонен базой данных, бронирования сохраняются по одному: {}",
+                    userId, e.getMessage());
+            List<BookingBatchResultDto> results = new ArrayList<>(simpleBookingDtos.size());
+            for (int i = 0; i < simpleBookingDtos.size(); i++) {
+                results.add(bookOneInOwnTransaction(i, user, items, simpleBookingDtos.get(i)));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Сохраняет одно бронирование пакета отдельной транзакцией. Интервалы вещей, измененные
+     * откаченной транзакцией пакета, уже сброшены и перечитываются из базы
+     */
+    private BookingBatchResultDto bookOneInOwnTransaction(int index, User user, Map<Long, Item> items,
+                                                          SimpleBookingDto simpleBookingDto) {
+        return transactionTemplate.execute(status -> {
+            BookingBatchResultDto result = bookOneOfBatch(index, user, items, simpleBookingDto, true);
+            //отказ базы при сохранении уже пометил транзакцию для отката
+            if (result.getStatus() != HttpStatus.OK.value()) {
+                status.setRollbackOnly();
+            } else {
+                itemRepository.incrementVersion(simpleBookingDto.getItemId());
+            }
+            return result;
+        });
+    }
+
+    private BookingBatchResultDto bookOneOfBatch(int index, User user, Map<Long, Item> items,
+                                                 SimpleBookingDto simpleBookingDto, boolean flush) {
+        String violations = validator.validate(simpleBookingDto).stream()
+                .map(violation -> (violation.getPropertyPath().toString() + " " + violation.getMessage()).trim())
+                .sorted()
+                .collect(Collectors.joining(", "));
+        if (!violations.isEmpty()) {
+            log.warn("Бронирование {} не прошло валидацию: {}", simpleBookingDto.toString(), violations);
+            return BookingBatchResultDto.builder().index(index)
+                    .status(HttpStatus.BAD_REQUEST.value()).error(violations).build();
+        }
+        Item item = items.get(simpleBookingDto.getItemId());
+        if (item == null) {
+            log.warn("Вещь с id: {} отсутствует", simpleBookingDto.getItemId());
+            return BookingBatchResultDto.builder().index(index).status(HttpStatus.NOT_FOUND.value())
+                    .error("Вешь с id: " + simpleBookingDto.getItemId() + " отсутствует").build();
+        }
+        try {
+            return BookingBatchResultDto.builder().index(index).status(HttpStatus.OK.value())
+                    .booking(book(item, user, simpleBookingDto, flush)).build();
+        } catch (NoFoundException e) {
+            return BookingBatchResultDto.builder().index(index)
+                    .status(HttpStatus.NOT_FOUND.value()).error(e.getMessage()).build();
+        } catch (ValidationException e) {
+            return BookingBatchResultDto.builder().index(index)
+                    .status(HttpStatus.BAD_REQUEST.value()).error(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Проверяет и сохраняет бронирование вещи item пользователем user под блокировкой вещи.
+     * Версию вещи увеличивает вызывающий метод в той же транзакции: пакет увеличивает версии
+     * всех своих вещей одним запросом после сохранения бронирований
+     *
+     * @param flush записать ли бронирование в базу сразу, чтобы получить отказ ограничения в базе
+     *              до снятия блокировки
+     */
+    private BookingDto book(Item item, User user, SimpleBookingDto simpleBookingDto, boolean flush) {
         if (!(item.getAvailable())) {
-            log.warn("Бронирование {}  вещи {} невозможно", simpleBookingDto.toString(),
-                    item.toString());
-            throw new ValidationException("бронирование вещи " + item.toString() + " не возможно");
+            log.warn("Бронирование {}  вещи с id {} невозможно", simpleBookingDto.toString(), item.getId());
+            throw new ValidationException("бронирование вещи с id " + item.getId() + " не возможно");
         }
         if (item.getOwner().equals(user)) {
-            log.warn("бронирование собственной вещи {} не возможно", item.toString());
-            throw new NoFoundException("бронирование собственной вещи " + item.toString() +
-                    " невозможно");
+            log.warn("бронирование собственной вещи с id {} не возможно", item.getId());
+            throw new NoFoundException("бронирование собственной вещи с id " + item.getId() + " невозможно");
         }
-        return bookingMapper.modelToDto(repository.save(Booking.builder()
-                .start(simpleBookingDto.getStart())
-                .end(simpleBookingDto.getEnd())
-                .item(item)
-                .booker(user)
-                .status(WAITING)
-                .build()));
+        return intervalIndex.lockItem(item.getId(), () -> {
+            if (intervalIndex.overlaps(item.getId(), simpleBookingDto.getStart(), simpleBookingDto.getEnd())) {
+                log.warn("Бронирование {} пересекается с существующим бронированием вещи с id {}",
+                        simpleBookingDto.toString(), item.getId());
+                throw alreadyBooked(item, simpleBookingDto);
+            }
+            Booking booking = Booking.builder()
+                    .start(simpleBookingDto.getStart())
+                    .end(simpleBookingDto.getEnd())
+                    .item(item)
+                    .booker(user)
+                    .status(WAITING)
+                    .build();
+            try {
+                booking = flush ? repository.saveAndFlush(booking) : repository.save(booking);
+            } catch (DataIntegrityViolationException e) {
+                //бронирование создано параллельно на другом узле и отклонено ограничением в базе
+                log.warn("Бронирование {} отклонено базой данных: {}", simpleBookingDto.toString(), e.getMessage());
+                throw alreadyBooked(item, simpleBookingDto);
+            }
+            BookingInterval interval = BookingInterval.of(booking);
+            intervalIndex.put(interval);
+            counters.onCreated(interval, item.getOwner().getId());
+            finishedBookings.track(user.getId(), item.getId(), booking.getEnd());
+            eventPublisher.publishEvent(BookingEvent.created(interval, item.getOwner().getId()));
+            return bookingMapper.modelToDto(booking);
+        });
     }
 
     /**
-     * Метод для подтверждения или отклонения бронирования
+     * Метод для подтверждения или отклонения бронирования.
+     * Статус меняется одним условным запросом UPDATE, поэтому из параллельных запросов
+     * подтверждения одного бронирования успешен ровно один. Если ни одна строка не изменилась,
+     * причина отказа определяется повторным чтением бронирования.
+     * Подтверждение, пересекающееся с уже подтвержденным бронированием вещи, откатывается,
+     * как и в {@link #approvedAll(long, List, boolean)}. Версия вещи увеличивается в той же транзакции
      *
      * @throws NoFoundException    если подтверждает бронирование не собственник или если
      *                             бронирования с bookingId нет в базе
-     * @throws ValidationException если собственник уже подтвердил бронирование
+     * @throws ValidationException если собственник уже подтвердил бронирование или если
+     *                             подтверждаемое бронирование пересекается с подтвержденным
      */
     @Override
     @Transactional
     public BookingDto approved(long userId, Long bookingId, Boolean approved) {
-        //неявно проверяем валидность bookingId
-        Booking booking = repository.findById(bookingId).orElseThrow(() -> {
-                log.warn("бронирования с id {} нет в базе", bookingId);
-        throw new NoFoundException("бронирования с id " +
-                bookingId + " нет в базе"); });
-        User user = userService.findUserByIdForValid(userId);
-        if (!(booking.getItem().getOwner().equals(user))) {
-            log.warn("Подтвердить бронь с id {} может только хозяин вещи", bookingId);
-            throw new NoFoundException("Подтвердить бронь c Id " +
-                    bookingId + " может только хозяин вещи");
+        BookingStatus status = approved ? APPROVED : REJECTED;
+        boolean updated = repository.updateStatus(bookingId, userId, WAITING, status) == 1;
+        Booking booking = repository.findWithItemAndBookerById(bookingId).orElseThrow(() -> {
+            log.warn("бронирования с id {} нет в базе", bookingId);
+            throw new NoFoundException("бронирования с id " + bookingId + " нет в базе");
+        });
+        if (!updated) {
+            if (!booking.getItem().getOwner().getId().equals(userId)) {
+                log.warn("Подтвердить бронь с id {} может только хозяин вещи", bookingId);
+                throw new NoFoundException("Подтвердить бронь c Id " +
+                        bookingId + " может только хозяин вещи");
+            }
+            log.warn("бронирование с id {} уже подтверрждено", bookingId);
+            throw new ValidationException("бронирование с id " + bookingId + " уже подтверждено");
+        }
+        BookingInterval interval = BookingInterval.of(booking);
+        intervalIndex.lockItem(interval.getItemId(), () -> {
+            if (interval.getStatus() == APPROVED) {
+                if (overlapsApproved(interval)) {
+                    log.warn("Бронирование с id {} пересекается с подтвержденным бронированием", bookingId);
+                    throw new ValidationException("бронирование с id " + bookingId +
+                            " пересекается с подтвержденным бронированием вещи");
+                }
+                intervalIndex.put(interval);
+            } else {
+                intervalIndex.remove(interval.getItemId(), interval.getId());
+            }
+        });
+        itemRepository.incrementVersion(interval.getItemId());
+        counters.onStatusChanged(interval, userId, WAITING);
+        eventPublisher.publishEvent(BookingEvent.decided(interval, userId));
+        return bookingMapper.modelToDto(booking);
+    }
+
+    /**
+     * Метод для подтверждения или отклонения владельцем сразу нескольких бронирований.
+     * Бронирования блокируются одним запросом (только их строки), вещи и букеры
+     * загружаются вторым, пересечения подтверждаемых бронирований
+     * с уже подтвержденными проверяются по индексу интервалов, статус меняется одним запросом.
+     * Для каждого номера возвращается результат: UPDATED, NOT_FOUND (нет бронирования или
+     * вещь принадлежит другому пользователю), ALREADY_PROCESSED или CONFLICT
+     */
+    @Override
+    @Transactional
+    public List<BookingBulkResultDto> approvedAll(long userId, List<Long> bookingIds, boolean approved) {
+        BookingStatus status = approved ? APPROVED : REJECTED;
+        List<Long> ids = bookingIds.stream().distinct().collect(Collectors.toList());
+        Map<Long, Booking> bookings = repository.findAllForUpdateByIdInAndItemOwnerId(ids, userId).stream()
+                .collect(Collectors.toMap(Booking::getId, Function.identity()));
+        if (!bookings.isEmpty()) {
+            //связи догружаются в уже заблокированные сущности отдельным запросом без блокировки
+            repository.findAllWithItemAndBookerByIdIn(bookings.keySet());
         }
-        if (!(booking.getStatus().equals(WAITING))) {
-            log.warn("бронирование: {} уже подтверрждено", booking.toString());
-            throw new ValidationException("бронирование " + booking.toString() + " уже подтверждено");
+        intervalIndex.load(bookings.values().stream()
+                .map(booking -> booking.getItem().getId())
+                .collect(Collectors.toSet()));
+        List<BookingInterval> changed = new ArrayList<>();
+        List<BookingBulkResultDto> results = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Booking booking = bookings.get(id);
+            BookingBulkResultDto.Status result;
+            if (booking == null) {
+                log.warn("бронирования с id {} вещей пользователя {} нет в базе", id, userId);
+                result = BookingBulkResultDto.Status.NOT_FOUND;
+            } else if (booking.getStatus() != WAITING) {
+                log.warn("бронирование с id {} уже подтверрждено", id);
+                result = BookingBulkResultDto.Status.ALREADY_PROCESSED;
+            } else {
+                result = decide(booking, status, changed);
+            }
+            results.add(BookingBulkResultDto.builder().bookingId(id).status(result).build());
         }
-        booking.setStatus(approved ? APPROVED : REJECTED);
-        return bookingMapper.modelToDto(repository.save(booking));
+        if (!changed.isEmpty()) {
+            repository.updateStatusByIdIn(changed.stream()
+                    .map(BookingInterval::getId)
+                    .collect(Collectors.toList()), status);
+            itemRepository.incrementVersionByIdIn(changed.stream()
+                    .map(BookingInterval::getItemId)
+                    .collect(Collectors.toSet()));
+        }
+        changed.forEach(interval -> {
+            counters.onStatusChanged(interval, userId, WAITING);
+            eventPublisher.publishEvent(BookingEvent.decided(interval, userId));
+        });
+        return results;
+    }
+
+    /**
+     * Применяет решение к бронированию в индексе интервалов под блокировкой вещи.
+     * Подтверждение, пересекающееся с уже подтвержденным бронированием вещи, не применяется
+     */
+    private BookingBulkResultDto.Status decide(Booking booking, BookingStatus status,
+                                               List<BookingInterval> changed) {
+        BookingInterval interval = new BookingInterval(booking.getId(), booking.getItem().getId(),
+                booking.getBooker().getId(), booking.getStart(), booking.getEnd(), status);
+        return intervalIndex.lockItem(interval.getItemId(), () -> {
+            if (status == APPROVED) {
+                if (overlapsApproved(interval)) {
+                    log.warn("Бронирование с id {} пересекается с подтвержденным бронированием", interval.getId());
+                    return BookingBulkResultDto.Status.CONFLICT;
+                }
+                intervalIndex.put(interval);
+            } else {
+                intervalIndex.remove(interval.getItemId(), interval.getId());
+            }
+            changed.add(interval);
+            return BookingBulkResultDto.Status.UPDATED;
+        });
+    }
+
+    /**
+     * Пересекается ли интервал с другим подтвержденным бронированием вещи. Вызывается под блокировкой вещи
+     */
+    private boolean overlapsApproved(BookingInterval interval) {
+        return intervalIndex.findOverlapping(interval.getItemId(), interval.getStart(), interval.getEnd()).stream()
+                .anyMatch(other -> other.getStatus() == APPROVED && !other.getId().equals(interval.getId()));
     }
 
     /**
@@ -112,7 +370,7 @@ public class BookingServiceImpl implements BookingService {
     @Override
     @Transactional(readOnly = true)
     public BookingDto getById(long userId, long bookingId) {
-        Booking booking = repository.findById(bookingId).orElseThrow(() -> {
+        Booking booking = repository.findWithItemAndBookerById(bookingId).orElseThrow(() -> {
             log.warn("бронирования с id {} нет в базе", bookingId);
             throw new NoFoundException("бронирования с id " +
                     bookingId + " нет в базе");
@@ -139,34 +397,12 @@ public class BookingServiceImpl implements BookingService {
     findAllForBooker(long userId, BookingStatus state, Pageable pageRequest) {
         //неявно проверяем валидность userId
         userService.findUserByIdForValid(userId);
-        List<Booking> findBooking;
-        switch (state) {
-            case ALL:
-                findBooking = repository.findAllByBookerIdOrderByStartDesc(userId, pageRequest);
-                break;
-            case WAITING:
-            case REJECTED:
-            case CANCELED:
-            case APPROVED:
-                findBooking = repository.findAllByBookerIdAndAndStatusEqualsOrderByStartDesc(
-                        userId, state, pageRequest);
-                break;
-            case FUTURE:
-                findBooking = repository.findAllByBookerIdAndStartAfterOrderByStartDesc(
-                        userId, LocalDateTime.now(), pageRequest);
-                break;
-            case PAST:
-                findBooking = repository.findAllByBookerIdAndAndEndBeforeOrderByStartDesc(
-                        userId, LocalDateTime.now(), pageRequest);
-                break;
-            case CURRENT:
-                findBooking = repository.findAllByBookerIdAndStartBeforeAndEndAfterOrderByStartDesc(
-                        userId, LocalDateTime.now(), LocalDateTime.now(), pageRequest);
-                break;
-            default:
-                findBooking = null;
-        }
-        return bookingListMapper.modelsToDtos(findBooking);
+        return findAll(BookingQuery.builder()
+                .role(BookingQuery.Role.BOOKER)
+                .userId(userId)
+                .state(state)
+                .offset(pageRequest.getOffset())
+                .size(pageRequest.getPageSize()));
     }
 
 
@@ -181,35 +417,122 @@ public class BookingServiceImpl implements BookingService {
     public List<BookingDto> findAllForOwner(long ownerId, BookingStatus state, Pageable pageRequest) {
         //неявно проверяем валидность userId
         userService.findUserByIdForValid(ownerId);
-        List<Booking> findBooking;
-
-        switch (state) {
-            case ALL:
-                findBooking = repository.findAllByItemOwnerIdOrderByStartDesc(ownerId, pageRequest);
-                break;
-            case WAITING:
-            case REJECTED:
-            case CANCELED:
-            case APPROVED:
-                findBooking = repository.findAllByItemOwnerIdAndAndStatusEqualsOrderByStartDesc(
-                        ownerId, state, pageRequest);
-                break;
-            case FUTURE:
-                findBooking = repository.findAllByItemOwnerIdAndStartAfterOrderByStartDesc(
-                        ownerId, LocalDateTime.now(), pageRequest);
-                break;
-            case PAST:
-                findBooking = repository.findAllByItemOwnerIdAndAndEndBeforeOrderByStartDesc(
-                        ownerId, LocalDateTime.now(), pageRequest);
-                break;
-            case CURRENT:
-                findBooking = repository.findAllByItemOwnerIdAndStartBeforeAndEndAfterOrderByStartDesc(
-                        ownerId, LocalDateTime.now(), LocalDateTime.now(), pageRequest);
-                break;
-            default:
-                findBooking = null;
-        }
-        return bookingListMapper.modelsToDtos(findBooking);
+        return findAll(BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER)
+                .userId(ownerId)
+                .state(state)
+                .offset(pageRequest.getOffset())
+                .size(pageRequest.getPageSize()));
+    }
+
+    /**
+     * Метод получения страницы бронирований пользователя, следующей за курсором after.
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException    если переданный userId не валиден
+     * @throws ValidationException если в курсоре нет начала бронирования
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookingDto> findAllForBooker(long userId, BookingStatus state, SeekCursor after, int size) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(userId);
+        checkCursor(after);
+        return findAll(BookingQuery.builder()
+                .role(BookingQuery.Role.BOOKER)
+                .userId(userId)
+                .state(state)
+                .after(after)
+                .size(size));
+    }
+
+    /**
+     * Метод получения страницы бронирований владельца вещей, следующей за курсором after.
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException    если переданный userId не валиден
+     * @throws ValidationException если в курсоре нет начала бронирования
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookingDto> findAllForOwner(long ownerId, BookingStatus state, SeekCursor after, int size) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(ownerId);
+        checkCursor(after);
+        return findAll(BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER)
+                .userId(ownerId)
+                .state(state)
+                .after(after)
+                .size(size));
+    }
+
+    /**
+     * Метод выгрузки всех бронирований пользователя в sink по одному в порядке списка бронирований.
+     * Бронирования читаются курсором, поэтому память не зависит от длины истории
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportForBooker(long userId, BookingStatus state, Consumer<BookingDto> sink) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(userId);
+        export(BookingQuery.builder()
+                .role(BookingQuery.Role.BOOKER)
+                .userId(userId)
+                .state(state), sink);
+    }
+
+    /**
+     * Метод выгрузки всех бронирований вещей владельца в sink по одному в порядке списка бронирований
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportForOwner(long ownerId, BookingStatus state, Consumer<BookingDto> sink) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(ownerId);
+        export(BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER)
+                .userId(ownerId)
+                .state(state), sink);
+    }
+
+    private void export(BookingQuery.BookingQueryBuilder query, Consumer<BookingDto> sink) {
+        repository.forEachByQuery(query.now(LocalDateTime.now()).build(), EXPORT_FETCH_SIZE,
+                booking -> sink.accept(bookingMapper.modelToDto(booking)));
+    }
+
+    private List<BookingDto> findAll(BookingQuery.BookingQueryBuilder query) {
+        return bookingListMapper.modelsToDtos(repository.findAllByQuery(query.now(LocalDateTime.now()).build()));
+    }
+
+    /**
+     * Метод получения количества бронирований пользователя в каждом состоянии.
+     * Количество по статусам берется из счетчиков, по времени - считается одним агрегирующим запросом
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    @Override
+    public Map<BookingStatus, Long> getSummaryForBooker(long userId) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(userId);
+        return counters.summary(BookingQuery.Role.BOOKER, userId, LocalDateTime.now());
+    }
+
+    /**
+     * Метод получения количества бронирований вещей владельца в каждом состоянии.
+     * Количество по статусам берется из счетчиков, по времени - считается одним агрегирующим запросом
+     *
+     * @throws NoFoundException если переданный userId не валиден
+     */
+    @Override
+    public Map<BookingStatus, Long> getSummaryForOwner(long ownerId) {
+        //неявно проверяем валидность userId
+        userService.findUserByIdForValid(ownerId);
+        return counters.summary(BookingQuery.Role.OWNER, ownerId, LocalDateTime.now());
     }
 
     /**
@@ -219,10 +542,9 @@ public class BookingServiceImpl implements BookingService {
     @Override
     @Transactional(readOnly = true)
     public BookingForItemDto getLastByItem(Long itemId) {
-        List<Booking> findBookings = repository.findAllLast(
-                itemId, LocalDateTime.now(), APPROVED, WAITING);
-        return bookingMapper.modelToDtoForItem(
-                findBookings.isEmpty() ? null : findBookings.get(0));
+        return intervalIndex.findLast(itemId, LocalDateTime.now())
+                .map(bookingMapper::intervalToDtoForItem)
+                .orElse(null);
     }
 
     /**
@@ -232,22 +554,114 @@ public class BookingServiceImpl implements BookingService {
     @Override
     @Transactional(readOnly = true)
     public BookingForItemDto getNextByItem(Long itemId) {
-        List<Booking> findBookings = repository.findAllNext(
-                itemId, LocalDateTime.now(), APPROVED, WAITING);
-        return bookingMapper.modelToDtoForItem(
-                findBookings.isEmpty() ? null : findBookings.get(0));
+        return intervalIndex.findNext(itemId, LocalDateTime.now())
+                .map(bookingMapper::intervalToDtoForItem)
+                .orElse(null);
     }
 
     /**
-     * Метод возвращает список заверщенных бронирований вещи с номером itemId
-     * пользователем c номером userId
-     * переданные в метод данные не проверяются.
-     * в случае отсутствия бронирований возвращается пустой список
+     * Метод для получения момента, до которого последнее и следующее бронирования вещи
+     * не меняются, по индексу интервалов. Входные данные не проверяются.
      */
     @Override
     @Transactional(readOnly = true)
-    public List<Booking> findAllFinishByItemByUser(Long userId, Long itemId) {
-        return repository.findAllFinishByBookerIdByItemId(
-                userId, itemId, LocalDateTime.now());
+    public LocalDateTime getBookingsValidUntil(Long itemId) {
+        return intervalIndex.findValidUntil(itemId, LocalDateTime.now());
+    }
+
+    /**
+     * Метод для получения последних бронирований сразу для списка вещей.
+     * Недостающие в индексе вещи загружаются одним запросом.
+     * Ключ - номер вещи, вещи без бронирований в результат не попадают.
+     * Входные данные не проверяются.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, BookingForItemDto> getLastByItems(Collection<Long> itemIds) {
+        intervalIndex.load(itemIds);
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, BookingForItemDto> result = new HashMap<>();
+        for (Long itemId : itemIds) {
+            intervalIndex.findLast(itemId, now)
+                    .ifPresent(interval -> result.put(itemId, bookingMapper.intervalToDtoForItem(interval)));
+        }
+        return result;
+    }
+
+    /**
+     * Метод для получения ближайших следующих бронирований сразу для списка вещей.
+     * Недостающие в индексе вещи загружаются одним запросом.
+     * Ключ - номер вещи, вещи без бронирований в результат не попадают.
+     * Входные данные не проверяются.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, BookingForItemDto> getNextByItems(Collection<Long> itemIds) {
+        intervalIndex.load(itemIds);
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, BookingForItemDto> result = new HashMap<>();
+        for (Long itemId : itemIds) {
+            intervalIndex.findNext(itemId, now)
+                    .ifPresent(interval -> result.put(itemId, bookingMapper.intervalToDtoForItem(interval)));
+        }
+        return result;
+    }
+
+    /**
+     * Метод для получения моментов, до которых последнее и следующее бронирования вещей не меняются,
+     * сразу для списка вещей. Недостающие в индексе вещи загружаются одним запросом.
+     * Ключ - номер вещи. Входные данные не проверяются.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, LocalDateTime> getBookingsValidUntil(Collection<Long> itemIds) {
+        intervalIndex.load(itemIds);
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, LocalDateTime> result = new HashMap<>();
+        for (Long itemId : itemIds) {
+            result.put(itemId, intervalIndex.findValidUntil(itemId, now));
+        }
+        return result;
+    }
+
+    /**
+     * Метод для получения свободных окон вещи внутри периода [from, to).
+     * Окна считаются по индексу интервалов, таблица бронирований читается только
+     * при первом обращении к вещи. Входные данные не проверяются.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<FreeSlot> getFreeSlots(Long itemId, LocalDateTime from, LocalDateTime to) {
+        return intervalIndex.findFree(itemId, from, to);
+    }
+
+    /**
+     * Метод проверяет, есть ли у пользователя c номером userId завершившееся бронирование
+     * вещи с номером itemId. Переданные в метод данные не проверяются.
+     * Положительный ответ берется из кэша пар, при промахе выполняется запрос существования
+     * одной строки, положительный результат которого попадает в кэш
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public boolean hasFinishedBooking(Long userId, Long itemId) {
+        if (finishedBookings.contains(userId, itemId)) return true;
+        boolean finished = repository.existsByBookerIdAndItemIdAndEndBefore(userId, itemId, LocalDateTime.now());
+        if (finished) finishedBookings.add(userId, itemId);
+        return finished;
+    }
+
+    /**
+     * Бронирования упорядочены по началу и номеру, поэтому курсор без начала не задает позицию
+     */
+    private void checkCursor(SeekCursor after) {
+        if (after.getTime() == null) {
+            log.warn("Некорректный курсор бронирований: {}", after);
+            throw new ValidationException("Некорректный курсор бронирований: " + after.encode());
+        }
+    }
+
+    private ValidationException alreadyBooked(Item item, SimpleBookingDto simpleBookingDto) {
+        return new ValidationException("вещь с id " + item.getId() + " уже забронирована на период с " +
+                simpleBookingDto.getStart() + " по " + simpleBookingDto.getEnd());
     }
 }
@@ -0,0 +1,18 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Количество бронирований пользователя с одним статусом. Заполняется запросом с группировкой по статусу
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class BookingStatusCount {
+    private final BookingStatus status;
+    private final Long count;
+}
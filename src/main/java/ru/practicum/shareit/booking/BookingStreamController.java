@@ -0,0 +1,29 @@
+package ru.practicum.shareit.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Контроллер потока событий бронирований (Server-Sent Events).
+ */
+@RestController
+@RequestMapping(path = "/bookings")
+@RequiredArgsConstructor
+public class BookingStreamController {
+
+    private final BookingEventBroker eventBroker;
+
+    /**
+     * Метод подписки на события бронирований пользователя с переданным в заголовке Id:
+     * хозяин вещи получает события CREATED, букер - APPROVED и REJECTED
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader("X-Sharer-User-Id") long userId) {
+        return eventBroker.subscribe(userId);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.shareit.booking;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Количество бронирований пользователя, начавшихся и завершившихся раньше заданного момента.
+ * Заполняется одним агрегирующим запросом, у пользователя без бронирований суммы равны null
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class BookingTimeCount {
+    private final long startedBefore;
+    private final long endedBefore;
+
+    public BookingTimeCount(Long startedBefore, Long endedBefore) {
+        this.startedBefore = startedBefore == null ? 0 : startedBefore;
+        this.endedBefore = endedBefore == null ? 0 : endedBefore;
+    }
+}
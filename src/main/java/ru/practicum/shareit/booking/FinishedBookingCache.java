@@ -0,0 +1,102 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Кэш пар (букер, вещь), у которых есть завершившееся бронирование.
+ * Завершившееся бронирование остается завершившимся, поэтому положительный ответ хранится
+ * без срока жизни, а при переполнении вытесняется давно не использованная пара.
+ * Бронирования, созданные на этом узле, ждут своего окончания в очереди и попадают в кэш,
+ * когда оно проходит, без запроса к базе. Очередь ограничена тем же размером, при переполнении
+ * из нее вытесняются бронирования с самым поздним окончанием.
+ * Кэш хранит только положительные ответы: бронирование другого узла в нем может отсутствовать,
+ * поэтому промах всегда проверяется запросом к базе
+ */
+@Component
+public class FinishedBookingCache {
+
+    private static final Comparator<Ending> BY_END = Comparator.comparing((Ending ending) -> ending.end)
+            .thenComparingLong(ending -> ending.pair.bookerId)
+            .thenComparingLong(ending -> ending.pair.itemId);
+
+    private final int capacity;
+    private final Map<Pair, Boolean> pairs;
+    private final TreeSet<Ending> endings = new TreeSet<>(BY_END);
+
+    public FinishedBookingCache(@Value("${shareit.booking.finished-cache-size:100000}") int capacity) {
+        this.capacity = capacity;
+        this.pairs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * true - у пары точно есть завершившееся бронирование, false - ответа в кэше нет
+     */
+    public boolean contains(long bookerId, long itemId) {
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (pairs) {
+            while (!endings.isEmpty() && endings.first().end.isBefore(now)) {
+                pairs.put(endings.pollFirst().pair, Boolean.TRUE);
+            }
+            return pairs.containsKey(new Pair(bookerId, itemId));
+        }
+    }
+
+    public void add(long bookerId, long itemId) {
+        synchronized (pairs) {
+            pairs.put(new Pair(bookerId, itemId), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Ставит бронирование пары в очередь до момента end. Внутри транзакции - после ее фиксации,
+     * чтобы откаченное бронирование не попало в кэш
+     */
+    public void track(long bookerId, long itemId, LocalDateTime end) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(bookerId, itemId, end);
+                }
+            });
+        } else {
+            enqueue(bookerId, itemId, end);
+        }
+    }
+
+    private void enqueue(long bookerId, long itemId, LocalDateTime end) {
+        synchronized (pairs) {
+            endings.add(new Ending(end, new Pair(bookerId, itemId)));
+            if (endings.size() > capacity) endings.pollLast();
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static final class Pair {
+        private final long bookerId;
+        private final long itemId;
+    }
+
+    @AllArgsConstructor
+    private static final class Ending {
+        private final LocalDateTime end;
+        private final Pair pair;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.shareit.booking;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Свободное от бронирований окно вещи [start, end)
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class FreeSlot {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+}
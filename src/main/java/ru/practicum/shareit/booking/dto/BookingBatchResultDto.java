@@ -0,0 +1,22 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Результат создания одного бронирования из пакета.
+ * index - номер бронирования в запросе, status - HTTP код, который вернул бы POST /bookings,
+ * booking заполнено при успехе, error - при ошибке
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class BookingBatchResultDto {
+    private int index;
+    private int status;
+    private BookingDto booking;
+    private String error;
+}
@@ -0,0 +1,26 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * DTO решения владельца сразу по нескольким бронированиям
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class BookingBulkDecisionDto {
+    @NotEmpty
+    @Size(max = 1000)
+    private List<@NotNull Long> bookingIds;
+    @NotNull
+    private Boolean approved;
+}
@@ -0,0 +1,26 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Результат решения владельца по одному бронированию из списка
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class BookingBulkResultDto {
+
+    public enum Status {
+        UPDATED,
+        NOT_FOUND,
+        ALREADY_PROCESSED,
+        CONFLICT
+    }
+
+    private Long bookingId;
+    private Status status;
+}
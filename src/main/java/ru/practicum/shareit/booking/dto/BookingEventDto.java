@@ -0,0 +1,30 @@
+package ru.practicum.shareit.booking.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.shareit.booking.BookingStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO события жизненного цикла бронирования для потока /bookings/stream
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class BookingEventDto {
+    private Type type;
+    private Long bookingId;
+    private Long itemId;
+    private Long bookerId;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private BookingStatus status;
+
+    public enum Type {
+        CREATED, APPROVED, REJECTED
+    }
+}
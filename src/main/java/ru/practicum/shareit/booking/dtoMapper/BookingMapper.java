@@ -3,6 +3,7 @@ package ru.practicum.shareit.booking.dtoMapper;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingInterval;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.BookingForItemDto;
 import ru.practicum.shareit.item.dtoMapper.ItemMapper;
@@ -12,8 +13,11 @@ import ru.practicum.shareit.user.mapperDto.UserMapper;
 public interface BookingMapper {
     BookingDto modelToDto(Booking booking);
 
+    @Mapping(target = "version", ignore = true)
     Booking dtoToModel(BookingDto bookingDto);
 
     @Mapping(target = "bookerId", source = "booking.booker.id")
     BookingForItemDto modelToDtoForItem(Booking booking);
+
+    BookingForItemDto intervalToDtoForItem(BookingInterval interval);
 }
@@ -1,9 +1,44 @@
 package ru.practicum.shareit.comment;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.comment.dto.CommentView;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
-    List<Comment> findCommentsByItemId(Long itemId);
+    /**
+     * Не больше limit последних комментариев каждой вещи, от новых к старым
+     */
+    @Query(value = "SELECT t.id AS \"id\", t.item_id AS \"itemId\", t.text AS \"text\", " +
+            "t.author_name AS \"authorName\", t.created AS \"created\" " +
+            "FROM (SELECT c.id, c.item_id, c.text, u.name_user AS author_name, c.created, " +
+            "ROW_NUMBER() OVER (PARTITION BY c.item_id ORDER BY c.created DESC, c.id DESC) AS rn " +
+            "FROM comments AS c JOIN users AS u ON u.id = c.author_id " +
+            "WHERE c.item_id IN ?1) AS t " +
+            "WHERE t.rn <= ?2 " +
+            "ORDER BY t.item_id, t.created DESC, t.id DESC", nativeQuery = true)
+    List<CommentView> findLatestByItemIdIn(Collection<Long> itemIds, int limit);
+
+    /**
+     * Первая страница комментариев вещи, от новых к старым
+     */
+    @Query("SELECT new ru.practicum.shareit.comment.dto.CommentOutDto(c.id, c.text, a.name, c.created) " +
+            "FROM comments AS c JOIN c.author AS a " +
+            "WHERE c.item.id = ?1 " +
+            "ORDER BY c.created DESC, c.id DESC")
+    List<CommentOutDto> findPageByItemId(long itemId, Pageable pageRequest);
+
+    /**
+     * Страница комментариев вещи после курсора (created, id), от новых к старым
+     */
+    @Query("SELECT new ru.practicum.shareit.comment.dto.CommentOutDto(c.id, c.text, a.name, c.created) " +
+            "FROM comments AS c JOIN c.author AS a " +
+            "WHERE c.item.id = ?1 AND (c.created < ?2 OR (c.created = ?2 AND c.id < ?3)) " +
+            "ORDER BY c.created DESC, c.id DESC")
+    List<CommentOutDto> findPageByItemIdAfter(long itemId, LocalDateTime created, long id, Pageable pageRequest);
 }
@@ -1,5 +1,6 @@
 package ru.practicum.shareit.comment.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -9,6 +10,7 @@ import java.time.LocalDateTime;
 
 @Getter
 @Builder
+@AllArgsConstructor
 @ToString
 @EqualsAndHashCode
 public class CommentOutDto {
@@ -0,0 +1,18 @@
+package ru.practicum.shareit.comment.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция комментария с именем автора и номером вещи - без загрузки сущностей автора и вещи
+ */
+public interface CommentView {
+    Long getId();
+
+    Long getItemId();
+
+    String getText();
+
+    String getAuthorName();
+
+    LocalDateTime getCreated();
+}
@@ -4,6 +4,7 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import ru.practicum.shareit.comment.Comment;
 import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.comment.dto.CommentView;
 import ru.practicum.shareit.item.dtoMapper.ItemMapper;
 import ru.practicum.shareit.user.mapperDto.UserMapper;
 
@@ -11,4 +12,6 @@ import ru.practicum.shareit.user.mapperDto.UserMapper;
 public interface CommentMapper {
     @Mapping(target = "authorName", source = "comment.author.name")
     CommentOutDto modelToOutDto(Comment comment);
+
+    CommentOutDto viewToOutDto(CommentView commentView);
 }
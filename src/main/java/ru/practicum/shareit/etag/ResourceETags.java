@@ -0,0 +1,207 @@
+package ru.practicum.shareit.etag;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+import ru.practicum.shareit.exception.NoFoundException;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Строгие ETag ресурсов для условных GET с If-None-Match.
+ * ETag строится не из хэша тела ответа, а из версий, сохраненных в базе, поэтому совпадает
+ * на всех узлах и после перезапуска. Версия вещи (items.version) увеличивается при каждом изменении,
+ * входящем в ее карточку: изменении вещи, добавлении комментария, создании, подтверждении
+ * или отклонении бронирования, изменении владельца, автора комментария или автора запроса.
+ * Поэтому проверка ETag вещи - одно чтение версии по первичному ключу, а страницы вещей владельца -
+ * чтение номеров и версий вещей страницы.
+ * Карточка вещи зависит и от времени: в момент начала бронирования меняются последнее и следующее
+ * бронирования. Поэтому ETag вещи и страницы вещей состоит из основы (версий) и момента,
+ * до которого ответ действителен. Момент берется из собранного ответа и проверяется
+ * по ETag из If-None-Match без обращения к бронированиям.
+ * ETag бронирования и запроса строятся из версий бронирования, вещи и пользователей.
+ * Для несуществующего ресурса ETag не строится - выбрасывается NoFoundException
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ResourceETags {
+
+    private static final long NEVER = 0;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Основа ETag GET /items/{itemId}: версия вещи и пользователь, от которого зависит вид карточки
+     *
+     * @throws NoFoundException если вещи нет
+     */
+    public String item(long userId, long itemId) {
+        return item(userId, itemId, itemVersion(itemId));
+    }
+
+    /**
+     * Основа ETag GET /items/{itemId} по уже прочитанной версии вещи
+     */
+    public String item(long userId, long itemId, long version) {
+        return join("i", itemId, userId, new long[]{version});
+    }
+
+    /**
+     * Версия вещи - одно чтение по первичному ключу
+     *
+     * @throws NoFoundException если вещи нет
+     */
+    public long itemVersion(long itemId) {
+        long[] state = state("SELECT version FROM items WHERE id = ?", itemId);
+        if (state == null) {
+            log.warn("Вещь с id: {} отсутствует", itemId);
+            throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
+        }
+        return state[0];
+    }
+
+    /**
+     * Основа ETag GET /items - страницы вещей владельца: номера и версии вещей страницы
+     */
+    public String ownerItems(long userId, int from, int size) {
+        return join("o", userId, userId, new long[]{from, size, pageState(jdbcTemplate.query(
+                "SELECT id, version FROM items WHERE owner_id = ? ORDER BY id LIMIT ? OFFSET ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, userId, size, from))});
+    }
+
+    /**
+     * Основа ETag GET /items?after= - страницы вещей владельца после курсора
+     */
+    public String ownerItemsAfter(long userId, long afterId, int size) {
+        return join("oc", userId, userId, new long[]{afterId, size, pageState(jdbcTemplate.query(
+                "SELECT id, version FROM items WHERE owner_id = ? AND id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, userId, afterId, size))});
+    }
+
+    /**
+     * GET /bookings/{bookingId}: бронирование, вещь, ее владелец и автор бронирования.
+     * Строка читается, только если пользователь - автор бронирования или владелец вещи,
+     * поэтому постороннему не отвечают 304 по ETag чужого бронирования
+     *
+     * @throws NoFoundException если бронирования нет или оно недоступно пользователю
+     */
+    public String booking(long userId, long bookingId) {
+        long[] state = state("SELECT b.version, i.version, o.version, u.version " +
+                        "FROM bookings b " +
+                        "JOIN items i ON i.id = b.item_id " +
+                        "JOIN users o ON o.id = i.owner_id " +
+                        "JOIN users u ON u.id = b.booker_id " +
+                        "WHERE b.id = ? AND (b.booker_id = ? OR i.owner_id = ?)",
+                bookingId, userId, userId);
+        if (state == null) {
+            log.warn("бронирования с id {} нет в базе или оно недоступно пользователю {}", bookingId, userId);
+            throw new NoFoundException("бронирования с id " + bookingId + " нет в базе или" +
+                    " информация о нем доступна только владельцу вещи и автору брони");
+        }
+        return join("b", bookingId, userId, state);
+    }
+
+    /**
+     * GET /requests/{requestId}: запрос, его автор и вещи, созданные под запрос
+     *
+     * @throws NoFoundException если запроса нет
+     */
+    public String request(long userId, long requestId) {
+        long[] state = state("SELECT u.version, " +
+                        "(SELECT COUNT(*) FROM items i WHERE i.request_id = r.id), " +
+                        "(SELECT COALESCE(SUM(i.version), 0) FROM items i WHERE i.request_id = r.id) " +
+                        "FROM item_requests r " +
+                        "JOIN users u ON u.id = r.requestor_id " +
+                        "WHERE r.id = ?",
+                requestId);
+        if (state == null) {
+            log.warn("Запрос с id: {} отсутствует", requestId);
+            throw new NoFoundException("Запрос с id: " + requestId + " отсутствует");
+        }
+        return join("r", requestId, userId, state);
+    }
+
+    /**
+     * ETag ответа из основы stem и момента validUntil, до которого ответ действителен
+     *
+     * @param validUntil null - ответ не зависит от времени
+     */
+    public static String tag(String stem, LocalDateTime validUntil) {
+        return stem + "-" + Long.toString(validUntil == null ? NEVER : toMillis(validUntil), 36);
+    }
+
+    /**
+     * Если в If-None-Match есть ETag с основой stem, момент которого еще не наступил,
+     * отвечает 304 с этим ETag
+     */
+    public static boolean checkNotModified(WebRequest request, String stem) {
+        String[] headers = request.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (headers == null) return false;
+        long now = toMillis(LocalDateTime.now());
+        for (String header : headers) {
+            for (String value : header.split(",")) {
+                String etag = value.trim();
+                if (etag.startsWith("W/")) etag = etag.substring(2);
+                if (etag.length() < 2 || !etag.startsWith("\"") || !etag.endsWith("\"")) continue;
+                etag = etag.substring(1, etag.length() - 1);
+                if (!etag.startsWith(stem + "-")) continue;
+                long validUntil;
+                try {
+                    validUntil = Long.parseLong(etag.substring(stem.length() + 1), 36);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (validUntil == NEVER || validUntil > now) return request.checkNotModified(etag);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Значения единственной строки запроса или null, если ресурса нет
+     */
+    private long[] state(String sql, Object... args) {
+        List<long[]> rows = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            long[] values = new long[rs.getMetaData().getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rs.getLong(i + 1);
+            }
+            return values;
+        }, args);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Свертка номеров и версий вещей страницы: меняется при изменении любой вещи страницы
+     * и при изменении состава страницы
+     */
+    private static long pageState(List<long[]> rows) {
+        long hash = rows.size();
+        for (long[] row : rows) {
+            hash = 31 * hash + row[0];
+            hash = 31 * hash + row[1];
+        }
+        return hash;
+    }
+
+    private static String join(String kind, long id, long userId, long[] state) {
+        StringJoiner joiner = new StringJoiner("-");
+        joiner.add(kind + id);
+        joiner.add(Long.toString(userId));
+        for (long value : state) {
+            joiner.add(Long.toString(value, 36));
+        }
+        return joiner.toString();
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
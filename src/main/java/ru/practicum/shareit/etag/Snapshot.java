@@ -0,0 +1,21 @@
+package ru.practicum.shareit.etag;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ответ вместе с моментом, до которого он действителен.
+ * Момент входит в ETag ответа (см. {@link ResourceETags#tag})
+ */
+@Getter
+@RequiredArgsConstructor
+public class Snapshot<T> {
+
+    private final T value;
+    /**
+     * Момент, после которого ответ устаревает без изменения версий, null - не устаревает
+     */
+    private final LocalDateTime validUntil;
+}
@@ -0,0 +1,27 @@
+package ru.practicum.shareit.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Регистрация фильтра ключей идемпотентности для всех путей приложения
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(
+            IdempotencyStore store, ObjectMapper objectMapper,
+            @Value("${shareit.idempotency.wait-timeout:PT10S}") Duration waitTimeout,
+            @Value("${shareit.idempotency.max-body-size:1048576}") long maxBodySize) {
+        FilterRegistrationBean<IdempotencyFilter> registration =
+                new FilterRegistrationBean<>(new IdempotencyFilter(store, objectMapper, waitTimeout, maxBodySize));
+        registration.addUrlPatterns("/*");
+        return registration;
+    }
+}
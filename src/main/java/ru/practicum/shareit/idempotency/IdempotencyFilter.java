@@ -0,0 +1,326 @@
+package ru.practicum.shareit.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import ru.practicum.shareit.exception.Error;
+import ru.practicum.shareit.exception.ErrorResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Обработка заголовка Idempotency-Key для POST-запросов.
+ * Первый запрос с ключом выполняется, его ответ сохраняется в {@link IdempotencyStore}.
+ * Повтор с тем же ключом получает сохраненный ответ без обращения к контроллерам и сервисам.
+ * Параллельный повтор на этом узле ждет завершения первого запроса, на другом узле -
+ * опрашивает хранилище. Если первый запрос не завершился за waitTimeout, повтору отвечается 409
+ * с заголовком Retry-After. Ключ действует в пределах пользователя из X-Sharer-User-Id.
+ * Ответы с ошибкой сервера не сохраняются, такой запрос можно повторить.
+ * Тело запроса с ключом читается в память, поэтому его размер ограничен maxBodySize:
+ * на запрос с телом больше отвечается 413 без выполнения.
+ * Тела в формате NDJSON (импорт) передаются дальше без обработки ключа, чтобы не читать поток в память
+ */
+@Slf4j
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int KEY_MAX_LENGTH = 200;
+    private static final long POLL_MS = 50;
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final Duration waitTimeout;
+    private final long maxBodySize;
+    private final Map<String, CompletableFuture<IdempotentResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyFilter(IdempotencyStore store, ObjectMapper objectMapper, Duration waitTimeout,
+                             long maxBodySize) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.waitTimeout = waitTimeout;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Потоки NDJSON не обрабатываются: фильтр читает тело целиком в память
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY_HEADER) == null
+                || isNdjson(request.getContentType());
+    }
+
+    private static boolean isNdjson(String contentType) {
+        try {
+            return contentType != null
+                    && MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > KEY_MAX_LENGTH) {
+            log.warn("Неверный ключ идемпотентности: {}", idempotencyKey);
+            writeError(response, HttpStatus.BAD_REQUEST, "ключ должен содержать от 1 до " +
+                    KEY_MAX_LENGTH + " символов");
+            return;
+        }
+        byte[] body = readBody(request);
+        if (body == null) {
+            log.warn("Тело запроса с ключом идемпотентности больше {} байт", maxBodySize);
+            writeError(response, HttpStatus.PAYLOAD_TOO_LARGE, "тело запроса с ключом не должно превышать " +
+                    maxBodySize + " байт");
+            return;
+        }
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request, body);
+        String key = request.getHeader("X-Sharer-User-Id") + ":" + idempotencyKey;
+        String requestHash = hash(request.getRequestURI(), cachedRequest.body);
+
+        Optional<IdempotentResponse> stored = store.find(key).filter(IdempotentResponse::isCompleted);
+        if (stored.isPresent()) {
+            replay(stored.get(), requestHash, response);
+            return;
+        }
+        CompletableFuture<IdempotentResponse> own = new CompletableFuture<>();
+        CompletableFuture<IdempotentResponse> running;
+        while ((running = inFlight.putIfAbsent(key, own)) != null) {
+            IdempotentResponse first;
+            try {
+                first = await(running);
+            } catch (TimeoutException e) {
+                writeInProgress(response, key);
+                return;
+            }
+            if (first != null) {
+                replay(first, requestHash, response);
+                return;
+            }
+            //первый запрос завершился ошибкой сервера и освободил ключ: повторы снова борются за него,
+            //выполняется только один из них, остальные ждут его ответа
+        }
+        try {
+            if (!store.tryBegin(key, requestHash)) {
+                IdempotentResponse other = pollStore(key);
+                if (other == null) {
+                    writeInProgress(response, key);
+                } else {
+                    own.complete(other);
+                    replay(other, requestHash, response);
+                }
+                return;
+            }
+            ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+            try {
+                chain.doFilter(cachedRequest, cachingResponse);
+            } catch (IOException | ServletException | RuntimeException e) {
+                store.abort(key);
+                throw e;
+            }
+            if (cachingResponse.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                store.abort(key);
+            } else {
+                own.complete(store.complete(key, requestHash, cachingResponse.getStatus(),
+                        cachingResponse.getContentType(), cachingResponse.getContentAsByteArray()));
+            }
+            cachingResponse.copyBodyToResponse();
+        } finally {
+            //сначала освобождаем ключ, чтобы разбуженные повторы не получили тот же завершенный future
+            inFlight.remove(key, own);
+            own.complete(null);
+        }
+    }
+
+    /**
+     * Тело запроса или null, если оно больше maxBodySize. Читается не больше maxBodySize + 1 байт
+     */
+    private byte[] readBody(HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxBodySize) return null;
+        InputStream input = request.getInputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxBodySize) return null;
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Ждет завершения запроса с тем же ключом на этом узле не дольше waitTimeout
+     *
+     * @throws TimeoutException если запрос за это время не завершился
+     */
+    private IdempotentResponse await(CompletableFuture<IdempotentResponse> running)
+            throws ServletException, TimeoutException {
+        try {
+            return running.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(e);
+        } catch (ExecutionException e) {
+            throw new ServletException("Запрос с тем же ключом идемпотентности завершился с ошибкой", e);
+        }
+    }
+
+    /**
+     * Ждет, пока запрос с тем же ключом завершится на другом узле
+     */
+    private IdempotentResponse pollStore(String key) throws ServletException {
+        long deadline = System.currentTimeMillis() + waitTimeout.toMillis();
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Optional<IdempotentResponse> stored = store.find(key);
+                if (stored.isEmpty()) return null;
+                if (stored.get().isCompleted()) return stored.get();
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(e);
+        }
+        return null;
+    }
+
+    private void replay(IdempotentResponse stored, String requestHash, HttpServletResponse response)
+            throws IOException {
+        if (!stored.getRequestHash().equals(requestHash)) {
+            log.warn("Ключ идемпотентности использован для другого запроса");
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, "ключ уже использован для другого запроса");
+            return;
+        }
+        response.setStatus(stored.getStatus());
+        if (stored.getContentType() != null) response.setContentType(stored.getContentType());
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(stored.getBody().length);
+        response.getOutputStream().write(stored.getBody());
+    }
+
+    /**
+     * Запрос с тем же ключом не завершился за waitTimeout: клиент может повторить запрос позже
+     */
+    private void writeInProgress(HttpServletResponse response, String key) throws IOException {
+        log.warn("Запрос с ключом идемпотентности {} еще выполняется", key);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+        writeError(response, HttpStatus.CONFLICT, "запрос с этим ключом еще выполняется");
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(List.of(new Error(IDEMPOTENCY_KEY_HEADER, message))));
+    }
+
+    private static String hash(String uri, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(uri.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(body)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Запрос с прочитанным заранее телом: тело нужно для отпечатка запроса и для контроллера
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * Тело уже в памяти, поэтому слушатель сразу получает все данные и их конец
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        readListener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.practicum.shareit.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Хранилище ответов на запросы с ключом идемпотентности.
+ * Завершенные ответы кэшируются в памяти в ограниченном LRU-кэше, общим для всех узлов
+ * источником остается таблица idempotency_keys. Записи старше ttl считаются отсутствующими
+ * и периодически удаляются
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final Duration lockTimeout;
+    private final Map<String, IdempotentResponse> cache;
+
+    /**
+     * @param requestTimeout наибольшее время выполнения запроса с ключом. Ключ занятого запроса
+     *                       не должен считаться свободным раньше, поэтому lockTimeout не может быть меньше
+     */
+    public IdempotencyStore(JdbcTemplate jdbcTemplate,
+                            @Value("${shareit.idempotency.ttl:PT24H}") Duration ttl,
+                            @Value("${shareit.idempotency.request-timeout:PT1M}") Duration requestTimeout,
+                            @Value("${shareit.idempotency.lock-timeout:${shareit.idempotency.request-timeout:PT1M}}")
+                            Duration lockTimeout,
+                            @Value("${shareit.idempotency.cache-size:10000}") int cacheSize) {
+        if (lockTimeout.compareTo(requestTimeout) < 0) {
+            throw new IllegalArgumentException("shareit.idempotency.lock-timeout (" + lockTimeout +
+                    ") не может быть меньше shareit.idempotency.request-timeout (" + requestTimeout + ")");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = ttl;
+        this.lockTimeout = lockTimeout;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotentResponse> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Ответ по ключу: из кэша, если он там есть, иначе из базы
+     */
+    public Optional<IdempotentResponse> find(String key) {
+        LocalDateTime expired = LocalDateTime.now().minus(ttl);
+        synchronized (cache) {
+            IdempotentResponse cached = cache.get(key);
+            if (cached != null) {
+                if (cached.getCreated().isAfter(expired)) return Optional.of(cached);
+                cache.remove(key);
+            }
+        }
+        Optional<IdempotentResponse> stored = jdbcTemplate.query("SELECT request_hash, status, content_type, " +
+                        "body, created FROM idempotency_keys WHERE id = ? AND created > ?",
+                (rs, rowNum) -> new IdempotentResponse(rs.getString("request_hash"),
+                        (Integer) rs.getObject("status"), rs.getString("content_type"), rs.getBytes("body"),
+                        rs.getTimestamp("created").toLocalDateTime()),
+                key, expired).stream().findFirst();
+        stored.filter(IdempotentResponse::isCompleted).ifPresent(response -> cache(key, response));
+        return stored;
+    }
+
+    /**
+     * Занимает ключ для выполнения запроса. Ключ, занятый дольше lockTimeout
+     * (например, узлом, упавшим во время выполнения), считается свободным.
+     * lockTimeout не меньше наибольшего времени выполнения запроса, поэтому ключ
+     * еще выполняющегося запроса не освобождается
+     *
+     * @return false, если ключ уже занят запросом на этом или другом узле
+     */
+    public boolean tryBegin(String key, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE id = ? " +
+                "AND (created <= ? OR (status IS NULL AND created <= ?))", key, now.minus(ttl), now.minus(lockTimeout));
+        try {
+            jdbcTemplate.update("INSERT INTO idempotency_keys (id, request_hash, created) VALUES (?, ?, ?)",
+                    key, requestHash, now);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Сохраняет ответ на запрос, занявший ключ
+     */
+    public IdempotentResponse complete(String key, String requestHash, int status, String contentType,
+                                       byte[] body) {
+        IdempotentResponse response = new IdempotentResponse(requestHash, status, contentType, body,
+                LocalDateTime.now());
+        jdbcTemplate.update("UPDATE idempotency_keys SET status = ?, content_type = ?, body = ?, created = ? " +
+                "WHERE id = ?", status, contentType, body, response.getCreated(), key);
+        cache(key, response);
+        return response;
+    }
+
+    /**
+     * Освобождает ключ, если запрос завершился ошибкой сервера и его можно повторить
+     */
+    public void abort(String key) {
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE id = ? AND status IS NULL", key);
+    }
+
+    @Scheduled(fixedDelayString = "${shareit.idempotency.cleanup-ms:3600000}")
+    public void evictExpired() {
+        int deleted = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE created <= ?",
+                LocalDateTime.now().minus(ttl));
+        log.info("Удалено устаревших ключей идемпотентности: {}", deleted);
+    }
+
+    private void cache(String key, IdempotentResponse response) {
+        synchronized (cache) {
+            cache.put(key, response);
+        }
+    }
+}
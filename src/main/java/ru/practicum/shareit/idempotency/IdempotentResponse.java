@@ -0,0 +1,26 @@
+package ru.practicum.shareit.idempotency;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сохраненный ответ на запрос с ключом идемпотентности.
+ * Пока первый запрос выполняется, status равен null
+ */
+@Getter
+@AllArgsConstructor
+@ToString(exclude = "body")
+public class IdempotentResponse {
+    private final String requestHash;
+    private final Integer status;
+    private final String contentType;
+    private final byte[] body;
+    private final LocalDateTime created;
+
+    public boolean isCompleted() {
+        return status != null;
+    }
+}
@@ -1,23 +1,44 @@
 package ru.practicum.shareit.item;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import ru.practicum.shareit.booking.FreeSlot;
 import ru.practicum.shareit.comment.dto.CommentInDto;
 import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.etag.ResourceETags;
+import ru.practicum.shareit.etag.Snapshot;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
 import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
 import ru.practicum.shareit.item.dto.OnCreateGroup;
 import ru.practicum.shareit.item.dto.OnPatchGroup;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.ndjson.NdjsonWriter;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
+import ru.practicum.shareit.user.UserService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Контроллер создания и изменения и выдачи объектов класса Item
@@ -29,7 +50,12 @@ import java.util.List;
 @Validated
 public class ItemController {
 
+    public static final int BATCH_MAX_SIZE = 1000;
+
     private final ItemService itemService;
+    private final ResourceETags etags;
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Метод создания новой вещи
@@ -44,6 +70,23 @@ public class ItemController {
         return itemService.createItem(itemDto, userId);
     }
 
+    /**
+     * Метод импорта вещей из тела запроса в формате NDJSON (application/x-ndjson): по одной вещи в строке.
+     * Вещи сохраняются пакетами по мере чтения тела, результат каждой строки пишется в ответ
+     * в формате NDJSON в порядке строк. Ошибка в строке не мешает импорту остальных строк.
+     * Тело не буферизуется, поэтому заголовок Idempotency-Key для импорта не действует
+     *
+     * @throws ru.practicum.shareit.exception.NoFoundException если пользователя с userId не существует
+     */
+    @PostMapping(path = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void importItemDtos(@RequestHeader("X-Sharer-User-Id") long userId,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        NdjsonWriter<ItemImportResultDto> writer = new NdjsonWriter<>(response, objectMapper);
+        itemService.importItems(userId, request.getInputStream(), writer);
+        writer.finish();
+    }
+
     /**
      * Метод создания новой вещи
      *
@@ -58,40 +101,144 @@ public class ItemController {
     }
 
     /**
-     * Метод пролучения объекта из хранилища по id
+     * Метод пролучения объекта из хранилища по id.
+     * Если ETag из If-None-Match совпадает с текущим и еще действителен, после проверки пользователя
+     * возвращается 304 без обращения к сервису.
+     * Версия для ETag читается до сборки ответа, поэтому ответ не старше своего ETag
      *
      * @param itemId id объекта класса Item
-     * @throws ru.practicum.shareit.exception.ValidationException если объект с переданным id отсутствует в хранилище
+     * @throws ru.practicum.shareit.exception.NoFoundException если объект с переданным id отсутствует в хранилище
      */
     @GetMapping("/{itemId}")
-    public ItemWithBookingAndCommentDto getItemDtoById(@RequestHeader("X-Sharer-User-Id") long userId,
-                                                       @PathVariable("itemId") long itemId) {
-        return itemService.getItemOfId(userId, itemId);
+    public ResponseEntity<ItemWithBookingAndCommentDto> getItemDtoById(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                                       @PathVariable("itemId") long itemId,
+                                                                       WebRequest request) {
+        userService.findUserByIdForValid(userId);
+        long version = etags.itemVersion(itemId);
+        String stem = etags.item(userId, itemId, version);
+        if (ResourceETags.checkNotModified(request, stem)) return null;
+        Snapshot<ItemWithBookingAndCommentDto> item = itemService.getItemOfId(userId, itemId, version);
+        return ResponseEntity.ok()
+                .eTag(ResourceETags.tag(stem, item.getValidUntil()))
+                .body(item.getValue());
     }
 
     /**
-     * Метод возвращает список объектов у которых поле Owner соответствет преданному параметру
+     * Метод получения вещей по списку номеров одним запросом вместо запроса на каждую вещь.
+     * Результаты возвращаются в порядке номеров, для отсутствующей вещи - со статусом NOT_FOUND
+     *
+     * @throws javax.validation.ConstraintViolationException если список пуст или больше BATCH_MAX_SIZE
+     */
+    @GetMapping("/batch")
+    public List<ItemBatchResultDto> getItemDtosByIds(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                     @RequestParam @NotEmpty @Size(max = BATCH_MAX_SIZE)
+                                                     List<Long> ids) {
+        return itemService.getItemsOfIds(userId, ids);
+    }
+
+    /**
+     * То же, что GET /items/batch, но список номеров передается в теле запроса,
+     * чтобы длинный список не упирался в ограничение длины URL
+     *
+     * @throws javax.validation.ConstraintViolationException если список пуст или больше BATCH_MAX_SIZE
+     */
+    @PostMapping("/batch")
+    public List<ItemBatchResultDto> postItemDtosByIds(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                      @RequestBody @NotEmpty @Size(max = BATCH_MAX_SIZE)
+                                                      List<Long> ids) {
+        return itemService.getItemsOfIds(userId, ids);
+    }
+
+    /**
+     * Метод возвращает список объектов у которых поле Owner соответствет преданному параметру.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor.
+     * Если ETag из If-None-Match совпадает с текущим и еще действителен, после проверки пользователя
+     * возвращается 304 без обращения к сервису
      *
      * @param userId id объекта класса User
      */
     @GetMapping()
-    public List<ItemWithBookingAndCommentDto> getItemDtoByUser(@RequestHeader("X-Sharer-User-Id") long userId,
-                                                               @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                                                               @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return itemService.getItems(userId, PageRequest.of(from / size, size));
+    public ResponseEntity<List<ItemWithBookingAndCommentDto>>
+    getItemDtoByUser(@RequestHeader("X-Sharer-User-Id") long userId,
+                     @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
+                     @RequestParam(required = false, defaultValue = "10") @Positive int size,
+                     @RequestParam(required = false) String after,
+                     WebRequest request) {
+        SeekCursor cursor = after == null ? null : SeekCursor.decode(after);
+        userService.findUserByIdForValid(userId);
+        String stem = cursor == null ? etags.ownerItems(userId, from, size)
+                : etags.ownerItemsAfter(userId, cursor.getId(), size);
+        if (ResourceETags.checkNotModified(request, stem)) return null;
+        Snapshot<List<ItemWithBookingAndCommentDto>> items = cursor == null
+                ? itemService.getItems(userId, new FromSizeRequest(from, size))
+                : itemService.getItems(userId, cursor, size);
+        ResponseEntity<List<ItemWithBookingAndCommentDto>> response =
+                withNextCursor(items.getValue(), size, item -> new SeekCursor(null, item.getId()));
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(ResourceETags.tag(stem, items.getValidUntil()))
+                .body(response.getBody());
     }
 
     /**
      * Метод возвращает список объектов из хранилища в поле name и description
      * которых встречается подстрока передаваемая в качестве параметра.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor.
      * Если ничего не найдено, то возвращается пустой список
      */
     @GetMapping("/search")
-    public List<ItemDto> searchItemDtoByUser(@RequestHeader("X-Sharer-User-Id") long userId,
-                                             @RequestParam(required = false, defaultValue = "") String text,
-                                             @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                                             @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return itemService.getItemOfText(userId, text, PageRequest.of(from / size, size));
+    public ResponseEntity<List<ItemDto>> searchItemDtoByUser(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                             @RequestParam(required = false, defaultValue = "")
+                                                             String text,
+                                                             @RequestParam(required = false, defaultValue = "0")
+                                                             @Min(0) int from,
+                                                             @RequestParam(required = false, defaultValue = "10")
+                                                             @Positive int size,
+                                                             @RequestParam(required = false) String after) {
+        SeekPage<ItemDto> page = after == null
+                ? itemService.getItemOfText(userId, text, new FromSizeRequest(from, size))
+                : itemService.getItemOfText(userId, text, SeekCursor.decode(after), size);
+        if (page.getNext() == null) return ResponseEntity.ok(page.getContent());
+        return ResponseEntity.ok()
+                .header(SeekCursor.NEXT_CURSOR_HEADER, page.getNext().encode())
+                .body(page.getContent());
+    }
+
+    /**
+     * Метод возвращает свободные для бронирования окна вещи внутри периода [from, to)
+     *
+     * @throws ru.practicum.shareit.exception.ValidationException если начало периода не раньше его окончания
+     */
+    @GetMapping("/{itemId}/availability")
+    public List<FreeSlot> getAvailability(@RequestHeader("X-Sharer-User-Id") long userId,
+                                          @PathVariable("itemId") long itemId,
+                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                          LocalDateTime from,
+                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                          LocalDateTime to) {
+        return itemService.getAvailability(userId, itemId, from, to);
+    }
+
+    /**
+     * Метод получения комментариев вещи от новых к старым.
+     * Если передан курсор after, страница выбирается после него.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor
+     */
+    @GetMapping("/{itemId}/comments")
+    public ResponseEntity<List<CommentOutDto>> getComments(@RequestHeader("X-Sharer-User-Id") long userId,
+                                                           @PathVariable("itemId") long itemId,
+                                                           @RequestParam(required = false) String after,
+                                                           @RequestParam(required = false, defaultValue = "10")
+                                                           @Positive int size) {
+        List<CommentOutDto> comments = itemService.getComments(userId, itemId,
+                after == null ? null : SeekCursor.decode(after), size);
+        if (comments.size() < size) return ResponseEntity.ok(comments);
+        CommentOutDto last = comments.get(comments.size() - 1);
+        return ResponseEntity.ok()
+                .header(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(last.getCreated(), last.getId()).encode())
+                .body(comments);
     }
 
     /**
@@ -105,4 +252,15 @@ public class ItemController {
                                            @Valid @RequestBody CommentInDto commentInDto) {
         return itemService.addComment(userId, itemId, commentInDto);
     }
+
+    /**
+     * Если страница заполнена полностью, добавляет в ответ курсор, построенный по последней вещи
+     */
+    private static <T> ResponseEntity<List<T>> withNextCursor(List<T> items, int size,
+                                                              Function<T, SeekCursor> cursor) {
+        if (items.size() < size) return ResponseEntity.ok(items);
+        return ResponseEntity.ok()
+                .header(SeekCursor.NEXT_CURSOR_HEADER, cursor.apply(items.get(items.size() - 1)).encode())
+                .body(items);
+    }
 }
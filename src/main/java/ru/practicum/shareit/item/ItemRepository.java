@@ -1,17 +1,132 @@
 package ru.practicum.shareit.item;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.practicum.shareit.item.dto.ItemForRequestDto;
+import ru.practicum.shareit.item.dto.ItemVersion;
 import ru.practicum.shareit.item.model.Item;
 import ru.practicum.shareit.user.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
-    List<Item> findItemsByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCaseAndAvailableIsTrueOrderById(
-            String textName, String textDescription, Pageable pageRequest);
+    /**
+     * Номера доступных вещей, в названии или описании которых встречается text без учета регистра
+     */
+    @Query("SELECT i.id FROM Item AS i " +
+            "WHERE i.available = true " +
+            "AND (UPPER(i.name) LIKE UPPER(CONCAT('%', ?1, '%')) " +
+            "OR UPPER(i.description) LIKE UPPER(CONCAT('%', ?1, '%'))) " +
+            "ORDER BY i.id")
+    List<Long> searchAvailableIds(String text, Pageable pageRequest);
 
+    /**
+     * То же, что searchAvailableIds, но номера больше afterId: страница после курсора
+     */
+    @Query("SELECT i.id FROM Item AS i " +
+            "WHERE i.available = true " +
+            "AND (UPPER(i.name) LIKE UPPER(CONCAT('%', ?1, '%')) " +
+            "OR UPPER(i.description) LIKE UPPER(CONCAT('%', ?1, '%'))) " +
+            "AND i.id > ?2 " +
+            "ORDER BY i.id")
+    List<Long> searchAvailableIdsAfter(String text, long afterId, Pageable pageRequest);
+
+    /**
+     * Страница вещей владельца вместе с запросами и их авторами (для ItemWithBookingAndCommentDto)
+     */
+    @EntityGraph(attributePaths = {"request", "request.requestor"})
     List<Item> findItemsByOwnerEqualsOrderById(User owner, Pageable pageRequest);
 
-    List<Item> findAllByRequestId(Long requestId);
+    /**
+     * Страница вещей владельца после курсора по id (индекс ix_items_owner)
+     * вместе с запросами и их авторами
+     */
+    @EntityGraph(attributePaths = {"request", "request.requestor"})
+    List<Item> findItemsByOwnerEqualsAndIdGreaterThanOrderById(User owner, long afterId, Pageable pageRequest);
+
+    /**
+     * Вещь вместе с владельцем (для бронирования и ItemDto)
+     */
+    @EntityGraph(attributePaths = "owner")
+    Optional<Item> findWithOwnerById(long id);
+
+    /**
+     * Вещь вместе с владельцем, запросом и его автором (для ItemWithBookingAndCommentDto)
+     */
+    @EntityGraph(attributePaths = {"owner", "request", "request.requestor"})
+    Optional<Item> findWithOwnerAndRequestById(long id);
+
+    /**
+     * Вещи, созданные под запросы requestIds, сразу в виде ItemForRequestDto,
+     * одним запросом по индексу ix_items_request
+     */
+    @Query("SELECT new ru.practicum.shareit.item.dto.ItemForRequestDto(" +
+            "i.id, i.name, i.description, i.available, i.request.id) " +
+            "FROM Item AS i " +
+            "WHERE i.request.id IN ?1 " +
+            "ORDER BY i.id")
+    List<ItemForRequestDto> findAllByRequestIdIn(Collection<Long> requestIds);
+
+    /**
+     * Вещи вместе с владельцами (для ItemDto и бронирования), запрос вещи не загружается
+     */
+    @Query("SELECT i FROM Item AS i " +
+            "JOIN FETCH i.owner " +
+            "WHERE i.id IN ?1")
+    List<Item> findAllWithOwnerByIdIn(Collection<Long> ids);
+
+    /**
+     * Вещи вместе с владельцами, запросами и их авторами (для ItemWithBookingAndCommentDto)
+     */
+    @Query("SELECT i FROM Item AS i " +
+            "JOIN FETCH i.owner " +
+            "LEFT JOIN FETCH i.request AS r " +
+            "LEFT JOIN FETCH r.requestor " +
+            "WHERE i.id IN ?1")
+    List<Item> findAllWithOwnerAndRequestByIdIn(Collection<Long> ids);
+
+    /**
+     * Атомарно увеличивает счетчик комментариев вещи и ее версию: комментарий входит в карточку вещи
+     */
+    @Modifying
+    @Query(value = "UPDATE items SET comment_count = comment_count + 1, version = version + 1 WHERE id = ?1",
+            nativeQuery = true)
+    int incrementCommentCount(long itemId);
+
+    /**
+     * Увеличивает версию вещи, из которой строится ETag. Колонка не отображается в сущность,
+     * поэтому сохранение вещи, собранной заново, ее не сбрасывает
+     */
+    @Modifying
+    @Query(value = "UPDATE items SET version = version + 1 WHERE id = ?1", nativeQuery = true)
+    int incrementVersion(long itemId);
+
+    /**
+     * Увеличивает версии вещей из списка одним запросом
+     */
+    @Modifying
+    @Query(value = "UPDATE items SET version = version + 1 WHERE id IN ?1", nativeQuery = true)
+    int incrementVersionByIdIn(Collection<Long> itemIds);
+
+    /**
+     * Увеличивает версии вещей, в карточки которых входит имя пользователя:
+     * его вещей, вещей с его комментариями и вещей, созданных под его запросы
+     */
+    @Modifying
+    @Query(value = "UPDATE items SET version = version + 1 " +
+            "WHERE owner_id = ?1 " +
+            "OR id IN (SELECT c.item_id FROM comments c WHERE c.author_id = ?1) " +
+            "OR request_id IN (SELECT r.id FROM item_requests r WHERE r.requestor_id = ?1)", nativeQuery = true)
+    int incrementVersionByUserId(long userId);
+
+    /**
+     * Версии вещей из списка, отсутствующих вещей в результате нет
+     */
+    @Query(value = "SELECT id AS \"id\", version AS \"version\" FROM items WHERE id IN ?1", nativeQuery = true)
+    List<ItemVersion> findVersionsByIdIn(Collection<Long> itemIds);
 }
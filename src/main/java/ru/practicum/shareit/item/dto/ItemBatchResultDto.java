@@ -0,0 +1,26 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Результат получения одной вещи из списка номеров.
+ * item заполнено, если вещь найдена
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class ItemBatchResultDto {
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND
+    }
+
+    private Long itemId;
+    private Status status;
+    private ItemWithBookingAndCommentDto item;
+}
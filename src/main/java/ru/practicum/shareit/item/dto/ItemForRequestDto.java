@@ -1,11 +1,13 @@
 package ru.practicum.shareit.item.dto;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 @Getter
 @Builder
+@AllArgsConstructor
 @EqualsAndHashCode
 public class ItemForRequestDto {
 
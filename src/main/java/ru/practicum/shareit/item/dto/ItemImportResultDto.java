@@ -0,0 +1,22 @@
+package ru.practicum.shareit.item.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Результат импорта одной строки NDJSON.
+ * line - номер строки в теле запроса, status - HTTP код, который вернул бы POST /items,
+ * itemId заполнено при успехе, error - при ошибке
+ */
+@Getter
+@Builder
+@ToString
+@EqualsAndHashCode
+public class ItemImportResultDto {
+    private long line;
+    private int status;
+    private Long itemId;
+    private String error;
+}
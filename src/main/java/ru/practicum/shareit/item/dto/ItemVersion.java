@@ -0,0 +1,10 @@
+package ru.practicum.shareit.item.dto;
+
+/**
+ * Проекция номера и версии вещи - без загрузки сущности
+ */
+public interface ItemVersion {
+    Long getId();
+
+    Long getVersion();
+}
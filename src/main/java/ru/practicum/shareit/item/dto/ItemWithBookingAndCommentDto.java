@@ -22,4 +22,5 @@ public class ItemWithBookingAndCommentDto {
     private BookingForItemDto lastBooking;
     private BookingForItemDto nextBooking;
     private List<CommentOutDto> comments;
+    private long commentCount;
 }
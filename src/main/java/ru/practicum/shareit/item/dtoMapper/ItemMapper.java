@@ -18,6 +18,7 @@ import ru.practicum.shareit.user.mapperDto.UserMapper;
 public interface ItemMapper {
 
     @Mapping(target = "request", source = "itemDto.requestId")
+    @Mapping(target = "commentCount", ignore = true)
     Item dtoToModel(ItemDto itemDto);
 
     @Mapping(target = "requestId", source = "item.request.id")
@@ -21,16 +21,26 @@ import javax.persistence.*;
 public class Item {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_seq")
+    @SequenceGenerator(name = "items_seq", sequenceName = "items_seq", allocationSize = 50)
     private long id;
     @Column(name = "name_item")
     private String name;
     private String description;
     private Boolean available;
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "owner_id", referencedColumnName = "id")
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User owner;
-    @ManyToOne
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "request_id", referencedColumnName = "id")
     private ItemRequest request;
+    /**
+     * Количество комментариев. Пишется только запросом ItemRepository.incrementCommentCount
+     */
+    @Column(name = "comment_count", insertable = false, updatable = false)
+    private long commentCount;
 }
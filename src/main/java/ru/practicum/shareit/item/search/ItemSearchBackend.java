@@ -0,0 +1,35 @@
+package ru.practicum.shareit.item.search;
+
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.util.List;
+
+/**
+ * Способ поиска вещей для /items/search. Реализация выбирается свойством shareit.item.search.backend:
+ * memory - индекс в памяти узла ({@link ItemSearchIndex}),
+ * like - запрос LIKE к таблице items ({@link LikeItemSearchBackend}),
+ * postgres - индексы pg_trgm и tsvector в Postgres ({@link PostgresItemSearchBackend})
+ */
+public interface ItemSearchBackend {
+
+    /**
+     * Доступные вещи, в названии или описании которых встречается text без учета регистра,
+     * начиная с позиции offset, не больше limit. Каждая вещь возвращается курсором - номером
+     * и ключом сортировки, по которому после нее продолжается выдача.
+     * Реализациям, упорядочивающим выдачу по id, достаточно номера вещи
+     */
+    List<SeekCursor> search(String text, long offset, int limit);
+
+    /**
+     * То же, что search, но страница начинается после курсора after в порядке выдачи search
+     * условием по ключу сортировки, а не смещением
+     */
+    List<SeekCursor> searchAfter(String text, SeekCursor after, int limit);
+
+    /**
+     * Сообщает о создании или изменении вещи. Реализациям, читающим таблицу items напрямую, не нужен
+     */
+    default void index(Item item) {
+    }
+}
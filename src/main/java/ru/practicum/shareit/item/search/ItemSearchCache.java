@@ -0,0 +1,103 @@
+package ru.practicum.shareit.item.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш страниц результата поиска вещей вместе с курсорами следующих страниц.
+ * Ключ - версия вещей, текст запроса в нижнем регистре и страница (смещение или курсор). Версия увеличивается
+ * при каждом создании и изменении вещи, поэтому после записи старые страницы больше не находятся
+ * и вытесняются как неиспользуемые. Размер кэша ограничен, в кэш попадают часто запрашиваемые
+ * страницы (политика W-TinyLFU библиотеки Caffeine).
+ * Версия увеличивается только при записи через этот узел, поэтому страница живет не дольше
+ * shareit.item.search.cache-ttl: изменения, сделанные другими узлами, видны в поиске не позже этого срока.
+ * Попадания и промахи публикуются в метриках cache.gets с тегом cache=items.search
+ */
+@Component
+public class ItemSearchCache {
+
+    private final Cache<Key, SeekPage<ItemDto>> cache;
+    private final AtomicLong version = new AtomicLong();
+
+    public ItemSearchCache(MeterRegistry meterRegistry,
+                           @Value("${shareit.item.search.cache-size:10000}") long cacheSize,
+                           @Value("${shareit.item.search.cache-ttl:PT1M}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "items.search");
+    }
+
+    /**
+     * Страница результата из кэша или, при промахе, вычисленная search и сохраненная в кэше
+     */
+    public SeekPage<ItemDto> get(String text, long offset, int size, Supplier<SeekPage<ItemDto>> search) {
+        return get(new Key(version.get(), text.toLowerCase(Locale.ROOT), false, offset, null, size), search);
+    }
+
+    /**
+     * Страница результата после курсора after из кэша или, при промахе, вычисленная search
+     */
+    public SeekPage<ItemDto> getAfter(String text, SeekCursor after, int size,
+                                     Supplier<SeekPage<ItemDto>> search) {
+        return get(new Key(version.get(), text.toLowerCase(Locale.ROOT), true, after.getId(), after.getRank(), size),
+                search);
+    }
+
+    private SeekPage<ItemDto> get(Key key, Supplier<SeekPage<ItemDto>> search) {
+        return cache.get(key, k -> {
+            SeekPage<ItemDto> page = search.get();
+            return new SeekPage<>(List.copyOf(page.getContent()), page.getNext());
+        });
+    }
+
+    /**
+     * Делает недействительными все страницы. Внутри транзакции - после ее фиксации,
+     * чтобы страница, вычисленная до фиксации, не попала в кэш под новой версией
+     */
+    public void onItemChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static final class Key {
+        private final long version;
+        private final String text;
+        /**
+         * true - position это номер вещи курсора, false - смещение
+         */
+        private final boolean seek;
+        private final long position;
+        private final Float rank;
+        private final int size;
+    }
+}
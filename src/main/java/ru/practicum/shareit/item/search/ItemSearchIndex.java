@@ -0,0 +1,468 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс вещей в памяти для поиска подстроки в названии и описании.
+ * Тексты приводятся к нижнему регистру и разбиваются на триграммы. Основной сегмент индекса неизменяем:
+ * документы пронумерованы int по возрастанию номера вещи, для каждой триграммы хранится
+ * отсортированный массив номеров документов, доступность задает битовая маска.
+ * Запрос из трех и более символов пересекает списки своих триграмм, запрос короче просматривает
+ * доступные документы по маске, найденные тексты проверяются на вхождение подстроки,
+ * поэтому результат совпадает с поиском LIKE '%text%'. Обход идет лениво по возрастанию номера
+ * от курсора и останавливается, набрав страницу.
+ * Созданные и измененные вещи попадают в небольшой упорядоченный по номеру буфер изменений,
+ * а их прежние документы снимаются с маски, поэтому изменение вещи не перестраивает списки
+ * под блокировкой. Поиск просматривает буфер целиком. Буфер больше delta-size сливается
+ * с основным сегментом в новый сегмент без блокировки поиска, который затем подменяет прежний.
+ * Индекс строится потоковым чтением таблицы items при старте, изменения применяются
+ * после фиксации транзакции. Изменения, зафиксированные во время перестроения или слияния,
+ * не теряются: они остаются в буфере нового состояния
+ */
+@Component
+@ConditionalOnProperty(name = "shareit.item.search.backend", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class ItemSearchIndex implements ItemSearchBackend {
+
+    private static final int GRAM = 3;
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int deltaSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Перестроение и слияние выполняются по одному
+     */
+    private final ReentrantLock maintenance = new ReentrantLock();
+    private State state = new State(Segment.EMPTY, new TreeMap<>(), new TreeMap<>());
+    private List<Item> pending;
+    private volatile boolean built;
+
+    public ItemSearchIndex(JdbcTemplate jdbcTemplate,
+                           @Value("${shareit.item.search.index.delta-size:1024}") int deltaSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deltaSize = deltaSize;
+    }
+
+    /**
+     * Перестраивает индекс по таблице items, читая ее курсором. Поиск во время чтения идет
+     * по прежнему индексу, изменения вещей, зафиксированные во время чтения, переносятся в новый
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        maintenance.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            SegmentBuilder builder = new SegmentBuilder();
+            try {
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id, name_item, description, available FROM items ORDER BY id",
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(FETCH_SIZE);
+                    return statement;
+                }, rs -> {
+                    builder.add(rs.getLong("id"), Doc.of(rs.getString("name_item"), rs.getString("description"),
+                            rs.getBoolean("available")));
+                });
+                Segment main = builder.build();
+                lock.writeLock().lock();
+                try {
+                    State fresh = new State(main, new TreeMap<>(), new TreeMap<>());
+                    pending.forEach(fresh::put);
+                    state = fresh;
+                    built = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Индекс поиска вещей построен, вещей: {}, триграмм: {}", main.size, main.postings.size());
+            } finally {
+                lock.writeLock().lock();
+                pending = null;
+                lock.writeLock().unlock();
+            }
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    /**
+     * Добавляет или обновляет вещь в индексе. Внутри транзакции изменение применяется после ее фиксации
+     */
+    @Override
+    public void index(Item item) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    indexNow(item);
+                }
+            });
+        } else {
+            indexNow(item);
+        }
+    }
+
+    /**
+     * Номера доступных вещей, в названии или описании которых встречается text без учета регистра,
+     * по возрастанию номера, начиная с позиции offset, не больше limit
+     */
+    @Override
+    public List<SeekCursor> search(String text, long offset, int limit) {
+        return find(text, Long.MIN_VALUE, offset, limit);
+    }
+
+    /**
+     * Номера найденных вещей больше номера вещи курсора: обход начинается двоичным поиском
+     */
+    @Override
+    public List<SeekCursor> searchAfter(String text, SeekCursor after, int limit) {
+        return find(text, after.getId(), 0, limit);
+    }
+
+    /**
+     * Не больше limit номеров доступных вещей больше after, подходящих под text, по возрастанию,
+     * после пропуска первых skip из них. Найденные в сегменте и в буфере изменений номера
+     * сливаются, из каждого источника берется не больше skip + limit номеров
+     */
+    private List<SeekCursor> find(String text, long after, long skip, int limit) {
+        ensureBuilt();
+        String query = text.toLowerCase(Locale.ROOT);
+        List<SeekCursor> found = new ArrayList<>();
+        if (limit <= 0) return found;
+        int needed = (int) Math.min(Integer.MAX_VALUE, skip + limit);
+        long[] fromMain;
+        long[] fromDelta;
+        lock.readLock().lock();
+        try {
+            fromMain = state.main.find(query, after, needed);
+            fromDelta = state.findInDelta(query, after, needed);
+        } finally {
+            lock.readLock().unlock();
+        }
+        int i = 0;
+        int j = 0;
+        long position = 0;
+        while (found.size() < limit && (i < fromMain.length || j < fromDelta.length)) {
+            long itemId = j == fromDelta.length || (i < fromMain.length && fromMain[i] < fromDelta[j])
+                    ? fromMain[i++] : fromDelta[j++];
+            if (position++ >= skip) found.add(new SeekCursor(null, itemId));
+        }
+        return found;
+    }
+
+    private void ensureBuilt() {
+        if (built) return;
+        maintenance.lock();
+        try {
+            if (!built) rebuild();
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    private void indexNow(Item item) {
+        ensureBuilt();
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            state.put(item);
+            if (pending != null) pending.add(item);
+            full = state.delta.size() >= deltaSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (full) merge();
+    }
+
+    /**
+     * Сливает буфер изменений с основным сегментом. Буфер замораживается, новые изменения идут
+     * в новый буфер, а новый сегмент строится без блокировки и подменяет прежний.
+     * Если перестроение или другое слияние уже идет, ничего не делает
+     */
+    private void merge() {
+        if (!maintenance.tryLock()) return;
+        try {
+            State frozen;
+            BitSet available;
+            lock.writeLock().lock();
+            try {
+                if (state.delta.size() < deltaSize) return;
+                frozen = new State(state.main, state.delta, new TreeMap<>());
+                state = frozen;
+                available = (BitSet) frozen.main.available.clone();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Segment main = frozen.main.merge(available, frozen.frozen);
+            lock.writeLock().lock();
+            try {
+                state = new State(main, new TreeMap<>(), state.delta);
+                state.delta.keySet().forEach(state::retire);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("Буфер изменений индекса поиска вещей слит, вещей: {}", main.size);
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    /**
+     * Триграммы текстов
+     */
+    private static Set<String> grams(String... texts) {
+        Set<String> grams = new HashSet<>();
+        for (String text : texts) {
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                grams.add(text.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Состояние индекса: основной сегмент, замороженный на время слияния буфер и текущий буфер изменений.
+     * Вещь из буфера заменяет свой документ сегмента, а из текущего буфера - и замороженного.
+     * Изменяется только под блокировкой записи
+     */
+    private static final class State {
+        private final Segment main;
+        private final NavigableMap<Long, Doc> frozen;
+        private final NavigableMap<Long, Doc> delta;
+
+        private State(Segment main, NavigableMap<Long, Doc> frozen, NavigableMap<Long, Doc> delta) {
+            this.main = main;
+            this.frozen = frozen;
+            this.delta = delta;
+        }
+
+        private void put(Item item) {
+            retire(item.getId());
+            delta.put(item.getId(), Doc.of(item.getName(), item.getDescription(),
+                    Boolean.TRUE.equals(item.getAvailable())));
+        }
+
+        /**
+         * Снимает с маски документ вещи в основном сегменте
+         */
+        private void retire(long itemId) {
+            int doc = main.doc(itemId);
+            if (doc >= 0) main.available.clear(doc);
+        }
+
+        private long[] findInDelta(String query, long after, int needed) {
+            List<Long> found = new ArrayList<>();
+            frozen.tailMap(after, false).forEach((itemId, doc) -> {
+                if (!delta.containsKey(itemId) && doc.available && doc.matches(query)) found.add(itemId);
+            });
+            delta.tailMap(after, false).forEach((itemId, doc) -> {
+                if (doc.available && doc.matches(query)) found.add(itemId);
+            });
+            return found.stream().mapToLong(Long::longValue).sorted().limit(needed).toArray();
+        }
+    }
+
+    /**
+     * Неизменяемые документы и списки триграмм. Изменяется только маска доступности
+     */
+    private static final class Segment {
+        private static final Segment EMPTY = new SegmentBuilder().build();
+
+        private final long[] itemIds;
+        private final String[] names;
+        private final String[] descriptions;
+        private final BitSet available;
+        private final Map<String, int[]> postings;
+        private final int size;
+
+        private Segment(long[] itemIds, String[] names, String[] descriptions, BitSet available,
+                        Map<String, int[]> postings, int size) {
+            this.itemIds = itemIds;
+            this.names = names;
+            this.descriptions = descriptions;
+            this.available = available;
+            this.postings = postings;
+            this.size = size;
+        }
+
+        /**
+         * Документ вещи или -1, если ее нет в сегменте
+         */
+        private int doc(long itemId) {
+            int position = Arrays.binarySearch(itemIds, 0, size, itemId);
+            return position < 0 ? -1 : position;
+        }
+
+        /**
+         * Не больше needed номеров доступных вещей больше after, подходящих под query, по возрастанию
+         */
+        private long[] find(String query, long after, int needed) {
+            int position = Arrays.binarySearch(itemIds, 0, size, after);
+            int first = position < 0 ? -position - 1 : position + 1;
+            long[] found = new long[Math.min(needed, Math.max(size - first, 0))];
+            int count = 0;
+            if (query.length() < GRAM) {
+                for (int doc = available.nextSetBit(first); doc >= 0 && count < found.length;
+                     doc = available.nextSetBit(doc + 1)) {
+                    if (matches(doc, query)) found[count++] = itemIds[doc];
+                }
+                return Arrays.copyOf(found, count);
+            }
+            List<int[]> lists = new ArrayList<>();
+            for (String gram : grams(query)) {
+                int[] list = postings.get(gram);
+                if (list == null) return new long[0];
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            int[] shortest = lists.get(0);
+            int[] from = new int[lists.size()];
+            int start = Arrays.binarySearch(shortest, first);
+            next:
+            for (int i = start < 0 ? -start - 1 : start; i < shortest.length && count < found.length; i++) {
+                int doc = shortest[i];
+                if (!available.get(doc)) continue;
+                for (int j = 1; j < lists.size(); j++) {
+                    int[] list = lists.get(j);
+                    int at = Arrays.binarySearch(list, from[j], list.length, doc);
+                    if (at < 0) {
+                        from[j] = -at - 1;
+                        continue next;
+                    }
+                    from[j] = at + 1;
+                }
+                if (matches(doc, query)) found[count++] = itemIds[doc];
+            }
+            return Arrays.copyOf(found, count);
+        }
+
+        private boolean matches(int doc, String query) {
+            return names[doc].contains(query) || descriptions[doc].contains(query);
+        }
+
+        /**
+         * Новый сегмент из документов этого сегмента с маской available и вещей буфера changes
+         */
+        private Segment merge(BitSet available, NavigableMap<Long, Doc> changes) {
+            SegmentBuilder builder = new SegmentBuilder();
+            int doc = 0;
+            for (Map.Entry<Long, Doc> change : changes.entrySet()) {
+                for (; doc < size && itemIds[doc] < change.getKey(); doc++) {
+                    builder.add(itemIds[doc], new Doc(names[doc], descriptions[doc], available.get(doc)));
+                }
+                if (doc < size && itemIds[doc] == change.getKey()) doc++;
+                builder.add(change.getKey(), change.getValue());
+            }
+            for (; doc < size; doc++) {
+                builder.add(itemIds[doc], new Doc(names[doc], descriptions[doc], available.get(doc)));
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Сборка сегмента из документов по возрастанию номера вещи: документы и номера в списках
+     * триграмм только дописываются в конец
+     */
+    private static final class SegmentBuilder {
+        private long[] itemIds = new long[1024];
+        private String[] names = new String[1024];
+        private String[] descriptions = new String[1024];
+        private final BitSet available = new BitSet();
+        private final Map<String, Postings> postings = new HashMap<>();
+        private int size;
+
+        private void add(long itemId, Doc doc) {
+            if (size == itemIds.length) {
+                itemIds = Arrays.copyOf(itemIds, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+                descriptions = Arrays.copyOf(descriptions, size * 2);
+            }
+            itemIds[size] = itemId;
+            names[size] = doc.name;
+            descriptions[size] = doc.description;
+            available.set(size, doc.available);
+            for (String gram : grams(doc.name, doc.description)) {
+                postings.computeIfAbsent(gram, key -> new Postings()).append(size);
+            }
+            size++;
+        }
+
+        private Segment build() {
+            Map<String, int[]> lists = new HashMap<>(postings.size() * 4 / 3 + 1);
+            postings.forEach((gram, list) -> lists.put(gram, Arrays.copyOf(list.docs, list.length)));
+            return new Segment(Arrays.copyOf(itemIds, size), Arrays.copyOf(names, size),
+                    Arrays.copyOf(descriptions, size), available, lists, size);
+        }
+    }
+
+    /**
+     * Растущий массив номеров документов одной триграммы
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int length;
+
+        private void append(int doc) {
+            if (length == docs.length) docs = Arrays.copyOf(docs, length * 2);
+            docs[length++] = doc;
+        }
+    }
+
+    private static final class Doc {
+        private final String name;
+        private final String description;
+        private final boolean available;
+
+        private Doc(String name, String description, boolean available) {
+            this.name = name;
+            this.description = description;
+            this.available = available;
+        }
+
+        private static Doc of(String name, String description, boolean available) {
+            return new Doc(name == null ? "" : name.toLowerCase(Locale.ROOT),
+                    description == null ? "" : description.toLowerCase(Locale.ROOT), available);
+        }
+
+        private boolean matches(String query) {
+            return name.contains(query) || description.contains(query);
+        }
+    }
+}
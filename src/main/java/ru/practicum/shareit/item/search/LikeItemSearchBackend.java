@@ -0,0 +1,40 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск вещей запросом LIKE '%text%' к таблице items. Индексы не используются,
+ * запрос просматривает таблицу целиком. Работает в любой базе, в том числе в H2
+ */
+@Component
+@ConditionalOnProperty(name = "shareit.item.search.backend", havingValue = "like")
+@RequiredArgsConstructor
+public class LikeItemSearchBackend implements ItemSearchBackend {
+
+    private final ItemRepository repository;
+
+    @Override
+    public List<SeekCursor> search(String text, long offset, int limit) {
+        return toCursors(repository.searchAvailableIds(text, new FromSizeRequest(Math.toIntExact(offset), limit)));
+    }
+
+    @Override
+    public List<SeekCursor> searchAfter(String text, SeekCursor after, int limit) {
+        return toCursors(repository.searchAvailableIdsAfter(text, after.getId(), PageRequest.of(0, limit)));
+    }
+
+    private static List<SeekCursor> toCursors(List<Long> ids) {
+        return ids.stream()
+                .map(id -> new SeekCursor(null, id))
+                .collect(Collectors.toList());
+    }
+}
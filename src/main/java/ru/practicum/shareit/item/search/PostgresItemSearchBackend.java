@@ -0,0 +1,75 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Поиск вещей в Postgres. Подстрока ищется по lower(name_item) и lower(description)
+ * через GIN-индексы pg_trgm, найденные вещи упорядочены по релевантности ts_rank
+ * по сгенерированному столбцу search_vector, затем по id (см. schema-postgresql.sql).
+ * Ранг выбирается вместе с номером вещи и возвращается в ее курсоре, поэтому курсор следующей страницы
+ * не требует отдельного запроса, а страница после курсора не зависит от того, изменилась ли эта вещь позже.
+ * Состояние поиска хранится в базе, поэтому все узлы видят одинаковый результат
+ */
+@Component
+@ConditionalOnProperty(name = "shareit.item.search.backend", havingValue = "postgres")
+@RequiredArgsConstructor
+public class PostgresItemSearchBackend implements ItemSearchBackend {
+
+    private static final String SEARCH = "SELECT id, ts_rank(search_vector, plainto_tsquery('simple', ?)) " +
+            "FROM items " +
+            "WHERE available AND (lower(name_item) LIKE ? OR lower(description) LIKE ?) " +
+            "ORDER BY 2 DESC, id " +
+            "OFFSET ? LIMIT ?";
+
+    /**
+     * Вещи после курсора в порядке (ранг по убыванию, id): ранг меньше ранга из курсора
+     * или равен ему при большем id
+     */
+    private static final String SEARCH_AFTER = "SELECT id, ts_rank(search_vector, plainto_tsquery('simple', ?)) " +
+            "FROM items " +
+            "WHERE available AND (lower(name_item) LIKE ? OR lower(description) LIKE ?) " +
+            "AND (ts_rank(search_vector, plainto_tsquery('simple', ?)), -id) < (?, -?) " +
+            "ORDER BY 2 DESC, id " +
+            "LIMIT ?";
+
+    private static final String RANK = "SELECT ts_rank(search_vector, plainto_tsquery('simple', ?)) " +
+            "FROM items WHERE id = ?";
+
+    private static final RowMapper<SeekCursor> CURSOR = (rs, rowNum) ->
+            new SeekCursor(null, rs.getLong(1), rs.getFloat(2));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<SeekCursor> search(String text, long offset, int limit) {
+        String pattern = "%" + escapeLike(text.toLowerCase(Locale.ROOT)) + "%";
+        return jdbcTemplate.query(SEARCH, CURSOR, text, pattern, pattern, offset, limit);
+    }
+
+    @Override
+    public List<SeekCursor> searchAfter(String text, SeekCursor after, int limit) {
+        //курсор без ранга выдан до того, как ранг стал частью курсора: берем текущий ранг его вещи
+        Float rank = after.getRank() == null ? rankOf(text, after.getId()) : after.getRank();
+        if (rank == null) return List.of();
+        String pattern = "%" + escapeLike(text.toLowerCase(Locale.ROOT)) + "%";
+        return jdbcTemplate.query(SEARCH_AFTER, CURSOR, text, pattern, pattern, text, rank, after.getId(), limit);
+    }
+
+    private Float rankOf(String text, long itemId) {
+        return jdbcTemplate.queryForList(RANK, Float.class, text, itemId).stream()
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
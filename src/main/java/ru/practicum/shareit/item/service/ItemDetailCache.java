@@ -0,0 +1,108 @@
+package ru.practicum.shareit.item.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.shareit.etag.Snapshot;
+import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Кэш карточек вещей, которые возвращает GET /items/{itemId}.
+ * Для каждой вещи хранится до двух вариантов карточки: для хозяина (с последним и следующим
+ * бронированиями) и для остальных пользователей. Карточка хранится вместе с версией вещи,
+ * прочитанной до ее сборки, и выдается только при совпадении с текущей версией из базы.
+ * Версия увеличивается при каждом изменении, входящем в карточку, на любом узле: изменении вещи,
+ * добавлении комментария, создании, подтверждении или отклонении бронирования, изменении владельца,
+ * автора комментария или автора запроса. Поэтому устаревшая карточка не выдается
+ * независимо от того, на каком узле произошло изменение.
+ * Кроме того, карточка устаревает в момент начала ближайшего бронирования, когда меняются
+ * последнее и следующее бронирования, и не позже чем через ttl после загрузки.
+ * Попадания и промахи публикуются в метриках cache.gets с тегом cache=items.detail
+ */
+@Component
+public class ItemDetailCache {
+
+    private final Cache<Key, Entry> cache;
+    private final Duration ttl;
+
+    public ItemDetailCache(MeterRegistry meterRegistry,
+                           @Value("${shareit.item.detail-cache.size:10000}") long cacheSize,
+                           @Value("${shareit.item.detail-cache.ttl:PT10M}") Duration ttl) {
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "items.detail");
+    }
+
+    /**
+     * Карточка вещи версии version для пользователя userId вместе с моментом, до которого она действительна,
+     * или null, если ее нет в кэше
+     */
+    public Snapshot<ItemWithBookingAndCommentDto> find(long itemId, long userId, long version) {
+        Entry forOwner = cache.getIfPresent(new Key(itemId, true));
+        if (forOwner != null && forOwner.ownerId == userId) return forOwner.version == version ? forOwner.item : null;
+        Entry forOthers = cache.getIfPresent(new Key(itemId, false));
+        if (forOthers != null && forOthers.ownerId != userId && forOthers.version == version) return forOthers.item;
+        return null;
+    }
+
+    /**
+     * Сохраняет карточку вещи, собранную после чтения версии version.
+     * Карточка более поздней версии, уже сохраненная параллельным запросом, не заменяется
+     *
+     * @param validUntil момент, после которого карточка устаревает, null - только по ttl
+     */
+    public void put(long itemId, ItemWithBookingAndCommentDto item, long userId,
+                    LocalDateTime validUntil, long version) {
+        long ownerId = item.getOwner().getId();
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        if (validUntil != null && validUntil.isBefore(expiresAt)) expiresAt = validUntil;
+        Entry entry = new Entry(new Snapshot<>(item, validUntil), ownerId, version, expiresAt);
+        cache.asMap().merge(new Key(itemId, ownerId == userId), entry, (old, loaded) ->
+                old.version > loaded.version ? old : loaded);
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static final class Key {
+        private final long itemId;
+        private final boolean forOwner;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final Snapshot<ItemWithBookingAndCommentDto> item;
+        private final long ownerId;
+        private final long version;
+        private final LocalDateTime expiresAt;
+    }
+
+    private static final class EntryExpiry implements Expiry<Key, Entry> {
+        @Override
+        public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+            return Math.max(0, Duration.between(LocalDateTime.now(), entry.expiresAt).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
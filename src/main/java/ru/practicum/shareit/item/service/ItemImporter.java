@@ -0,0 +1,314 @@
+package ru.practicum.shareit.item.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
+import ru.practicum.shareit.item.dto.OnCreateGroup;
+import ru.practicum.shareit.item.dtoMapper.ItemMapper;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.search.ItemSearchBackend;
+import ru.practicum.shareit.item.search.ItemSearchCache;
+import ru.practicum.shareit.request.ItemRequestRepository;
+import ru.practicum.shareit.user.User;
+
+import javax.validation.Validator;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Импорт вещей владельца из потока NDJSON: по одной вещи ItemDto в строке.
+ * Тело запроса читает один потоковый парсер Jackson (MappingIterator), разделитель вещей - перевод строки.
+ * Вещи копятся в буфере не больше batchSize строк. Заполненный буфер сохраняется одной транзакцией
+ * пакетными вставками, и только потом читается следующая вещь: пока база принимает пакет, тело запроса
+ * не читается, и клиент, заполнив буферы соединения, ждет. Поэтому память зависит от размера пакета
+ * и длины строки, а не от размера тела. Длину строки ограничивает поток, из которого читает парсер (LineInput).
+ * Ошибка разбора, валидации, несуществующий запрос или отказ базы отклоняют только свою строку.
+ * Результаты строк передаются в results в порядке строк
+ */
+@Component
+@Slf4j
+public class ItemImporter {
+
+    private final ItemRepository repository;
+    private final ItemRequestRepository requestRepository;
+    private final ItemMapper itemMapper;
+    private final Validator validator;
+    private final ObjectReader reader;
+    private final TransactionTemplate transactionTemplate;
+    private final ItemSearchBackend searchBackend;
+    private final ItemSearchCache searchCache;
+    private final int batchSize;
+    private final int maxLineLength;
+
+    public ItemImporter(ItemRepository repository,
+                        ItemRequestRepository requestRepository,
+                        ItemMapper itemMapper,
+                        Validator validator,
+                        ObjectMapper objectMapper,
+                        TransactionTemplate transactionTemplate,
+                        ItemSearchBackend searchBackend,
+                        ItemSearchCache searchCache,
+                        @Value("${shareit.item.import.batch-size:50}") int batchSize,
+                        @Value("${shareit.item.import.max-line-length:65536}") int maxLineLength) {
+        this.repository = repository;
+        this.requestRepository = requestRepository;
+        this.itemMapper = itemMapper;
+        this.validator = validator;
+        this.reader = objectMapper.readerFor(ItemDto.class);
+        this.transactionTemplate = transactionTemplate;
+        this.searchBackend = searchBackend;
+        this.searchCache = searchCache;
+        this.batchSize = batchSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Импортирует вещи из body, владелец вещей - owner. Пустые строки пропускаются.
+     * Каждый пакет сохраняется в своей транзакции, сохраненные пакеты не откатываются при ошибке в следующих
+     */
+    public void importItems(User owner, InputStream body, Consumer<ItemImportResultDto> results) throws IOException {
+        LineInput input = new LineInput(new BufferedInputStream(body), maxLineLength);
+        List<Line> batch = new ArrayList<>(batchSize);
+        MappingIterator<ItemDto> values = input.open(reader);
+        while (true) {
+            Line line;
+            try {
+                if (!values.hasNextValue()) break;
+                line = toLine(input.lineNumber, owner, values.nextValue());
+            } catch (JsonProcessingException e) {
+                log.warn("Строка {} импорта не разобрана: {}", input.lineNumber, e.getOriginalMessage());
+                line = Line.failed(input.lineNumber, HttpStatus.BAD_REQUEST, "неверный JSON: " + e.getOriginalMessage());
+                values = input.reopen(values, reader);
+            } catch (MalformedLine e) {
+                log.warn("Строка {} импорта отклонена: {}", input.lineNumber, e.getMessage());
+                line = Line.failed(input.lineNumber, HttpStatus.BAD_REQUEST, e.getMessage());
+                values = input.reopen(values, reader);
+            }
+            batch.add(line);
+            if (batch.size() >= batchSize) {
+                flush(batch, results);
+            }
+        }
+        values.close();
+        flush(batch, results);
+    }
+
+    private Line toLine(long lineNumber, User owner, ItemDto itemDto) {
+        if (itemDto == null) {
+            log.warn("Строка {} импорта не содержит вещи", lineNumber);
+            return Line.failed(lineNumber, HttpStatus.BAD_REQUEST, "строка не содержит вещи");
+        }
+        String violations = validator.validate(itemDto, OnCreateGroup.class).stream()
+                .map(violation -> (violation.getPropertyPath().toString() + " " + violation.getMessage()).trim())
+                .sorted()
+                .collect(Collectors.joining(", "));
+        if (!violations.isEmpty()) {
+            log.warn("Вещь {} из строки {} импорта не прошла валидацию: {}", itemDto, lineNumber, violations);
+            return Line.failed(lineNumber, HttpStatus.BAD_REQUEST, violations);
+        }
+        Item item = itemMapper.dtoToModel(itemDto);
+        //номер вещи назначает база, владелец - автор импорта
+        item.setId(0);
+        item.setOwner(owner);
+        return new Line(lineNumber, item);
+    }
+
+    /**
+     * Сохраняет вещи пакета одной транзакцией и передает результаты строк пакета.
+     * Если база отклонила пакет, его строки сохраняются по одной, чтобы ошибку получила только своя строка
+     */
+    private void flush(List<Line> batch, Consumer<ItemImportResultDto> results) {
+        if (batch.isEmpty()) return;
+        rejectUnknownRequests(batch);
+        List<Line> valid = batch.stream().filter(line -> line.item != null).collect(Collectors.toList());
+        if (!valid.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> save(valid));
+                valid.forEach(line -> line.status = HttpStatus.OK);
+            } catch (DataAccessException e) {
+                if (valid.size() == 1) {
+                    reject(valid.get(0), e);
+                } else {
+                    log.warn("Пакет строк {}-{} импорта отклонен базой данных, строки сохраняются по одной: {}",
+                            batch.get(0).number, batch.get(batch.size() - 1).number, e.getMessage());
+                    valid.forEach(line -> saveLine(line));
+                }
+            }
+        }
+        batch.forEach(line -> results.accept(line.toResult()));
+        batch.clear();
+    }
+
+    private void saveLine(Line line) {
+        //номер, выданный вещи в откаченной транзакции пакета, не используется
+        line.item.setId(0);
+        try {
+            transactionTemplate.executeWithoutResult(status -> save(List.of(line)));
+            line.status = HttpStatus.OK;
+        } catch (DataAccessException e) {
+            reject(line, e);
+        }
+    }
+
+    private void reject(Line line, DataAccessException e) {
+        log.warn("Строка {} импорта отклонена базой данных: {}", line.number, e.getMessage());
+        line.fail(HttpStatus.BAD_REQUEST, "вещь отклонена базой данных");
+    }
+
+    private void save(List<Line> valid) {
+        List<Item> saved = repository.saveAll(valid.stream().map(line -> line.item).collect(Collectors.toList()));
+        repository.flush();
+        saved.forEach(searchBackend::index);
+        searchCache.onItemChanged();
+    }
+
+    /**
+     * Отклоняет строки с несуществующим запросом одним запросом к базе на пакет,
+     * иначе ограничение внешнего ключа отклонило бы весь пакет
+     */
+    private void rejectUnknownRequests(List<Line> batch) {
+        Set<Long> requestIds = batch.stream()
+                .filter(line -> line.item != null && line.item.getRequest() != null)
+                .map(line -> line.item.getRequest().getId())
+                .collect(Collectors.toSet());
+        if (requestIds.isEmpty()) return;
+        Set<Long> existing = new HashSet<>(requestRepository.findExistingIds(requestIds));
+        for (Line line : batch) {
+            if (line.item == null || line.item.getRequest() == null) continue;
+            long requestId = line.item.getRequest().getId();
+            if (!existing.contains(requestId)) {
+                log.warn("Запрос с id: {} из строки {} импорта отсутствует", requestId, line.number);
+                line.fail(HttpStatus.NOT_FOUND, "Запрос с id: " + requestId + " отсутствует");
+            }
+        }
+    }
+
+    /**
+     * Тело импорта, из которого читает парсер. Одно чтение не заходит за конец строки, а следующая строка
+     * не отдается, пока парсер внутри значения, поэтому в буфере парсера только байты текущей строки
+     * и значение не может занять несколько строк. Строка длиннее maxLineLength байт прерывает чтение.
+     * После ошибки парсер с остатком строки отбрасывается, и разбор продолжается новым парсером
+     * со следующей строки
+     */
+    private static final class LineInput extends InputStream {
+        private final InputStream input;
+        private final int maxLineLength;
+        private JsonParser parser;
+        private long lineNumber;
+        private int lineLength;
+        private boolean lineEnded = true;
+
+        private LineInput(InputStream input, int maxLineLength) {
+            this.input = input;
+            this.maxLineLength = maxLineLength;
+        }
+
+        private MappingIterator<ItemDto> open(ObjectReader reader) throws IOException {
+            //определяя кодировку, новый парсер читает начало тела до того, как станет текущим
+            parser = null;
+            parser = reader.createParser(this);
+            return reader.readValues(parser);
+        }
+
+        private MappingIterator<ItemDto> reopen(MappingIterator<ItemDto> values, ObjectReader reader)
+                throws IOException {
+            values.close();
+            while (!lineEnded) {
+                int next = input.read();
+                lineEnded = next == -1 || next == '\n';
+            }
+            return open(reader);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (lineEnded && parser != null && !parser.getParsingContext().inRoot()) {
+                throw new MalformedLine("вещь не закончена в конце строки");
+            }
+            int count = 0;
+            while (count < length && !(lineEnded && count > 0)) {
+                int next = input.read();
+                if (next == -1) break;
+                if (lineEnded) {
+                    lineNumber++;
+                    lineLength = 0;
+                    lineEnded = false;
+                }
+                if (next == '\n') {
+                    lineEnded = true;
+                } else if (++lineLength > maxLineLength) {
+                    throw new MalformedLine("строка длиннее " + maxLineLength + " байт");
+                }
+                buffer[offset + count++] = (byte) next;
+            }
+            return count == 0 ? -1 : count;
+        }
+    }
+
+    /**
+     * Строка, которую нельзя разобрать: слишком длинная или с незаконченной вещью
+     */
+    private static final class MalformedLine extends IOException {
+        private MalformedLine(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Line {
+        private final long number;
+        private Item item;
+        private HttpStatus status;
+        private String error;
+
+        private Line(long number, Item item) {
+            this.number = number;
+            this.item = item;
+        }
+
+        private static Line failed(long number, HttpStatus status, String error) {
+            Line line = new Line(number, null);
+            line.fail(status, error);
+            return line;
+        }
+
+        private void fail(HttpStatus status, String error) {
+            this.item = null;
+            this.status = status;
+            this.error = error;
+        }
+
+        private ItemImportResultDto toResult() {
+            return ItemImportResultDto.builder()
+                    .line(number)
+                    .status(status.value())
+                    .itemId(item == null ? null : item.getId())
+                    .error(error)
+                    .build();
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package ru.practicum.shareit.item.service;
 
 import org.springframework.data.domain.Pageable;
+import ru.practicum.shareit.booking.FreeSlot;
 import ru.practicum.shareit.comment.dto.CommentInDto;
 import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.etag.Snapshot;
 import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
 import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ItemService {
     /**
@@ -28,26 +39,72 @@ public interface ItemService {
     ItemDto updateItem(long userId, long itemId, ItemDto itemDto);
 
     /**
-     * Метод пролучения объекта из хранилища по id
+     * Метод импорта вещей пользователя из потока NDJSON: по одной вещи ItemDto в строке.
+     * Результат каждой строки передается в results в порядке строк
      *
-     * @param itemId id объекта класса Item
+     * @throws NoFoundException если объект с userId не существует
+     */
+    void importItems(long userId, InputStream body, Consumer<ItemImportResultDto> results) throws IOException;
+
+    /**
+     * Метод пролучения объекта из хранилища по id вместе с моментом, до которого он действителен
+     *
+     * @param itemId  id объекта класса Item
+     * @param version версия вещи, прочитанная до сборки карточки (при проверке ETag)
      * @throws NoFoundException если объект с переданным id отсутствует в хранилище
      */
-    ItemWithBookingAndCommentDto getItemOfId(long userId, long itemId);
+    Snapshot<ItemWithBookingAndCommentDto> getItemOfId(long userId, long itemId, long version);
+
+    /**
+     * Метод получения вещей по списку номеров. Результаты возвращаются в порядке номеров,
+     * для отсутствующей вещи - результат со статусом NOT_FOUND
+     */
+    List<ItemBatchResultDto> getItemsOfIds(long userId, List<Long> itemIds);
 
     /**
      * Метод возвращает список объектов у которых поле Owner соответствет преданному параметру
+     * вместе с моментом, до которого он действителен
      *
      * @param userId id объекта класса User
      */
-    List<ItemWithBookingAndCommentDto> getItems(long userId, Pageable pageRequest);
+    Snapshot<List<ItemWithBookingAndCommentDto>> getItems(long userId, Pageable pageRequest);
+
+    /**
+     * Метод возвращает страницу вещей владельца после курсора after (по id).
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException если объект с userId не существует
+     */
+    Snapshot<List<ItemWithBookingAndCommentDto>> getItems(long userId, SeekCursor after, int size);
 
     /**
      * Метод возвращает список объектов из хранилища в поле name и description
-     * которых встречается подстрока передаваемая в качестве параметра.
+     * которых встречается подстрока передаваемая в качестве параметра, и курсор следующей страницы.
      * Если ничего не найдено, то возвращается пустой список
      */
-    List<ItemDto> getItemOfText(long userId, String text, Pageable pageRequest);
+    SeekPage<ItemDto> getItemOfText(long userId, String text, Pageable pageRequest);
+
+    /**
+     * Метод возвращает страницу результата поиска после курсора after и курсор следующей страницы
+     */
+    SeekPage<ItemDto> getItemOfText(long userId, String text, SeekCursor after, int size);
 
     CommentOutDto addComment(long userId, long itemId, CommentInDto commentInDto);
+
+    /**
+     * Метод возвращает страницу комментариев вещи от новых к старым.
+     * Если передан курсор after, страница выбирается после него
+     *
+     * @throws NoFoundException    если переданные userId и itemId невалидны
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    List<CommentOutDto> getComments(long userId, long itemId, SeekCursor after, int size);
+
+    /**
+     * Метод возвращает свободные для бронирования окна вещи внутри периода [from, to)
+     *
+     * @throws NoFoundException    если переданные userId и itemId невалидны
+     * @throws ValidationException если начало периода не раньше его окончания
+     */
+    List<FreeSlot> getAvailability(long userId, long itemId, LocalDateTime from, LocalDateTime to);
 }
\ No newline at end of file
@@ -2,30 +2,53 @@ package ru.practicum.shareit.item.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.shareit.booking.BookingService;
+import ru.practicum.shareit.booking.FreeSlot;
+import ru.practicum.shareit.booking.dto.BookingForItemDto;
 import ru.practicum.shareit.comment.Comment;
 import ru.practicum.shareit.comment.CommentRepository;
 import ru.practicum.shareit.comment.dto.CommentInDto;
 import ru.practicum.shareit.comment.dto.CommentOutDto;
-import ru.practicum.shareit.comment.mapper.CommentListMapper;
+import ru.practicum.shareit.comment.dto.CommentView;
 import ru.practicum.shareit.comment.mapper.CommentMapper;
+import ru.practicum.shareit.etag.Snapshot;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
+import ru.practicum.shareit.item.dto.ItemVersion;
 import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
 import ru.practicum.shareit.item.dtoMapper.ItemListMapper;
 import ru.practicum.shareit.item.dtoMapper.ItemMapper;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.search.ItemSearchBackend;
+import ru.practicum.shareit.item.search.ItemSearchCache;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 import ru.practicum.shareit.user.mapperDto.UserMapper;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Сервисный класс для работы с объектами класса Item
@@ -35,6 +58,11 @@ import java.util.List;
 @Slf4j
 public class ItemServiceImpl implements ItemService {
 
+    /**
+     * Сколько последних комментариев встраивается в карточку вещи, остальные доступны постранично
+     */
+    public static final int EMBEDDED_COMMENTS_LIMIT = 10;
+
     private final ItemMapper itemMapper;
     private final ItemListMapper itemListMapper;
     private final UserService userService;
@@ -43,7 +71,10 @@ public class ItemServiceImpl implements ItemService {
     private final BookingService bookingService;
     private final CommentRepository commentRepository;
     private final CommentMapper commentMapper;
-    private final CommentListMapper commentListMapper;
+    private final ItemSearchBackend searchBackend;
+    private final ItemSearchCache searchCache;
+    private final ItemDetailCache detailCache;
+    private final ItemImporter importer;
 
 
     /**
@@ -54,17 +85,35 @@ public class ItemServiceImpl implements ItemService {
      * @throws NoFoundException если объект с userId не существует
      */
     @Override
+    @Transactional
     public ItemDto createItem(ItemDto itemDto, long userId) {
         Item item = itemMapper.dtoToModel(itemDto);
         //проверяем userId
         User user = userService.findUserByIdForValid(userId);
         //полностью заполняем поле owner
         item.setOwner(user);
-        return itemMapper.modelToDto(repository.save(item));
+        Item saved = repository.save(item);
+        searchBackend.index(saved);
+        searchCache.onItemChanged();
+        return itemMapper.modelToDto(saved);
+    }
+
+    /**
+     * Метод импорта вещей пользователя из потока NDJSON. Пользователь проверяется один раз,
+     * вещи сохраняются пакетами (см. ItemImporter)
+     *
+     * @throws NoFoundException если объект с userId не существует
+     */
+    @Override
+    public void importItems(long userId, InputStream body, Consumer<ItemImportResultDto> results)
+            throws IOException {
+        User owner = userService.findUserByIdForValid(userId);
+        importer.importItems(owner, body, results);
     }
 
     /**
-     * Метод для обновления данных об объекте в базе данных
+     * Метод для обновления данных об объекте в базе данных.
+     * Версия вещи, входящая в ETag ответов с ней, увеличивается в той же транзакции
      *
      * @param itemDto данные для обновления
      * @param itemId  id обновляемого объекта
@@ -72,6 +121,7 @@ public class ItemServiceImpl implements ItemService {
      * @throws NoFoundException если объект с userId не существует
      */
     @Override
+    @Transactional
     public ItemDto updateItem(long userId, long itemId, ItemDto itemDto) {
         Item newItem = itemMapper.dtoToModel(itemDto);
         //неявно проверяем что userId валидно
@@ -81,10 +131,10 @@ public class ItemServiceImpl implements ItemService {
             throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
         });
         if (oldItem.getOwner().getId() != userId) {
-            log.warn("только хозяин может редактировать данные о вещи {}", oldItem.toString());
-            throw new ValidationException("только хозяин может редактировать данные о вещи " + oldItem.toString());
+            log.warn("только хозяин может редактировать данные о вещи с id {}", itemId);
+            throw new ValidationException("только хозяин может редактировать данные о вещи с id " + itemId);
         }
-        Item item = repository.save(
+        Item saved = repository.save(
                 Item.builder()
                         .id(itemId)
                         .name(newItem.getName() == null ? oldItem.getName() : newItem.getName())
@@ -96,30 +146,37 @@ public class ItemServiceImpl implements ItemService {
                         .request(newItem.getRequest() == null ?
                                 oldItem.getRequest() : newItem.getRequest())
                         .build());
-
-        return itemMapper.modelToDto(repository.save(item));
+        searchBackend.index(saved);
+        searchCache.onItemChanged();
+        repository.incrementVersion(itemId);
+        return itemMapper.modelToDto(saved);
     }
 
     /**
-     * Метод пролучения объекта из хранилища по id
+     * Метод пролучения объекта из хранилища по id.
+     * Собранная карточка вещи кэшируется в ItemDetailCache вместе с версией вещи,
+     * прочитанной вызывающим до сборки, и выдается из кэша, пока версия в базе не изменилась
      *
-     * @param itemId id объекта класса Item
+     * @param itemId  id объекта класса Item
+     * @param version версия вещи, прочитанная при проверке ETag
      * @throws NoFoundException если объект с переданным id отсутствует в хранилище
      */
     @Override
-    public ItemWithBookingAndCommentDto getItemOfId(long userId, long itemId) {
-        ItemWithBookingAndCommentDto item = itemMapper.modelToDtoWithBooking(repository.findById(itemId).orElseThrow(() -> {
+    @Transactional(readOnly = true)
+    public Snapshot<ItemWithBookingAndCommentDto> getItemOfId(long userId, long itemId, long version) {
+        Snapshot<ItemWithBookingAndCommentDto> cached = detailCache.find(itemId, userId, version);
+        if (cached != null) return cached;
+        ItemWithBookingAndCommentDto item = itemMapper.modelToDtoWithBooking(repository
+                .findWithOwnerAndRequestById(itemId).orElseThrow(() -> {
             log.warn("Вещь с id: {} отсутствует", itemId);
             throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
         }));
-        if (userId == item.getOwner().getId()) {
-            item.setLastBooking(bookingService.getLastByItem(item.getId()));
-            item.setNextBooking(bookingService.getNextByItem(item.getId()));
-        }
-        item.setComments(commentListMapper.modelsToInDtos(commentRepository
-                .findCommentsByItemId(item.getId())));
-        return item;
-
+        boolean isOwner = userId == item.getOwner().getId();
+        //момент смены бронирований берем до их чтения, чтобы не пропустить начавшееся между ними
+        LocalDateTime validUntil = isOwner ? bookingService.getBookingsValidUntil(itemId) : null;
+        fillBookingsAndComments(List.of(item), dto -> isOwner);
+        detailCache.put(itemId, item, userId, validUntil, version);
+        return new Snapshot<>(item, validUntil);
     }
 
     /**
@@ -128,45 +185,146 @@ public class ItemServiceImpl implements ItemService {
      * @param userId id объекта класса User
      */
     @Override
-    public List<ItemWithBookingAndCommentDto> getItems(long userId, Pageable pageRequest) {
+    @Transactional(readOnly = true)
+    public Snapshot<List<ItemWithBookingAndCommentDto>> getItems(long userId, Pageable pageRequest) {
         User owner = userService.findUserByIdForValid(userId);
         List<ItemWithBookingAndCommentDto> items =
                 itemListMapper.modelsToDtoWithBookings(repository.findItemsByOwnerEqualsOrderById(owner, pageRequest));
-        List<ItemWithBookingAndCommentDto> itemsWithBooking = new ArrayList<>();
-        for (ItemWithBookingAndCommentDto item : items) {
-            item.setLastBooking(bookingService.getLastByItem(item.getId()));
-            item.setNextBooking(bookingService.getNextByItem(item.getId()));
-            item.setComments(commentListMapper.modelsToInDtos(commentRepository
-                    .findCommentsByItemId(item.getId())));
-            itemsWithBooking.add(item);
-        }
-        return itemsWithBooking;
+        return fillOwnerPage(items);
+    }
 
+    /**
+     * Метод возвращает страницу вещей владельца после курсора after (по id).
+     * Страница выбирается условием id > after.id по индексу ix_items_owner, а не смещением
+     *
+     * @throws NoFoundException если объект с userId не существует
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Snapshot<List<ItemWithBookingAndCommentDto>> getItems(long userId, SeekCursor after, int size) {
+        User owner = userService.findUserByIdForValid(userId);
+        List<ItemWithBookingAndCommentDto> items = itemListMapper.modelsToDtoWithBookings(repository
+                .findItemsByOwnerEqualsAndIdGreaterThanOrderById(owner, after.getId(), PageRequest.of(0, size)));
+        return fillOwnerPage(items);
+    }
 
+    /**
+     * Метод получения вещей по списку номеров. Версии всех вещей читаются одним запросом,
+     * вещи, карточек текущей версии которых нет в ItemDetailCache, загружаются вторым,
+     * бронирования (для вещей пользователя) и комментарии заполняются пакетно.
+     * Загруженные карточки сохраняются в кэше.
+     * Результаты возвращаются в порядке номеров, для отсутствующей вещи - со статусом NOT_FOUND
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ItemBatchResultDto> getItemsOfIds(long userId, List<Long> itemIds) {
+        Map<Long, ItemWithBookingAndCommentDto> found = new HashMap<>();
+        Map<Long, Long> versions = new HashMap<>();
+        for (ItemVersion version : repository.findVersionsByIdIn(new HashSet<>(itemIds))) {
+            Snapshot<ItemWithBookingAndCommentDto> cached =
+                    detailCache.find(version.getId(), userId, version.getVersion());
+            if (cached != null) {
+                found.put(version.getId(), cached.getValue());
+            } else {
+                versions.put(version.getId(), version.getVersion());
+            }
+        }
+        if (!versions.isEmpty()) {
+            List<ItemWithBookingAndCommentDto> loaded = itemListMapper.modelsToDtoWithBookings(
+                    repository.findAllWithOwnerAndRequestByIdIn(versions.keySet()));
+            //момент смены бронирований берем до их чтения, чтобы не пропустить начавшееся между ними
+            Map<Long, LocalDateTime> validUntil = bookingService.getBookingsValidUntil(loaded.stream()
+                    .filter(item -> item.getOwner().getId() == userId)
+                    .map(ItemWithBookingAndCommentDto::getId)
+                    .collect(Collectors.toList()));
+            fillBookingsAndComments(loaded, item -> item.getOwner().getId() == userId);
+            for (ItemWithBookingAndCommentDto item : loaded) {
+                detailCache.put(item.getId(), item, userId, validUntil.get(item.getId()),
+                        versions.get(item.getId()));
+                found.put(item.getId(), item);
+            }
+        }
+        return itemIds.stream()
+                .map(itemId -> {
+                    ItemWithBookingAndCommentDto item = found.get(itemId);
+                    if (item == null) log.warn("Вещь с id: {} отсутствует", itemId);
+                    return ItemBatchResultDto.builder()
+                            .itemId(itemId)
+                            .status(item == null ? ItemBatchResultDto.Status.NOT_FOUND
+                                    : ItemBatchResultDto.Status.FOUND)
+                            .item(item)
+                            .build();
+                })
+                .collect(Collectors.toList());
     }
 
     /**
      * Метод возвращает список объектов из хранилища в поле name и description
      * которых встречается подстрока передаваемая в качестве параметра.
+     * Номера подходящих доступных вещей ищет выбранный в настройках ItemSearchBackend,
+     * сами вещи загружаются одним запросом. Страницы результата кэшируются в ItemSearchCache.
      * Если ничего не найдено, то возвращается пустой список
      */
     @Override
-    public List<ItemDto> getItemOfText(long userId, String text, Pageable pageRequest) {
-        if (text.isBlank()) return new ArrayList<>();
-        User owner = userService.findUserByIdForValid(userId);
-        return itemListMapper.modelsToDtos(repository
-                .findItemsByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCaseAndAvailableIsTrueOrderById(
-                        text, text, pageRequest));
+    @Transactional(readOnly = true)
+    public SeekPage<ItemDto> getItemOfText(long userId, String text, Pageable pageRequest) {
+        if (text.isBlank()) return new SeekPage<>(new ArrayList<>(), null);
+        //неявно проверяем что userId валидно
+        userService.findUserByIdForValid(userId);
+        return searchCache.get(text, pageRequest.getOffset(), pageRequest.getPageSize(), () -> loadPage(
+                searchBackend.search(text, pageRequest.getOffset(), pageRequest.getPageSize()),
+                pageRequest.getPageSize()));
+    }
+
+    /**
+     * Метод возвращает страницу результата поиска после курсора after
+     * в порядке выдачи выбранного ItemSearchBackend.
+     * Курсор следующей страницы - курсор последней найденной вещи: номер или ранг и номер
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public SeekPage<ItemDto> getItemOfText(long userId, String text, SeekCursor after, int size) {
+        if (text.isBlank()) return new SeekPage<>(new ArrayList<>(), null);
+        //неявно проверяем что userId валидно
+        userService.findUserByIdForValid(userId);
+        return searchCache.getAfter(text, after, size,
+                () -> loadPage(searchBackend.searchAfter(text, after, size), size));
+    }
+
+    /**
+     * Загружает найденные вещи одним запросом в порядке выдачи.
+     * Если найдено size вещей, курсор следующей страницы - курсор последней из них
+     */
+    private SeekPage<ItemDto> loadPage(List<SeekCursor> found, int size) {
+        SeekCursor next = found.size() < size ? null : found.get(found.size() - 1);
+        return new SeekPage<>(loadInOrder(found.stream()
+                .map(SeekCursor::getId)
+                .collect(Collectors.toList())), next);
     }
 
     /**
-     * Метод добавления комментария к вещи
+     * Загружает вещи одним запросом и возвращает их в порядке ids
+     */
+    private List<ItemDto> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        Map<Long, Item> items = repository.findAllWithOwnerByIdIn(ids).stream()
+                .collect(Collectors.toMap(Item::getId, Function.identity()));
+        return itemListMapper.modelsToDtos(ids.stream()
+                .map(items::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Метод добавления комментария к вещи. Счетчик комментариев и версия вещи
+     * увеличиваются в той же транзакции
      *
      * @throws NoFoundException    если переданные userId и itemId невалидны
      * @throws ValidationException если автор комментания не бронировал вещь
      *                             которую комметрировал
      */
     @Override
+    @Transactional
     public CommentOutDto addComment(long userId, long itemId, CommentInDto commentInDto) {
         //проверяем валидность itemId и userId
         User user = userService.findUserByIdForValid(userId);
@@ -174,17 +332,118 @@ public class ItemServiceImpl implements ItemService {
             log.warn("Вещь с id: {} отсутствует", itemId);
             throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
         });
-        if (bookingService.findAllFinishByItemByUser(userId, itemId).isEmpty()) {
+        if (!bookingService.hasFinishedBooking(userId, itemId)) {
             log.warn("Юзер c id {} не может добавить комментарий," +
                     " т.к. он не бронировал вещь c id {}", userId, itemId);
             throw new ValidationException("Юзер c id " + userId + " не может добавить" +
                     " комментарий, т.к. он не бронировал вещь c id " + itemId);
         }
-        return commentMapper.modelToOutDto(commentRepository.save(Comment.builder()
+        Comment comment = commentRepository.save(Comment.builder()
                 .text(commentInDto.getText())
                 .item(item)
                 .author(user)
                 .created(LocalDateTime.now())
-                .build()));
+                .build());
+        repository.incrementCommentCount(itemId);
+        return commentMapper.modelToOutDto(comment);
+    }
+
+    /**
+     * Метод возвращает страницу комментариев вещи от новых к старым.
+     * Если передан курсор after, страница выбирается после него
+     *
+     * @throws NoFoundException    если переданные userId и itemId невалидны
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<CommentOutDto> getComments(long userId, long itemId, SeekCursor after, int size) {
+        //неявно проверяем что userId валидно
+        userService.findUserByIdForValid(userId);
+        if (!repository.existsById(itemId)) {
+            log.warn("Вещь с id: {} отсутствует", itemId);
+            throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
+        }
+        PageRequest pageRequest = PageRequest.of(0, size);
+        if (after == null) return commentRepository.findPageByItemId(itemId, pageRequest);
+        if (after.getTime() == null) {
+            log.warn("Некорректный курсор комментариев: {}", after);
+            throw new ValidationException("Некорректный курсор комментариев: " + after.encode());
+        }
+        return commentRepository.findPageByItemIdAfter(itemId, after.getTime(), after.getId(), pageRequest);
+    }
+
+    /**
+     * Метод возвращает свободные для бронирования окна вещи внутри периода [from, to).
+     * У недоступной для бронирования вещи свободных окон нет
+     *
+     * @throws NoFoundException    если переданные userId и itemId невалидны
+     * @throws ValidationException если начало периода не раньше его окончания
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<FreeSlot> getAvailability(long userId, long itemId, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            log.warn("Начало периода {} должно быть раньше окончания {}", from, to);
+            throw new ValidationException("Начало периода " + from + " должно быть раньше окончания " + to);
+        }
+        //неявно проверяем что userId валидно
+        userService.findUserByIdForValid(userId);
+        Item item = repository.findById(itemId).orElseThrow(() -> {
+            log.warn("Вещь с id: {} отсутствует", itemId);
+            throw new NoFoundException("Вешь с id: " + itemId + " отсутствует");
+        });
+        if (!Boolean.TRUE.equals(item.getAvailable())) return new ArrayList<>();
+        return bookingService.getFreeSlots(itemId, from, to);
+    }
+
+    /**
+     * Заполняет бронирования и комментарии для страницы вещей владельца.
+     * Страница действительна до ближайшего из моментов смены бронирований ее вещей
+     */
+    private Snapshot<List<ItemWithBookingAndCommentDto>> fillOwnerPage(List<ItemWithBookingAndCommentDto> items) {
+        if (items.isEmpty()) return new Snapshot<>(items, null);
+        //момент смены бронирований берем до их чтения, чтобы не пропустить начавшееся между ними
+        LocalDateTime validUntil = bookingService.getBookingsValidUntil(items.stream()
+                        .map(ItemWithBookingAndCommentDto::getId)
+                        .collect(Collectors.toList())).values().stream()
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        return new Snapshot<>(fillBookingsAndComments(items, dto -> true), validUntil);
+    }
+
+    /**
+     * Заполняет бронирования и комментарии для страницы вещей.
+     * Независимо от размера страницы выполняется не больше трех запросов:
+     * последние бронирования, следующие бронирования и комментарии
+     *
+     * @param withBookings для каких вещей заполнять бронирования (только для владельца вещей)
+     */
+    private List<ItemWithBookingAndCommentDto> fillBookingsAndComments(List<ItemWithBookingAndCommentDto> items,
+                                                                       Predicate<ItemWithBookingAndCommentDto>
+                                                                               withBookings) {
+        if (items.isEmpty()) return items;
+        List<Long> itemIds = items.stream()
+                .map(ItemWithBookingAndCommentDto::getId)
+                .collect(Collectors.toList());
+        List<Long> bookedIds = items.stream()
+                .filter(withBookings)
+                .map(ItemWithBookingAndCommentDto::getId)
+                .collect(Collectors.toList());
+        Map<Long, BookingForItemDto> lastBookings = bookedIds.isEmpty() ?
+                new HashMap<>() : bookingService.getLastByItems(bookedIds);
+        Map<Long, BookingForItemDto> nextBookings = bookedIds.isEmpty() ?
+                new HashMap<>() : bookingService.getNextByItems(bookedIds);
+        Map<Long, List<CommentOutDto>> comments = commentRepository
+                .findLatestByItemIdIn(itemIds, EMBEDDED_COMMENTS_LIMIT).stream()
+                .collect(Collectors.groupingBy(CommentView::getItemId,
+                        Collectors.mapping(commentMapper::viewToOutDto, Collectors.toList())));
+        for (ItemWithBookingAndCommentDto item : items) {
+            item.setLastBooking(lastBookings.get(item.getId()));
+            item.setNextBooking(nextBookings.get(item.getId()));
+            item.setComments(comments.getOrDefault(item.getId(), new ArrayList<>()));
+        }
+        return items;
     }
 }
@@ -0,0 +1,61 @@
+package ru.practicum.shareit.ndjson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Запись объектов в ответ в формате NDJSON: по одному JSON-объекту в строке.
+ * Объекты пишутся одним генератором в буфер ответа без промежуточных коллекций.
+ * Тип ответа устанавливается при первой записи, поэтому ошибка, возникшая до нее,
+ * обрабатывается ErrorHandler как обычно
+ */
+public class NdjsonWriter<T> implements Consumer<T> {
+
+    private final HttpServletResponse response;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private JsonGenerator generator;
+
+    public NdjsonWriter(HttpServletResponse response, ObjectMapper objectMapper) {
+        this.response = response;
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public void accept(T value) {
+        try {
+            open();
+            writer.writeValue(generator, value);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает буфер генератора в ответ. Поток ответа закрывает контейнер сервлетов
+     */
+    public void finish() throws IOException {
+        open();
+        generator.flush();
+    }
+
+    private void open() throws IOException {
+        if (generator != null) return;
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+    }
+}
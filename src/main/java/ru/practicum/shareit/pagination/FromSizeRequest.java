@@ -0,0 +1,37 @@
+package ru.practicum.shareit.pagination;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Запрос страницы по параметрам from и size.
+ * В отличие от PageRequest.of(from / size, size) смещение равно ровно from,
+ * даже если from не кратно size
+ */
+public class FromSizeRequest extends PageRequest {
+
+    private final int from;
+
+    public FromSizeRequest(int from, int size) {
+        super(from / size, size, Sort.unsorted());
+        this.from = from;
+    }
+
+    @Override
+    public long getOffset() {
+        return from;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof FromSizeRequest)) return false;
+        FromSizeRequest that = (FromSizeRequest) obj;
+        return from == that.from && getPageSize() == that.getPageSize();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * from + getPageSize();
+    }
+}
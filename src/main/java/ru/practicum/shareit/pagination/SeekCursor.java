@@ -0,0 +1,67 @@
+package ru.practicum.shareit.pagination;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.shareit.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Курсор постраничной выдачи методом поиска (keyset pagination).
+ * Хранит ключ сортировки последнего элемента страницы - момент времени (может отсутствовать) и id,
+ * поэтому следующая страница выбирается условием по индексу, а не смещением.
+ * Для выдачи, упорядоченной по релевантности, ключ дополнительно содержит ранг последнего элемента.
+ * Клиенту передается непрозрачной строкой в заголовке {@link #NEXT_CURSOR_HEADER}
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Slf4j
+public class SeekCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final char SEPARATOR = '|';
+
+    private final LocalDateTime time;
+    private final long id;
+    /**
+     * Ранг релевантности последнего элемента, null - если выдача упорядочена не по рангу
+     */
+    private final Float rank;
+
+    public SeekCursor(LocalDateTime time, long id) {
+        this(time, id, null);
+    }
+
+    public String encode() {
+        String raw = (time == null ? "" : time.toString()) + SEPARATOR + id;
+        if (rank != null) raw += SEPARATOR + rank.toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws ValidationException если строка не является курсором
+     */
+    public static SeekCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(Pattern.quote(String.valueOf(SEPARATOR)), -1);
+            if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("wrong number of parts");
+            Float rank = parts.length == 3 ? Float.valueOf(parts[2]) : null;
+            if (rank != null && !Float.isFinite(rank)) throw new IllegalArgumentException("rank is not finite");
+            return new SeekCursor(parts[0].isEmpty() ? null : LocalDateTime.parse(parts[0]),
+                    Long.parseLong(parts[1]), rank);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            log.warn("Некорректный курсор: {}", token);
+            throw new ValidationException("Некорректный курсор: " + token);
+        }
+    }
+}
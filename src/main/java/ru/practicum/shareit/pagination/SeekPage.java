@@ -0,0 +1,24 @@
+package ru.practicum.shareit.pagination;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Страница выдачи вместе с курсором следующей страницы
+ */
+@Getter
+@RequiredArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class SeekPage<T> {
+
+    private final List<T> content;
+    /**
+     * Курсор по последнему элементу полной страницы, null - если страница последняя
+     */
+    private final SeekCursor next;
+}
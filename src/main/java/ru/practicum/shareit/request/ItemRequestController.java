@@ -1,13 +1,18 @@
 package ru.practicum.shareit.request;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingRequestHeaderException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import ru.practicum.shareit.etag.ResourceETags;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
+import ru.practicum.shareit.user.UserService;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
@@ -24,6 +29,8 @@ import java.util.List;
 public class ItemRequestController {
 
     private final ItemRequestService service;
+    private final ResourceETags etags;
+    private final UserService userService;
 
     /**
      * Метод создания запроса
@@ -39,37 +46,51 @@ public class ItemRequestController {
 
     /**
      * Метод возвращает список запросов созданных Юзезом.
-     * К каждому запросу прикреплен список вещей созданных под этот запрос
+     * К каждому запросу прикреплен список вещей созданных под этот запрос.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor
      *
      * @throws MethodArgumentNotValidException если аргументы не прошли валидацию
      * @throws MissingRequestHeaderException   если отсутствует аргумент в заголовке
      */
     @GetMapping
-    public List<ItemRequestWithItemsForThisReqDto>
+    public ResponseEntity<List<ItemRequestWithItemsForThisReqDto>>
     getUserRequestsWithItem(@RequestHeader("X-Sharer-User-Id") long userId,
                             @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                            @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return service.getReqUserWithItemsForThisReq(userId, PageRequest.of(from / size, size));
+                            @RequestParam(required = false, defaultValue = "10") @Positive int size,
+                            @RequestParam(required = false) String after) {
+        List<ItemRequestWithItemsForThisReqDto> requests = after == null
+                ? service.getReqUserWithItemsForThisReq(userId, new FromSizeRequest(from, size))
+                : service.getReqUserWithItemsForThisReq(userId, SeekCursor.decode(after), size);
+        return withNextCursor(requests, size);
     }
 
     /**
      * Метод возвращает список запросов созданных другими Юзерами.
-     * К каждому запросу прикреплен список вещей созданных под этот запрос
+     * К каждому запросу прикреплен список вещей созданных под этот запрос.
+     * Если передан курсор after, страница выбирается после него и параметр from игнорируется.
+     * Курсор следующей страницы возвращается в заголовке X-Next-Cursor
      *
      * @throws MethodArgumentNotValidException если аргументы не прошли валидацию
      * @throws MissingRequestHeaderException   если отсутствует аргумент в заголовке
      */
     @GetMapping("/all")
-    public List<ItemRequestWithItemsForThisReqDto>
+    public ResponseEntity<List<ItemRequestWithItemsForThisReqDto>>
     getAllRequestsWithItem(@RequestHeader("X-Sharer-User-Id") long userId,
                            @RequestParam(required = false, defaultValue = "0") @Min(0) int from,
-                           @RequestParam(required = false, defaultValue = "10") @Positive int size) {
-        return service.getReqAllWithItemsForThisReq(userId, PageRequest.of(from / size, size));
+                           @RequestParam(required = false, defaultValue = "10") @Positive int size,
+                           @RequestParam(required = false) String after) {
+        List<ItemRequestWithItemsForThisReqDto> requests = after == null
+                ? service.getReqAllWithItemsForThisReq(userId, new FromSizeRequest(from, size))
+                : service.getReqAllWithItemsForThisReq(userId, SeekCursor.decode(after), size);
+        return withNextCursor(requests, size);
     }
 
     /**
      * Метод возвращает запрос по его Id.
-     * К запросу прикреплен список вещей созданных под этот запрос
+     * К запросу прикреплен список вещей созданных под этот запрос.
+     * Если ETag из If-None-Match совпадает с текущим, после проверки пользователя
+     * возвращается 304 без обращения к сервису
      *
      * @throws MethodArgumentNotValidException если аргументы не прошли валидацию
      * @throws MissingRequestHeaderException   если отсутствует аргумент в заголовке
@@ -77,7 +98,22 @@ public class ItemRequestController {
     @GetMapping("/{requestId}")
     public ItemRequestWithItemsForThisReqDto
     getRequestById(@RequestHeader("X-Sharer-User-Id") long userId,
-                   @PathVariable("requestId") @Positive long requestId) {
+                   @PathVariable("requestId") @Positive long requestId,
+                   WebRequest request) {
+        userService.findUserByIdForValid(userId);
+        if (request.checkNotModified(etags.request(userId, requestId))) return null;
         return service.getReqById(userId, requestId);
     }
+
+    /**
+     * Если страница заполнена полностью, добавляет в ответ курсор по последнему запросу
+     */
+    private ResponseEntity<List<ItemRequestWithItemsForThisReqDto>>
+    withNextCursor(List<ItemRequestWithItemsForThisReqDto> requests, int size) {
+        if (requests.size() < size) return ResponseEntity.ok(requests);
+        ItemRequestWithItemsForThisReqDto last = requests.get(requests.size() - 1);
+        return ResponseEntity.ok()
+                .header(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(last.getCreated(), last.getId()).encode())
+                .body(requests);
+    }
 }
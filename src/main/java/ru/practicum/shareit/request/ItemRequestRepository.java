@@ -1,13 +1,50 @@
 package ru.practicum.shareit.request;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface ItemRequestRepository extends JpaRepository<ItemRequest, Long> {
 
-    List<ItemRequest> findAllByRequestorIdOrderByCreatedDesc(Long userId, Pageable pageable);
+    @EntityGraph(attributePaths = "requestor")
+    List<ItemRequest> findAllByRequestorIdOrderByCreatedDescIdDesc(Long userId, Pageable pageable);
 
-    List<ItemRequest> findAllByRequestorIdIsNotOrderByCreatedDesc(Long userId, Pageable pageable);
+    @EntityGraph(attributePaths = "requestor")
+    List<ItemRequest> findAllByRequestorIdIsNotOrderByCreatedDescIdDesc(Long userId, Pageable pageable);
+
+    /**
+     * Страница запросов пользователя после курсора (created, id), от новых к старым
+     */
+    @Query("SELECT r FROM ItemRequest AS r " +
+            "WHERE r.requestor.id = ?1 AND (r.created < ?2 OR (r.created = ?2 AND r.id < ?3)) " +
+            "ORDER BY r.created DESC, r.id DESC")
+    @EntityGraph(attributePaths = "requestor")
+    List<ItemRequest> findAllByRequestorIdAfter(long userId, LocalDateTime created, long id, Pageable pageable);
+
+    /**
+     * Страница запросов других пользователей после курсора (created, id), от новых к старым
+     */
+    @Query("SELECT r FROM ItemRequest AS r " +
+            "WHERE r.requestor.id <> ?1 AND (r.created < ?2 OR (r.created = ?2 AND r.id < ?3)) " +
+            "ORDER BY r.created DESC, r.id DESC")
+    @EntityGraph(attributePaths = "requestor")
+    List<ItemRequest> findAllByRequestorIdIsNotAfter(long userId, LocalDateTime created, long id, Pageable pageable);
+
+    /**
+     * Запрос вместе с автором
+     */
+    @EntityGraph(attributePaths = "requestor")
+    Optional<ItemRequest> findWithRequestorById(long id);
+
+    /**
+     * Номера существующих запросов из переданных, без загрузки самих запросов
+     */
+    @Query("SELECT r.id FROM ItemRequest AS r WHERE r.id IN ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
 }
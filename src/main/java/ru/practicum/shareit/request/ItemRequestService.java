@@ -2,6 +2,8 @@ package ru.practicum.shareit.request;
 
 import org.springframework.data.domain.PageRequest;
 import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
 
@@ -25,6 +27,15 @@ public interface ItemRequestService {
     List<ItemRequestWithItemsForThisReqDto>
     getReqUserWithItemsForThisReq(long userId, PageRequest pageRequest);
 
+    /**
+     * Метод возвращает страницу запросов созданных Юзезом после курсора after (created, id)
+     *
+     * @throws NoFoundException    если пользователь с userId не существует
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    List<ItemRequestWithItemsForThisReqDto>
+    getReqUserWithItemsForThisReq(long userId, SeekCursor after, int size);
+
     /**
      * Метод возвращает список запросов созданных другими Юзерами.
      * К каждому запросу прикреплен список вещей созданных под этот запрос
@@ -34,6 +45,15 @@ public interface ItemRequestService {
     List<ItemRequestWithItemsForThisReqDto>
     getReqAllWithItemsForThisReq(long userId, PageRequest pageRequest);
 
+    /**
+     * Метод возвращает страницу запросов других Юзеров после курсора after (created, id)
+     *
+     * @throws NoFoundException    если пользователь с userId не существует
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    List<ItemRequestWithItemsForThisReqDto>
+    getReqAllWithItemsForThisReq(long userId, SeekCursor after, int size);
+
     /**
      * Метод возвращает запрос по его Id.
      * К запросу прикреплен список вещей созданных под этот запрос
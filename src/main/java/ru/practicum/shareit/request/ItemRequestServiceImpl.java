@@ -4,10 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
-import ru.practicum.shareit.item.dtoMapper.ItemListMapper;
-import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.dto.ItemForRequestDto;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
 import ru.practicum.shareit.request.mapperDto.ItemRequestMapper;
@@ -15,7 +17,10 @@ import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,7 +31,6 @@ public class ItemRequestServiceImpl implements ItemRequestService {
     private final ItemRequestRepository repository;
     private final ItemRepository itemRepository;
     private final ItemRequestMapper mapper;
-    private final ItemListMapper itemListMapper;
     private final UserService userService;
 
     /**
@@ -35,10 +39,13 @@ public class ItemRequestServiceImpl implements ItemRequestService {
      * @throws NoFoundException если пользователь с userId не существует
      */
     @Override
+    @Transactional
     public ItemRequestDto create(long userId, ItemRequestDto itemRequestDto) {
         User user = userService.findUserByIdForValid(userId);
         ItemRequest itemRequest = mapper.dtoToModel(itemRequestDto);
-        itemRequest.setCreated(LocalDateTime.now());
+        //база хранит микросекунды: момент создания из ответа должен совпадать с сохраненным, иначе курсор по нему
+        //не исключит сам запрос
+        itemRequest.setCreated(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
         itemRequest.setRequestor(user);
         ItemRequest itemRequestAfterSave = repository.save(itemRequest);
         return mapper.modelToDto(itemRequestAfterSave);
@@ -51,19 +58,26 @@ public class ItemRequestServiceImpl implements ItemRequestService {
      * @throws NoFoundException если пользователь с userId не существует
      */
     @Override
+    @Transactional(readOnly = true)
     public List<ItemRequestWithItemsForThisReqDto> getReqUserWithItemsForThisReq(long userId, PageRequest pageRequest) {
         userService.findUserByIdForValid(userId);
-        List<ItemRequest> itemRequest = repository.findAllByRequestorIdOrderByCreatedDesc(userId, pageRequest);
-        return itemRequest.stream()
-                .map(i -> {
-                    List<Item> items = itemRepository.findAllByRequestId(i.getId());
-                    ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto
-                            = mapper.modelToDtoWithListOfItem(i);
-                    itemRequestWithItemsForThisReqDto
-                            .setItems(itemListMapper.modelsToDtosForRequest(items));
-                    return itemRequestWithItemsForThisReqDto;
-                })
-                .collect(Collectors.toList());
+        return withItems(repository.findAllByRequestorIdOrderByCreatedDescIdDesc(userId, pageRequest));
+    }
+
+    /**
+     * Метод возвращает страницу запросов созданных Юзезом после курсора after (created, id)
+     *
+     * @throws NoFoundException    если пользователь с userId не существует
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ItemRequestWithItemsForThisReqDto> getReqUserWithItemsForThisReq(long userId, SeekCursor after,
+                                                                                  int size) {
+        userService.findUserByIdForValid(userId);
+        checkCursor(after);
+        return withItems(repository.findAllByRequestorIdAfter(userId, after.getTime(), after.getId(),
+                PageRequest.of(0, size)));
     }
 
     /**
@@ -73,19 +87,27 @@ public class ItemRequestServiceImpl implements ItemRequestService {
      * @throws NoFoundException если пользователь с userId не существует
      */
     @Override
+    @Transactional(readOnly = true)
     public List<ItemRequestWithItemsForThisReqDto> getReqAllWithItemsForThisReq(long userId, PageRequest pageRequest) {
         userService.findUserByIdForValid(userId);
-        List<ItemRequest> itemRequest = repository.findAllByRequestorIdIsNotOrderByCreatedDesc(userId, pageRequest);
-        return itemRequest.stream()
-                .map(i -> {
-                    List<Item> items = itemRepository.findAllByRequestId(i.getId());
-                    ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto
-                            = mapper.modelToDtoWithListOfItem(i);
-                    itemRequestWithItemsForThisReqDto
-                            .setItems(itemListMapper.modelsToDtosForRequest(items));
-                    return itemRequestWithItemsForThisReqDto;
-                })
-                .collect(Collectors.toList());
+        return withItems(repository.findAllByRequestorIdIsNotOrderByCreatedDescIdDesc(userId, pageRequest));
+    }
+
+    /**
+     * Метод возвращает страницу запросов других Юзеров после курсора after (created, id).
+     * Стоимость запроса не зависит от глубины страницы
+     *
+     * @throws NoFoundException    если пользователь с userId не существует
+     * @throws ValidationException если в курсоре нет момента создания
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ItemRequestWithItemsForThisReqDto> getReqAllWithItemsForThisReq(long userId, SeekCursor after,
+                                                                                 int size) {
+        userService.findUserByIdForValid(userId);
+        checkCursor(after);
+        return withItems(repository.findAllByRequestorIdIsNotAfter(userId, after.getTime(), after.getId(),
+                PageRequest.of(0, size)));
     }
 
     /**
@@ -95,17 +117,41 @@ public class ItemRequestServiceImpl implements ItemRequestService {
      * @throws NoFoundException если пользователь с userId или запрос с requestId не существует
      */
     @Override
+    @Transactional(readOnly = true)
     public ItemRequestWithItemsForThisReqDto getReqById(long userId, long requestId) {
         userService.findUserByIdForValid(userId);
-        ItemRequest itemRequest = repository.findById(requestId).orElseThrow(() -> {
+        ItemRequest itemRequest = repository.findWithRequestorById(requestId).orElseThrow(() -> {
             log.warn("Запрос на вещь с id {} не найден", requestId);
             throw new NoFoundException("Запрос на вещь с id " + requestId + " не найден");
         });
-        ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto =
-                mapper.modelToDtoWithListOfItem(itemRequest);
-        List<Item> items = itemRepository.findAllByRequestId(requestId);
-        itemRequestWithItemsForThisReqDto
-                .setItems(itemListMapper.modelsToDtosForRequest(items));
-        return itemRequestWithItemsForThisReqDto;
+        return withItems(List.of(itemRequest)).get(0);
+    }
+
+    /**
+     * Прикрепляет к запросам страницы вещи, созданные под них.
+     * Вещи всех запросов загружаются одним запросом и группируются по номеру запроса
+     */
+    private List<ItemRequestWithItemsForThisReqDto> withItems(List<ItemRequest> itemRequests) {
+        if (itemRequests.isEmpty()) return new ArrayList<>();
+        Map<Long, List<ItemForRequestDto>> items = itemRepository.findAllByRequestIdIn(itemRequests.stream()
+                        .map(ItemRequest::getId)
+                        .collect(Collectors.toList())).stream()
+                .collect(Collectors.groupingBy(ItemForRequestDto::getRequestId));
+        return itemRequests.stream()
+                .map(itemRequest -> {
+                    ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto
+                            = mapper.modelToDtoWithListOfItem(itemRequest);
+                    itemRequestWithItemsForThisReqDto
+                            .setItems(items.getOrDefault(itemRequest.getId(), new ArrayList<>()));
+                    return itemRequestWithItemsForThisReqDto;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private void checkCursor(SeekCursor after) {
+        if (after.getTime() == null) {
+            log.warn("Некорректный курсор запросов: {}", after);
+            throw new ValidationException("Некорректный курсор запросов: " + after.encode());
+        }
     }
 }
@@ -1,6 +1,16 @@
 package ru.practicum.shareit.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 public interface UserRepository extends JpaRepository<User, Long>  {
+
+    /**
+     * Увеличивает версию пользователя, из которой строятся ETag. Колонка не отображается в сущность,
+     * поэтому сохранение пользователя, собранного заново, ее не сбрасывает
+     */
+    @Modifying
+    @Query(value = "UPDATE users SET version = version + 1 WHERE id = ?1", nativeQuery = true)
+    int incrementVersion(long userId);
 }
@@ -3,8 +3,10 @@ package ru.practicum.shareit.user;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.mapperDto.UserListMapper;
 import ru.practicum.shareit.user.mapperDto.UserMapper;
@@ -19,6 +21,7 @@ public class UserServiceImpl implements UserService {
     private final UserMapper userMapper;
     private final UserListMapper userListMapper;
     private final UserRepository repository;
+    private final ItemRepository itemRepository;
 
     /**
      * запись в репозитория нового объекта класса User с присвоением нового id
@@ -32,12 +35,15 @@ public class UserServiceImpl implements UserService {
     }
 
     /**
-     * обновление данных объекта класса User
+     * обновление данных объекта класса User.
+     * Версия пользователя, входящая в ETag ответов с ним, увеличивается в той же транзакции,
+     * как и версии вещей, в карточки которых входит его имя
      *
      * @throws java.sql.SQLException если объект с таким емаил уже существует
      * @throws NoFoundException      передан id не существующего объекта
      */
     @Override
+    @Transactional
     public UserDto updateUser(UserDto userDto, long id) {
         if ((userDto.getId() != null) && (userDto.getId() != id)) {
             log.warn("Юзер c id: {} не может изменить данные юзера: {}", id, userDto.toString());
@@ -54,6 +60,8 @@ public class UserServiceImpl implements UserService {
                         .name(newUser.getName() == null ? oldUser.getName() : newUser.getName())
                         .email(newUser.getEmail() == null ? oldUser.getEmail() : newUser.getEmail())
                         .build());
+        repository.incrementVersion(id);
+        itemRepository.incrementVersionByUserId(id);
         return userMapper.modelToDto(user);
     }
 
@@ -0,0 +1,19 @@
+CREATE TABLE IF NOT EXISTS bookings (
+    id BIGINT PRIMARY KEY,
+    start_date TIMESTAMP,
+    end_date TIMESTAMP,
+    item_id BIGINT,
+    booker_id BIGINT,
+    status VARCHAR(50),
+    version BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT fr_item_id FOREIGN KEY(item_id) REFERENCES items(id),
+    CONSTRAINT fr_booker_id FOREIGN KEY(booker_id) REFERENCES users(id)
+);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_start ON bookings (booker_id, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_status_start ON bookings (booker_id, status, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_item_start ON bookings (item_id, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_item_end ON bookings (booker_id, item_id, end_date);
@@ -0,0 +1,196 @@
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DO '
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY[''users'', ''item_requests'', ''items'', ''bookings'', ''comments''] LOOP
+        IF EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_name = t AND column_name = ''id'' AND is_identity = ''YES'') THEN
+            EXECUTE format(''ALTER TABLE %I ALTER COLUMN id DROP IDENTITY'', t);
+            EXECUTE format(''SELECT setval(%L, (SELECT COALESCE(MAX(id), 0) + 50 FROM %I))'', t || ''_seq'', t);
+        END IF;
+    END LOOP;
+END';
+
+-- счетчик комментариев вещи: для схем прежних версий колонка добавляется и заполняется один раз
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_name = ''items'' AND column_name = ''comment_count'') THEN
+        ALTER TABLE items ADD COLUMN comment_count BIGINT NOT NULL DEFAULT 0;
+        UPDATE items SET comment_count = (SELECT COUNT(*) FROM comments c WHERE c.item_id = items.id);
+    END IF;
+END';
+
+-- до появления ограничения исключения пересекающиеся бронирования вещи не запрещались.
+-- Перед созданием ограничения пересечения прежних версий разрешаются детерминированно:
+-- из пересекающихся активных (WAITING, APPROVED) бронирований вещи остается подтвержденное,
+-- при равных статусах - созданное раньше (меньший id), остальные переводятся в REJECTED.
+-- Активные бронирования с окончанием раньше начала ограничение не примет, они отклоняются так же.
+-- Номера отклоненных бронирований выводятся в журнал предупреждениями
+DO '
+DECLARE
+    ids BIGINT[];
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_class WHERE relname = ''bookings'' AND relkind = ''r'') THEN
+        RETURN;
+    END IF;
+    WITH rejected AS (
+        UPDATE bookings SET status = ''REJECTED''
+        WHERE status IN (''WAITING'', ''APPROVED'') AND start_date > end_date
+        RETURNING id)
+    SELECT array_agg(id ORDER BY id) INTO ids FROM rejected;
+    IF ids IS NOT NULL THEN
+        RAISE WARNING ''Отклонены бронирования с окончанием раньше начала: %'', ids;
+    END IF;
+    LOOP
+        WITH rejected AS (
+            UPDATE bookings AS b SET status = ''REJECTED''
+            WHERE b.status IN (''WAITING'', ''APPROVED'')
+              AND EXISTS (SELECT 1 FROM bookings AS w
+                          WHERE w.item_id = b.item_id AND w.id <> b.id
+                            AND w.status IN (''WAITING'', ''APPROVED'')
+                            AND tsrange(w.start_date, w.end_date) && tsrange(b.start_date, b.end_date)
+                            AND (w.status = ''APPROVED'', -w.id) > (b.status = ''APPROVED'', -b.id)
+                            AND NOT EXISTS (SELECT 1 FROM bookings AS h
+                                            WHERE h.item_id = w.item_id AND h.id <> w.id
+                                              AND h.status IN (''WAITING'', ''APPROVED'')
+                                              AND tsrange(h.start_date, h.end_date)
+                                                  && tsrange(w.start_date, w.end_date)
+                                              AND (h.status = ''APPROVED'', -h.id)
+                                                  > (w.status = ''APPROVED'', -w.id)))
+            RETURNING b.id)
+        SELECT array_agg(id ORDER BY id) INTO ids FROM rejected;
+        EXIT WHEN ids IS NULL;
+        RAISE WARNING ''Отклонены бронирования, пересекавшиеся с более приоритетными: %'', ids;
+    END LOOP;
+END';
+
+-- bookings секционирована по месяцам окончания бронирования: CURRENT и FUTURE (end_date > now)
+-- читают только свежие секции, PAST - старые. Месячные секции создает BookingPartitionMaintainer,
+-- строки вне созданных секций попадают в bookings_default.
+-- Несекционированная таблица из прежних версий схемы переносится в секционированную
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''bookings'' AND relkind = ''r'') THEN
+        ALTER TABLE bookings RENAME TO bookings_unpartitioned;
+        ALTER TABLE bookings_unpartitioned DROP CONSTRAINT IF EXISTS ex_bookings_item_period;
+        ALTER TABLE bookings_unpartitioned DROP CONSTRAINT IF EXISTS fr_item_id;
+        ALTER TABLE bookings_unpartitioned DROP CONSTRAINT IF EXISTS fr_booker_id;
+        DROP INDEX IF EXISTS ix_bookings_booker_start;
+        DROP INDEX IF EXISTS ix_bookings_booker_status_start;
+        DROP INDEX IF EXISTS ix_bookings_item_start;
+    END IF;
+END';
+
+CREATE TABLE IF NOT EXISTS bookings (
+    id BIGINT NOT NULL,
+    start_date TIMESTAMP,
+    end_date TIMESTAMP NOT NULL,
+    item_id BIGINT,
+    booker_id BIGINT,
+    status VARCHAR(50),
+    version BIGINT NOT NULL DEFAULT 0,
+    CONSTRAINT pk_bookings PRIMARY KEY (id, end_date),
+    CONSTRAINT fr_item_id FOREIGN KEY(item_id) REFERENCES items(id),
+    CONSTRAINT fr_booker_id FOREIGN KEY(booker_id) REFERENCES users(id)
+) PARTITION BY RANGE (end_date);
+
+CREATE TABLE IF NOT EXISTS bookings_default PARTITION OF bookings DEFAULT;
+
+-- ключ секционирования end_date обязателен. Бронированию прежних версий без окончания
+-- оно назначается равным началу, бронирования без обеих дат не переносятся и остаются
+-- в bookings_unpartitioned для ручного разбора, о чем при каждом запуске выводится предупреждение.
+-- Версия бронирования переносится, чтобы не сбросить ETag, в таблице без версии она равна 0
+DO '
+DECLARE
+    changed BIGINT;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''bookings_unpartitioned'') THEN
+        UPDATE bookings_unpartitioned SET end_date = start_date
+        WHERE end_date IS NULL AND start_date IS NOT NULL;
+        GET DIAGNOSTICS changed = ROW_COUNT;
+        IF changed > 0 THEN
+            RAISE WARNING ''Бронированиям без окончания назначено окончание, равное началу: %'', changed;
+        END IF;
+        ALTER TABLE bookings_unpartitioned ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+        WITH moved AS (
+            DELETE FROM bookings_unpartitioned WHERE end_date IS NOT NULL
+            RETURNING id, start_date, end_date, item_id, booker_id, status, version)
+        INSERT INTO bookings (id, start_date, end_date, item_id, booker_id, status, version)
+            SELECT id, start_date, end_date, item_id, booker_id, status, version FROM moved;
+        SELECT COUNT(*) INTO changed FROM bookings_unpartitioned;
+        IF changed = 0 THEN
+            DROP TABLE bookings_unpartitioned;
+        ELSE
+            RAISE WARNING ''В bookings_unpartitioned остались бронирования без дат: %'', changed;
+        END IF;
+    END IF;
+END';
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_start ON bookings (booker_id, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_status_start ON bookings (booker_id, status, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_item_start ON bookings (item_id, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_bookings_booker_item_end ON bookings (booker_id, item_id, end_date);
+
+-- ограничение исключения не поддерживается секционированной таблицей и создается в каждой секции.
+-- Пересечения прежних версий разрешены выше, но если они все же остались, ограничение
+-- не создается и запуск не прерывается: пересечения запрещает триггер tr_bookings_item_period
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ''ex_bookings_default_item_period'') THEN
+        ALTER TABLE bookings_default ADD CONSTRAINT ex_bookings_default_item_period
+            EXCLUDE USING gist (item_id WITH =, tsrange(start_date, end_date) WITH &&)
+            WHERE (status IN (''WAITING'', ''APPROVED''));
+    END IF;
+EXCEPTION WHEN exclusion_violation THEN
+    RAISE WARNING ''Ограничение ex_bookings_default_item_period не создано: %'', SQLERRM;
+END';
+
+-- ограничение исключения проверяет только свою секцию, а бронирования одной вещи с окончанием
+-- в разных месяцах лежат в разных секциях. Пересечения во всей таблице, в том числе между
+-- узлами приложения, запрещает триггер: он берет транзакционную advisory-блокировку вещи
+-- и ищет пересекающееся активное бронирование во всех секциях по индексу ix_bookings_item_start.
+-- Ошибка имеет код 23P01, как нарушение ограничения исключения. Смена статуса между WAITING
+-- и APPROVED не меняет занятый период и не проверяется
+CREATE OR REPLACE FUNCTION bookings_check_item_period() RETURNS trigger AS '
+BEGIN
+    IF NEW.status NOT IN (''WAITING'', ''APPROVED'') THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP = ''UPDATE'' AND OLD.status IN (''WAITING'', ''APPROVED'') AND OLD.item_id = NEW.item_id
+            AND OLD.start_date IS NOT DISTINCT FROM NEW.start_date AND OLD.end_date = NEW.end_date THEN
+        RETURN NULL;
+    END IF;
+    PERFORM pg_advisory_xact_lock(hashtext(''bookings_item_period''), hashtext(NEW.item_id::text));
+    IF EXISTS (SELECT 1 FROM bookings
+               WHERE item_id = NEW.item_id AND id <> NEW.id
+                 AND status IN (''WAITING'', ''APPROVED'')
+                 AND tsrange(start_date, end_date) && tsrange(NEW.start_date, NEW.end_date)) THEN
+        RAISE EXCEPTION ''Бронирование % пересекается с другим бронированием вещи %'', NEW.id, NEW.item_id
+            USING ERRCODE = ''exclusion_violation'';
+    END IF;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS tr_bookings_item_period ON bookings;
+
+CREATE TRIGGER tr_bookings_item_period
+    AFTER INSERT OR UPDATE OF status, item_id, start_date, end_date ON bookings
+    FOR EACH ROW EXECUTE FUNCTION bookings_check_item_period();
+
+-- поиск вещей (shareit.item.search.backend=postgres): подстрока по триграммам, релевантность по tsvector
+ALTER TABLE items ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(name_item, '') || ' ' || coalesce(description, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS ix_items_search_vector ON items USING gin (search_vector);
+
+CREATE INDEX IF NOT EXISTS ix_items_name_trgm ON items USING gin (lower(name_item) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS ix_items_description_trgm ON items USING gin (lower(description) gin_trgm_ops);
@@ -1,12 +1,23 @@
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS item_requests_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS items_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS bookings_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS comments_seq START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS users (
-    id BIGINT GENERATED ALWAYS as IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     name_user VARCHAR(100),
     email VARCHAR(320),
+    version BIGINT NOT NULL DEFAULT 0,
     CONSTRAINT uq_email UNIQUE (email)
     );
 
 CREATE TABLE IF NOT EXISTS item_requests (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     description VARCHAR(1000),
     requestor_id BIGINT,
     created TIMESTAMP,
@@ -14,33 +25,50 @@ CREATE TABLE IF NOT EXISTS item_requests (
 );
 
 CREATE TABLE IF NOT EXISTS items (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     name_item VARCHAR(100),
     description VARCHAR(1000),
     available BOOLEAN,
     owner_id BIGINT,
     request_id BIGINT,
+    comment_count BIGINT NOT NULL DEFAULT 0,
+    version BIGINT NOT NULL DEFAULT 0,
     CONSTRAINT fk_owner_id FOREIGN KEY(owner_id) REFERENCES users(id),
     CONSTRAINT fk_reqiests_id FOREIGN KEY(request_id) REFERENCES item_requests(id)
 );
 
-CREATE TABLE IF NOT EXISTS bookings (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
-    start_date TIMESTAMP,
-    end_date TIMESTAMP,
-    item_id BIGINT,
-    booker_id BIGINT,
-    status VARCHAR(50),
-    CONSTRAINT fr_item_id FOREIGN KEY(item_id) REFERENCES items(id),
-    CONSTRAINT fr_booker_id FOREIGN KEY(booker_id) REFERENCES users(id)
-);
-
 CREATE TABLE IF NOT EXISTS comments (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     text VARCHAR(1000),
     item_id BIGINT,
     author_id BIGINT,
     created TIMESTAMP,
     CONSTRAINT fr_item_comment_id FOREIGN KEY(item_id) REFERENCES items(id),
     CONSTRAINT fr_author_id FOREIGN KEY(author_id) REFERENCES users(id)
-);
\ No newline at end of file
+);
+
+-- версии пользователей и вещей, из которых строятся ETag: для схем прежних версий колонки добавляются
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE items ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS ix_items_owner ON items (owner_id, id);
+
+CREATE INDEX IF NOT EXISTS ix_items_request ON items (request_id, id);
+
+CREATE INDEX IF NOT EXISTS ix_item_requests_requestor_created ON item_requests (requestor_id, created DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_item_requests_created ON item_requests (created DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS ix_comments_item_created ON comments (item_id, created DESC, id DESC);
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    id VARCHAR(300) PRIMARY KEY,
+    request_hash VARCHAR(64) NOT NULL,
+    status INTEGER,
+    content_type VARCHAR(200),
+    body BYTEA,
+    created TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_idempotency_keys_created ON idempotency_keys (created);
@@ -7,30 +7,47 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
+import ru.practicum.shareit.booking.dto.BookingBulkDecisionDto;
+import ru.practicum.shareit.booking.dto.BookingBulkResultDto;
 import ru.practicum.shareit.booking.dto.BookingDto;
 import ru.practicum.shareit.booking.dto.SimpleBookingDto;
+import ru.practicum.shareit.etag.ResourceETags;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.user.UserService;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static ru.practicum.shareit.booking.BookingStatus.ALL;
 import static ru.practicum.shareit.booking.BookingStatus.PAST;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
 
 @WebMvcTest(controllers = BookingController.class)
 class BookingControllerTest {
 
     @MockBean
     private BookingService service;
+    @MockBean
+    private ResourceETags etags;
+    @MockBean
+    private UserService userService;
 
     @Autowired
     private ObjectMapper mapper;
@@ -193,6 +210,40 @@ class BookingControllerTest {
         verifyNoInteractions(service);
     }
 
+    @Test
+    @SneakyThrows
+    void getBookingDtoById_whenETagIsNotChanged_thenReturnNotModifiedWithoutService() {
+        when(etags.booking(2L, 1L)).thenReturn("tag");
+        mvc.perform(get("/bookings/{bookingId}", 1L)
+                        .header("X-Sharer-User-Id", "2")
+                        .header("If-None-Match", "\"tag\""))
+                .andExpect(status().isNotModified());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoById_whenUserIsNotParticipant_thenReturnNotFoundEvenIfETagMatches() {
+        when(etags.booking(2L, 1L)).thenThrow(new NoFoundException("бронирование недоступно"));
+        mvc.perform(get("/bookings/{bookingId}", 1L)
+                        .header("X-Sharer-User-Id", "2")
+                        .header("If-None-Match", "\"tag\""))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoById_whenUserNotFound_thenReturnNotFoundEvenIfETagMatches() {
+        when(etags.booking(2L, 1L)).thenReturn("tag");
+        when(userService.findUserByIdForValid(2L)).thenThrow(new NoFoundException("нет пользователя"));
+        mvc.perform(get("/bookings/{bookingId}", 1L)
+                        .header("X-Sharer-User-Id", "2")
+                        .header("If-None-Match", "\"tag\""))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(service);
+    }
+
     @Test
     @SneakyThrows
     void getBookingDtoById_whenUserIdIsNotValid_thenThrowException() {
@@ -216,7 +267,7 @@ class BookingControllerTest {
                         .param("size", "5"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).findAllForBooker(2L, PAST, PageRequest.of(6, 5));
+        verify(service).findAllForBooker(2L, PAST, new FromSizeRequest(30, 5));
     }
 
     @Test
@@ -228,7 +279,7 @@ class BookingControllerTest {
                         .header("X-Sharer-User-Id", "2"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).findAllForBooker(2L, ALL, PageRequest.of(0, 10));
+        verify(service).findAllForBooker(2L, ALL, new FromSizeRequest(0, 10));
     }
 
     @Test
@@ -284,7 +335,7 @@ class BookingControllerTest {
                         .param("from", "30")
                         .param("size", "5"))
                 .andExpect(status().is(404));
-        verify(service).findAllForBooker(2L, PAST, PageRequest.of(6, 5));
+        verify(service).findAllForBooker(2L, PAST, new FromSizeRequest(30, 5));
     }
 
 
@@ -300,7 +351,7 @@ class BookingControllerTest {
                         .param("size", "5"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).findAllForOwner(2L, PAST, PageRequest.of(6, 5));
+        verify(service).findAllForOwner(2L, PAST, new FromSizeRequest(30, 5));
     }
 
     @Test
@@ -312,7 +363,7 @@ class BookingControllerTest {
                         .header("X-Sharer-User-Id", "2"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).findAllForOwner(2L, ALL, PageRequest.of(0, 10));
+        verify(service).findAllForOwner(2L, ALL, new FromSizeRequest(0, 10));
     }
 
     @Test
@@ -368,7 +419,175 @@ class BookingControllerTest {
                         .param("from", "30")
                         .param("size", "5"))
                 .andExpect(status().is(404));
-        verify(service).findAllForOwner(2L, PAST, PageRequest.of(6, 5));
+        verify(service).findAllForOwner(2L, PAST, new FromSizeRequest(30, 5));
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoByState_whenFromIsNotMultipleOfSize_thenOffsetEqFrom() {
+        when(service.findAllForBooker(anyLong(), any(), any())).thenReturn(List.of(bookingDto));
+        mvc.perform(get("/bookings")
+                        .header("X-Sharer-User-Id", "2")
+                        .param("from", "3")
+                        .param("size", "2"))
+                .andExpect(status().isOk());
+        verify(service).findAllForBooker(eq(2L), eq(ALL), argThat(pageable -> pageable.getOffset() == 3));
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoByState_whenPageIsFull_thenReturnNextCursor() {
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        BookingDto last = BookingDto.builder().id(7L).start(start).build();
+        when(service.findAllForBooker(anyLong(), any(), any())).thenReturn(List.of(bookingDto, last));
+        mvc.perform(get("/bookings")
+                        .header("X-Sharer-User-Id", "2")
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(start, 7L).encode()));
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoByOwner_whenSendCursor_thenSeekAfterCursorAndPageIsNotFull() {
+        SeekCursor cursor = new SeekCursor(LocalDateTime.of(2030, 1, 1, 12, 0), 7L);
+        when(service.findAllForOwner(anyLong(), any(), any(SeekCursor.class), anyInt())).thenReturn(List.of(bookingDto));
+        String nextCursor = mvc.perform(get("/bookings/owner")
+                        .header("X-Sharer-User-Id", "2")
+                        .param("state", "WAITING")
+                        .param("after", cursor.encode())
+                        .param("size", "5"))
+                .andExpect(status().isOk()).andReturn().getResponse().getHeader(SeekCursor.NEXT_CURSOR_HEADER);
+        assertNull(nextCursor);
+        verify(service).findAllForOwner(2L, WAITING, cursor, 5);
+    }
+
+    @Test
+    @SneakyThrows
+    void getBookingDtoByState_whenCursorIsNotValid_thenServiceIsNotCallAndThrowException() {
+        mvc.perform(get("/bookings")
+                        .header("X-Sharer-User-Id", "2")
+                        .param("after", "not a cursor"))
+                .andExpect(status().is(400));
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void createBookingDtos_whenBatchIsValid_thenReturnResults() {
+        SimpleBookingDto simpleBookingDto = SimpleBookingDto.builder()
+                .itemId(1L)
+                .start(LocalDateTime.now().plusDays(1))
+                .end(LocalDateTime.now().plusDays(2))
+                .build();
+        List<BookingBatchResultDto> results = List.of(
+                BookingBatchResultDto.builder().index(0).status(200).booking(bookingDto).build());
+        when(service.createAll(anyLong(), any())).thenReturn(results);
+        String response = mvc.perform(post("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1L)
+                        .content(mapper.writeValueAsString(List.of(simpleBookingDto)))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(mapper.writeValueAsString(results), response);
+        verify(service).createAll(1L, List.of(simpleBookingDto));
+    }
+
+    @Test
+    @SneakyThrows
+    void createBookingDtos_whenBatchIsEmpty_thenServiceIsNotCallAndThrowException() {
+        mvc.perform(post("/bookings/batch")
+                        .header("X-Sharer-User-Id", 1L)
+                        .content("[]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().is(400));
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getSummaryByOwner_whenUserIsValid_thenReturnCounts() {
+        Map<BookingStatus, Long> summary = Map.of(WAITING, 2L, ALL, 5L);
+        when(service.getSummaryForOwner(anyLong())).thenReturn(summary);
+        String response = mvc.perform(get("/bookings/owner/summary")
+                        .header("X-Sharer-User-Id", "2"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(summary, mapper.readValue(response,
+                mapper.getTypeFactory().constructMapType(Map.class, BookingStatus.class, Long.class)));
+        verify(service).getSummaryForOwner(2L);
+    }
+
+    @Test
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    void exportByOwner_whenUserIsValid_thenWriteOneBookingPerLine() {
+        BookingDto first = BookingDto.builder().id(2L).status(WAITING).build();
+        BookingDto second = BookingDto.builder().id(1L).status(WAITING).build();
+        doAnswer(invocation -> {
+            Consumer<BookingDto> sink = invocation.getArgument(2);
+            sink.accept(first);
+            sink.accept(second);
+            return null;
+        }).when(service).exportForOwner(anyLong(), any(), any());
+        MockHttpServletResponse response = mvc.perform(get("/bookings/owner/export")
+                        .header("X-Sharer-User-Id", "2")
+                        .param("state", "WAITING"))
+                .andExpect(status().isOk()).andReturn().getResponse();
+        assertTrue(MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(response.getContentType())));
+        assertEquals(mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n",
+                response.getContentAsString(StandardCharsets.UTF_8));
+        verify(service).exportForOwner(eq(2L), eq(WAITING), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void exportByBooker_whenUserIsMissing_thenThrowException() {
+        doThrow(new NoFoundException("Юзер отсутствует")).when(service).exportForBooker(anyLong(), any(), any());
+        mvc.perform(get("/bookings/export")
+                        .header("X-Sharer-User-Id", "2"))
+                .andExpect(status().is(404));
+        verify(service).exportForBooker(eq(2L), eq(ALL), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void getSummaryByBooker_whenUserIsMissing_thenThrowException() {
+        when(service.getSummaryForBooker(anyLong())).thenThrow(new NoFoundException("Юзер отсутствует"));
+        mvc.perform(get("/bookings/summary")
+                        .header("X-Sharer-User-Id", "2"))
+                .andExpect(status().is(404));
+        verify(service).getSummaryForBooker(2L);
+    }
+
+    @Test
+    @SneakyThrows
+    void approvedAll_whenDecisionIsValid_thenReturnStatuses() {
+        BookingBulkDecisionDto decision = BookingBulkDecisionDto.builder()
+                .bookingIds(List.of(1L, 2L)).approved(true).build();
+        List<BookingBulkResultDto> results = List.of(
+                BookingBulkResultDto.builder().bookingId(1L).status(BookingBulkResultDto.Status.UPDATED).build(),
+                BookingBulkResultDto.builder().bookingId(2L).status(BookingBulkResultDto.Status.CONFLICT).build());
+        when(service.approvedAll(anyLong(), any(), anyBoolean())).thenReturn(results);
+        String response = mvc.perform(patch("/bookings/owner/bulk")
+                        .header("X-Sharer-User-Id", 2L)
+                        .content(mapper.writeValueAsString(decision))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(mapper.writeValueAsString(results), response);
+        verify(service).approvedAll(2L, List.of(1L, 2L), true);
     }
 
-}
\ No newline at end of file
+    @Test
+    @SneakyThrows
+    void approvedAll_whenDecisionIsMissing_thenServiceIsNotCallAndThrowException() {
+        mvc.perform(patch("/bookings/owner/bulk")
+                        .header("X-Sharer-User-Id", 2L)
+                        .content("{\"bookingIds\": [1]}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8))
+                .andExpect(status().is(400));
+        verifyNoInteractions(service);
+    }
+}
@@ -0,0 +1,167 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+import static ru.practicum.shareit.booking.BookingStatus.*;
+
+class BookingCountersTest {
+
+    private BookingRepository repository;
+    private BookingCounters counters;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(BookingRepository.class);
+        counters = new BookingCounters(repository);
+        now = LocalDate.now().atTime(12, 0);
+        when(repository.countByBookerIdGroupByStatus(2L)).thenReturn(List.of(
+                new BookingStatusCount(APPROVED, 1L),
+                new BookingStatusCount(REJECTED, 1L),
+                new BookingStatusCount(WAITING, 1L)));
+        when(repository.countByBookerIdBefore(2L, now.toLocalDate().atStartOfDay()))
+                .thenReturn(new BookingTimeCount(1L, 1L));
+        when(repository.findIntervalsByBookerIdNotEndedBefore(2L, now.toLocalDate().atStartOfDay()))
+                .thenReturn(List.of(current(), future()));
+    }
+
+    @Test
+    void summary_whenUserHasBookings_thenCountByStatusAndTime() {
+        assertEquals(Map.of(WAITING, 1L, APPROVED, 1L, REJECTED, 1L, CANCELED, 0L,
+                        CURRENT, 1L, PAST, 1L, FUTURE, 1L, ALL, 3L),
+                counters.summary(BookingQuery.Role.BOOKER, 2L, now));
+    }
+
+    @Test
+    void summary_whenUserHasNoBookings_thenZeros() {
+        when(repository.countByOwnerIdGroupByStatus(3L)).thenReturn(List.of());
+        when(repository.countByOwnerIdBefore(3L, now.toLocalDate().atStartOfDay()))
+                .thenReturn(new BookingTimeCount(null, null));
+
+        assertEquals(Map.of(WAITING, 0L, APPROVED, 0L, REJECTED, 0L, CANCELED, 0L,
+                        CURRENT, 0L, PAST, 0L, FUTURE, 0L, ALL, 0L),
+                counters.summary(BookingQuery.Role.OWNER, 3L, now));
+    }
+
+    @Test
+    void onCreatedAndOnStatusChanged_whenUserIsLoaded_thenStatusCountsAreUpdatedWithoutReload() {
+        counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        BookingInterval created = new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), WAITING);
+
+        counters.onCreated(created, 7L);
+        counters.onStatusChanged(new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), APPROVED),
+                7L, WAITING);
+
+        Map<BookingStatus, Long> summary = counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        assertEquals(1L, summary.get(WAITING));
+        assertEquals(2L, summary.get(APPROVED));
+        assertEquals(4L, summary.get(ALL));
+        verify(repository, times(1)).countByBookerIdGroupByStatus(2L);
+        verify(repository, never()).countByOwnerIdGroupByStatus(anyLong());
+    }
+
+    @Test
+    void onCreated_whenTransactionIsRolledBack_thenNotCounted() {
+        counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        BookingInterval created = new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), WAITING);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            counters.onCreated(created, 7L);
+            assertEquals(3L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(ALL));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(3L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(ALL));
+    }
+
+    @Test
+    void reconcile_whenCalled_thenCountersAreReloaded() {
+        counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        counters.onCreated(new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), WAITING), 7L);
+        counters.reconcile();
+
+        assertEquals(3L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(ALL));
+        verify(repository, times(2)).countByBookerIdGroupByStatus(2L);
+    }
+
+    @Test
+    void summary_whenTimePasses_thenStatesMoveWithoutReload() {
+        LocalDateTime start = now.plusDays(4);
+        counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        counters.onCreated(new BookingInterval(4L, 1L, 2L, start, start.plusHours(2), WAITING), 7L);
+
+        Map<BookingStatus, Long> during = counters.summary(BookingQuery.Role.BOOKER, 2L, start.plusHours(1));
+        Map<BookingStatus, Long> after = counters.summary(BookingQuery.Role.BOOKER, 2L, start.plusDays(30));
+
+        assertEquals(List.of(1L, 3L, 0L, 4L), List.of(during.get(CURRENT), during.get(PAST),
+                during.get(FUTURE), during.get(ALL)));
+        assertEquals(List.of(0L, 4L, 0L, 4L), List.of(after.get(CURRENT), after.get(PAST),
+                after.get(FUTURE), after.get(ALL)));
+        verify(repository, times(1)).countByBookerIdGroupByStatus(2L);
+    }
+
+    @Test
+    void summary_whenBookingStartsOrEndsExactlyNow_thenCountLikeListFilters() {
+        counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+        Map<BookingStatus, Long> atStart = counters.summary(BookingQuery.Role.BOOKER, 2L, future().getStart());
+        Map<BookingStatus, Long> atEnd = counters.summary(BookingQuery.Role.BOOKER, 2L, current().getEnd());
+
+        assertEquals(List.of(0L, 2L, 0L), List.of(atStart.get(CURRENT), atStart.get(PAST), atStart.get(FUTURE)));
+        assertEquals(List.of(0L, 1L, 1L), List.of(atEnd.get(CURRENT), atEnd.get(PAST), atEnd.get(FUTURE)));
+    }
+
+    @Test
+    void summary_whenBookingIsCommittedDuringLoad_thenLoadIsNotCached() {
+        BookingInterval created = new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), WAITING);
+        when(repository.countByBookerIdGroupByStatus(2L)).thenAnswer(invocation -> {
+            counters.onCreated(created, 7L);
+            return List.of(new BookingStatusCount(APPROVED, 1L));
+        }).thenReturn(List.of(new BookingStatusCount(APPROVED, 1L), new BookingStatusCount(WAITING, 1L)));
+
+        assertEquals(1L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(APPROVED));
+        assertEquals(1L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(WAITING));
+        assertEquals(1L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(WAITING));
+        verify(repository, times(2)).countByBookerIdGroupByStatus(2L);
+    }
+
+    @Test
+    void summary_whenTransactionIsRunningDuringLoad_thenLoadIsNotCachedAndCommitIsNotCountedTwice() {
+        BookingInterval created = new BookingInterval(4L, 1L, 2L, now.plusDays(4), now.plusDays(5), WAITING);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            counters.onCreated(created, 7L);
+            counters.summary(BookingQuery.Role.BOOKER, 2L, now);
+            when(repository.countByBookerIdGroupByStatus(2L)).thenReturn(List.of(
+                    new BookingStatusCount(APPROVED, 1L), new BookingStatusCount(WAITING, 2L)));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(2L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(WAITING));
+        assertEquals(2L, counters.summary(BookingQuery.Role.BOOKER, 2L, now).get(WAITING));
+        verify(repository, times(2)).countByBookerIdGroupByStatus(2L);
+    }
+
+    private BookingInterval current() {
+        return new BookingInterval(2L, 1L, 2L, now.minusHours(1), now.plusHours(1), APPROVED);
+    }
+
+    private BookingInterval future() {
+        return new BookingInterval(3L, 1L, 2L, now.plusDays(1), now.plusDays(2), WAITING);
+    }
+}
@@ -0,0 +1,88 @@
+package ru.practicum.shareit.booking;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.shareit.user.UserService;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
+
+class BookingEventBrokerTest {
+
+    private BookingEventBroker broker;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        broker = new BookingEventBroker(mock(UserService.class), 4, 60_000, 1, 8, 50);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        broker.shutdown();
+    }
+
+    @Test
+    @SneakyThrows
+    void onBookingEvent_whenOtherSubscriberIsStuck_thenStillDeliverEvent() {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(1);
+        broker.subscribe(1L, blockingEmitter(stuck));
+        broker.subscribe(2L, new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                delivered.countDown();
+            }
+        });
+
+        broker.onBookingEvent(event(1L));
+        assertTrue(stuck.await(1, TimeUnit.SECONDS));
+        broker.onBookingEvent(event(2L));
+
+        assertTrue(delivered.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @SneakyThrows
+    void heartbeat_whenSendIsStuckLongerThanTimeout_thenUnsubscribe() {
+        CountDownLatch stuck = new CountDownLatch(1);
+        broker.subscribe(1L, blockingEmitter(stuck));
+        broker.onBookingEvent(event(1L));
+        assertTrue(stuck.await(1, TimeUnit.SECONDS));
+
+        broker.heartbeat();
+        assertEquals(1, broker.countSubscriptions());
+        Thread.sleep(100);
+        broker.heartbeat();
+
+        assertEquals(0, broker.countSubscriptions());
+    }
+
+    private SseEmitter blockingEmitter(CountDownLatch stuck) {
+        return new SseEmitter() {
+            @Override
+            @SneakyThrows
+            public void send(SseEventBuilder builder) {
+                stuck.countDown();
+                release.await();
+            }
+        };
+    }
+
+    private static BookingEvent event(long recipientId) {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        return BookingEvent.created(new BookingInterval(10L, 20L, 2L, start, start.plusDays(1), WAITING),
+                recipientId);
+    }
+}
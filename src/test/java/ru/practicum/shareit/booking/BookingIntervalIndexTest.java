@@ -0,0 +1,168 @@
+package ru.practicum.shareit.booking;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static ru.practicum.shareit.booking.BookingStatus.APPROVED;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
+
+class BookingIntervalIndexTest {
+
+    private BookingRepository repository;
+    private BookingIntervalIndex index;
+    private LocalDateTime now;
+    private BookingInterval past;
+    private BookingInterval future;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(BookingRepository.class);
+        index = new BookingIntervalIndex(repository, 100, Duration.ofMinutes(5));
+        now = LocalDateTime.now();
+        past = new BookingInterval(1L, 1L, 2L, now.minusDays(3), now.minusDays(1), APPROVED);
+        future = new BookingInterval(2L, 1L, 2L, now.plusDays(1), now.plusDays(3), WAITING);
+        when(repository.findIntervalsByItemIds(any(), any())).thenReturn(List.of(future, past));
+    }
+
+    @Test
+    void overlaps_whenPeriodIntersectsBooking_thenTrue() {
+        assertTrue(index.overlaps(1L, now.plusDays(2), now.plusDays(4)));
+        assertTrue(index.overlaps(1L, now.minusDays(4), now.minusDays(2)));
+        assertTrue(index.overlaps(1L, now.minusDays(4), now.plusDays(4)));
+    }
+
+    @Test
+    void overlaps_whenPeriodIsBetweenBookings_thenFalse() {
+        assertFalse(index.overlaps(1L, now.minusDays(1), now.plusDays(1)));
+        assertFalse(index.overlaps(1L, now.plusDays(3), now.plusDays(4)));
+    }
+
+    @Test
+    void findLastAndNext_whenItemHasBookings_thenReturnNearestBookings() {
+        assertEquals(Optional.of(past), index.findLast(1L, now));
+        assertEquals(Optional.of(future), index.findNext(1L, now));
+        assertEquals(Optional.empty(), index.findLast(1L, now.minusDays(5)));
+        assertEquals(Optional.empty(), index.findNext(1L, now.plusDays(5)));
+    }
+
+    @Test
+    void findNextStart_whenItemHasFutureBooking_thenReturnItsStart() {
+        assertEquals(Optional.of(future.getStart()), index.findNextStart(1L, now));
+        assertEquals(Optional.empty(), index.findNextStart(1L, now.plusDays(2)));
+    }
+
+    @Test
+    void findValidUntil_whenNextBookingStartsBeforeReload_thenReturnItsStart() {
+        assertEquals(future.getStart(), new BookingIntervalIndex(repository, 100, Duration.ofDays(2))
+                .findValidUntil(1L, now));
+    }
+
+    @Test
+    void findValidUntil_whenReloadComesFirst_thenReturnReloadMoment() {
+        LocalDateTime validUntil = index.findValidUntil(1L, now);
+
+        assertTrue(validUntil.isBefore(future.getStart()));
+        assertFalse(validUntil.isAfter(LocalDateTime.now().plusMinutes(5)));
+    }
+
+    @Test
+    void putAndRemove_whenItemLoaded_thenIndexIsUpdatedWithoutRepository() {
+        index.load(List.of(1L));
+        BookingInterval next = new BookingInterval(3L, 1L, 2L, now.plusHours(1), now.plusHours(2), WAITING);
+
+        index.lockItem(1L, () -> index.put(next));
+        assertEquals(Optional.of(next), index.findNext(1L, now));
+
+        index.lockItem(1L, () -> index.remove(1L, 3L));
+        assertEquals(Optional.of(future), index.findNext(1L, now));
+        verify(repository, times(1)).findIntervalsByItemIds(any(), any());
+    }
+
+    @Test
+    void findFree_whenPeriodCoversBookings_thenReturnGapsBetweenThem() {
+        LocalDateTime from = now.minusDays(5);
+        LocalDateTime to = now.plusDays(5);
+
+        assertEquals(List.of(new FreeSlot(from, past.getStart()),
+                        new FreeSlot(past.getEnd(), future.getStart()),
+                        new FreeSlot(future.getEnd(), to)),
+                index.findFree(1L, from, to));
+    }
+
+    @Test
+    void findFree_whenPeriodStartsInsideBooking_thenFirstSlotStartsAfterBooking() {
+        assertEquals(List.of(new FreeSlot(past.getEnd(), future.getStart())),
+                index.findFree(1L, now.minusDays(2), now.plusDays(2)));
+        assertEquals(List.of(), index.findFree(1L, now.plusDays(1), now.plusDays(3)));
+    }
+
+    @Test
+    void findOverlapping_whenPeriodCoversBookings_thenReturnOnlyIntersectingBookings() {
+        assertEquals(List.of(future, past), index.findOverlapping(1L, now.minusDays(2), now.plusDays(2)));
+        assertEquals(List.of(future), index.findOverlapping(1L, now.plusDays(2), now.plusDays(4)));
+        assertEquals(List.of(), index.findOverlapping(1L, now.minusDays(1), now.plusDays(1)));
+    }
+
+    @Test
+    void findLastAndOverlaps_whenLongBookingStartedEarlier_thenFindIt() {
+        BookingInterval longOne = new BookingInterval(4L, 1L, 2L, now.minusDays(10), now.plusDays(10), APPROVED);
+        index.lockItem(1L, () -> index.put(longOne));
+
+        assertEquals(Optional.of(longOne), index.findLast(1L, now));
+        assertTrue(index.overlaps(1L, now.minusHours(1), now.plusHours(1)));
+        assertEquals(List.of(future, longOne), index.findOverlapping(1L, now.plusDays(2), now.plusDays(4)));
+        assertEquals(List.of(), index.findFree(1L, now.minusDays(5), now.plusDays(5)));
+    }
+
+    @Test
+    void findAll_whenLongBookingAmongShortOnes_thenFindItAndForgetItAfterRemove() {
+        LocalDateTime base = now.minusDays(200);
+        List<BookingInterval> shortOnes = new ArrayList<>();
+        for (long id = 10; id < 5_010; id++) {
+            LocalDateTime start = base.plusHours(id);
+            shortOnes.add(new BookingInterval(id, 1L, 2L, start, start.plusMinutes(30), APPROVED));
+        }
+        when(repository.findIntervalsByItemIds(any(), any())).thenReturn(shortOnes);
+        BookingInterval longOne = new BookingInterval(5L, 1L, 2L, base, now.plusDays(1), WAITING);
+        index.lockItem(1L, () -> index.put(longOne));
+        LocalDateTime gap = base.plusHours(2_000).plusMinutes(40);
+
+        assertEquals(Optional.of(longOne), index.findLast(1L, gap));
+        assertEquals(List.of(longOne), index.findOverlapping(1L, gap, gap.plusMinutes(10)));
+        assertEquals(List.of(), index.findFree(1L, gap, gap.plusHours(5)));
+
+        index.lockItem(1L, () -> index.remove(1L, 5L));
+
+        assertEquals(Optional.of(shortOnes.get(1_990)), index.findLast(1L, gap));
+        assertFalse(index.overlaps(1L, gap, gap.plusMinutes(10)));
+        assertEquals(List.of(new FreeSlot(gap, gap.plusMinutes(20)),
+                        new FreeSlot(gap.plusMinutes(50), gap.plusMinutes(80))),
+                index.findFree(1L, gap, gap.plusMinutes(80)));
+    }
+
+    @Test
+    @SneakyThrows
+    void findNext_whenTtlExpired_thenReloadFromRepository() {
+        index = new BookingIntervalIndex(repository, 100, Duration.ofMillis(50));
+        index.load(List.of(1L));
+        index.lockItem(1L, () -> index.remove(1L, 2L));
+        assertEquals(Optional.empty(), index.findNext(1L, now));
+
+        Thread.sleep(100);
+
+        assertEquals(Optional.of(future), index.findNext(1L, now));
+        verify(repository, times(2)).findIntervalsByItemIds(any(), any());
+    }
+}
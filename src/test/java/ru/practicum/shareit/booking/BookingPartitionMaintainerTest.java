@@ -0,0 +1,90 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BookingPartitionMaintainerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), anyString())).thenReturn(false);
+    }
+
+    @Test
+    void maintain_whenDefaultHasOldRows_thenCreatePartitionsFromOldestMonth() {
+        YearMonth current = YearMonth.now();
+        when(jdbcTemplate.queryForObject(anyString(), eq(LocalDateTime.class)))
+                .thenReturn(current.minusMonths(1).atDay(10).atStartOfDay());
+
+        new BookingPartitionMaintainer(jdbcTemplate, transactionTemplate, 1, 12, "").maintain();
+
+        verify(jdbcTemplate, times(3)).execute(startsWith("ALTER TABLE bookings ATTACH PARTITION"));
+        verify(jdbcTemplate).execute("CREATE TABLE " + current.minusMonths(1)
+                .format(BookingPartitionMaintainer.PARTITION_NAME) + " (LIKE bookings INCLUDING DEFAULTS)");
+        verify(jdbcTemplate).execute("CREATE TABLE " + current.plusMonths(1)
+                .format(BookingPartitionMaintainer.PARTITION_NAME) + " (LIKE bookings INCLUDING DEFAULTS)");
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(String.class), anyString());
+    }
+
+    @Test
+    void maintain_whenTablespaceIsSet_thenMoveOnlyOldPartitions() {
+        YearMonth current = YearMonth.now();
+        String old = current.minusMonths(13).format(BookingPartitionMaintainer.PARTITION_NAME);
+        String hot = current.format(BookingPartitionMaintainer.PARTITION_NAME);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), anyString())).thenReturn(true);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class), eq("archive")))
+                .thenReturn(List.of("bookings_default", old, hot));
+        when(jdbcTemplate.queryForList(startsWith("SELECT ix.relname"), eq(String.class), eq(old)))
+                .thenReturn(List.of(old + "_pkey"));
+
+        new BookingPartitionMaintainer(jdbcTemplate, transactionTemplate, 1, 12, "archive").maintain();
+
+        verify(jdbcTemplate).execute("ALTER TABLE " + old + " SET TABLESPACE archive");
+        verify(jdbcTemplate).execute("ALTER INDEX " + old + "_pkey SET TABLESPACE archive");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE " + hot + " SET TABLESPACE archive");
+        verify(transactionTemplate, never()).executeWithoutResult(any());
+    }
+
+    @Test
+    void maintain_whenIndexNameIsNotPlain_thenSkipPartition() {
+        YearMonth current = YearMonth.now();
+        String old = current.minusMonths(13).format(BookingPartitionMaintainer.PARTITION_NAME);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), anyString())).thenReturn(true);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class), eq("archive")))
+                .thenReturn(List.of(old));
+        when(jdbcTemplate.queryForList(startsWith("SELECT ix.relname"), eq(String.class), eq(old)))
+                .thenReturn(List.of("Ix\"; DROP TABLE users; --"));
+
+        new BookingPartitionMaintainer(jdbcTemplate, transactionTemplate, 1, 12, "archive").maintain();
+
+        verify(jdbcTemplate, never()).execute(contains("SET TABLESPACE"));
+    }
+
+    @Test
+    void constructor_whenTablespaceIsNotPlainName_thenThrow() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new BookingPartitionMaintainer(jdbcTemplate, transactionTemplate, 1, 12, "archive; DROP TABLE users"));
+    }
+}
@@ -1,64 +1,263 @@
 package ru.practicum.shareit.booking;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
 class BookingRepositoryTest {
 
     @Autowired
     private BookingRepository repository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TestEntityManager entityManager;
 
     @Test
-    void findAllByBookerIdOrderByStartDesc() {
-    }
+    void findIntervalsByItemIds() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@interval.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@interval.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking approved = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        repository.save(Booking.builder().start(start.plusDays(2)).end(start.plusDays(3))
+                .item(item).booker(booker).status(BookingStatus.REJECTED).build());
 
-    @Test
-    void findAllByBookerIdAndAndStatusEqualsOrderByStartDesc() {
-    }
+        List<BookingInterval> intervals = repository.findIntervalsByItemIds(List.of(item.getId()),
+                BookingIntervalIndex.ACTIVE_STATUSES);
 
-    @Test
-    void findAllByBookerIdAndAndEndBeforeOrderByStartDesc() {
+        assertEquals(List.of(BookingInterval.of(approved)), intervals);
     }
 
     @Test
-    void findAllByBookerIdAndStartAfterOrderByStartDesc() {
+    void countGroupByStatusAndBeforeHorizon_thenCountBookingsOfBookerAndOwner() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@count.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@count.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime now = LocalDateTime.of(2030, 1, 10, 12, 0);
+        repository.save(Booking.builder().start(now.minusDays(3)).end(now.minusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        repository.save(Booking.builder().start(now.minusDays(1)).end(now.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        repository.save(Booking.builder().start(now.plusDays(1)).end(now.plusDays(2))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+
+        assertEquals(List.of(new BookingStatusCount(BookingStatus.WAITING, 1L),
+                        new BookingStatusCount(BookingStatus.APPROVED, 2L)),
+                repository.countByBookerIdGroupByStatus(booker.getId()).stream()
+                        .sorted(Comparator.comparing(BookingStatusCount::getStatus))
+                        .collect(Collectors.toList()));
+        assertEquals(new BookingTimeCount(2L, 1L), repository.countByOwnerIdBefore(owner.getId(), now));
+        assertEquals(List.of(), repository.countByOwnerIdGroupByStatus(booker.getId()));
+        assertEquals(new BookingTimeCount(0L, 0L), repository.countByBookerIdBefore(owner.getId(), now));
+        assertEquals(List.of(now.plusDays(1), now.plusDays(2)),
+                repository.findIntervalsByBookerIdNotEndedBefore(booker.getId(), now).stream()
+                        .map(BookingInterval::getEnd)
+                        .sorted()
+                        .collect(Collectors.toList()));
+        assertEquals(2, repository.findIntervalsByOwnerIdNotEndedBefore(owner.getId(), now).size());
     }
 
     @Test
-    void findAllByBookerIdAndStartBeforeAndEndAfterOrderByStartDesc() {
+    void findWithItemAndBookerById_thenLoadOnlyWhatBookingDtoNeeds() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@graph.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@graph.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking booking = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Booking found = repository.findWithItemAndBookerById(booking.getId()).orElseThrow();
+
+        assertTrue(Hibernate.isInitialized(found.getItem()));
+        assertTrue(Hibernate.isInitialized(found.getItem().getOwner()));
+        assertTrue(Hibernate.isInitialized(found.getBooker()));
+        assertEquals("owner", found.getItem().getOwner().getName());
     }
 
     @Test
-    void findAllByItemOwnerIdOrderByStartDesc() {
+    void toStringAndEquals_whenAssociationsAreProxies_thenNotInitializeThem() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@proxy.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@proxy.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking booking = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        Booking found = repository.findById(booking.getId()).orElseThrow();
+        found.toString();
+        found.hashCode();
+        assertFalse(Hibernate.isInitialized(found.getItem()));
+        assertFalse(Hibernate.isInitialized(found.getBooker()));
+
+        entityManager.clear();
+        Item foundItem = itemRepository.findById(item.getId()).orElseThrow();
+        foundItem.toString();
+        foundItem.hashCode();
+        assertFalse(Hibernate.isInitialized(foundItem.getOwner()));
     }
 
     @Test
-    void findAllByItemOwnerIdAndAndStatusEqualsOrderByStartDesc() {
+    void findAllForUpdateByIdInAndItemOwnerId_thenLockOnlyOwnersBookingsWithoutJoins() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@lock.ru").build());
+        User other = userRepository.save(User.builder().name("other").email("other@lock.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        Item otherItem = itemRepository.save(Item.builder().name("other").available(true).owner(other).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking booking = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(other).status(BookingStatus.WAITING).build());
+        Booking foreign = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(otherItem).booker(owner).status(BookingStatus.WAITING).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Booking> locked = repository.findAllForUpdateByIdInAndItemOwnerId(
+                List.of(booking.getId(), foreign.getId()), owner.getId());
+
+        assertEquals(1, locked.size());
+        assertEquals(booking.getId(), locked.get(0).getId());
+        assertFalse(Hibernate.isInitialized(locked.get(0).getItem()));
+        assertFalse(Hibernate.isInitialized(locked.get(0).getBooker()));
+
+        repository.findAllWithItemAndBookerByIdIn(List.of(booking.getId()));
+
+        assertTrue(Hibernate.isInitialized(locked.get(0).getItem()));
+        assertTrue(Hibernate.isInitialized(locked.get(0).getItem().getOwner()));
+        assertTrue(Hibernate.isInitialized(locked.get(0).getBooker()));
     }
 
     @Test
-    void findAllByItemOwnerIdAndAndEndBeforeOrderByStartDesc() {
+    void findAllByQuery_whenStartsAreEqual_thenCursorPagesDoNotOverlap() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@seek.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@seek.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking first = repository.save(Booking.builder().start(start.plusDays(1)).end(start.plusDays(2))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        Booking second = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        Booking third = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+
+        List<Booking> firstPage = repository.findAllByQuery(BookingQuery.builder()
+                .role(BookingQuery.Role.BOOKER).userId(booker.getId()).state(BookingStatus.ALL).size(2).build());
+        Booking last = firstPage.get(1);
+        List<Booking> secondPage = repository.findAllByQuery(BookingQuery.builder()
+                .role(BookingQuery.Role.BOOKER).userId(booker.getId()).state(BookingStatus.ALL)
+                .after(new SeekCursor(last.getStart(), last.getId())).size(2).build());
+        List<Booking> ownerPage = repository.findAllByQuery(BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER).userId(owner.getId()).state(BookingStatus.ALL)
+                .offset(2).size(2).build());
+
+        assertEquals(List.of(first, third), firstPage);
+        assertEquals(List.of(second), secondPage);
+        assertEquals(List.of(second), ownerPage);
     }
 
     @Test
-    void findAllByItemOwnerIdAndStartAfterOrderByStartDesc() {
+    void findAllByQuery_whenFilterByState_thenUseOneMoment() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@state.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@state.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime now = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking past = repository.save(Booking.builder().start(now.minusDays(2)).end(now.minusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+        Booking current = repository.save(Booking.builder().start(now.minusDays(1)).end(now.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.REJECTED).build());
+        Booking future = repository.save(Booking.builder().start(now.plusDays(1)).end(now.plusDays(2))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+
+        assertEquals(List.of(past), findForOwner(owner, BookingStatus.PAST, now));
+        assertEquals(List.of(current), findForOwner(owner, BookingStatus.CURRENT, now));
+        assertEquals(List.of(future), findForOwner(owner, BookingStatus.FUTURE, now));
+        assertEquals(List.of(current), findForOwner(owner, BookingStatus.REJECTED, now));
+        assertEquals(List.of(future, current, past), findForOwner(owner, BookingStatus.ALL, now));
     }
 
     @Test
-    void findAllByItemOwnerIdAndStartBeforeAndEndAfterOrderByStartDesc() {
+    void forEachByQuery_whenHistoryIsLongerThanFetchSize_thenPassAllBookingsInOrder() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@export.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@export.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            expected.add(0, repository.save(Booking.builder().start(start.plusDays(i)).end(start.plusDays(i + 1))
+                    .item(item).booker(booker).status(BookingStatus.APPROVED).build()).getId());
+        }
+        repository.flush();
+
+        List<Long> exported = new ArrayList<>();
+        repository.forEachByQuery(BookingQuery.builder().role(BookingQuery.Role.OWNER).userId(owner.getId())
+                        .state(BookingStatus.ALL).build(), 2,
+                booking -> exported.add(booking.getId()));
+
+        assertEquals(expected, exported);
     }
 
-    @Test
-    void findAllLast() {
+    private List<Booking> findForOwner(User owner, BookingStatus state, LocalDateTime now) {
+        return repository.findAllByQuery(BookingQuery.builder()
+                .role(BookingQuery.Role.OWNER).userId(owner.getId()).state(state).now(now).size(10).build());
     }
 
     @Test
-    void findAllNext() {
+    void updateStatus_whenBookingIsWaitingAndUserIsOwner_thenUpdateOnlyOnce() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@update.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@update.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.of(2030, 1, 1, 12, 0);
+        Booking booking = repository.save(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+
+        assertEquals(0, repository.updateStatus(booking.getId(), booker.getId(),
+                BookingStatus.WAITING, BookingStatus.APPROVED));
+        assertEquals(1, repository.updateStatus(booking.getId(), owner.getId(),
+                BookingStatus.WAITING, BookingStatus.APPROVED));
+        assertEquals(0, repository.updateStatus(booking.getId(), owner.getId(),
+                BookingStatus.WAITING, BookingStatus.REJECTED));
+
+        Booking updated = repository.findWithItemAndBookerById(booking.getId()).orElseThrow();
+        assertEquals(BookingStatus.APPROVED, updated.getStatus());
+        assertEquals(1L, updated.getVersion());
     }
 
     @Test
-    void findAllFinishByBookerIdByItemId() {
+    void existsByBookerIdAndItemIdAndEndBefore() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@finish.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@finish.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        LocalDateTime now = LocalDateTime.of(2030, 1, 1, 12, 0);
+        repository.save(Booking.builder().start(now.minusDays(2)).end(now.minusDays(1))
+                .item(item).booker(booker).status(BookingStatus.APPROVED).build());
+
+        assertTrue(repository.existsByBookerIdAndItemIdAndEndBefore(booker.getId(), item.getId(), now));
+        assertFalse(repository.existsByBookerIdAndItemIdAndEndBefore(booker.getId(), item.getId(),
+                now.minusDays(1)));
+        assertFalse(repository.existsByBookerIdAndItemIdAndEndBefore(owner.getId(), item.getId(), now));
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверка schema-postgresql.sql на настоящем Postgres: миграция схемы прежних версий
+ * и ограничения бронирований, которых нет в H2. Без Docker тесты пропускаются
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class BookingSchemaPostgresTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:14-alpine");
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(),
+                POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA public CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA public");
+    }
+
+    @Test
+    void migrate_whenLegacyBookingsOverlap_thenKeepApprovedOrEarlierAndRejectOthers() {
+        createLegacySchema();
+        insertLegacyBooking("2030-01-01", "2030-01-05", "WAITING");
+        insertLegacyBooking("2030-01-03", "2030-01-07", "APPROVED");
+        insertLegacyBooking("2030-01-06", "2030-01-08", "WAITING");
+        insertLegacyBooking("2030-01-10", "2030-01-12", "WAITING");
+        insertLegacyBooking("2030-01-15", "2030-01-17", "WAITING");
+        insertLegacyBooking("2030-01-16", "2030-01-18", "WAITING");
+        insertLegacyBooking("2030-01-17 12:00", "2030-01-19", "WAITING");
+        insertLegacyBooking("2030-01-16", "2030-01-18", "CANCELED");
+
+        migrate();
+
+        assertEquals(List.of("REJECTED", "APPROVED", "REJECTED", "WAITING", "WAITING", "REJECTED", "WAITING",
+                        "CANCELED"),
+                jdbcTemplate.queryForList("SELECT status FROM bookings ORDER BY id", String.class));
+    }
+
+    @Test
+    void migrate_whenLegacyBookingHasNoEnd_thenBackfillOrKeepAside() {
+        createLegacySchema();
+        insertLegacyBooking("2030-01-01", null, "APPROVED");
+        insertLegacyBooking(null, null, "WAITING");
+
+        migrate();
+
+        assertEquals(List.of(LocalDateTime.of(2030, 1, 1, 0, 0)),
+                jdbcTemplate.queryForList("SELECT end_date FROM bookings ORDER BY id", LocalDateTime.class));
+        assertEquals(List.of(2L), jdbcTemplate.queryForList("SELECT id FROM bookings_unpartitioned", Long.class));
+    }
+
+    @Test
+    void insert_whenOverlappingBookingEndsInOtherPartition_thenReject() {
+        migrate();
+        jdbcTemplate.update("INSERT INTO users (id, name_user, email) VALUES (1, 'owner', 'owner@e.e')");
+        jdbcTemplate.update("INSERT INTO items (id, name_item, available, owner_id) VALUES (1, 'item', true, 1)");
+        new BookingPartitionMaintainer(jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), 3, 12, "").maintain();
+        YearMonth next = YearMonth.now().plusMonths(1);
+        insertBooking(1L, next.atDay(20).atStartOfDay(), next.plusMonths(1).atDay(5).atStartOfDay(), "APPROVED");
+
+        assertThrows(DataIntegrityViolationException.class, () -> insertBooking(2L,
+                next.atDay(25).atStartOfDay(), next.atDay(28).atStartOfDay(), "WAITING"));
+        insertBooking(3L, next.atDay(25).atStartOfDay(), next.atDay(28).atStartOfDay(), "REJECTED");
+        assertThrows(DataIntegrityViolationException.class, () ->
+                jdbcTemplate.update("UPDATE bookings SET status = 'WAITING' WHERE id = 3"));
+        assertEquals(next.plusMonths(1).format(BookingPartitionMaintainer.PARTITION_NAME),
+                jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM bookings WHERE id = 1",
+                        String.class));
+        assertEquals(next.format(BookingPartitionMaintainer.PARTITION_NAME),
+                jdbcTemplate.queryForObject("SELECT tableoid::regclass::text FROM bookings WHERE id = 3",
+                        String.class));
+    }
+
+    private void insertBooking(long id, LocalDateTime start, LocalDateTime end, String status) {
+        jdbcTemplate.update("INSERT INTO bookings (id, start_date, end_date, item_id, booker_id, status) " +
+                "VALUES (?, ?, ?, 1, 1, ?)", id, start, end, status);
+    }
+
+    private void migrate() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"),
+                new ClassPathResource("schema-postgresql.sql")).execute(dataSource);
+    }
+
+    /**
+     * Схема первой версии приложения: идентификаторы identity, бронирования без ограничений
+     */
+    private void createLegacySchema() {
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "name_user VARCHAR(100), email VARCHAR(320), CONSTRAINT uq_email UNIQUE (email))");
+        jdbcTemplate.execute("CREATE TABLE item_requests (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "description VARCHAR(1000), requestor_id BIGINT, created TIMESTAMP, " +
+                "CONSTRAINT fk_user_id FOREIGN KEY(requestor_id) REFERENCES users(id))");
+        jdbcTemplate.execute("CREATE TABLE items (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "name_item VARCHAR(100), description VARCHAR(1000), available BOOLEAN, owner_id BIGINT, " +
+                "request_id BIGINT, CONSTRAINT fk_owner_id FOREIGN KEY(owner_id) REFERENCES users(id), " +
+                "CONSTRAINT fk_reqiests_id FOREIGN KEY(request_id) REFERENCES item_requests(id))");
+        jdbcTemplate.execute("CREATE TABLE bookings (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "start_date TIMESTAMP, end_date TIMESTAMP, item_id BIGINT, booker_id BIGINT, status VARCHAR(50), " +
+                "CONSTRAINT fr_item_id FOREIGN KEY(item_id) REFERENCES items(id), " +
+                "CONSTRAINT fr_booker_id FOREIGN KEY(booker_id) REFERENCES users(id))");
+        jdbcTemplate.execute("CREATE TABLE comments (id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                "text VARCHAR(1000), item_id BIGINT, author_id BIGINT, created TIMESTAMP, " +
+                "CONSTRAINT fr_item_comment_id FOREIGN KEY(item_id) REFERENCES items(id), " +
+                "CONSTRAINT fr_author_id FOREIGN KEY(author_id) REFERENCES users(id))");
+        jdbcTemplate.update("INSERT INTO users (name_user, email) VALUES ('owner', 'owner@e.e')");
+        jdbcTemplate.update("INSERT INTO users (name_user, email) VALUES ('booker', 'booker@e.e')");
+        jdbcTemplate.update("INSERT INTO items (name_item, available, owner_id) VALUES ('item', true, 1)");
+    }
+
+    private void insertLegacyBooking(String start, String end, String status) {
+        jdbcTemplate.update("INSERT INTO bookings (start_date, end_date, item_id, booker_id, status) " +
+                "VALUES (?::timestamp, ?::timestamp, 1, 2, ?)", start, end, status);
+    }
+}
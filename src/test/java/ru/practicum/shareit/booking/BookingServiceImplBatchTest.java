@@ -0,0 +1,150 @@
+package ru.practicum.shareit.booking;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.booking.dto.BookingBatchResultDto;
+import ru.practicum.shareit.booking.dto.SimpleBookingDto;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что пакет бронирований сохраняется пакетными вставками
+ * и количество запросов к базе почти не зависит от размера пакета.
+ * Пакет сохраняется собственными транзакциями, поэтому данные теста удаляются после него
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class BookingServiceImplBatchTest {
+
+    private static final int ITEMS_COUNT = 3;
+    private static final int BOOKINGS_COUNT = 300;
+
+    @Autowired
+    private BookingService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private BookingIntervalIndex intervalIndex;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User owner;
+    private User booker;
+    private List<Item> items;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("owner").email("owner@batch.ru").build());
+        booker = userRepository.save(User.builder().name("booker").email("booker@batch.ru").build());
+        items = new ArrayList<>();
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            items.add(itemRepository.save(Item.builder()
+                    .name("item" + i).description("description" + i).available(true).owner(owner).build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookingRepository.deleteAll(bookingRepository.findAll().stream()
+                .filter(booking -> booking.getBooker().getId().equals(booker.getId()))
+                .collect(Collectors.toList()));
+        itemRepository.deleteAll(items);
+        userRepository.deleteAll(List.of(owner, booker));
+    }
+
+    @Test
+    void createAll_whenBookingsAreValid_thenSaveThemWithBatchInserts() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        List<SimpleBookingDto> dtos = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS_COUNT; i++) {
+            dtos.add(SimpleBookingDto.builder()
+                    .itemId(items.get(i % ITEMS_COUNT).getId())
+                    .start(start.plusHours(i))
+                    .end(start.plusHours(i + 1))
+                    .build());
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<BookingBatchResultDto> results = service.createAll(booker.getId(), dtos);
+
+        assertEquals(BOOKINGS_COUNT, results.size());
+        results.forEach(result -> assertEquals(200, result.getStatus()));
+        assertEquals(BOOKINGS_COUNT, bookingRepository.count());
+        assertTrue(statistics.getPrepareStatementCount() < 20,
+                "statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void createAll_whenSomeBookingsAreNotValid_thenSaveOthersAndReturnErrors() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        List<SimpleBookingDto> dtos = List.of(
+                SimpleBookingDto.builder().itemId(items.get(0).getId())
+                        .start(start).end(start.plusHours(2)).build(),
+                SimpleBookingDto.builder().itemId(items.get(0).getId())
+                        .start(start.plusHours(1)).end(start.plusHours(3)).build(),
+                SimpleBookingDto.builder().itemId(Long.MAX_VALUE)
+                        .start(start).end(start.plusHours(1)).build(),
+                SimpleBookingDto.builder().itemId(items.get(1).getId())
+                        .start(start.plusHours(1)).end(start).build());
+
+        List<BookingBatchResultDto> results = service.createAll(booker.getId(), dtos);
+
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(BookingBatchResultDto::getIndex)
+                .collect(Collectors.toList()));
+        assertEquals(List.of(200, 400, 404, 400), results.stream().map(BookingBatchResultDto::getStatus)
+                .collect(Collectors.toList()));
+        assertEquals(1, bookingRepository.count());
+    }
+
+    @Test
+    void createAll_whenDatabaseRejectsOneBooking_thenRejectOnlyIt() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1).withNano(0);
+        intervalIndex.load(List.of(items.get(0).getId()));
+        //бронирование другого узла, которого нет в индексе интервалов этого узла
+        jdbcTemplate.update("INSERT INTO bookings (id, start_date, end_date, item_id, booker_id, status) " +
+                        "VALUES (?, ?, ?, ?, ?, 'WAITING')", 1_000_000_000L, start, start.plusHours(1),
+                items.get(0).getId(), booker.getId());
+        jdbcTemplate.execute("CREATE UNIQUE INDEX ux_bookings_item_start_test ON bookings (item_id, start_date)");
+        List<SimpleBookingDto> dtos = List.of(
+                SimpleBookingDto.builder().itemId(items.get(1).getId())
+                        .start(start).end(start.plusHours(1)).build(),
+                SimpleBookingDto.builder().itemId(items.get(0).getId())
+                        .start(start).end(start.plusHours(1)).build(),
+                SimpleBookingDto.builder().itemId(items.get(2).getId())
+                        .start(start).end(start.plusHours(1)).build());
+
+        List<BookingBatchResultDto> results;
+        try {
+            results = service.createAll(booker.getId(), dtos);
+        } finally {
+            jdbcTemplate.execute("DROP INDEX ux_bookings_item_start_test");
+        }
+
+        assertEquals(List.of(200, 400, 200), results.stream().map(BookingBatchResultDto::getStatus)
+                .collect(Collectors.toList()));
+        assertEquals(3, bookingRepository.count());
+    }
+}
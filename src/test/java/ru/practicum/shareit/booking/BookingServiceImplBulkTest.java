@@ -0,0 +1,74 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.booking.dto.BookingBulkResultDto;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.practicum.shareit.booking.BookingStatus.*;
+import static ru.practicum.shareit.booking.dto.BookingBulkResultDto.Status.*;
+
+@SpringBootTest
+@Transactional
+class BookingServiceImplBulkTest {
+
+    @Autowired
+    private BookingService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void approvedAll_whenBookingsAreMixed_thenReturnStatusForEachId() {
+        User owner = userRepository.save(User.builder().name("owner").email("owner@bulk.ru").build());
+        User other = userRepository.save(User.builder().name("other").email("other@bulk.ru").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@bulk.ru").build());
+        Item item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        Item otherItem = itemRepository.save(Item.builder().name("other").available(true).owner(other).build());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Booking waiting = save(item, booker, start, start.plusHours(1), WAITING);
+        Booking approved = save(item, booker, start.plusHours(2), start.plusHours(4), APPROVED);
+        Booking overlapping = save(item, booker, start.plusHours(3), start.plusHours(5), WAITING);
+        Booking rejected = save(item, booker, start.plusHours(6), start.plusHours(7), REJECTED);
+        Booking foreign = save(otherItem, booker, start, start.plusHours(1), WAITING);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<BookingBulkResultDto> results = service.approvedAll(owner.getId(), List.of(waiting.getId(),
+                overlapping.getId(), rejected.getId(), foreign.getId(), Long.MAX_VALUE, waiting.getId()), true);
+
+        assertEquals(List.of(result(waiting, UPDATED), result(overlapping, CONFLICT),
+                        result(rejected, ALREADY_PROCESSED), result(foreign, NOT_FOUND),
+                        BookingBulkResultDto.builder().bookingId(Long.MAX_VALUE).status(NOT_FOUND).build()),
+                results);
+        assertEquals(APPROVED, bookingRepository.findById(waiting.getId()).orElseThrow().getStatus());
+        assertEquals(1L, bookingRepository.findById(waiting.getId()).orElseThrow().getVersion());
+        assertEquals(WAITING, bookingRepository.findById(overlapping.getId()).orElseThrow().getStatus());
+        assertEquals(WAITING, bookingRepository.findById(foreign.getId()).orElseThrow().getStatus());
+        assertEquals(APPROVED, bookingRepository.findById(approved.getId()).orElseThrow().getStatus());
+    }
+
+    private Booking save(Item item, User booker, LocalDateTime start, LocalDateTime end, BookingStatus status) {
+        return bookingRepository.save(Booking.builder().start(start).end(end)
+                .item(item).booker(booker).status(status).build());
+    }
+
+    private BookingBulkResultDto result(Booking booking, BookingBulkResultDto.Status status) {
+        return BookingBulkResultDto.builder().bookingId(booking.getId()).status(status).build();
+    }
+}
@@ -0,0 +1,114 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
+
+/**
+ * Нагрузочная проверка подтверждения бронирований: параллельные запросы подтверждения
+ * и отклонения одного бронирования не должны завершиться успешно больше одного раза
+ */
+@SpringBootTest
+class BookingServiceImplConcurrencyTest {
+
+    private static final int BOOKINGS_COUNT = 20;
+    private static final int THREADS_PER_BOOKING = 8;
+
+    @Autowired
+    private BookingService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    private User owner;
+    private User booker;
+    private Item item;
+    private List<Booking> bookings;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("owner").email("owner@concurrency.ru").build());
+        booker = userRepository.save(User.builder().name("booker").email("booker@concurrency.ru").build());
+        item = itemRepository.save(Item.builder().name("item").description("description")
+                .available(true).owner(owner).build());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        bookings = new ArrayList<>();
+        for (int i = 0; i < BOOKINGS_COUNT; i++) {
+            bookings.add(bookingRepository.save(Booking.builder().start(start.plusHours(i))
+                    .end(start.plusHours(i + 1)).item(item).booker(booker).status(WAITING).build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookingRepository.deleteAllByIdInBatch(bookings.stream().map(Booking::getId).collect(Collectors.toList()));
+        itemRepository.delete(item);
+        userRepository.deleteAll(List.of(owner, booker));
+    }
+
+    @Test
+    void approved_whenManyOwnersRequestsAreConcurrent_thenOnlyOneSucceedsForEachBooking() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS_PER_BOOKING * 2);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<AtomicInteger> successes = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        AtomicInteger rejectedAsProcessed = new AtomicInteger();
+        for (Booking booking : bookings) {
+            AtomicInteger bookingSuccesses = new AtomicInteger();
+            successes.add(bookingSuccesses);
+            for (int i = 0; i < THREADS_PER_BOOKING; i++) {
+                boolean approve = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    startSignal.await();
+                    try {
+                        service.approved(owner.getId(), booking.getId(), approve);
+                        bookingSuccesses.incrementAndGet();
+                    } catch (ValidationException e) {
+                        rejectedAsProcessed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+        }
+        startSignal.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        successes.forEach(bookingSuccesses -> assertEquals(1, bookingSuccesses.get()));
+        assertEquals(BOOKINGS_COUNT * (THREADS_PER_BOOKING - 1), rejectedAsProcessed.get());
+        bookingRepository.findAllById(bookings.stream().map(Booking::getId)
+                        .collect(Collectors.toList()))
+                .forEach(booking -> {
+                    assertTrue(booking.getStatus() != WAITING);
+                    assertEquals(1L, booking.getVersion());
+                });
+    }
+}
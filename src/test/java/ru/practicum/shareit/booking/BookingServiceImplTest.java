@@ -6,6 +6,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import ru.practicum.shareit.booking.dto.BookingEventDto;
 import ru.practicum.shareit.booking.dto.SimpleBookingDto;
 import ru.practicum.shareit.booking.dtoMapper.BookingListMapper;
 import ru.practicum.shareit.booking.dtoMapper.BookingMapper;
@@ -13,20 +16,27 @@ import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static ru.practicum.shareit.booking.BookingStatus.*;
 
 @SpringBootTest
+@RecordApplicationEvents
 class BookingServiceImplTest {
     @Autowired
     private BookingService service;
@@ -42,6 +52,10 @@ class BookingServiceImplTest {
     @MockBean
     private UserService userService;
     private User user;
+    @Autowired
+    private ApplicationEvents events;
+    @Autowired
+    private FinishedBookingCache finishedBookings;
 
     @BeforeEach
     void setUp() {
@@ -53,7 +67,7 @@ class BookingServiceImplTest {
         SimpleBookingDto simpleBookingDto = SimpleBookingDto.builder()
                 .itemId(3L)
                 .build();
-        when(itemRepository.findById(any())).thenReturn(Optional.empty());
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.empty());
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.create(10L, simpleBookingDto));
         verifyNoInteractions(repository);
@@ -65,7 +79,7 @@ class BookingServiceImplTest {
                 .itemId(3L)
                 .build();
         Item item = Item.builder().id(3L).build();
-        when(itemRepository.findById(any())).thenReturn(Optional.ofNullable(item));
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.ofNullable(item));
         when(userService.findUserByIdForValid(anyLong())).thenThrow(new NoFoundException("Юзер не найден"));
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.create(10L, simpleBookingDto));
@@ -78,7 +92,7 @@ class BookingServiceImplTest {
                 .itemId(3L)
                 .build();
         Item item = Item.builder().id(3L).available(false).build();
-        when(itemRepository.findById(any())).thenReturn(Optional.ofNullable(item));
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.ofNullable(item));
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         final ValidationException e = assertThrows(ValidationException.class, () ->
                 service.create(3L, simpleBookingDto));
@@ -91,7 +105,7 @@ class BookingServiceImplTest {
                 .itemId(3L)
                 .build();
         Item item = Item.builder().id(3L).available(true).owner(user).build();
-        when(itemRepository.findById(any())).thenReturn(Optional.ofNullable(item));
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.ofNullable(item));
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.create(3L, simpleBookingDto));
@@ -100,34 +114,60 @@ class BookingServiceImplTest {
 
     @Test
     void create_whenDataIsValid_thenIsCallingRepositoryStatusEqWaitingAndReturnBooking() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        LocalDateTime end = start.plusDays(1);
         SimpleBookingDto simpleBookingDto = SimpleBookingDto.builder()
                 .itemId(3L)
+                .start(start)
+                .end(end)
                 .build();
         Item item = Item.builder().id(3L).available(true).owner(User.builder().id(1L).build()).build();
-        when(itemRepository.findById(any())).thenReturn(Optional.ofNullable(item));
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.ofNullable(item));
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
-        Booking booking = Booking.builder().item(item).booker(user).status(WAITING).build();
-        when(repository.save(any())).thenReturn(booking);
-        assertEquals(service.create(3L, simpleBookingDto), mapper.modelToDto(booking));
-        verify(repository).save(booking);
+        Booking booking = Booking.builder().start(start).end(end).item(item).booker(user).status(WAITING).build();
+        Booking savedBooking = Booking.builder().id(1L).start(start).end(end).item(item).booker(user)
+                .status(WAITING).build();
+        when(repository.saveAndFlush(any())).thenReturn(savedBooking);
+        assertEquals(service.create(3L, simpleBookingDto), mapper.modelToDto(savedBooking));
+        verify(repository).saveAndFlush(booking);
+        verify(itemRepository).incrementVersion(3L);
+    }
+
+    @Test
+    void create_whenPeriodOverlapsExistingBooking_thenIsNotSavingAndThrowException() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        LocalDateTime end = start.plusDays(2);
+        SimpleBookingDto simpleBookingDto = SimpleBookingDto.builder()
+                .itemId(5L)
+                .start(start.plusDays(1))
+                .end(end.plusDays(1))
+                .build();
+        Item item = Item.builder().id(5L).available(true).owner(User.builder().id(1L).build()).build();
+        when(itemRepository.findWithOwnerById(anyLong())).thenReturn(Optional.ofNullable(item));
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        when(repository.findIntervalsByItemIds(any(), any()))
+                .thenReturn(List.of(new BookingInterval(1L, 5L, 2L, start, end, APPROVED)));
+        final ValidationException e = assertThrows(ValidationException.class, () ->
+                service.create(3L, simpleBookingDto));
+        verify(repository, never()).saveAndFlush(any());
     }
 
     @Test
     void getById_whenBookingIsMissing_thenThrowException() {
-        when(repository.findById(anyLong())).thenReturn(Optional.empty());
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.empty());
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.getById(3L, 4L));
-        verify(repository).findById(4L);
+        verify(repository).findWithItemAndBookerById(4L);
     }
 
     @Test
     void getById_whenUserIsMissing_thenThrowException() {
         Booking booking = Booking.builder().id(4L).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.ofNullable(booking));
         when(userService.findUserByIdForValid(anyLong())).thenThrow(new NoFoundException("юзер не найден"));
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.getById(3L, 4L));
-        verify(repository).findById(4L);
+        verify(repository).findWithItemAndBookerById(4L);
     }
 
     @Test
@@ -139,11 +179,11 @@ class BookingServiceImplTest {
                 .item(Item.builder()
                         .owner(User.builder()
                                 .id(1L).build()).build()).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.ofNullable(booking));
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.getById(3L, 4L));
-        verify(repository).findById(4L);
+        verify(repository).findWithItemAndBookerById(4L);
 
     }
 
@@ -154,29 +194,62 @@ class BookingServiceImplTest {
                 .booker(User.builder().id(4L).build())
                 .item(Item.builder()
                         .owner(user).build()).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.ofNullable(booking));
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         assertEquals(service.getById(3L, 4L), mapper.modelToDto(booking));
     }
 
     @Test
     void approved_whenBookingIsMissing_thenNoMoreCallRepositoryAndThrowException() {
-        when(repository.findById(anyLong())).thenReturn(Optional.empty());
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(0);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.empty());
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.approved(3L, 4L, true));
-        verify(repository).findById(4L);
+        verify(repository).updateStatus(4L, 3L, WAITING, APPROVED);
+        verify(repository).findWithItemAndBookerById(4L);
         verifyNoMoreInteractions(repository);
     }
 
     @Test
-    void approved_whenUserIsMissing_thenNoMoreCallRepositoryAndThrowException() {
-        Booking booking = Booking.builder().id(4L).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
-        when(userService.findUserByIdForValid(anyLong())).thenThrow(new NoFoundException("юзер не найден"));
-        final NoFoundException e = assertThrows(NoFoundException.class, () ->
-                service.approved(3L, 4L, true));
-        verify(repository).findById(4L);
-        verifyNoMoreInteractions(repository);
+    void approved_whenStatusUpdated_thenPublishEventForBooker() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Booking booking = Booking.builder()
+                .id(5L)
+                .start(start)
+                .end(start.plusDays(1))
+                .item(Item.builder().id(1101L).owner(user).build())
+                .booker(User.builder().id(7L).build())
+                .status(APPROVED).build();
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(1);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(booking));
+
+        service.approved(4L, 5L, true);
+
+        List<BookingEvent> published = events.stream(BookingEvent.class).collect(Collectors.toList());
+        assertEquals(1, published.size());
+        assertEquals(7L, published.get(0).getRecipientId());
+        assertEquals(BookingEventDto.Type.APPROVED, published.get(0).getPayload().getType());
+        assertEquals(5L, published.get(0).getPayload().getBookingId());
+    }
+
+    @Test
+    void approved_whenBookingOverlapsApprovedOne_thenThrowExceptionAndKeepItemVersion() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Booking booking = Booking.builder()
+                .id(8L)
+                .start(start)
+                .end(start.plusDays(2))
+                .item(Item.builder().id(1102L).owner(user).build())
+                .booker(User.builder().id(7L).build())
+                .status(APPROVED).build();
+        when(repository.findIntervalsByItemIds(any(), any())).thenReturn(List.of(
+                new BookingInterval(9L, 1102L, 6L, start.plusDays(1), start.plusDays(3), APPROVED)));
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(1);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(booking));
+
+        assertThrows(ValidationException.class, () -> service.approved(4L, 8L, true));
+        verify(itemRepository, never()).incrementVersion(anyLong());
+        assertEquals(0, events.stream(BookingEvent.class).count());
     }
 
     @Test
@@ -185,13 +258,15 @@ class BookingServiceImplTest {
                 .id(4L)
                 .item(Item.builder()
                         .owner(User.builder()
-                                .id(1L).build()).build()).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
-        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+                                .id(1L).build()).build())
+                .status(WAITING).build();
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(0);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(booking));
         final NoFoundException e = assertThrows(NoFoundException.class, () ->
                 service.approved(3L, 4L, true));
-        verify(repository).findById(4L);
-        verifyNoMoreInteractions(repository);
+        verify(repository).findWithItemAndBookerById(4L);
+        verify(repository, never()).save(any());
+        verifyNoInteractions(userService);
     }
 
     @Test
@@ -201,11 +276,12 @@ class BookingServiceImplTest {
                 .item(Item.builder()
                         .owner(user).build())
                 .status(APPROVED).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
-        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(0);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(booking));
         final ValidationException e = assertThrows(ValidationException.class, () ->
-                service.approved(3L, 4L, true));
-        verify(repository).findById(4L);
+                service.approved(4L, 4L, true));
+        verify(repository).updateStatus(4L, 4L, WAITING, APPROVED);
+        verify(repository).findWithItemAndBookerById(4L);
         verifyNoMoreInteractions(repository);
     }
 
@@ -216,152 +292,252 @@ class BookingServiceImplTest {
                 .item(Item.builder()
                         .owner(user).build())
                 .status(REJECTED).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
-        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(0);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(booking));
         final ValidationException e = assertThrows(ValidationException.class, () ->
-                service.approved(3L, 4L, true));
-        verify(repository).findById(4L);
+                service.approved(4L, 4L, false));
+        verify(repository).updateStatus(4L, 4L, WAITING, REJECTED);
+        verify(repository).findWithItemAndBookerById(4L);
         verifyNoMoreInteractions(repository);
     }
 
     @Test
-    void approved_whenDataIsValidAndApprovedTrue_thenCallAndSaveRepository() {
-        Booking booking = Booking.builder()
-                .id(4L)
-                .item(Item.builder()
-                        .owner(user).build())
-                .status(WAITING).build();
+    void approved_whenDataIsValidAndApprovedTrue_thenUpdateStatusWithOneStatement() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Item item = Item.builder().id(6L).owner(user).build();
+        User booker = User.builder().id(1L).build();
         Booking testBooking = Booking.builder()
                 .id(4L)
-                .item(Item.builder()
-                        .owner(user).build())
+                .start(start)
+                .end(start.plusDays(1))
+                .item(item)
+                .booker(booker)
                 .status(APPROVED).build();
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(booking));
-        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
-        when(repository.save(any())).thenReturn(testBooking);
-        assertEquals(service.approved(3L, 4L, true), mapper.modelToDto(testBooking));
-        verify(repository).save(testBooking);
+        when(repository.updateStatus(anyLong(), anyLong(), any(), any())).thenReturn(1);
+        when(repository.findWithItemAndBookerById(anyLong())).thenReturn(Optional.of(testBooking));
+        assertEquals(service.approved(4L, 4L, true), mapper.modelToDto(testBooking));
+        verify(repository).updateStatus(4L, 4L, WAITING, APPROVED);
+        verify(itemRepository).incrementVersion(6L);
+        verify(repository, never()).save(any());
+        verifyNoInteractions(userService);
+        assertEquals(mapper.intervalToDtoForItem(BookingInterval.of(testBooking)), service.getNextByItem(6L));
     }
 
     @Test
     void findAllForBooker_whenTrueDate_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdAndStartBeforeAndEndAfterOrderByStartDesc(anyLong(), any(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, CURRENT, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == CURRENT && query.getSize() == 10));
     }
 
     @Test
     void findAllForOwner_whenTrueDate_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByItemOwnerIdAndStartBeforeAndEndAfterOrderByStartDesc(anyLong(), any(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForOwner(2L, CURRENT, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getUserId() == 2L && query.getState() == CURRENT && query.getSize() == 10));
     }
 
     @Test
     void findAllForOwner_whenSendPast_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByItemOwnerIdAndAndEndBeforeOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForOwner(2L, PAST, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getUserId() == 2L && query.getState() == PAST && query.getSize() == 10));
     }
 
     @Test
     void findAllForOwner_whenSendFuture_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByItemOwnerIdAndStartAfterOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForOwner(2L, FUTURE, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getUserId() == 2L && query.getState() == FUTURE && query.getSize() == 10));
     }
 
     @Test
     void findAllForOwner_whenSendWaiting_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByItemOwnerIdAndAndStatusEqualsOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForOwner(2L, WAITING, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getUserId() == 2L && query.getState() == WAITING && query.getSize() == 10));
     }
 
     @Test
     void findAllForOwner_whenSendAll_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByItemOwnerIdOrderByStartDesc(anyLong(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForOwner(2L, ALL, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getUserId() == 2L && query.getState() == ALL && query.getSize() == 10));
     }
 
     @Test
     void findAllForBooker_whenSendAll_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdOrderByStartDesc(anyLong(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, ALL, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == ALL && query.getSize() == 10));
     }
 
     @Test
     void findAllForBooker_whenSendWaiting_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdAndAndStatusEqualsOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, WAITING, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == WAITING && query.getSize() == 10));
     }
 
     @Test
     void findAllForBooker_whenSendFuture_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdAndStartAfterOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, FUTURE, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == FUTURE && query.getSize() == 10));
     }
 
     @Test
     void findAllForBooker_whenSendPast_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdAndAndEndBeforeOrderByStartDesc(anyLong(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, PAST, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == PAST && query.getSize() == 10));
     }
 
     @Test
     void findAllForBooker_whenSendCurrent_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllByBookerIdAndStartBeforeAndEndAfterOrderByStartDesc(anyLong(), any(), any(), any()))
-                .thenReturn(list);
+        when(repository.findAllByQuery(any())).thenReturn(list);
         assertEquals(service.findAllForBooker(2L, CURRENT, PageRequest.of(0, 10)), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getUserId() == 2L && query.getState() == CURRENT && query.getSize() == 10));
     }
 
     @Test
-    void getLastByItem_whenTrueDate_thenReturnBooking() {
+    void findAllForBooker_whenSendCursor_thenSeekAfterCursor() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllLast(anyLong(), any(), any(), any()))
-                .thenReturn(list);
-        assertEquals(service.getLastByItem(2L), mapper.modelToDtoForItem(list.get(0)));
+        SeekCursor cursor = new SeekCursor(LocalDateTime.of(2030, 1, 1, 12, 0), 5L);
+        when(repository.findAllByQuery(any())).thenReturn(list);
+        assertEquals(service.findAllForBooker(2L, PAST, cursor, 10), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.BOOKER
+                && query.getState() == PAST && cursor.equals(query.getAfter()) && query.getSize() == 10
+                && query.getNow() != null));
     }
 
     @Test
-    void getNextByItem_whenTrueDate_thenReturnBooking() {
+    void findAllForOwner_whenSendCursorAndStatus_thenSeekAfterCursor() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllNext(anyLong(), any(), any(), any()))
-                .thenReturn(list);
-        assertEquals(service.getNextByItem(2L), mapper.modelToDtoForItem(list.get(0)));
+        SeekCursor cursor = new SeekCursor(LocalDateTime.of(2030, 1, 1, 12, 0), 5L);
+        when(repository.findAllByQuery(any())).thenReturn(list);
+        assertEquals(service.findAllForOwner(2L, WAITING, cursor, 10), listMapper.modelsToDtos(list));
+        verify(repository).findAllByQuery(argThat(query -> query.getRole() == BookingQuery.Role.OWNER
+                && query.getState() == WAITING && cursor.equals(query.getAfter()) && query.getSize() == 10));
     }
 
     @Test
-    void findAllFinishByItemByUser_whenDataTrue_thenReturnList() {
-        List<Booking> list = List.of(Booking.builder().id(1L).build());
-        when(repository.findAllFinishByBookerIdByItemId(anyLong(), anyLong(), any())).thenReturn(list);
-        assertEquals(service.findAllFinishByItemByUser(1L, 2L), list);
+    void findAllForBooker_whenCursorHasNoStart_thenThrowValidation() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        assertThrows(ValidationException.class,
+                () -> service.findAllForBooker(2L, ALL, new SeekCursor(null, 5L), 10));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void findAllForOwner_whenCursorHasNoStart_thenThrowValidation() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        assertThrows(ValidationException.class,
+                () -> service.findAllForOwner(2L, ALL, new SeekCursor(null, 5L), 10));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void findAllForOwner_whenUserIsMissingAndSendCursor_thenThrowException() {
+        when(userService.findUserByIdForValid(anyLong())).thenThrow(new NoFoundException("нет юзера"));
+        assertThrows(NoFoundException.class,
+                () -> service.findAllForOwner(2L, ALL, new SeekCursor(LocalDateTime.now(), 5L), 10));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void getLastByItem_whenTrueDate_thenReturnBooking() {
+        LocalDateTime now = LocalDateTime.now();
+        BookingInterval interval = new BookingInterval(1L, 2L, 3L, now.minusDays(2), now.minusDays(1), APPROVED);
+        when(repository.findIntervalsByItemIds(any(), any()))
+                .thenReturn(List.of(interval));
+        assertEquals(service.getLastByItem(2L), mapper.intervalToDtoForItem(interval));
+    }
+
+    @Test
+    void getNextByItem_whenTrueDate_thenReturnBooking() {
+        LocalDateTime now = LocalDateTime.now();
+        BookingInterval interval = new BookingInterval(1L, 7L, 3L, now.plusDays(1), now.plusDays(2), WAITING);
+        when(repository.findIntervalsByItemIds(any(), any()))
+                .thenReturn(List.of(interval));
+        assertEquals(service.getNextByItem(7L), mapper.intervalToDtoForItem(interval));
+    }
+
+    @Test
+    void getLastByItems_whenSeveralBookingsForItem_thenReturnLastForEachItem() {
+        LocalDateTime now = LocalDateTime.now();
+        BookingInterval interval1 = new BookingInterval(1L, 11L, 3L, now.minusDays(4), now.minusDays(3), APPROVED);
+        BookingInterval interval2 = new BookingInterval(2L, 11L, 3L, now.minusDays(2), now.minusDays(1), APPROVED);
+        BookingInterval interval3 = new BookingInterval(3L, 12L, 3L, now.minusDays(2), now.minusDays(1), WAITING);
+        BookingInterval interval4 = new BookingInterval(4L, 12L, 3L, now.plusDays(2), now.plusDays(3), WAITING);
+        when(repository.findIntervalsByItemIds(any(), any()))
+                .thenReturn(List.of(interval1, interval2, interval3, interval4));
+        assertEquals(Map.of(11L, mapper.intervalToDtoForItem(interval2), 12L, mapper.intervalToDtoForItem(interval3)),
+                service.getLastByItems(List.of(11L, 12L)));
+        verify(repository).findIntervalsByItemIds(List.of(11L, 12L), BookingIntervalIndex.ACTIVE_STATUSES);
+    }
+
+    @Test
+    void getNextByItems_whenItemIdsIsEmpty_thenNotCallingRepository() {
+        assertEquals(Map.of(), service.getNextByItems(List.of()));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void hasFinishedBooking_whenRepositoryFindsBooking_thenCachePair() {
+        when(repository.existsByBookerIdAndItemIdAndEndBefore(anyLong(), anyLong(), any())).thenReturn(true);
+        assertTrue(service.hasFinishedBooking(101L, 102L));
+        assertTrue(service.hasFinishedBooking(101L, 102L));
+        verify(repository, times(1)).existsByBookerIdAndItemIdAndEndBefore(eq(101L), eq(102L), any());
+    }
+
+    @Test
+    void hasFinishedBooking_whenRepositoryFindsNothing_thenAskAgainNextTime() {
+        when(repository.existsByBookerIdAndItemIdAndEndBefore(anyLong(), anyLong(), any())).thenReturn(false);
+        assertFalse(service.hasFinishedBooking(103L, 104L));
+        assertFalse(service.hasFinishedBooking(103L, 104L));
+        verify(repository, times(2)).existsByBookerIdAndItemIdAndEndBefore(eq(103L), eq(104L), any());
+    }
+
+    @Test
+    void hasFinishedBooking_whenTrackedBookingHasEnded_thenNotCallingRepository() {
+        finishedBookings.track(105L, 106L, LocalDateTime.now().minusSeconds(1));
+        assertTrue(service.hasFinishedBooking(105L, 106L));
+        verify(repository, never()).existsByBookerIdAndItemIdAndEndBefore(eq(105L), eq(106L), any());
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package ru.practicum.shareit.booking;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.user.UserService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.practicum.shareit.booking.BookingStatus.APPROVED;
+import static ru.practicum.shareit.booking.BookingStatus.WAITING;
+
+@WebMvcTest(controllers = BookingStreamController.class)
+@Import(BookingEventBroker.class)
+class BookingStreamControllerTest {
+
+    @MockBean
+    private UserService userService;
+
+    @Autowired
+    private BookingEventBroker broker;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    @SneakyThrows
+    void stream_whenEventsPublished_thenSendOnlyEventsOfSubscriber() {
+        MockHttpServletResponse response = mvc.perform(get("/bookings/stream")
+                        .header("X-Sharer-User-Id", 1L))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+
+        broker.onBookingEvent(BookingEvent.created(
+                new BookingInterval(10L, 20L, 2L, start, start.plusDays(1), WAITING), 1L));
+        broker.onBookingEvent(BookingEvent.decided(
+                new BookingInterval(11L, 20L, 3L, start, start.plusDays(1), APPROVED), 1L));
+
+        String content = awaitContent(response, "\"bookingId\":10");
+        assertTrue(content.contains("\"bookingId\":10"));
+        assertFalse(content.contains("\"bookingId\":11"));
+    }
+
+    @Test
+    @SneakyThrows
+    void stream_whenUserIsMissing_thenNotFound() {
+        when(userService.findUserByIdForValid(99L)).thenThrow(new NoFoundException("Юзер не найден"));
+        mvc.perform(get("/bookings/stream")
+                        .header("X-Sharer-User-Id", 99L))
+                .andExpect(status().isNotFound());
+    }
+
+    @SneakyThrows
+    private String awaitContent(MockHttpServletResponse response, String expected) {
+        for (int i = 0; i < 100; i++) {
+            String content = response.getContentAsString(StandardCharsets.UTF_8);
+            if (content.contains(expected)) return content;
+            Thread.sleep(20);
+        }
+        return response.getContentAsString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.shareit.booking;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FinishedBookingCacheTest {
+
+    private final FinishedBookingCache cache = new FinishedBookingCache(2);
+
+    @Test
+    void contains_whenTrackedBookingHasEnded_thenTrue() {
+        cache.track(1L, 2L, LocalDateTime.now().minusSeconds(1));
+        cache.track(3L, 4L, LocalDateTime.now().plusDays(1));
+
+        assertTrue(cache.contains(1L, 2L));
+        assertFalse(cache.contains(3L, 4L));
+    }
+
+    @Test
+    void track_whenQueueIsFull_thenDropLatestEnding() {
+        cache.track(1L, 2L, LocalDateTime.now().plusDays(2));
+        cache.track(3L, 4L, LocalDateTime.now().minusSeconds(2));
+        cache.track(5L, 6L, LocalDateTime.now().minusSeconds(1));
+
+        assertTrue(cache.contains(3L, 4L));
+        assertTrue(cache.contains(5L, 6L));
+        assertFalse(cache.contains(1L, 2L));
+    }
+}
@@ -0,0 +1,79 @@
+package ru.practicum.shareit.comment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.comment.dto.CommentView;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+class CommentRepositoryTest {
+
+    @Autowired
+    private CommentRepository repository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private Item first;
+    private Item second;
+    private List<Comment> firstComments;
+
+    @BeforeEach
+    void setUp() {
+        User author = userRepository.save(User.builder().name("author").email("author@comment.ru").build());
+        first = itemRepository.save(Item.builder().name("first").available(true).owner(author).build());
+        second = itemRepository.save(Item.builder().name("second").available(true).owner(author).build());
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        firstComments = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            firstComments.add(0, repository.save(Comment.builder().text("first" + i).item(first).author(author)
+                    .created(created.plusHours(i / 2)).build()));
+        }
+        repository.save(Comment.builder().text("second").item(second).author(author).created(created).build());
+    }
+
+    @Test
+    void findLatestByItemIdIn_whenItemHasMoreCommentsThanLimit_thenReturnLatest() {
+        List<CommentView> latest = repository.findLatestByItemIdIn(List.of(first.getId(), second.getId()), 3);
+
+        assertEquals(List.of(first.getId(), first.getId(), first.getId(), second.getId()),
+                latest.stream().map(CommentView::getItemId).collect(Collectors.toList()));
+        assertEquals(List.of(firstComments.get(0).getId(), firstComments.get(1).getId(),
+                firstComments.get(2).getId()), latest.subList(0, 3).stream().map(CommentView::getId)
+                .collect(Collectors.toList()));
+        assertEquals("author", latest.get(0).getAuthorName());
+        assertEquals(firstComments.get(0).getCreated(), latest.get(0).getCreated());
+    }
+
+    @Test
+    void findPageByItemIdAfter_whenCreatedAreEqual_thenPagesDoNotOverlap() {
+        List<CommentOutDto> firstPage = repository.findPageByItemId(first.getId(), PageRequest.of(0, 3));
+        CommentOutDto last = firstPage.get(2);
+        List<CommentOutDto> secondPage = repository.findPageByItemIdAfter(first.getId(), last.getCreated(),
+                last.getId(), PageRequest.of(0, 3));
+
+        assertEquals(List.of(firstComments.get(0).getId(), firstComments.get(1).getId(),
+                firstComments.get(2).getId()), ids(firstPage));
+        assertEquals(List.of(firstComments.get(3).getId()), ids(secondPage));
+        assertEquals("author", firstPage.get(0).getAuthorName());
+    }
+
+    private static List<Long> ids(List<CommentOutDto> comments) {
+        return comments.stream().map(CommentOutDto::getId).collect(Collectors.toList());
+    }
+}
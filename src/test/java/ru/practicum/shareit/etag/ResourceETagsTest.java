@@ -0,0 +1,188 @@
+package ru.practicum.shareit.etag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.booking.BookingStatus;
+import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.request.ItemRequest;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import(ResourceETags.class)
+class ResourceETagsTest {
+
+    @Autowired
+    private ResourceETags etags;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private User owner;
+    private User booker;
+    private Item item;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("owner").email("owner@etag.ru").build());
+        booker = userRepository.save(User.builder().name("booker").email("booker@etag.ru").build());
+        item = itemRepository.save(Item.builder().name("item").available(true).owner(owner).build());
+        entityManager.flush();
+    }
+
+    @Test
+    void item_whenNothingChanged_thenSameTagOnEveryNode() {
+        ResourceETags otherNode = new ResourceETags(jdbcTemplate);
+
+        assertEquals(etags.item(owner.getId(), item.getId()), otherNode.item(owner.getId(), item.getId()));
+        assertNotEquals(etags.item(owner.getId(), item.getId()), etags.item(booker.getId(), item.getId()));
+    }
+
+    @Test
+    void item_whenVersionBumped_thenNewTag() {
+        String before = etags.item(owner.getId(), item.getId());
+        itemRepository.incrementVersion(item.getId());
+        String afterItem = etags.item(owner.getId(), item.getId());
+        itemRepository.incrementCommentCount(item.getId());
+        String afterComment = etags.item(owner.getId(), item.getId());
+        itemRepository.incrementVersionByUserId(owner.getId());
+
+        assertNotEquals(before, afterItem);
+        assertNotEquals(afterItem, afterComment);
+        assertNotEquals(afterComment, etags.item(owner.getId(), item.getId()));
+    }
+
+    @Test
+    void item_whenBookingTableChangedWithoutVersionBump_thenSameTag() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        String before = etags.item(owner.getId(), item.getId());
+        bookingRepository.saveAndFlush(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+
+        assertEquals(before, etags.item(owner.getId(), item.getId()));
+    }
+
+    @Test
+    void item_whenItemNotFound_thenThrowNoFound() {
+        assertThrows(NoFoundException.class, () -> etags.item(owner.getId(), item.getId() + 1000));
+    }
+
+    @Test
+    void checkNotModified_whenTagMatchesAndNotExpired_thenNotModified() {
+        String stem = etags.item(owner.getId(), item.getId());
+        String etag = ResourceETags.tag(stem, LocalDateTime.now().plusHours(1));
+
+        assertTrue(ResourceETags.checkNotModified(conditionalGet("\"" + etag + "\""), stem));
+        assertTrue(ResourceETags.checkNotModified(conditionalGet("\"" + ResourceETags.tag(stem, null) + "\""),
+                stem));
+    }
+
+    @Test
+    void checkNotModified_whenTagExpiredOrOtherStem_thenModified() {
+        String stem = etags.item(owner.getId(), item.getId());
+        String expired = ResourceETags.tag(stem, LocalDateTime.now().minusSeconds(1));
+        String other = ResourceETags.tag(etags.item(booker.getId(), item.getId()), null);
+
+        assertFalse(ResourceETags.checkNotModified(conditionalGet("\"" + expired + "\""), stem));
+        assertFalse(ResourceETags.checkNotModified(conditionalGet("\"" + other + "\""), stem));
+        assertFalse(ResourceETags.checkNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/")),
+                stem));
+    }
+
+    @Test
+    void ownerItems_whenItemAddedOrCommented_thenNewTag() {
+        String before = etags.ownerItems(owner.getId(), 0, 10);
+        itemRepository.saveAndFlush(Item.builder().name("item2").available(true).owner(owner).build());
+        String added = etags.ownerItems(owner.getId(), 0, 10);
+        itemRepository.incrementCommentCount(item.getId());
+
+        assertNotEquals(before, added);
+        assertNotEquals(added, etags.ownerItems(owner.getId(), 0, 10));
+        assertEquals(etags.ownerItems(booker.getId(), 0, 10), etags.ownerItems(booker.getId(), 0, 10));
+    }
+
+    @Test
+    void ownerItems_whenOtherPageOrCursor_thenOtherTag() {
+        assertNotEquals(etags.ownerItems(owner.getId(), 0, 10), etags.ownerItems(owner.getId(), 10, 10));
+        assertNotEquals(etags.ownerItems(owner.getId(), 10, 10), etags.ownerItemsAfter(owner.getId(), 10L, 10));
+        assertEquals(etags.ownerItemsAfter(owner.getId(), 10L, 10), etags.ownerItemsAfter(owner.getId(), 10L, 10));
+    }
+
+    @Test
+    void booking_whenStatusOrItemChanged_thenNewTag() {
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Booking booking = bookingRepository.saveAndFlush(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+        String before = etags.booking(booker.getId(), booking.getId());
+        bookingRepository.updateStatus(booking.getId(), owner.getId(), BookingStatus.WAITING,
+                BookingStatus.REJECTED);
+        String rejected = etags.booking(booker.getId(), booking.getId());
+        itemRepository.incrementVersion(item.getId());
+
+        assertNotEquals(before, rejected);
+        assertNotEquals(rejected, etags.booking(booker.getId(), booking.getId()));
+    }
+
+    @Test
+    void booking_whenBookingNotFound_thenThrowNoFound() {
+        assertThrows(NoFoundException.class, () -> etags.booking(booker.getId(), 1000L));
+    }
+
+    @Test
+    void booking_whenUserIsNeitherBookerNorOwner_thenThrowNoFound() {
+        User stranger = entityManager.persistAndFlush(User.builder().name("чужой").email("stranger@e.e").build());
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        Booking booking = bookingRepository.saveAndFlush(Booking.builder().start(start).end(start.plusDays(1))
+                .item(item).booker(booker).status(BookingStatus.WAITING).build());
+
+        assertThrows(NoFoundException.class, () -> etags.booking(stranger.getId(), booking.getId()));
+        assertNotEquals(etags.booking(booker.getId(), booking.getId()), etags.booking(owner.getId(), booking.getId()));
+    }
+
+    @Test
+    void request_whenItemCreatedForIt_thenNewTag() {
+        ItemRequest request = entityManager.persistAndFlush(ItemRequest.builder().description("нужна вещь")
+                .requestor(booker).created(LocalDateTime.now()).build());
+        String before = etags.request(booker.getId(), request.getId());
+        Item answer = itemRepository.saveAndFlush(Item.builder().name("answer").available(true).owner(owner)
+                .request(request).build());
+        String created = etags.request(booker.getId(), request.getId());
+        itemRepository.incrementVersion(answer.getId());
+
+        assertNotEquals(before, created);
+        assertNotEquals(created, etags.request(booker.getId(), request.getId()));
+    }
+
+    private static ServletWebRequest conditionalGet(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", ifNoneMatch);
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+}
@@ -0,0 +1,270 @@
+package ru.practicum.shareit.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.StreamUtils;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.user.UserService;
+import ru.practicum.shareit.user.dto.UserDto;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class IdempotencyFilterTest {
+
+    @MockBean
+    private UserService userService;
+    @MockBean
+    private ItemService itemService;
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper mapper;
+    @Autowired
+    private IdempotencyStore store;
+
+    @Test
+    @SneakyThrows
+    void post_whenKeyIsRepeated_thenReplayResponseWithoutCallingService() {
+        UserDto userDto = UserDto.builder().name("имя").email("replay@e.e").build();
+        when(userService.createUser(any())).thenReturn(UserDto.builder().id(1L).name("имя")
+                .email("replay@e.e").build());
+
+        MockHttpServletResponse first = createUser(userDto, "key-1");
+        MockHttpServletResponse second = createUser(userDto, "key-1");
+
+        assertEquals(200, second.getStatus());
+        assertEquals(first.getContentAsString(StandardCharsets.UTF_8),
+                second.getContentAsString(StandardCharsets.UTF_8));
+        assertNull(first.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals("true", second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        verify(userService, times(1)).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenDuplicatesAreConcurrent_thenExecuteOnce() {
+        UserDto userDto = UserDto.builder().name("имя").email("concurrent@e.e").build();
+        when(userService.createUser(any())).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return UserDto.builder().id(2L).name("имя").email("concurrent@e.e").build();
+        });
+
+        CompletableFuture<MockHttpServletResponse> first =
+                CompletableFuture.supplyAsync(() -> createUser(userDto, "key-2"));
+        CompletableFuture<MockHttpServletResponse> second =
+                CompletableFuture.supplyAsync(() -> createUser(userDto, "key-2"));
+
+        assertEquals(first.get().getContentAsString(StandardCharsets.UTF_8),
+                second.get().getContentAsString(StandardCharsets.UTF_8));
+        verify(userService, times(1)).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenFirstFailsWithServerError_thenConcurrentRetriesExecuteOnce() {
+        UserDto userDto = UserDto.builder().name("имя").email("retry@e.e").build();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        when(userService.createUser(any())).thenAnswer(invocation -> {
+            firstStarted.countDown();
+            Thread.sleep(300);
+            throw new SQLException("сбой");
+        }).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return UserDto.builder().id(4L).name("имя").email("retry@e.e").build();
+        });
+
+        CompletableFuture<MockHttpServletResponse> first =
+                CompletableFuture.supplyAsync(() -> createUser(userDto, "key-4"));
+        firstStarted.await();
+        List<CompletableFuture<MockHttpServletResponse>> retries = Stream.generate(() ->
+                        CompletableFuture.supplyAsync(() -> createUser(userDto, "key-4")))
+                .limit(3)
+                .collect(Collectors.toList());
+
+        assertEquals(500, first.get().getStatus());
+        for (CompletableFuture<MockHttpServletResponse> retry : retries) {
+            assertEquals(200, retry.get().getStatus());
+            assertEquals("{\"id\":4,\"name\":\"имя\",\"email\":\"retry@e.e\"}",
+                    retry.get().getContentAsString(StandardCharsets.UTF_8));
+        }
+        verify(userService, times(2)).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenKeyIsReusedForOtherBody_thenUnprocessableEntity() {
+        when(userService.createUser(any())).thenReturn(UserDto.builder().id(3L).build());
+        createUser(UserDto.builder().name("имя").email("first@e.e").build(), "key-3");
+
+        MockHttpServletResponse response = createUser(UserDto.builder().name("имя").email("other@e.e").build(),
+                "key-3");
+
+        assertEquals(422, response.getStatus());
+        verify(userService, times(1)).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenNoKey_thenExecuteEveryRequest() {
+        UserDto userDto = UserDto.builder().name("имя").email("nokey@e.e").build();
+        when(userService.createUser(any())).thenReturn(userDto);
+
+        mvc.perform(post("/users").content(mapper.writeValueAsString(userDto))
+                .contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        mvc.perform(post("/users").content(mapper.writeValueAsString(userDto))
+                .contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+
+        verify(userService, times(2)).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenBodyIsNdjson_thenExecuteEveryRequest() {
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = mvc.perform(post("/items/import")
+                            .header("X-Sharer-User-Id", 1L)
+                            .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "import-1")
+                            .content("{\"name\":\"Дрель\",\"description\":\"ударная\",\"available\":true}\n")
+                            .characterEncoding(StandardCharsets.UTF_8)
+                            .contentType(MediaType.APPLICATION_NDJSON))
+                    .andReturn().getResponse();
+            assertEquals(200, response.getStatus());
+            assertNull(response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        }
+
+        verify(itemService, times(2)).importItems(anyLong(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void post_whenBodyIsLargerThanLimit_thenPayloadTooLargeWithoutCallingService() {
+        UserDto userDto = UserDto.builder().name("и".repeat(1 << 20)).email("large@e.e").build();
+
+        MockHttpServletResponse response = createUser(userDto, "large-1");
+
+        assertEquals(413, response.getStatus());
+        verify(userService, never()).createUser(any());
+    }
+
+    @Test
+    @SneakyThrows
+    void doFilter_whenReadListenerIsSet_thenItReceivesWholeBody() {
+        IdempotencyFilter filter = new IdempotencyFilter(store, mapper, Duration.ofSeconds(1), 16);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "listener-1");
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent("{}".getBytes(StandardCharsets.UTF_8));
+        List<String> events = new ArrayList<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            ServletInputStream input = req.getInputStream();
+            input.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    events.add(StreamUtils.copyToString(input, StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    events.add("end");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    events.add("error");
+                }
+            });
+            ((HttpServletResponse) res).setStatus(201);
+        });
+
+        assertEquals(List.of("{}", "end"), events);
+    }
+
+    @Test
+    @SneakyThrows
+    void doFilter_whenDuplicateWaitTimesOut_thenConflictWithRetryAfter() {
+        IdempotencyFilter filter = new IdempotencyFilter(store, mapper, Duration.ofMillis(100), 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> doFilter(filter, "slow-1",
+                new MockHttpServletResponse(), (req, res) -> {
+                    started.countDown();
+                    awaitQuietly(release);
+                    ((HttpServletResponse) res).setStatus(201);
+                }));
+        started.await();
+        MockHttpServletResponse duplicate = new MockHttpServletResponse();
+
+        doFilter(filter, "slow-1", duplicate, (req, res) -> ((HttpServletResponse) res).setStatus(201));
+        release.countDown();
+        first.get();
+
+        assertEquals(409, duplicate.getStatus());
+        assertEquals("1", duplicate.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void store_whenLockTimeoutIsShorterThanRequestTimeout_thenThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> new IdempotencyStore(null, Duration.ofHours(24),
+                Duration.ofMinutes(1), Duration.ofSeconds(30), 10));
+    }
+
+    @SneakyThrows
+    private static void doFilter(IdempotencyFilter filter, String key, MockHttpServletResponse response,
+                                 FilterChain chain) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, key);
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent("{}".getBytes(StandardCharsets.UTF_8));
+        filter.doFilter(request, response, chain);
+    }
+
+    @SneakyThrows
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.await();
+    }
+
+    @SneakyThrows
+    private MockHttpServletResponse createUser(UserDto userDto, String key) {
+        return mvc.perform(post("/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, key)
+                        .content(mapper.writeValueAsString(userDto))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+    }
+}
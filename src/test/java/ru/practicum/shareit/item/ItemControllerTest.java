@@ -7,24 +7,36 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.shareit.booking.FreeSlot;
 import ru.practicum.shareit.comment.dto.CommentInDto;
 import ru.practicum.shareit.comment.dto.CommentOutDto;
+import ru.practicum.shareit.etag.ResourceETags;
+import ru.practicum.shareit.etag.Snapshot;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
 import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
 import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
+import ru.practicum.shareit.user.UserService;
 
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(ItemController.class)
@@ -36,6 +48,10 @@ class ItemControllerTest {
     private MockMvc mvc;
     @MockBean
     private ItemService service;
+    @MockBean
+    private ResourceETags etags;
+    @MockBean
+    private UserService userService;
 
     ItemDto itemDto;
     long userId;
@@ -148,18 +164,200 @@ class ItemControllerTest {
     @Test
     @SneakyThrows
     void getItemDtoById_whenRequestIsValid_thenReturnItemDto() {
-        when(service.getItemOfId(anyLong(), anyLong())).thenReturn(itemWithBookingAndCommentDto);
+        when(service.getItemOfId(anyLong(), anyLong(), anyLong())).thenReturn(new Snapshot<>(itemWithBookingAndCommentDto, null));
         String response = mvc.perform(get("/items/{itemsId}", itemId)
                         .header("X-Sharer-User-Id", userId))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(itemWithBookingAndCommentDto), response);
-        verify(service).getItemOfId(userId, itemId);
+        verify(service).getItemOfId(userId, itemId, 0L);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoById_whenETagIsNotChanged_thenReturnNotModifiedWithoutService() {
+        when(etags.item(userId, itemId, 0L)).thenReturn("tag");
+        mvc.perform(get("/items/{itemsId}", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"tag-0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"tag-0\""));
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoById_whenETagIsChanged_thenReturnItemWithNewETagAndPassReadVersion() {
+        when(etags.itemVersion(itemId)).thenReturn(5L);
+        when(etags.item(userId, itemId, 5L)).thenReturn("new");
+        when(service.getItemOfId(anyLong(), anyLong(), anyLong())).thenReturn(new Snapshot<>(itemWithBookingAndCommentDto, null));
+        mvc.perform(get("/items/{itemsId}", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"old-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"new-0\""));
+        verify(service).getItemOfId(userId, itemId, 5L);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoById_whenETagIsExpired_thenReturnItemWithNextExpiry() {
+        LocalDateTime nextStart = LocalDateTime.now().plusHours(1);
+        when(etags.item(userId, itemId, 0L)).thenReturn("tag");
+        when(service.getItemOfId(anyLong(), anyLong(), anyLong()))
+                .thenReturn(new Snapshot<>(itemWithBookingAndCommentDto, nextStart));
+        String expired = ResourceETags.tag("tag", LocalDateTime.now().minusSeconds(1));
+        mvc.perform(get("/items/{itemsId}", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"" + expired + "\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + ResourceETags.tag("tag", nextStart) + "\""));
+        verify(service).getItemOfId(userId, itemId, 0L);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoById_whenETagIsNotExpired_thenReturnNotModifiedWithoutService() {
+        when(etags.item(userId, itemId, 0L)).thenReturn("tag");
+        String etag = ResourceETags.tag("tag", LocalDateTime.now().plusHours(1));
+        mvc.perform(get("/items/{itemsId}", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"" + etag + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + etag + "\""));
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoByUser_whenETagIsNotChanged_thenReturnNotModifiedWithoutService() {
+        when(etags.ownerItems(userId, 0, 10)).thenReturn("tag");
+        mvc.perform(get("/items")
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"tag-0\""))
+                .andExpect(status().isNotModified());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoById_whenUserNotFound_thenReturnNotFoundEvenIfETagMatches() {
+        when(etags.item(userId, itemId, 0L)).thenReturn("tag");
+        when(userService.findUserByIdForValid(userId)).thenThrow(new NoFoundException("нет пользователя"));
+        mvc.perform(get("/items/{itemsId}", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"tag-0\""))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtoByUser_whenUserNotFound_thenReturnNotFoundEvenIfETagMatches() {
+        when(etags.ownerItems(userId, 0, 10)).thenReturn("tag");
+        when(userService.findUserByIdForValid(userId)).thenThrow(new NoFoundException("нет пользователя"));
+        mvc.perform(get("/items")
+                        .header("X-Sharer-User-Id", userId)
+                        .header("If-None-Match", "\"tag-0\""))
+                .andExpect(status().isNotFound());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemDtosByIds_whenIdsAreValid_thenReturnResultsFromService() {
+        List<ItemBatchResultDto> results = List.of(
+                ItemBatchResultDto.builder().itemId(2L).status(ItemBatchResultDto.Status.FOUND)
+                        .item(itemWithBookingAndCommentDto).build(),
+                ItemBatchResultDto.builder().itemId(1L).status(ItemBatchResultDto.Status.NOT_FOUND).build());
+        when(service.getItemsOfIds(anyLong(), any())).thenReturn(results);
+        String response = mvc.perform(get("/items/batch")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("ids", "2,1"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(mapper.writeValueAsString(results), response);
+        verify(service).getItemsOfIds(userId, List.of(2L, 1L));
+    }
+
+    @Test
+    @SneakyThrows
+    void postItemDtosByIds_whenIdsAreInBody_thenReturnResultsFromService() {
+        when(service.getItemsOfIds(anyLong(), any())).thenReturn(List.of());
+        mvc.perform(post("/items/batch")
+                        .header("X-Sharer-User-Id", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[3,1,2]"))
+                .andExpect(status().isOk());
+        verify(service).getItemsOfIds(userId, List.of(3L, 1L, 2L));
+    }
+
+    @Test
+    @SneakyThrows
+    void postItemDtosByIds_whenIdsAreEmpty_thenReturnBadRequest() {
+        mvc.perform(post("/items/batch")
+                        .header("X-Sharer-User-Id", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    @SneakyThrows
+    void getComments_whenPageIsFull_thenReturnNextCursor() {
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        List<CommentOutDto> comments = List.of(
+                CommentOutDto.builder().id(2L).text("новый").created(created.plusHours(1)).build(),
+                CommentOutDto.builder().id(1L).text("старый").created(created).build());
+        SeekCursor after = new SeekCursor(created.plusHours(2), 3L);
+        when(service.getComments(anyLong(), anyLong(), any(), anyInt())).thenReturn(comments);
+        mvc.perform(get("/items/{itemId}/comments", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .param("after", after.encode())
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(created, 1L).encode()));
+        verify(service).getComments(userId, itemId, after, 2);
+    }
+
+    @Test
+    @SneakyThrows
+    void importItemDtos_whenBodyIsNdjson_thenStreamResultPerLine() {
+        doAnswer(invocation -> {
+            Consumer<ItemImportResultDto> results = invocation.getArgument(2);
+            results.accept(ItemImportResultDto.builder().line(1).status(200).itemId(5L).build());
+            results.accept(ItemImportResultDto.builder().line(2).status(400).error("неверный JSON").build());
+            return null;
+        }).when(service).importItems(anyLong(), any(), any());
+
+        String response = mvc.perform(post("/items/import")
+                        .header("X-Sharer-User-Id", userId)
+                        .content(mapper.writeValueAsString(itemDto) + "\n{\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", startsWith(MediaType.APPLICATION_NDJSON_VALUE)))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        assertEquals("{\"line\":1,\"status\":200,\"itemId\":5,\"error\":null}\n"
+                + "{\"line\":2,\"status\":400,\"itemId\":null,\"error\":\"неверный JSON\"}\n", response);
+        verify(service).importItems(eq(userId), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void importItemDtos_whenUserNotFound_thenReturnNotFound() {
+        doThrow(new NoFoundException("Пользователь отсутствует")).when(service).importItems(anyLong(), any(), any());
+        mvc.perform(post("/items/import")
+                        .header("X-Sharer-User-Id", userId)
+                        .content(mapper.writeValueAsString(itemDto))
+                        .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isNotFound());
     }
 
     @Test
     @SneakyThrows
     void getItemDtoById_whenItemIdIsNotFound_thenReturnNotFound() {
-        when(service.getItemOfId(anyLong(), anyLong())).thenThrow(new NoFoundException("Ничено не найдено"));
+        when(service.getItemOfId(anyLong(), anyLong(), anyLong())).thenThrow(new NoFoundException("Ничено не найдено"));
         mvc.perform(get("/items/{itemsId}", itemId)
                         .header("X-Sharer-User-Id", userId))
                 .andExpect(status().is(404));
@@ -168,7 +366,7 @@ class ItemControllerTest {
     @Test
     @SneakyThrows
     void getItemDtoById_whenHeaderParamIsNotValid_thenReturnBadRequest() {
-        when(service.getItemOfId(anyLong(), anyLong())).thenReturn(itemWithBookingAndCommentDto);
+        when(service.getItemOfId(anyLong(), anyLong(), anyLong())).thenReturn(new Snapshot<>(itemWithBookingAndCommentDto, null));
         mvc.perform(get("/items/{itemsId}", itemId))
                 //  .header("X-Sharer-User-Id", userId))
                 .andExpect(status().is(400));
@@ -178,31 +376,31 @@ class ItemControllerTest {
     @Test
     @SneakyThrows
     void getItemDtoByUser_whenRequestIsValidAndNoParam_thenReturnListItemDto() {
-        when(service.getItems(anyLong(), any())).thenReturn(list);
+        when(service.getItems(anyLong(), any())).thenReturn(new Snapshot<>(list, null));
         String response = mvc.perform(get("/items")
                         .header("X-Sharer-User-Id", userId))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).getItems(userId, PageRequest.of(0, 10));
+        verify(service).getItems(userId, new FromSizeRequest(0, 10));
     }
 
     @Test
     @SneakyThrows
     void getItemDtoByUser_whenRequestIsValidAndWithParam_thenReturnListItemDto() {
-        when(service.getItems(anyLong(), any())).thenReturn(list);
+        when(service.getItems(anyLong(), any())).thenReturn(new Snapshot<>(list, null));
         String response = mvc.perform(get("/items")
                         .header("X-Sharer-User-Id", userId)
                         .param("from", "30")
                         .param("size", "5"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(list), response);
-        verify(service).getItems(userId, PageRequest.of(6, 5));
+        verify(service).getItems(userId, new FromSizeRequest(30, 5));
     }
 
     @Test
     @SneakyThrows
     void getItemDtoByUser_whenRequestIsNotValidWithFailParam_thenReturnBadRequest() {
-        when(service.getItems(anyLong(), any())).thenReturn(list);
+        when(service.getItems(anyLong(), any())).thenReturn(new Snapshot<>(list, null));
         mvc.perform(get("/items")
                         .header("X-Sharer-User-Id", userId)
                         .param("from", "-30")
@@ -218,35 +416,86 @@ class ItemControllerTest {
         mvc.perform(get("/items")
                         .header("X-Sharer-User-Id", userId))
                 .andExpect(status().is(404));
-        verify(service).getItems(userId, PageRequest.of(0, 10));
+        verify(service).getItems(userId, new FromSizeRequest(0, 10));
     }
 
     @Test
     @SneakyThrows
     void getItemDtoByUser_whenRequestIsNotValid_thenReturnBadRequest() {
-        when(service.getItems(anyLong(), any())).thenReturn(list);
+        when(service.getItems(anyLong(), any())).thenReturn(new Snapshot<>(list, null));
         mvc.perform(get("/items"))
                 //        .header("X-Sharer-User-Id", userId))
                 .andExpect(status().is(400));
         verifyNoInteractions(service);
     }
 
+    @Test
+    @SneakyThrows
+    void getItemDtoByUser_whenCursorGiven_thenReturnPageAfterItAndNextCursor() {
+        itemWithBookingAndCommentDto.setId(7L);
+        SeekCursor after = new SeekCursor(null, 5L);
+        when(service.getItems(anyLong(), any(SeekCursor.class), anyInt())).thenReturn(new Snapshot<>(list, null));
+        when(etags.ownerItemsAfter(userId, 5L, 1)).thenReturn("tag");
+
+        mvc.perform(get("/items")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("size", "1")
+                        .param("after", after.encode()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"tag-0\""))
+                .andExpect(header().string(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(null, 7L).encode()));
+        verify(service).getItems(userId, after, 1);
+    }
+
+    @Test
+    @SneakyThrows
+    void searchItemDtoByUser_whenCursorGiven_thenReturnPageAfterIt() {
+        when(service.getItemOfText(anyLong(), anyString(), any(SeekCursor.class), anyInt()))
+                .thenReturn(new SeekPage<>(dtoList, null));
+        SeekCursor after = new SeekCursor(null, 5L);
+
+        mvc.perform(get("/items/search")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("text", "example")
+                        .param("size", "2")
+                        .param("after", after.encode()))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(SeekCursor.NEXT_CURSOR_HEADER));
+        verify(service).getItemOfText(userId, "example", after, 2);
+    }
+
+    @Test
+    @SneakyThrows
+    void searchItemDtoByUser_whenPageIsFull_thenReturnCursorFromService() {
+        SeekCursor next = new SeekCursor(null, dtoList.get(dtoList.size() - 1).getId(), 0.25f);
+        when(service.getItemOfText(anyLong(), anyString(), any(SeekCursor.class), anyInt()))
+                .thenReturn(new SeekPage<>(dtoList, next));
+
+        mvc.perform(get("/items/search")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("text", "example")
+                        .param("size", String.valueOf(dtoList.size()))
+                        .param("after", new SeekCursor(null, 5L, 0.5f).encode()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SeekCursor.NEXT_CURSOR_HEADER, next.encode()));
+    }
+
     @Test
     @SneakyThrows
     void searchItemDtoByUser_whenRequestIsValidAndNoParamPage_thenReturnListItemDto() {
-        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(dtoList);
+        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new SeekPage<>(dtoList, null));
         String response = mvc.perform(get("/items/search")
                         .header("X-Sharer-User-Id", userId)
                         .param("text", "example"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(dtoList), response);
-        verify(service).getItemOfText(userId, "example", PageRequest.of(0, 10));
+        verify(service).getItemOfText(userId, "example", new FromSizeRequest(0, 10));
     }
 
     @Test
     @SneakyThrows
     void searchItemDtoByUser_whenRequestIsValidAndNoWithParamPage_thenReturnListItemDto() {
-        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(dtoList);
+        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new SeekPage<>(dtoList, null));
         String response = mvc.perform(get("/items/search")
                         .header("X-Sharer-User-Id", userId)
                         .param("text", "example")
@@ -254,26 +503,26 @@ class ItemControllerTest {
                         .param("size", "5"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(dtoList), response);
-        verify(service).getItemOfText(userId, "example", PageRequest.of(6, 5));
+        verify(service).getItemOfText(userId, "example", new FromSizeRequest(30, 5));
     }
 
     @Test
     @SneakyThrows
     void searchItemDtoByUser_whenRequestIsValidAndNoWithParamPageNotText_thenReturnEmptyList() {
-        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new ArrayList<>());
+        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new SeekPage<>(new ArrayList<>(), null));
         String response = mvc.perform(get("/items/search")
                         .header("X-Sharer-User-Id", userId)
                         .param("from", "30")
                         .param("size", "5"))
                 .andExpect(status().isOk()).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(new ArrayList<>()), response);
-        verify(service).getItemOfText(userId, "", PageRequest.of(6, 5));
+        verify(service).getItemOfText(userId, "", new FromSizeRequest(30, 5));
     }
 
     @Test
     @SneakyThrows
     void searchItemDtoByUser_whenRequestIsNotValidWithoutUserId_thenReturnBadRequest() {
-        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(dtoList);
+        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new SeekPage<>(dtoList, null));
         mvc.perform(get("/items/search"))
                 .andExpect(status().is(400));
         verifyNoInteractions(service);
@@ -287,13 +536,13 @@ class ItemControllerTest {
                         .header("X-Sharer-User-Id", userId)
                         .param("text", "example"))
                 .andExpect(status().is(404));
-        verify(service).getItemOfText(userId, "example", PageRequest.of(0, 10));
+        verify(service).getItemOfText(userId, "example", new FromSizeRequest(0, 10));
     }
 
     @Test
     @SneakyThrows
     void searchItemDtoByUser_whenRequestIsNotValidFailWithParamPage_thenReturnBadRequest() {
-        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(dtoList);
+        when(service.getItemOfText(anyLong(), anyString(), any())).thenReturn(new SeekPage<>(dtoList, null));
         mvc.perform(get("/items/search")
                         .header("X-Sharer-User-Id", userId)
                         .param("text", "example")
@@ -363,4 +612,30 @@ class ItemControllerTest {
                 .andExpect(status().is(400));
         verifyNoInteractions(service);
     }
-}
\ No newline at end of file
+
+    @Test
+    @SneakyThrows
+    void getAvailability_whenPeriodIsValid_thenReturnFreeSlots() {
+        LocalDateTime from = LocalDateTime.of(2030, 1, 1, 12, 0);
+        LocalDateTime to = from.plusDays(3);
+        List<FreeSlot> slots = List.of(new FreeSlot(from, from.plusDays(1)), new FreeSlot(from.plusDays(2), to));
+        when(service.getAvailability(anyLong(), anyLong(), any(), any())).thenReturn(slots);
+        String response = mvc.perform(get("/items/{itemId}/availability", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .param("from", from.toString())
+                        .param("to", to.toString()))
+                .andExpect(status().is(200)).andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(mapper.writeValueAsString(slots), response);
+        verify(service).getAvailability(userId, itemId, from, to);
+    }
+
+    @Test
+    @SneakyThrows
+    void getAvailability_whenParamIsMissing_thenServiceIsNotCallAndThrowException() {
+        mvc.perform(get("/items/{itemId}/availability", itemId)
+                        .header("X-Sharer-User-Id", userId)
+                        .param("from", "2030-01-01T12:00:00"))
+                .andExpect(status().is(400));
+        verifyNoInteractions(service);
+    }
+}
@@ -1,17 +1,140 @@
 package ru.practicum.shareit.item;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.comment.Comment;
+import ru.practicum.shareit.item.dto.ItemForRequestDto;
+import ru.practicum.shareit.item.dto.ItemVersion;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.request.ItemRequest;
+import ru.practicum.shareit.user.User;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
 class ItemRepositoryTest {
 
     @Autowired
     private ItemRepository repository;
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void searchAvailableIds_whenUnavailableItemMatchesByName_thenSkipIt() {
+        Item first = repository.save(Item.builder().name("Дрель").description("простая").available(true).build());
+        repository.save(Item.builder().name("Дрель ударная").description("сломана").available(false).build());
+        Item third = repository.save(Item.builder().name("Шуруповерт").description("почти дрель")
+                .available(true).build());
+
+        assertEquals(List.of(first.getId(), third.getId()),
+                repository.searchAvailableIds("дРелЬ", new FromSizeRequest(0, 10)));
+        assertEquals(List.of(third.getId()), repository.searchAvailableIds("дрель", new FromSizeRequest(1, 10)));
+    }
+
+    @Test
+    void searchAvailableIdsAfter_whenCursorGiven_thenReturnIdsAfterIt() {
+        Item first = repository.save(Item.builder().name("Дрель").description("простая").available(true).build());
+        Item second = repository.save(Item.builder().name("Дрель ударная").description("мощная")
+                .available(true).build());
+
+        assertEquals(List.of(second.getId()),
+                repository.searchAvailableIdsAfter("дрель", first.getId(), PageRequest.of(0, 10)));
+        assertEquals(List.of(), repository.searchAvailableIdsAfter("дрель", second.getId(), PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findItemsByOwnerEqualsAndIdGreaterThanOrderById_whenCursorGiven_thenReturnNextPage() {
+        User owner = entityManager.persist(User.builder().name("владелец").email("owner@e.e").build());
+        User other = entityManager.persist(User.builder().name("другой").email("other@e.e").build());
+        Item first = repository.save(Item.builder().name("Дрель").owner(owner).available(true).build());
+        repository.save(Item.builder().name("Пила").owner(other).available(true).build());
+        Item third = repository.save(Item.builder().name("Молоток").owner(owner).available(true).build());
+        Item fourth = repository.save(Item.builder().name("Лопата").owner(owner).available(true).build());
+
+        assertEquals(List.of(third),
+                repository.findItemsByOwnerEqualsAndIdGreaterThanOrderById(owner, first.getId(), PageRequest.of(0, 1)));
+        assertEquals(List.of(fourth),
+                repository.findItemsByOwnerEqualsAndIdGreaterThanOrderById(owner, third.getId(), PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void incrementCommentCount_whenCalledTwice_thenCountIsTwo() {
+        Item item = repository.save(Item.builder().name("Дрель").available(true).build());
+
+        repository.incrementCommentCount(item.getId());
+        repository.incrementCommentCount(item.getId());
+        entityManager.clear();
+
+        assertEquals(2L, repository.findById(item.getId()).orElseThrow().getCommentCount());
+    }
+
+    @Test
+    void findWithOwnerAndRequestById_whenItemHasRequest_thenLoadOwnerRequestAndRequestor() {
+        Item item = saveItemWithRequest();
+        entityManager.clear();
+
+        Item found = repository.findWithOwnerAndRequestById(item.getId()).orElseThrow();
+
+        assertTrue(Hibernate.isInitialized(found.getOwner()));
+        assertTrue(Hibernate.isInitialized(found.getRequest()));
+        assertTrue(Hibernate.isInitialized(found.getRequest().getRequestor()));
+    }
 
     @Test
-    void findItemsByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCaseAndAvailableIsTrueOrderById() {
+    void findAllWithOwnerByIdIn_whenItemHasRequest_thenLoadOnlyOwner() {
+        Item item = saveItemWithRequest();
+        entityManager.clear();
+
+        Item found = repository.findAllWithOwnerByIdIn(List.of(item.getId())).get(0);
+
+        assertTrue(Hibernate.isInitialized(found.getOwner()));
+        assertFalse(Hibernate.isInitialized(found.getRequest()));
+        assertEquals(item.getRequest().getId(), found.getRequest().getId());
+    }
+
+    @Test
+    void findAllByRequestIdIn_whenItemsOfSeveralRequests_thenReturnOnlyTheirItems() {
+        Item item = saveItemWithRequest();
+        repository.save(Item.builder().name("Пила").owner(item.getOwner()).available(true).build());
+        Item other = repository.save(Item.builder().name("Молоток").owner(item.getOwner())
+                .request(item.getRequest()).available(false).build());
+
+        assertEquals(List.of(
+                        new ItemForRequestDto(item.getId(), "Дрель", null, true, item.getRequest().getId()),
+                        new ItemForRequestDto(other.getId(), "Молоток", null, false, item.getRequest().getId())),
+                repository.findAllByRequestIdIn(List.of(item.getRequest().getId(), -1L)));
+    }
+
+    @Test
+    void incrementVersionByUserId_whenUserIsOwnerCommentAuthorOrRequestor_thenBumpThoseItems() {
+        Item requested = saveItemWithRequest();
+        User requestor = requested.getRequest().getRequestor();
+        User other = entityManager.persist(User.builder().name("другой").email("other@e.e").build());
+        Item owned = repository.save(Item.builder().name("Пила").owner(requestor).available(true).build());
+        Item commented = repository.save(Item.builder().name("Молоток").owner(other).available(true).build());
+        Item untouched = repository.save(Item.builder().name("Лопата").owner(other).available(true).build());
+        entityManager.persist(Comment.builder().text("отлично").item(commented).author(requestor)
+                .created(LocalDateTime.now()).build());
+        entityManager.flush();
+
+        repository.incrementVersionByUserId(requestor.getId());
+
+        assertEquals(Map.of(requested.getId(), 1L, owned.getId(), 1L, commented.getId(), 1L, untouched.getId(), 0L),
+                repository.findVersionsByIdIn(List.of(requested.getId(), owned.getId(), commented.getId(),
+                                untouched.getId(), -1L)).stream()
+                        .collect(Collectors.toMap(ItemVersion::getId, ItemVersion::getVersion)));
     }
 
     @Test
@@ -21,4 +144,14 @@ class ItemRepositoryTest {
     @Test
     void findAllByRequestId() {
     }
-}
\ No newline at end of file
+
+    private Item saveItemWithRequest() {
+        User owner = entityManager.persist(User.builder().name("владелец").email("graph@e.e").build());
+        User requestor = entityManager.persist(User.builder().name("автор").email("requestor@e.e").build());
+        ItemRequest request = entityManager.persist(ItemRequest.builder().description("нужна дрель")
+                .requestor(requestor).created(LocalDateTime.now()).build());
+        Item item = repository.save(Item.builder().name("Дрель").owner(owner).request(request).available(true).build());
+        entityManager.flush();
+        return item;
+    }
+}
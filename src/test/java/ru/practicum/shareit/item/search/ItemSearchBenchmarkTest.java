@@ -0,0 +1,83 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.shareit.item.ItemRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение задержки поиска вещей разными ItemSearchBackend.
+ * Запуск: mvn test -Dtest=ItemSearchBenchmarkTest -Dshareit.benchmark=true [-Dshareit.benchmark.items=1000000].
+ * Сравниваются memory и like в H2. Задержку postgres и like на настоящем Postgres
+ * измеряет PostgresItemSearchBenchmarkTest
+ */
+@Slf4j
+@SpringBootTest
+@EnabledIfSystemProperty(named = "shareit.benchmark", matches = "true")
+class ItemSearchBenchmarkTest {
+
+    private static final long FIRST_ID = 100_000_000L;
+    private static final String[] WORDS = {"дрель", "отвертка", "пила", "молоток", "лестница", "палатка",
+            "велосипед", "самокат", "проектор", "колонка"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ItemRepository itemRepository;
+
+    private int count;
+
+    @BeforeEach
+    void setUp() {
+        count = Integer.getInteger("shareit.benchmark.items", 1_000_000);
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batch.add(new Object[]{FIRST_ID + i, WORDS[i % WORDS.length] + " " + i,
+                    "описание " + WORDS[(i / WORDS.length) % WORDS.length] + " номер " + i, i % 7 != 0});
+            if (batch.size() == 10_000) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+        insert(batch);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM items WHERE id >= ?", FIRST_ID);
+    }
+
+    @Test
+    void search_compareBackends() {
+        ItemSearchIndex memory = new ItemSearchIndex(jdbcTemplate, 1024);
+        long started = System.nanoTime();
+        memory.rebuild();
+        log.info("memory: построение индекса по {} вещам заняло {} мс", count, (System.nanoTime() - started) / 1_000_000);
+        List<ItemSearchBackend> backends = List.of(memory, new LikeItemSearchBackend(itemRepository));
+        for (ItemSearchBackend backend : backends) {
+            assertEquals(10, backend.search("самокат", 0, 10).size());
+            long start = System.nanoTime();
+            int queries = 20;
+            for (int i = 0; i < queries; i++) {
+                backend.search(WORDS[i % WORDS.length] + " " + (i * 37), 0, 10);
+            }
+            log.info("{}: средняя задержка поиска по {} вещам {} мкс", backend.getClass().getSimpleName(), count,
+                    (System.nanoTime() - start) / queries / 1_000);
+        }
+    }
+
+    private void insert(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate("INSERT INTO items (id, name_item, description, available) VALUES (?, ?, ?, ?)",
+                batch);
+    }
+}
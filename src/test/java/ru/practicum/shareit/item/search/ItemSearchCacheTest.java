@@ -0,0 +1,83 @@
+package ru.practicum.shareit.item.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ItemSearchCacheTest {
+
+    private MeterRegistry registry;
+    private ItemSearchCache cache;
+    private AtomicInteger searches;
+    private Supplier<SeekPage<ItemDto>> search;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new ItemSearchCache(registry, 100, Duration.ofMinutes(1));
+        searches = new AtomicInteger();
+        search = () -> {
+            searches.incrementAndGet();
+            return new SeekPage<>(List.of(ItemDto.builder().id(1L).name("Дрель").build()), null);
+        };
+    }
+
+    @Test
+    void get_whenSameTextInOtherCase_thenSearchOnce() {
+        SeekPage<ItemDto> first = cache.get("Дрель", 0, 10, search);
+        SeekPage<ItemDto> second = cache.get("дРЕЛЬ", 0, 10, search);
+
+        assertEquals(first, second);
+        assertEquals(1, searches.get());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "items.search").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", "items.search").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void get_whenOtherPage_thenSearchAgain() {
+        cache.get("дрель", 0, 10, search);
+        cache.get("дрель", 10, 10, search);
+
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void getAfter_whenCursorEqualsOffset_thenSearchAgain() {
+        cache.get("дрель", 10, 10, search);
+        cache.getAfter("дрель", new SeekCursor(null, 10), 10, search);
+        cache.getAfter("дрель", new SeekCursor(null, 10), 10, search);
+
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void getAfter_whenCursorRankDiffers_thenSearchAgain() {
+        cache.getAfter("дрель", new SeekCursor(null, 10, 0.5f), 10, search);
+        cache.getAfter("дрель", new SeekCursor(null, 10, 0.25f), 10, search);
+        cache.getAfter("дрель", new SeekCursor(null, 10, 0.5f), 10, search);
+
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void get_whenItemChanged_thenSearchAgain() {
+        cache.get("дрель", 0, 10, search);
+        cache.onItemChanged();
+        cache.get("дрель", 0, 10, search);
+
+        assertEquals(2, searches.get());
+    }
+}
@@ -0,0 +1,80 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.shareit.ShareItApp;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.service.ItemService;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Вещь, записанная другим узлом мимо кэша этого узла, появляется в поиске после истечения
+ * shareit.item.search.cache-ttl. Второй узел - отдельный контекст приложения над той же базой
+ */
+@SpringBootTest(properties = {"shareit.item.search.backend=like", "shareit.item.search.cache-ttl=PT1S"})
+class ItemSearchCacheTtlTest {
+
+    private static final String TEXT = "перфоратор-ttl";
+
+    @Autowired
+    private ItemService itemService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+
+    private ConfigurableApplicationContext otherNode;
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("owner").email("owner@search.ttl").build());
+        otherNode = new SpringApplicationBuilder(ShareItApp.class)
+                .web(WebApplicationType.NONE)
+                .properties("shareit.item.search.backend=like", "shareit.item.search.cache-ttl=PT1S")
+                .run();
+    }
+
+    @AfterEach
+    void tearDown() {
+        otherNode.close();
+        itemRepository.deleteAll(itemRepository.findItemsByOwnerEqualsOrderById(owner,
+                new FromSizeRequest(0, 10)));
+        userRepository.delete(owner);
+    }
+
+    @Test
+    @SneakyThrows
+    void getItemOfText_whenOtherNodeSavedItem_thenVisibleAfterTtl() {
+        assertEquals(List.of(), search());
+
+        Item saved = otherNode.getBean(ItemRepository.class).save(Item.builder().name(TEXT)
+                .description("ударный").available(true).owner(owner).build());
+
+        assertEquals(List.of(), search());
+        Thread.sleep(1500);
+        assertEquals(List.of(saved.getId()), search());
+    }
+
+    private List<Long> search() {
+        return itemService.getItemOfText(owner.getId(), TEXT, new FromSizeRequest(0, 10)).getContent().stream()
+                .map(ItemDto::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,119 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ItemSearchIndexTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private ItemSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ItemSearchIndex(jdbcTemplate, 1024);
+        index.index(Item.builder().id(3L).name("Дрель").description("Простая дрель").available(true).build());
+        index.index(Item.builder().id(1L).name("Аккумуляторная дрель").description("С зарядкой")
+                .available(true).build());
+        index.index(Item.builder().id(2L).name("Дрель ударная").description("Сломана").available(false).build());
+        index.index(Item.builder().id(4L).name("Отвертка").description("Крестовая").available(true).build());
+    }
+
+    @Test
+    void search_whenTextIsInNameOrDescription_thenReturnAvailableItemsOrderedById() {
+        assertEquals(List.of(1L, 3L), ids(index.search("дРелЬ", 0, 10)));
+        assertEquals(List.of(4L), ids(index.search("крест", 0, 10)));
+        assertEquals(List.of(), ids(index.search("молоток", 0, 10)));
+    }
+
+    @Test
+    void search_whenTextIsShorterThanTrigram_thenScanAvailableItems() {
+        assertEquals(List.of(1L, 3L, 4L), ids(index.search("р", 0, 10)));
+        assertEquals(List.of(1L, 3L), ids(index.search("ел", 0, 10)));
+        assertEquals(List.of(3L), ids(index.search("ел", 1, 10)));
+        assertEquals(List.of(), ids(index.search("ыы", 0, 10)));
+    }
+
+    @Test
+    void search_whenPageRequested_thenSkipOffset() {
+        assertEquals(List.of(3L), ids(index.search("дрель", 1, 10)));
+        assertEquals(List.of(1L), ids(index.search("дрель", 0, 1)));
+    }
+
+    @Test
+    void searchAfter_whenCursorGiven_thenReturnIdsAfterIt() {
+        assertEquals(List.of(3L), ids(index.searchAfter("дрель", new SeekCursor(null, 1L), 10)));
+        assertEquals(List.of(3L), ids(index.searchAfter("дрель", new SeekCursor(null, 2L), 10)));
+        assertEquals(List.of(1L), ids(index.searchAfter("р", new SeekCursor(null, 0L), 1)));
+        assertEquals(List.of(), ids(index.searchAfter("дрель", new SeekCursor(null, 3L), 10)));
+    }
+
+    @Test
+    void index_whenItemUpdated_thenReplaceOldTextAndAvailability() {
+        index.index(Item.builder().id(3L).name("Шуруповерт").description("Новый").available(true).build());
+        index.index(Item.builder().id(2L).name("Дрель ударная").description("Починена").available(true).build());
+
+        assertEquals(List.of(1L, 2L), ids(index.search("дрель", 0, 10)));
+        assertEquals(List.of(3L), ids(index.search("шуруп", 0, 10)));
+    }
+
+    @Test
+    void index_whenDeltaIsFull_thenMergeIntoSegmentAndKeepResults() {
+        ItemSearchIndex small = new ItemSearchIndex(jdbcTemplate, 2);
+        small.index(Item.builder().id(3L).name("Дрель").description("Простая дрель").available(true).build());
+        small.index(Item.builder().id(1L).name("Аккумуляторная дрель").description("").available(true).build());
+        small.index(Item.builder().id(2L).name("Пила").description("Без дрели").available(true).build());
+        small.index(Item.builder().id(3L).name("Дрель").description("Сломана").available(false).build());
+        small.index(Item.builder().id(4L).name("Дрель").description("Новая").available(true).build());
+
+        assertEquals(List.of(1L, 4L), ids(small.search("дрель", 0, 10)));
+        assertEquals(List.of(4L), ids(small.searchAfter("дрел", new SeekCursor(null, 2L), 10)));
+        assertEquals(List.of(2L), ids(small.search("дрел", 1, 1)));
+        assertEquals(List.of(2L), ids(small.search("пи", 0, 10)));
+    }
+
+    @Test
+    @SneakyThrows
+    void rebuild_whenItemIsIndexedDuringLoad_thenKeepItAndServeOldIndexMeanwhile() {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(1L);
+        when(rs.getString("name_item")).thenReturn("Аккумуляторная дрель");
+        when(rs.getString("description")).thenReturn("С зарядкой");
+        when(rs.getBoolean("available")).thenReturn(true);
+        doAnswer(invocation -> {
+            CompletableFuture.runAsync(() -> {
+                assertEquals(List.of(1L, 3L), ids(index.search("дрель", 0, 10)));
+                index.index(Item.builder().id(5L).name("Дрель новая").description("").available(true).build());
+            }).get(5, TimeUnit.SECONDS);
+            invocation.getArgument(1, RowCallbackHandler.class).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        index.rebuild();
+
+        assertEquals(List.of(1L, 5L), ids(index.search("дрель", 0, 10)));
+    }
+
+    private static List<Long> ids(List<SeekCursor> found) {
+        return found.stream()
+                .map(SeekCursor::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,99 @@
+package ru.practicum.shareit.item.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка {@link PostgresItemSearchBackend} на настоящем Postgres: порядок выдачи, курсор и
+ * использование индексов pg_trgm. Без Docker тесты пропускаются
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresItemSearchBackendTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:14-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+    private PostgresItemSearchBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(), POSTGRES.getPassword(), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA public CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA public");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"),
+                new ClassPathResource("schema-postgresql.sql")).execute(dataSource);
+        backend = new PostgresItemSearchBackend(jdbcTemplate);
+        insertItem(1L, "дрель", "дрель ударная, дрель аккумуляторная");
+        insertItem(2L, "дрель", "простая");
+        insertItem(3L, "дрель", "старая");
+        insertItem(4L, "дрель", "новая");
+        insertItem(5L, "пила", "цепная");
+    }
+
+    @Test
+    void search_thenOrderByRankThenId() {
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(backend.search("дрель", 0, 10)));
+        assertEquals(List.of(3L, 4L), ids(backend.search("дрель", 2, 2)));
+    }
+
+    @Test
+    void searchAfter_whenCursorItemChangedAfterPage_thenContinueFromCursorRank() {
+        List<SeekCursor> first = backend.search("дрель", 0, 2);
+        SeekCursor cursor = first.get(first.size() - 1);
+        assertEquals(2L, cursor.getId());
+        assertNotNull(cursor.getRank());
+
+        jdbcTemplate.update("UPDATE items SET description = 'дрель дрель дрель дрель' WHERE id = 2");
+        assertEquals(List.of(3L, 4L), ids(backend.searchAfter("дрель", SeekCursor.decode(cursor.encode()), 2)));
+
+        jdbcTemplate.update("UPDATE items SET available = false WHERE id = 2");
+        assertEquals(List.of(3L, 4L), ids(backend.searchAfter("дрель", cursor, 2)));
+    }
+
+    @Test
+    void searchAfter_whenCursorHasNoRank_thenUseCurrentRankOfCursorItem() {
+        assertEquals(List.of(3L, 4L), ids(backend.searchAfter("дрель", new SeekCursor(null, 2L), 2)));
+        assertEquals(List.of(), backend.searchAfter("дрель", new SeekCursor(null, 100L), 2));
+    }
+
+    @Test
+    void search_whenSequentialScanIsDisabled_thenUseTrigramIndexes() {
+        jdbcTemplate.execute("SET enable_seqscan = off");
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN SELECT id FROM items " +
+                "WHERE available AND (lower(name_item) LIKE '%рел%' OR lower(description) LIKE '%рел%')",
+                String.class));
+
+        assertTrue(plan.contains("ix_items_name_trgm"), plan);
+        assertTrue(plan.contains("ix_items_description_trgm"), plan);
+    }
+
+    private void insertItem(long id, String name, String description) {
+        jdbcTemplate.update("INSERT INTO items (id, name_item, description, available) VALUES (?, ?, ?, true)",
+                id, name, description);
+    }
+
+    private static List<Long> ids(List<SeekCursor> found) {
+        return found.stream()
+                .map(SeekCursor::getId)
+                .collect(Collectors.toList());
+    }
+}
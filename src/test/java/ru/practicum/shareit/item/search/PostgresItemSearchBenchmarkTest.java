@@ -0,0 +1,95 @@
+package ru.practicum.shareit.item.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.pagination.SeekCursor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение задержки поиска вещей backend-ами postgres и like на настоящем Postgres.
+ * Запуск: mvn test -Dtest=PostgresItemSearchBenchmarkTest -Dshareit.benchmark=true
+ * [-Dshareit.benchmark.items=1000000]. Нужен Docker, без него тест пропускается.
+ * Вещи создаются в базе одним запросом INSERT ... SELECT generate_series, после чего собирается статистика,
+ * чтобы планировщик выбирал индексы pg_trgm так же, как на рабочей базе
+ */
+@Slf4j
+@SpringBootTest(properties = "shareit.item.search.backend=postgres")
+@Testcontainers(disabledWithoutDocker = true)
+@EnabledIfSystemProperty(named = "shareit.benchmark", matches = "true")
+class PostgresItemSearchBenchmarkTest {
+
+    private static final String[] WORDS = {"дрель", "отвертка", "пила", "молоток", "лестница", "палатка",
+            "велосипед", "самокат", "проектор", "колонка"};
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:14-alpine");
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.driverClassName", POSTGRES::getDriverClassName);
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.jpa.properties.hibernate.dialect", () -> "org.hibernate.dialect.PostgreSQL10Dialect");
+        registry.add("spring.sql.init.platform", () -> "postgresql");
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private PostgresItemSearchBackend postgres;
+
+    private int count;
+
+    @BeforeEach
+    void setUp() {
+        count = Integer.getInteger("shareit.benchmark.items", 1_000_000);
+        jdbcTemplate.update("DELETE FROM items");
+        long started = System.nanoTime();
+        String words = "ARRAY['" + String.join("', '", WORDS) + "']";
+        jdbcTemplate.update("INSERT INTO items (id, name_item, description, available) " +
+                "SELECT i, (" + words + ")[1 + i % 10] || ' ' || i, " +
+                "'описание ' || (" + words + ")[1 + (i / 10) % 10] || ' номер ' || i, i % 7 <> 0 " +
+                "FROM generate_series(0, ? - 1) AS i", count);
+        jdbcTemplate.execute("ANALYZE items");
+        log.info("postgres: создание {} вещей заняло {} мс", count, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Test
+    void search_comparePostgresAndLike() {
+        List<ItemSearchBackend> backends = List.of(postgres, new LikeItemSearchBackend(itemRepository));
+        for (ItemSearchBackend backend : backends) {
+            assertEquals(10, backend.search("самокат", 0, 10).size());
+            long start = System.nanoTime();
+            int queries = 20;
+            for (int i = 0; i < queries; i++) {
+                backend.search(WORDS[i % WORDS.length] + " " + (i * 37), 0, 10);
+            }
+            log.info("{}: средняя задержка поиска по {} вещам {} мкс", backend.getClass().getSimpleName(), count,
+                    (System.nanoTime() - start) / queries / 1_000);
+            List<SeekCursor> first = backend.search("самокат", 0, 10);
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                backend.searchAfter("самокат", first.get(first.size() - 1), 10);
+            }
+            log.info("{}: средняя задержка следующей страницы по курсору {} мкс",
+                    backend.getClass().getSimpleName(), (System.nanoTime() - start) / queries / 1_000);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.practicum.shareit.item.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
+import ru.practicum.shareit.user.dto.UserWithoutEmailDto;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ItemDetailCacheTest {
+
+    private static final long OWNER_ID = 1L;
+    private static final long OTHER_ID = 2L;
+
+    private ItemDetailCache cache;
+    private ItemWithBookingAndCommentDto item;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ItemDetailCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+        item = ItemWithBookingAndCommentDto.builder()
+                .id(3L)
+                .name("Дрель")
+                .owner(UserWithoutEmailDto.builder().id(OWNER_ID).build())
+                .build();
+    }
+
+    @Test
+    void find_whenCachedForOwner_thenReturnOnlyToOwner() {
+        cache.put(3L, item, OWNER_ID, null, 0L);
+
+        assertEquals(item, cache.find(3L, OWNER_ID, 0L).getValue());
+        assertNull(cache.find(3L, OTHER_ID, 0L));
+    }
+
+    @Test
+    void find_whenCachedForOtherUser_thenReturnToAllButOwner() {
+        cache.put(3L, item, OTHER_ID, null, 0L);
+
+        assertEquals(item, cache.find(3L, OTHER_ID, 0L).getValue());
+        assertEquals(item, cache.find(3L, 5L, 0L).getValue());
+        assertNull(cache.find(3L, OWNER_ID, 0L));
+    }
+
+    @Test
+    void find_whenVersionChangedOnAnyNode_thenMiss() {
+        cache.put(3L, item, OWNER_ID, null, 4L);
+        cache.put(3L, item, OTHER_ID, null, 4L);
+
+        assertNull(cache.find(3L, OWNER_ID, 5L));
+        assertNull(cache.find(3L, OTHER_ID, 5L));
+    }
+
+    @Test
+    void put_whenNewerVersionIsCached_thenKeepIt() {
+        ItemWithBookingAndCommentDto newer = ItemWithBookingAndCommentDto.builder()
+                .id(3L)
+                .name("Перфоратор")
+                .owner(UserWithoutEmailDto.builder().id(OWNER_ID).build())
+                .build();
+        cache.put(3L, newer, OTHER_ID, null, 5L);
+        cache.put(3L, item, OTHER_ID, null, 4L);
+
+        assertEquals(newer, cache.find(3L, OTHER_ID, 5L).getValue());
+    }
+
+    @Test
+    void find_whenNextBookingStarted_thenEntryExpired() throws InterruptedException {
+        cache.put(3L, item, OWNER_ID, LocalDateTime.now().plusNanos(50_000_000), 0L);
+        assertEquals(item, cache.find(3L, OWNER_ID, 0L).getValue());
+
+        Thread.sleep(100);
+
+        assertNull(cache.find(3L, OWNER_ID, 0L));
+    }
+}
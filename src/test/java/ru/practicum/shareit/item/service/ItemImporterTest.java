@@ -0,0 +1,137 @@
+package ru.practicum.shareit.item.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemImportResultDto;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.request.ItemRequest;
+import ru.practicum.shareit.request.ItemRequestRepository;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {"shareit.item.import.batch-size=2", "shareit.item.import.max-line-length=200"})
+class ItemImporterTest {
+
+    @Autowired
+    private ItemService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private ItemRequestRepository requestRepository;
+
+    private User owner;
+    private ItemRequest request;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("владелец").email("import@e.e").build());
+        request = requestRepository.save(ItemRequest.builder().description("нужна дрель")
+                .requestor(owner).created(LocalDateTime.now()).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        itemRepository.deleteAll(itemRepository.findItemsByOwnerEqualsOrderById(owner, PageRequest.of(0, 100)));
+        requestRepository.delete(request);
+        userRepository.delete(owner);
+    }
+
+    @Test
+    void importItems_whenLinesAreMixed_thenSaveValidAndReportEveryLine() throws Exception {
+        String body = "{\"name\":\"Дрель\",\"description\":\"ударная\",\"available\":true}\n"
+                + "{\"name\":\"Пила\",\"description\":\"цепная\",\"available\":true,\"requestId\":"
+                + request.getId() + "}\r\n"
+                + "\n"
+                + "{\"name\":\"Молоток\",\n"
+                + "{\"name\":\"\",\"description\":\"без названия\",\"available\":true}\n"
+                + "{\"name\":\"Лопата\",\"description\":\"штыковая\",\"available\":false,\"requestId\":-5}\n"
+                + "{\"name\":\"Лестница\",\"description\":\"" + "о".repeat(200) + "\",\"available\":true}\n"
+                + "{\"id\":1,\"name\":\"Тачка\",\"description\":\"садовая\",\"available\":false}";
+        List<ItemImportResultDto> results = new ArrayList<>();
+
+        service.importItems(owner.getId(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                results::add);
+
+        assertEquals(List.of(1L, 2L, 4L, 5L, 6L, 7L, 8L),
+                results.stream().map(ItemImportResultDto::getLine).collect(Collectors.toList()));
+        assertEquals(List.of(200, 200, 400, 400, 404, 400, 200),
+                results.stream().map(ItemImportResultDto::getStatus).collect(Collectors.toList()));
+        assertEquals("name must not be blank", results.get(3).getError());
+        assertNull(results.get(4).getItemId());
+        List<Item> saved = itemRepository.findItemsByOwnerEqualsOrderById(owner, PageRequest.of(0, 100));
+        assertEquals(List.of("Дрель", "Пила", "Тачка"),
+                saved.stream().map(Item::getName).collect(Collectors.toList()));
+        assertEquals(List.of(results.get(0).getItemId(), results.get(1).getItemId(), results.get(6).getItemId()),
+                saved.stream().map(Item::getId).collect(Collectors.toList()));
+        assertNotNull(saved.get(1).getRequest());
+        assertEquals(request.getId(), saved.get(1).getRequest().getId());
+    }
+
+    @Test
+    void importItems_whenDatabaseRejectsLine_thenSaveOtherLinesOfBatch() throws Exception {
+        String body = "{\"name\":\"Дрель\",\"description\":\"ударная\",\"available\":true}\n"
+                + "{\"name\":\"" + "n".repeat(101) + "\",\"description\":\"длинное\",\"available\":true}\n"
+                + "{\"name\":\"Пила\",\"description\":\"цепная\",\"available\":true}\n"
+                + "{\"name\":\"Лопата\",\"description\":\"штыковая\",\"available\":true}\n";
+        List<ItemImportResultDto> results = new ArrayList<>();
+
+        service.importItems(owner.getId(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                results::add);
+
+        assertEquals(List.of(200, 400, 200, 200),
+                results.stream().map(ItemImportResultDto::getStatus).collect(Collectors.toList()));
+        assertEquals("вещь отклонена базой данных", results.get(1).getError());
+        assertNull(results.get(1).getItemId());
+        List<Item> saved = itemRepository.findItemsByOwnerEqualsOrderById(owner, PageRequest.of(0, 100));
+        assertEquals(List.of("Дрель", "Пила", "Лопата"),
+                saved.stream().map(Item::getName).collect(Collectors.toList()));
+        assertEquals(List.of(results.get(0).getItemId(), results.get(2).getItemId(), results.get(3).getItemId()),
+                saved.stream().map(Item::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void importItems_whenLineIsNotItem_thenRejectItAndParseNextLines() throws Exception {
+        String body = "{\"name\":\"Дрель\",\"description\":\"ударная\",\"available\":\"может быть\"}\n"
+                + "null\n"
+                + "{\"name\":\"Пила\",\"description\":\"цепная\",\"available\":true} мусор\n"
+                + "{\"name\":\"Лопата\",\"description\":\"штыковая\",\"available\":true}\n";
+        List<ItemImportResultDto> results = new ArrayList<>();
+
+        service.importItems(owner.getId(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                results::add);
+
+        assertEquals(List.of(1L, 2L, 3L, 3L, 4L),
+                results.stream().map(ItemImportResultDto::getLine).collect(Collectors.toList()));
+        assertEquals(List.of(400, 400, 200, 400, 200),
+                results.stream().map(ItemImportResultDto::getStatus).collect(Collectors.toList()));
+        List<Item> saved = itemRepository.findItemsByOwnerEqualsOrderById(owner, PageRequest.of(0, 100));
+        assertEquals(List.of("Пила", "Лопата"), saved.stream().map(Item::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void importItems_whenUserNotFound_thenThrowNoFound() {
+        assertThrows(NoFoundException.class, () -> service.importItems(-1L,
+                new ByteArrayInputStream(new byte[0]), result -> {
+                }));
+    }
+}
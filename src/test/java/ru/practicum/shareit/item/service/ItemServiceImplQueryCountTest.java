@@ -0,0 +1,144 @@
+package ru.practicum.shareit.item.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.booking.Booking;
+import ru.practicum.shareit.booking.BookingRepository;
+import ru.practicum.shareit.comment.Comment;
+import ru.practicum.shareit.comment.CommentRepository;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
+import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static ru.practicum.shareit.booking.BookingStatus.APPROVED;
+
+/**
+ * Проверяет, что количество запросов к базе при получении списка вещей
+ * не зависит от размера страницы или списка номеров
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class ItemServiceImplQueryCountTest {
+
+    private static final int ITEMS_COUNT = 6;
+
+    @Autowired
+    private ItemService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private BookingRepository bookingRepository;
+    @Autowired
+    private CommentRepository commentRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User owner;
+    private List<Long> itemIds;
+
+    @BeforeEach
+    void setUp() {
+        owner = userRepository.save(User.builder().name("owner").email("owner@query.count").build());
+        User booker = userRepository.save(User.builder().name("booker").email("booker@query.count").build());
+        LocalDateTime now = LocalDateTime.now();
+        itemIds = new ArrayList<>();
+        for (int i = 0; i < ITEMS_COUNT; i++) {
+            Item item = itemRepository.save(Item.builder()
+                    .name("item" + i)
+                    .description("description" + i)
+                    .available(true)
+                    .owner(owner)
+                    .build());
+            itemIds.add(item.getId());
+            bookingRepository.save(Booking.builder()
+                    .start(now.minusDays(2)).end(now.minusDays(1))
+                    .item(item).booker(booker).status(APPROVED).build());
+            bookingRepository.save(Booking.builder()
+                    .start(now.plusDays(1)).end(now.plusDays(2))
+                    .item(item).booker(booker).status(APPROVED).build());
+            commentRepository.save(Comment.builder()
+                    .text("comment" + i).item(item).author(booker).created(now).build());
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void getItems_whenPageGrows_thenQueryCountIsTheSame() {
+        long smallPageQueries = countQueries(2);
+        long fullPageQueries = countQueries(ITEMS_COUNT);
+
+        assertEquals(smallPageQueries, fullPageQueries);
+    }
+
+    @Test
+    void getItemsOfIds_whenIdsGrow_thenQueryCountIsTheSameAndOrderIsKept() {
+        List<Long> reversed = new ArrayList<>(itemIds);
+        Collections.reverse(reversed);
+        reversed.add(1, -1L);
+
+        long fewIdsQueries = countBatchQueries(reversed.subList(0, 3));
+        long allIdsQueries = countBatchQueries(reversed);
+
+        assertEquals(fewIdsQueries, allIdsQueries);
+    }
+
+    private long countBatchQueries(List<Long> ids) {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ItemBatchResultDto> results = service.getItemsOfIds(owner.getId(), ids);
+
+        assertEquals(ids, results.stream().map(ItemBatchResultDto::getItemId).collect(Collectors.toList()));
+        results.forEach(result -> {
+            if (result.getItemId() == -1L) {
+                assertEquals(ItemBatchResultDto.Status.NOT_FOUND, result.getStatus());
+                return;
+            }
+            assertEquals(ItemBatchResultDto.Status.FOUND, result.getStatus());
+            assertNotNull(result.getItem().getLastBooking());
+            assertNotNull(result.getItem().getNextBooking());
+            assertEquals(1, result.getItem().getComments().size());
+        });
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long countQueries(int size) {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ItemWithBookingAndCommentDto> items = service.getItems(owner.getId(), PageRequest.of(0, size)).getValue();
+
+        assertEquals(size, items.size());
+        items.forEach(item -> {
+            assertNotNull(item.getLastBooking());
+            assertNotNull(item.getNextBooking());
+            assertEquals(1, item.getComments().size());
+        });
+        return statistics.getPrepareStatementCount();
+    }
+}
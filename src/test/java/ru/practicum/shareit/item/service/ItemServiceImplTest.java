@@ -6,29 +6,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
-import ru.practicum.shareit.booking.Booking;
 import ru.practicum.shareit.booking.BookingService;
+import ru.practicum.shareit.booking.FreeSlot;
 import ru.practicum.shareit.booking.dto.BookingForItemDto;
 import ru.practicum.shareit.comment.Comment;
 import ru.practicum.shareit.comment.CommentRepository;
 import ru.practicum.shareit.comment.dto.CommentInDto;
 import ru.practicum.shareit.comment.mapper.CommentListMapper;
 import ru.practicum.shareit.comment.mapper.CommentMapper;
+import ru.practicum.shareit.etag.Snapshot;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.dto.ItemBatchResultDto;
 import ru.practicum.shareit.item.dto.ItemDto;
+import ru.practicum.shareit.item.dto.ItemVersion;
 import ru.practicum.shareit.item.dto.ItemWithBookingAndCommentDto;
 import ru.practicum.shareit.item.dtoMapper.ItemMapper;
 import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.item.search.ItemSearchBackend;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.pagination.SeekPage;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -45,6 +55,10 @@ class ItemServiceImplTest {
     private BookingService bookingService;
     @MockBean
     private CommentRepository commentRepository;
+    @MockBean
+    private ItemSearchBackend searchBackend;
+    @MockBean
+    private ItemDetailCache detailCache;
     @Autowired
     private ItemMapper mapper;
     @Autowired
@@ -98,6 +112,8 @@ class ItemServiceImplTest {
         when(repository.save(any())).thenReturn(item);
         when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(item));
         assertEquals(service.updateItem(userId, 3L, itemDto), mapper.modelToDto(item));
+        verify(repository, times(1)).save(any());
+        verify(searchBackend).index(item);
     }
 
     @Test
@@ -129,14 +145,15 @@ class ItemServiceImplTest {
         item.setOwner(user);
         BookingForItemDto bookingL = BookingForItemDto.builder().id(1L).build();
         BookingForItemDto bookingN = BookingForItemDto.builder().id(2L).build();
-        when(bookingService.getLastByItem(anyLong())).thenReturn(bookingL);
-        when(bookingService.getNextByItem(anyLong())).thenReturn(bookingN);
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(item));
-        when(commentRepository.findCommentsByItemId(anyLong())).thenReturn(null);
+        when(bookingService.getLastByItems(any())).thenReturn(Map.of(item.getId(), bookingL));
+        when(bookingService.getNextByItems(any())).thenReturn(Map.of(item.getId(), bookingN));
+        when(repository.findWithOwnerAndRequestById(anyLong())).thenReturn(Optional.ofNullable(item));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
         ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
+        itemDto.setComments(List.of());
         itemDto.setLastBooking(bookingL);
         itemDto.setNextBooking(bookingN);
-        assertEquals(service.getItemOfId(userId, 3L), itemDto);
+        assertEquals(service.getItemOfId(userId, 3L, 0L).getValue(), itemDto);
     }
 
     @Test
@@ -144,12 +161,57 @@ class ItemServiceImplTest {
         item.setOwner(user);
         BookingForItemDto bookingL = BookingForItemDto.builder().id(1L).build();
         BookingForItemDto bookingN = BookingForItemDto.builder().id(2L).build();
-        when(bookingService.getLastByItem(anyLong())).thenReturn(bookingL);
-        when(bookingService.getNextByItem(anyLong())).thenReturn(bookingN);
-        when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(item));
-        when(commentRepository.findCommentsByItemId(anyLong())).thenReturn(null);
+        when(bookingService.getLastByItems(any())).thenReturn(Map.of(item.getId(), bookingL));
+        when(bookingService.getNextByItems(any())).thenReturn(Map.of(item.getId(), bookingN));
+        when(repository.findWithOwnerAndRequestById(anyLong())).thenReturn(Optional.ofNullable(item));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
         ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
-        assertEquals(service.getItemOfId(10L, 3L), itemDto);
+        itemDto.setComments(List.of());
+        assertEquals(service.getItemOfId(10L, 3L, 0L).getValue(), itemDto);
+    }
+
+    @Test
+    void getItemOfId_whenItemIsCached_thenReturnItemWithoutRepository() {
+        ItemWithBookingAndCommentDto itemDto = ItemWithBookingAndCommentDto.builder().id(3L).build();
+        when(detailCache.find(3L, userId, 2L)).thenReturn(new Snapshot<>(itemDto, null));
+        assertEquals(service.getItemOfId(userId, 3L, 2L).getValue(), itemDto);
+        verifyNoInteractions(repository);
+        verifyNoInteractions(bookingService, commentRepository);
+    }
+
+    @Test
+    void getItemOfId_whenOwnerHasNextBooking_thenCacheUntilItStarts() {
+        item.setOwner(user);
+        LocalDateTime nextStart = LocalDateTime.now().plusDays(1);
+        when(bookingService.getBookingsValidUntil(3L)).thenReturn(nextStart);
+        when(repository.findWithOwnerAndRequestById(anyLong())).thenReturn(Optional.ofNullable(item));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
+        Snapshot<ItemWithBookingAndCommentDto> result = service.getItemOfId(userId, 3L, 7L);
+        assertEquals(nextStart, result.getValidUntil());
+        verify(detailCache).put(3L, result.getValue(), userId, nextStart, 7L);
+    }
+
+    @Test
+    void getItemsOfIds_whenSomeItemsAreMissing_thenReturnResultsInRequestOrder() {
+        item.setOwner(user);
+        item.setId(3L);
+        ItemWithBookingAndCommentDto cachedDto = ItemWithBookingAndCommentDto.builder().id(5L).build();
+        when(repository.findVersionsByIdIn(Set.of(3L, 4L, 5L))).thenReturn(List.of(version(3L, 1L), version(5L, 2L)));
+        when(detailCache.find(5L, 10L, 2L)).thenReturn(new Snapshot<>(cachedDto, null));
+        when(repository.findAllWithOwnerAndRequestByIdIn(any())).thenReturn(List.of(item));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
+        ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
+        itemDto.setComments(List.of());
+
+        List<ItemBatchResultDto> results = service.getItemsOfIds(10L, List.of(4L, 3L, 5L));
+
+        assertEquals(List.of(
+                ItemBatchResultDto.builder().itemId(4L).status(ItemBatchResultDto.Status.NOT_FOUND).build(),
+                ItemBatchResultDto.builder().itemId(3L).status(ItemBatchResultDto.Status.FOUND).item(itemDto).build(),
+                ItemBatchResultDto.builder().itemId(5L).status(ItemBatchResultDto.Status.FOUND).item(cachedDto).build()),
+                results);
+        verify(repository).findAllWithOwnerAndRequestByIdIn(Set.of(3L));
+        verify(bookingService, never()).getLastByItems(any());
     }
 
     @Test
@@ -157,12 +219,13 @@ class ItemServiceImplTest {
         item.setOwner(user);
         BookingForItemDto bookingL = BookingForItemDto.builder().id(1L).build();
         BookingForItemDto bookingN = BookingForItemDto.builder().id(2L).build();
-        when(bookingService.getLastByItem(anyLong())).thenReturn(bookingL);
-        when(bookingService.getNextByItem(anyLong())).thenReturn(bookingN);
-        when(repository.findById(anyLong())).thenReturn(Optional.empty());
-        when(commentRepository.findCommentsByItemId(anyLong())).thenReturn(null);
+        when(bookingService.getLastByItems(any())).thenReturn(Map.of(item.getId(), bookingL));
+        when(bookingService.getNextByItems(any())).thenReturn(Map.of(item.getId(), bookingN));
+        when(repository.findWithOwnerAndRequestById(anyLong())).thenReturn(Optional.empty());
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
         ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
-        final NoFoundException e = assertThrows(NoFoundException.class, () -> service.getItemOfId(10L, 3L));
+        itemDto.setComments(List.of());
+        final NoFoundException e = assertThrows(NoFoundException.class, () -> service.getItemOfId(10L, 3L, 0L));
     }
 
     @Test
@@ -178,20 +241,34 @@ class ItemServiceImplTest {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         BookingForItemDto bookingL = BookingForItemDto.builder().id(1L).build();
         BookingForItemDto bookingN = BookingForItemDto.builder().id(2L).build();
-        when(bookingService.getLastByItem(anyLong())).thenReturn(bookingL);
-        when(bookingService.getNextByItem(anyLong())).thenReturn(bookingN);
+        when(bookingService.getLastByItems(any())).thenReturn(Map.of(item.getId(), bookingL));
+        when(bookingService.getNextByItems(any())).thenReturn(Map.of(item.getId(), bookingN));
         when(repository.findItemsByOwnerEqualsOrderById(any(), any())).thenReturn(List.of(item));
-        when(commentRepository.findCommentsByItemId(anyLong())).thenReturn(null);
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
         ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
+        itemDto.setComments(List.of());
         itemDto.setLastBooking(bookingL);
         itemDto.setNextBooking(bookingN);
 
-        assertEquals(service.getItems(userId, PageRequest.of(0, 10)), List.of(itemDto));
+        assertEquals(service.getItems(userId, PageRequest.of(0, 10)).getValue(), List.of(itemDto));
+    }
+
+    @Test
+    void getItems_whenItemsHaveNextBookings_thenPageIsValidUntilEarliestOfThem() {
+        Item other = Item.builder().id(4L).name("Дрель").owner(user).build();
+        LocalDateTime earliest = LocalDateTime.now().plusHours(1);
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        when(repository.findItemsByOwnerEqualsOrderById(any(), any())).thenReturn(List.of(item, other));
+        when(bookingService.getBookingsValidUntil(List.of(item.getId(), 4L)))
+                .thenReturn(Map.of(item.getId(), earliest.plusDays(1), 4L, earliest));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(earliest, service.getItems(userId, PageRequest.of(0, 10)).getValidUntil());
     }
 
     @Test
     void getItemOfText_whenTextIsBlank_thenReturnEmptyList() {
-        assertEquals(service.getItemOfText(userId, "   ", PageRequest.of(0, 10)), new ArrayList<>());
+        assertEquals(service.getItemOfText(userId, "   ", PageRequest.of(0, 10)).getContent(), new ArrayList<>());
         verifyNoInteractions(repository);
     }
 
@@ -206,9 +283,38 @@ class ItemServiceImplTest {
     @Test
     void getItemOfText_whenDataIsValid_thenReturnList() {
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
-        when(repository.findItemsByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCaseAndAvailableIsTrueOrderById(
-                anyString(), anyString(), any())).thenReturn(List.of(item));
-        assertEquals(service.getItemOfText(userId, "текст", PageRequest.of(0, 10)), List.of(itemDto));
+        when(searchBackend.search("текст", 0, 10)).thenReturn(List.of(new SeekCursor(null, item.getId())));
+        when(repository.findAllWithOwnerByIdIn(List.of(item.getId()))).thenReturn(List.of(item));
+        SeekPage<ItemDto> page = service.getItemOfText(userId, "текст", PageRequest.of(0, 10));
+        assertEquals(page.getContent(), List.of(itemDto));
+        assertNull(page.getNext());
+    }
+
+    @Test
+    void getItemOfText_whenCursorGiven_thenSearchAfterIt() {
+        item.setId(7L);
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        SeekCursor found = new SeekCursor(null, 7L, 0.25f);
+        when(searchBackend.searchAfter("курсор", new SeekCursor(null, 5L, 0.5f), 1)).thenReturn(List.of(found));
+        when(repository.findAllWithOwnerByIdIn(List.of(7L))).thenReturn(List.of(item));
+
+        SeekPage<ItemDto> page = service.getItemOfText(userId, "курсор", new SeekCursor(null, 5L, 0.5f), 1);
+        assertEquals(List.of(mapper.modelToDto(item)), page.getContent());
+        assertEquals(found, page.getNext());
+        verify(searchBackend, never()).search(anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void getItems_whenCursorGiven_thenReturnPageAfterIt() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
+        when(repository.findItemsByOwnerEqualsAndIdGreaterThanOrderById(user, 5L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(item));
+        when(commentRepository.findLatestByItemIdIn(any(), anyInt())).thenReturn(List.of());
+        ItemWithBookingAndCommentDto itemDto = mapper.modelToDtoWithBooking(item);
+        itemDto.setComments(List.of());
+
+        assertEquals(List.of(itemDto), service.getItems(userId, new SeekCursor(null, 5L), 2).getValue());
+        verify(repository, never()).findItemsByOwnerEqualsOrderById(any(), any());
     }
 
     @Test
@@ -229,11 +335,60 @@ class ItemServiceImplTest {
 
     @Test
     void addComment_whenParamsIsValid_thenSaveAndReturnComment() {
+        item.setOwner(user);
         when(userService.findUserByIdForValid(anyLong())).thenReturn(user);
         when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(item));
-        when(bookingService.findAllFinishByItemByUser(anyLong(), anyLong()))
-                .thenReturn(List.of(Booking.builder().build()));
+        when(bookingService.hasFinishedBooking(anyLong(), anyLong())).thenReturn(true);
         when(commentRepository.save(any())).thenReturn(comment);
         assertEquals(service.addComment(userId, 3L, commentInDto), commentMapper.modelToOutDto(comment));
+        verify(repository).incrementCommentCount(3L);
+    }
+
+    @Test
+    void getAvailability_whenPeriodIsNotValid_thenThrowException() {
+        LocalDateTime now = LocalDateTime.now();
+        assertThrows(ValidationException.class, () -> service.getAvailability(userId, 1L, now, now));
+        verifyNoInteractions(repository, bookingService);
+    }
+
+    @Test
+    void getAvailability_whenItemIsMissing_thenThrowException() {
+        LocalDateTime now = LocalDateTime.now();
+        when(repository.findById(anyLong())).thenReturn(Optional.empty());
+        assertThrows(NoFoundException.class, () -> service.getAvailability(userId, 1L, now, now.plusDays(1)));
+        verifyNoInteractions(bookingService);
+    }
+
+    @Test
+    void getAvailability_whenItemIsAvailable_thenReturnFreeSlots() {
+        LocalDateTime now = LocalDateTime.now();
+        item.setAvailable(true);
+        List<FreeSlot> slots = List.of(new FreeSlot(now, now.plusDays(1)));
+        when(repository.findById(anyLong())).thenReturn(Optional.of(item));
+        when(bookingService.getFreeSlots(1L, now, now.plusDays(1))).thenReturn(slots);
+        assertEquals(slots, service.getAvailability(userId, 1L, now, now.plusDays(1)));
+    }
+
+    @Test
+    void getAvailability_whenItemIsNotAvailable_thenReturnEmptyList() {
+        LocalDateTime now = LocalDateTime.now();
+        item.setAvailable(false);
+        when(repository.findById(anyLong())).thenReturn(Optional.of(item));
+        assertEquals(List.of(), service.getAvailability(userId, 1L, now, now.plusDays(1)));
+        verifyNoInteractions(bookingService);
+    }
+
+    private static ItemVersion version(long id, long version) {
+        return new ItemVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getVersion() {
+                return version;
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package ru.practicum.shareit.pagination;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.shareit.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SeekCursorTest {
+
+    @Test
+    void decode_whenTokenIsEncodedCursor_thenReturnSameCursor() {
+        SeekCursor cursor = new SeekCursor(LocalDateTime.of(2030, 1, 1, 12, 0, 0, 123_000), 42L);
+        assertEquals(cursor, SeekCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decode_whenTimeIsMissing_thenReturnCursorWithoutTime() {
+        SeekCursor cursor = new SeekCursor(null, 42L);
+        assertEquals(cursor, SeekCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decode_whenRankIsGiven_thenReturnCursorWithSameRank() {
+        SeekCursor cursor = new SeekCursor(null, 42L, 0.0607927f);
+        assertEquals(cursor, SeekCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void decode_whenTokenIsNotValid_thenThrowException() {
+        assertThrows(ValidationException.class, () -> SeekCursor.decode("not a cursor"));
+        assertThrows(ValidationException.class, () -> SeekCursor.decode("MjAzMA"));
+        assertThrows(ValidationException.class, () -> SeekCursor.decode(encode("|42|NaN")));
+        assertThrows(ValidationException.class, () -> SeekCursor.decode(encode("|42|0.5|1")));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
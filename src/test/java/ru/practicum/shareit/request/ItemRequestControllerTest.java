@@ -10,19 +10,26 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.shareit.etag.ResourceETags;
 import ru.practicum.shareit.exception.NoFoundException;
+import ru.practicum.shareit.pagination.FromSizeRequest;
+import ru.practicum.shareit.pagination.SeekCursor;
 import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
+import ru.practicum.shareit.user.UserService;
 
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = ItemRequestController.class)
@@ -32,6 +39,10 @@ class ItemRequestControllerTest {
     private ObjectMapper mapper;
     @MockBean
     private ItemRequestService service;
+    @MockBean
+    private ResourceETags etags;
+    @MockBean
+    private UserService userService;
     @Autowired
     private MockMvc mvc;
 
@@ -117,7 +128,7 @@ class ItemRequestControllerTest {
                 .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(List.of(itemRequestWithItemsForThisReqDto)), result);
 
-        verify(service).getReqUserWithItemsForThisReq(userId, PageRequest.of(10 / 3, 3));
+        verify(service).getReqUserWithItemsForThisReq(userId, new FromSizeRequest(10, 3));
     }
 
     @SneakyThrows
@@ -133,7 +144,7 @@ class ItemRequestControllerTest {
                 .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(List.of(itemRequestWithItemsForThisReqDto)), result);
 
-        verify(service).getReqUserWithItemsForThisReq(userId, PageRequest.of(0 / 10, 10));
+        verify(service).getReqUserWithItemsForThisReq(userId, new FromSizeRequest(0, 10));
     }
 
     @SneakyThrows
@@ -162,6 +173,40 @@ class ItemRequestControllerTest {
                 .andExpect(status().is(400));
     }
 
+    @SneakyThrows
+    @Test
+    void getAllRequestsWithItem_whenCursorGiven_thenReturnPageAfterItAndNextCursor() {
+        long userId = 1L;
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        SeekCursor after = new SeekCursor(created.plusHours(1), 9L);
+        ItemRequestWithItemsForThisReqDto last = ItemRequestWithItemsForThisReqDto.builder()
+                .id(4L).description("Описание").created(created).build();
+        when(service.getReqAllWithItemsForThisReq(anyLong(), any(SeekCursor.class), anyInt()))
+                .thenReturn(List.of(last));
+
+        mvc.perform(get("/requests/all")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("from", "30")
+                        .param("size", "1")
+                        .param("after", after.encode()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SeekCursor.NEXT_CURSOR_HEADER, new SeekCursor(created, 4L).encode()));
+
+        verify(service).getReqAllWithItemsForThisReq(userId, after, 1);
+        verify(service, never()).getReqAllWithItemsForThisReq(anyLong(), any(PageRequest.class));
+    }
+
+    @SneakyThrows
+    @Test
+    void getUserRequestsWithItem_whenCursorIsBroken_thenBadRequest() {
+        mvc.perform(get("/requests")
+                        .header("X-Sharer-User-Id", 1L)
+                        .param("after", "%%%"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(service);
+    }
+
     @SneakyThrows
     @Test
     void getAllRequestsWithItem_whenRequestIsValid_whenReturnList() {
@@ -177,7 +222,22 @@ class ItemRequestControllerTest {
                 .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
         assertEquals(mapper.writeValueAsString(List.of(itemRequestWithItemsForThisReqDto)), result);
 
-        verify(service).getReqAllWithItemsForThisReq(userId, PageRequest.of(10 / 3, 3));
+        verify(service).getReqAllWithItemsForThisReq(userId, new FromSizeRequest(10, 3));
+    }
+
+    @SneakyThrows
+    @Test
+    void getAllRequestsWithItem_whenFromIsNotMultipleOfSize_thenPageStartsAtFrom() {
+        long userId = 1L;
+        when(service.getReqAllWithItemsForThisReq(anyLong(), any())).thenReturn(List.of());
+
+        mvc.perform(get("/requests/all")
+                        .header("X-Sharer-User-Id", userId)
+                        .param("from", "3")
+                        .param("size", "2"))
+                .andExpect(status().isOk());
+
+        verify(service).getReqAllWithItemsForThisReq(userId, new FromSizeRequest(3, 2));
     }
 
     @SneakyThrows
@@ -206,6 +266,35 @@ class ItemRequestControllerTest {
         verify(service).getReqById(1L, requestId);
     }
 
+    @SneakyThrows
+    @Test
+    void getRequestById_whenETagIsNotChanged_thenReturnNotModifiedWithoutService() {
+        long requestId = 10;
+        when(etags.request(1L, requestId)).thenReturn("tag");
+
+        mvc.perform(get("/requests/{requestId}", requestId)
+                        .header("X-Sharer-User-Id", 1)
+                        .header("If-None-Match", "\"tag\""))
+                .andExpect(status().isNotModified());
+
+        verifyNoInteractions(service);
+    }
+
+    @SneakyThrows
+    @Test
+    void getRequestById_whenUserNotFound_thenReturnNotFoundEvenIfETagMatches() {
+        long requestId = 10;
+        when(etags.request(1L, requestId)).thenReturn("tag");
+        when(userService.findUserByIdForValid(1L)).thenThrow(new NoFoundException("нет пользователя"));
+
+        mvc.perform(get("/requests/{requestId}", requestId)
+                        .header("X-Sharer-User-Id", 1)
+                        .header("If-None-Match", "\"tag\""))
+                .andExpect(status().isNotFound());
+
+        verifyNoInteractions(service);
+    }
+
     @SneakyThrows
     @Test
     void getRequestById_whenRequestWithoutHeaderParam_thenReturnBadRequest() {
@@ -6,9 +6,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.pagination.FromSizeRequest;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserRepository;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -38,24 +41,61 @@ class ItemRequestRepositoryTest {
 
 
     @Test
-    void findAllByRequestorIdOrderByCreatedDesc() {
+    void findAllByRequestorIdOrderByCreatedDescIdDesc() {
 
         List<ItemRequest> list = repository
-                .findAllByRequestorIdOrderByCreatedDesc(1L, PageRequest.of(0, 10));
+                .findAllByRequestorIdOrderByCreatedDescIdDesc(user1.getId(), PageRequest.of(0, 10));
 
         assertEquals(1, list.size());
         assertEquals(itemRequest1, list.get(0));
     }
 
     @Test
-    void findAllByRequestorIdIsNotOrderByCreatedDesc() {
+    void findAllByRequestorIdIsNotOrderByCreatedDescIdDesc() {
         List<ItemRequest> list = repository
-                .findAllByRequestorIdIsNotOrderByCreatedDesc(3L, PageRequest.of(0, 10));
+                .findAllByRequestorIdIsNotOrderByCreatedDescIdDesc(user1.getId(), PageRequest.of(0, 10));
 
         assertEquals(1, list.size());
         assertEquals(itemRequest2, list.get(0));
     }
 
+    @Test
+    void findAllByRequestorIdIsNotAfter_whenCursorGiven_thenReturnOlderRequests() {
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        ItemRequest sameTime = repository.save(ItemRequest.builder().description("описание3").requestor(user2)
+                .created(created).build());
+        ItemRequest older = repository.save(ItemRequest.builder().description("описание4").requestor(user2)
+                .created(created.minusHours(1)).build());
+        ItemRequest newer = repository.save(ItemRequest.builder().description("описание5").requestor(user2)
+                .created(created.plusHours(1)).build());
+        repository.save(ItemRequest.builder().description("описание6").requestor(user1)
+                .created(created.minusHours(2)).build());
+
+        List<ItemRequest> list = repository.findAllByRequestorIdIsNotAfter(user1.getId(), created,
+                sameTime.getId() + 1, PageRequest.of(0, 10));
+
+        assertEquals(List.of(sameTime, older), list);
+        assertEquals(List.of(older), repository.findAllByRequestorIdAfter(user2.getId(), created,
+                sameTime.getId(), PageRequest.of(0, 10)));
+        assertEquals(newer, repository.findAllByRequestorIdOrderByCreatedDescIdDesc(user2.getId(),
+                PageRequest.of(0, 1)).get(0));
+    }
+
+    @Test
+    void findAllByRequestorIdOrderByCreatedDescIdDesc_whenFromIsNotMultipleOfSize_thenStartAtFrom() {
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        List<ItemRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(repository.save(ItemRequest.builder().description("описание" + i).requestor(user2)
+                    .created(created.minusHours(i)).build()));
+        }
+
+        List<ItemRequest> list = repository.findAllByRequestorIdOrderByCreatedDescIdDesc(user2.getId(),
+                new FromSizeRequest(3, 2));
+
+        assertEquals(List.of(requests.get(3), requests.get(4)), list);
+    }
+
     @AfterEach
     void deleteAll() {
         repository.deleteAll();
@@ -0,0 +1,113 @@
+package ru.practicum.shareit.request;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.shareit.item.ItemRepository;
+import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
+import ru.practicum.shareit.user.User;
+import ru.practicum.shareit.user.UserRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверяет количество запросов к базе при получении запросов вещей вместе с вещами:
+ * проверка пользователя, страница запросов с авторами и вещи всех запросов страницы одним запросом
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class ItemRequestServiceImplQueryCountTest {
+
+    private static final int REQUESTS_COUNT = 6;
+
+    @Autowired
+    private ItemRequestService service;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ItemRequestRepository requestRepository;
+    @Autowired
+    private ItemRepository itemRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User owner;
+    private User requestor;
+    private List<ItemRequest> requests;
+
+    @BeforeEach
+    void setUp() {
+        requestor = userRepository.save(User.builder().name("requestor").email("requestor@query.count").build());
+        owner = userRepository.save(User.builder().name("owner").email("owner@query.count").build());
+        LocalDateTime now = LocalDateTime.now();
+        requests = new ArrayList<>();
+        for (int i = 0; i < REQUESTS_COUNT; i++) {
+            ItemRequest request = requestRepository.save(ItemRequest.builder()
+                    .description("request" + i).requestor(requestor).created(now.minusHours(i)).build());
+            requests.add(request);
+            for (int j = 0; j < 2; j++) {
+                itemRepository.save(Item.builder().name("item" + i + j).description("description")
+                        .available(true).owner(owner).request(request).build());
+            }
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void getReqAllWithItemsForThisReq_whenPageGrows_thenThreeQueries() {
+        assertEquals(3, countQueries(2, () -> service.getReqAllWithItemsForThisReq(owner.getId(),
+                PageRequest.of(0, 2))));
+        assertEquals(3, countQueries(REQUESTS_COUNT, () -> service.getReqAllWithItemsForThisReq(owner.getId(),
+                PageRequest.of(0, REQUESTS_COUNT))));
+    }
+
+    @Test
+    void getReqUserWithItemsForThisReq_whenCursorGiven_thenThreeQueries() {
+        entityManager.clear();
+        ItemRequest first = requestRepository.findById(requests.get(0).getId()).orElseThrow();
+        assertEquals(3, countQueries(REQUESTS_COUNT - 1, () -> service.getReqUserWithItemsForThisReq(
+                requestor.getId(), new SeekCursor(first.getCreated(), first.getId()), REQUESTS_COUNT)));
+    }
+
+    @Test
+    void getReqById_thenThreeQueries() {
+        assertEquals(3, countQueries(1, () -> List.of(service.getReqById(owner.getId(), requests.get(0).getId()))));
+    }
+
+    @Test
+    void getReqAllWithItemsForThisReq_whenPageIsEmpty_thenNoItemsQuery() {
+        assertEquals(2, countQueries(0, () -> service.getReqAllWithItemsForThisReq(requestor.getId(),
+                PageRequest.of(0, REQUESTS_COUNT))));
+    }
+
+    private long countQueries(int expectedSize, Supplier<List<ItemRequestWithItemsForThisReqDto>> call) {
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ItemRequestWithItemsForThisReqDto> page = call.get();
+
+        assertEquals(expectedSize, page.size());
+        page.forEach(request -> {
+            assertEquals(2, request.getItems().size());
+            assertEquals(requestor.getId(), request.getRequestor().getId());
+        });
+        return statistics.getPrepareStatementCount();
+    }
+}
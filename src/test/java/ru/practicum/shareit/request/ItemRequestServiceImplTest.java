@@ -5,18 +5,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
+import ru.practicum.shareit.exception.ValidationException;
 import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.item.dto.ItemForRequestDto;
-import ru.practicum.shareit.item.dtoMapper.ItemListMapper;
-import ru.practicum.shareit.item.model.Item;
+import ru.practicum.shareit.pagination.SeekCursor;
+import ru.practicum.shareit.request.dto.ItemRequestDto;
 import ru.practicum.shareit.request.dto.ItemRequestWithItemsForThisReqDto;
 import ru.practicum.shareit.user.User;
 import ru.practicum.shareit.user.UserService;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -34,31 +37,37 @@ class ItemRequestServiceImplTest {
     @MockBean
     private UserService userService;
 
-    @Autowired
-    private ItemListMapper itemListMapper;
+    @Test
+    void create_thenCreatedHasMicrosecondPrecision() {
+        when(userService.findUserByIdForValid(1L)).thenReturn(new User());
+        when(repository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ItemRequestDto created = itemRequestService.create(1L, ItemRequestDto.builder().description("дрель").build());
+
+        assertEquals(0, created.getCreated().getNano() % 1000);
+    }
 
     @Test
     void getReqUserWithItemsForThisReq() {
-        Item item1 = new Item();
-        Item item2 = new Item();
-        List<Item> items = List.of(item1, item2);
+        ItemForRequestDto item1 = ItemForRequestDto.builder().id(3L).requestId(1L).build();
+        ItemForRequestDto item2 = ItemForRequestDto.builder().id(4L).requestId(2L).build();
+        ItemForRequestDto item3 = ItemForRequestDto.builder().id(5L).requestId(1L).build();
         ItemRequest itemRequest1 = ItemRequest.builder().id(1L).build();
         ItemRequest itemRequest2 = ItemRequest.builder().id(2L).build();
         when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
-        when(repository.findAllByRequestorIdOrderByCreatedDesc(anyLong(), any()))
+        when(repository.findAllByRequestorIdOrderByCreatedDescIdDesc(anyLong(), any()))
                 .thenReturn(List.of(itemRequest1, itemRequest2));
-        when(itemRepository.findAllByRequestId(anyLong()))
-                .thenReturn(items);
+        when(itemRepository.findAllByRequestIdIn(List.of(1L, 2L)))
+                .thenReturn(List.of(item1, item2, item3));
 
-        List<ItemForRequestDto> dtoItemList = itemListMapper.modelsToDtosForRequest(items);
         ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto1 =
                 ItemRequestWithItemsForThisReqDto.builder()
                         .id(1L)
-                        .items(dtoItemList).build();
+                        .items(List.of(item1, item3)).build();
         ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto2 =
                 ItemRequestWithItemsForThisReqDto.builder()
                         .id(2L)
-                        .items(dtoItemList).build();
+                        .items(List.of(item2)).build();
         List<ItemRequestWithItemsForThisReqDto> list = List.of(itemRequestWithItemsForThisReqDto1,
                 itemRequestWithItemsForThisReqDto2);
 
@@ -67,49 +76,80 @@ class ItemRequestServiceImplTest {
 
     @Test
     void getReqAllWithItemsForThisReq() {
-        Item item1 = new Item();
-        Item item2 = new Item();
-        List<Item> items = List.of(item1, item2);
+        ItemForRequestDto item1 = ItemForRequestDto.builder().id(3L).requestId(1L).build();
+        ItemForRequestDto item2 = ItemForRequestDto.builder().id(4L).requestId(2L).build();
+        ItemForRequestDto item3 = ItemForRequestDto.builder().id(5L).requestId(1L).build();
         ItemRequest itemRequest1 = ItemRequest.builder().id(1L).build();
         ItemRequest itemRequest2 = ItemRequest.builder().id(2L).build();
         when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
-        when(repository.findAllByRequestorIdIsNotOrderByCreatedDesc(anyLong(), any()))
+        when(repository.findAllByRequestorIdIsNotOrderByCreatedDescIdDesc(anyLong(), any()))
                 .thenReturn(List.of(itemRequest1, itemRequest2));
-        when(itemRepository.findAllByRequestId(anyLong()))
-                .thenReturn(items);
+        when(itemRepository.findAllByRequestIdIn(List.of(1L, 2L)))
+                .thenReturn(List.of(item1, item2, item3));
 
-        List<ItemForRequestDto> dtoItemList = itemListMapper.modelsToDtosForRequest(items);
         ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto1 =
                 ItemRequestWithItemsForThisReqDto.builder()
                         .id(1L)
-                        .items(dtoItemList).build();
+                        .items(List.of(item1, item3)).build();
         ItemRequestWithItemsForThisReqDto itemRequestWithItemsForThisReqDto2 =
                 ItemRequestWithItemsForThisReqDto.builder()
                         .id(2L)
-                        .items(dtoItemList).build();
+                        .items(List.of(item2)).build();
         List<ItemRequestWithItemsForThisReqDto> list = List.of(itemRequestWithItemsForThisReqDto1,
                 itemRequestWithItemsForThisReqDto2);
 
         assertEquals(list, itemRequestService.getReqAllWithItemsForThisReq(1L, PageRequest.of(1, 4)));
     }
 
+    @Test
+    void getReqAllWithItemsForThisReq_whenCursorGiven_thenReturnPageAfterIt() {
+        LocalDateTime created = LocalDateTime.of(2030, 1, 1, 12, 0);
+        ItemRequest itemRequest = ItemRequest.builder().id(1L).created(created.minusHours(1)).build();
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
+        when(repository.findAllByRequestorIdIsNotAfter(2L, created, 3L, PageRequest.of(0, 5)))
+                .thenReturn(List.of(itemRequest));
+        when(itemRepository.findAllByRequestIdIn(List.of(1L))).thenReturn(List.of());
+
+        List<ItemRequestWithItemsForThisReqDto> result =
+                itemRequestService.getReqAllWithItemsForThisReq(2L, new SeekCursor(created, 3L), 5);
+
+        assertEquals(List.of(ItemRequestWithItemsForThisReqDto.builder().id(1L).created(created.minusHours(1))
+                .items(List.of()).build()), result);
+    }
+
+    @Test
+    void getReqAllWithItemsForThisReq_whenPageIsEmpty_thenDoNotLoadItems() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
+        when(repository.findAllByRequestorIdIsNotOrderByCreatedDescIdDesc(anyLong(), any())).thenReturn(List.of());
+
+        assertEquals(List.of(), itemRequestService.getReqAllWithItemsForThisReq(1L, PageRequest.of(0, 4)));
+        verifyNoInteractions(itemRepository);
+    }
+
+    @Test
+    void getReqUserWithItemsForThisReq_whenCursorHasNoTime_thenThrowValidation() {
+        when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
+
+        assertThrows(ValidationException.class, () ->
+                itemRequestService.getReqUserWithItemsForThisReq(2L, new SeekCursor(null, 3L), 5));
+        verifyNoInteractions(repository);
+    }
+
     @Test
     void getReqById() {
-        Item item1 = new Item();
-        Item item2 = new Item();
-        List<Item> items = List.of(item1, item2);
+        List<ItemForRequestDto> items = List.of(ItemForRequestDto.builder().id(3L).requestId(1L).build(),
+                ItemForRequestDto.builder().id(4L).requestId(1L).build());
         ItemRequest itemRequest1 = ItemRequest.builder().id(1L).build();
         when(userService.findUserByIdForValid(anyLong())).thenReturn(new User());
-        when(repository.findById(anyLong()))
+        when(repository.findWithRequestorById(anyLong()))
                 .thenReturn(Optional.ofNullable(itemRequest1));
-        when(itemRepository.findAllByRequestId(anyLong()))
+        when(itemRepository.findAllByRequestIdIn(List.of(1L)))
                 .thenReturn(items);
 
-        List<ItemForRequestDto> dtoItemList = itemListMapper.modelsToDtosForRequest(items);
         ItemRequestWithItemsForThisReqDto item =
                 ItemRequestWithItemsForThisReqDto.builder()
                         .id(1L)
-                        .items(dtoItemList).build();
+                        .items(items).build();
 
         assertEquals(item, itemRequestService.getReqById(1L, 1L));
 
@@ -17,6 +17,6 @@ class ItemRequestTest {
     @Test
     void testToString() {
         ItemRequest itemRequest = ItemRequest.builder().build();
-        assertEquals(itemRequest.toString(), "ItemRequest(id=0, description=null, requestor=null, created=null)");
+        assertEquals(itemRequest.toString(), "ItemRequest(id=0, description=null, created=null)");
     }
 }
\ No newline at end of file
@@ -26,6 +26,6 @@ public class UserRepositoryTest {
         assertEquals(repository.save(user).getName(), user.getName());
         User user3 = User.builder().name("Имя2").email("e@e.e").build();
         final DataIntegrityViolationException e =
-                assertThrows(DataIntegrityViolationException.class, () -> repository.save(user3));
+                assertThrows(DataIntegrityViolationException.class, () -> repository.saveAndFlush(user3));
     }
 }
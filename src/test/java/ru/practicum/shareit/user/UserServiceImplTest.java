@@ -6,6 +6,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import ru.practicum.shareit.exception.NoFoundException;
 import ru.practicum.shareit.exception.ValidationException;
+import ru.practicum.shareit.item.ItemRepository;
 import ru.practicum.shareit.user.dto.UserDto;
 import ru.practicum.shareit.user.mapperDto.UserListMapper;
 import ru.practicum.shareit.user.mapperDto.UserMapper;
@@ -21,6 +22,8 @@ class UserServiceImplTest {
 
     @MockBean
     private UserRepository repository;
+    @MockBean
+    private ItemRepository itemRepository;
     @Autowired
     private UserService service;
     @Autowired
@@ -45,6 +48,8 @@ class UserServiceImplTest {
         when(repository.findById(anyLong())).thenReturn(Optional.ofNullable(user));
         when(repository.save(any())).thenReturn(newUser);
         assertEquals(service.updateUser(userDto, 1L), mapper.modelToDto(newUser));
+        verify(repository).incrementVersion(1L);
+        verify(itemRepository).incrementVersionByUserId(1L);
     }
 
     @Test